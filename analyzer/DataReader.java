@@ -27,6 +27,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedList;
+import java.util.List;
 
 import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
@@ -145,6 +146,9 @@ public class DataReader
 				DataUnit dataUnit = new DataUnit(new Date(timeStamp), carPosition, carRotation,
 						speed, steeringWheelPosition, acceleratorPedalPosition, brakePedalPosition,
 						isEngineOn, traveledDistance);
+				
+				dataUnit.setTrafficCarStateList(parseTrafficCarStates(inputLine));
+				
 				dataUnitList.add(dataUnit);
 				
 				inputLine = inputReader.readLine();
@@ -299,4 +303,15 @@ public class DataReader
 		String[] splittedLineArray = inputLine.split(":");
 		return Boolean.parseBoolean(splittedLineArray[12]);
 	}
+	
+	
+	private List<TrafficCarState> parseTrafficCarStates(String inputLine) 
+	{
+		// traffic column is optional (only available if traffic recording was enabled)
+		String[] splittedLineArray = inputLine.split(":");
+		if(splittedLineArray.length > 13)
+			return TrafficCarState.parseRecordString(splittedLineArray[13]);
+		else
+			return new ArrayList<TrafficCarState>();
+	}
 }
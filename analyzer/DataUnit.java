@@ -19,7 +19,9 @@
 package eu.opends.analyzer;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import com.jme3.math.FastMath;
 import com.jme3.math.Quaternion;
@@ -38,6 +40,7 @@ public class DataUnit implements Serializable
 			xrot, yrot, zrot, wrot, traveledDistance;
 	private boolean isEngineOn;
 	private Date date;
+	private List<TrafficCarState> trafficCarStateList = new ArrayList<TrafficCarState>();
 	
 
 	/**
@@ -351,6 +354,24 @@ public class DataUnit implements Serializable
 	}
 	
 	
+	/**
+	 * 
+	 * @return states of all traffic cars recorded with this data set
+	 */
+	public List<TrafficCarState> getTrafficCarStateList() {
+		return trafficCarStateList;
+	}
+
+	/**
+	 * 
+	 * @param trafficCarStateList
+	 *            states of all traffic cars recorded with this data set
+	 */
+	public void setTrafficCarStateList(List<TrafficCarState> trafficCarStateList) {
+		this.trafficCarStateList = trafficCarStateList;
+	}
+	
+	
 	public static DataUnit interpolate(DataUnit previousDataUnit, DataUnit nextDataUnit, long currentRecordingTime) 
 	{
 		// time at previous recorded data unit
@@ -442,7 +463,14 @@ public class DataUnit implements Serializable
 		float traveledDistanceDiff = nextTraveledDistance - previousTraveledDistance;
 		float traveledDistance = previousTraveledDistance + (traveledDistanceDiff * percentage);		
 		
-		return new DataUnit(date, position, rotation, speed, steeringWheelPos, 
+		DataUnit dataUnit = new DataUnit(date, position, rotation, speed, steeringWheelPos, 
 				gasPedalPos, brakePedalPos, isEngineOn, traveledDistance);
+		
+		
+		// interpolate traffic
+		dataUnit.setTrafficCarStateList(TrafficCarState.interpolate(previousDataUnit.getTrafficCarStateList(), 
+				nextDataUnit.getTrafficCarStateList(), percentage));
+		
+		return dataUnit;
 	}
 }
@@ -28,9 +28,15 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.List;
 
 import eu.opends.car.Car;
+import eu.opends.drivingTask.settings.SettingsLoader.Setting;
+import eu.opends.main.SimulationDefaults;
+import eu.opends.main.Simulator;
 import eu.opends.tools.Util;
+import eu.opends.traffic.PhysicalTraffic;
+import eu.opends.traffic.TrafficCar;
 
 /**
  * 
@@ -57,12 +63,15 @@ public class DataWriter
 	private boolean dataWriterEnabled = false;
 	private Date curDate;
 	private String relativeDrivingTaskPath;
+	private boolean recordTraffic;
 
 
 	public DataWriter(String outputFolder, Car car, String driverName, String absoluteDrivingTaskPath, int trackNumber) 
 	{
 		this.car = car;
 		this.relativeDrivingTaskPath = getRelativePath(absoluteDrivingTaskPath);
+		this.recordTraffic = Simulator.getSettingsLoader().getSetting(Setting.TrafficSimulation_recordTraffic, 
+				SimulationDefaults.TrafficSimulation_recordTraffic);
 		
 		Util.makeDirectory(outputFolder);
 
@@ -102,7 +111,8 @@ public class DataWriter
 			out.write("Driver: " + driverName + newLine);
 			out.write("Used Format = Time (ms): Position (x,y,z) : Rotation (x,y,z,w) :"
 					+ " Speed (km/h) : Steering Wheel Position [-1,1] : Gas Pedal Position :"
-					+ " Brake Pedal Position : Engine Running" + newLine);
+					+ " Brake Pedal Position : Engine Running"
+					+ (recordTraffic ? " : Traffic (name,x,y,z,xRot,yRot,zRot,wRot;...)" : "") + newLine);
 
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -132,7 +142,7 @@ public class DataWriter
 
 		if (curDate.getTime() - lastAnalyzerDataSave.getTime() >= 50) 
 		{
-			write(
+			DataUnit row = new DataUnit(
 					curDate,
 					Math.round(car.getPosition().x * 1000) / 1000.0f,
 					Math.round(car.getPosition().y * 1000) / 1000.0f,
@@ -145,6 +155,11 @@ public class DataWriter
 							.getSteeringWheelState() * 100000) / 100000.0f, car
 							.getGasPedalPressIntensity(), car.getBrakePedalPressIntensity(), 
 							car.isEngineOn());
+			
+			if(recordTraffic)
+				row.setTrafficCarStateList(getTrafficCarStates());
+			
+			write(row);
 
 			lastAnalyzerDataSave = curDate;
 		}
@@ -152,6 +167,15 @@ public class DataWriter
 	}
 
 	
+	private List<TrafficCarState> getTrafficCarStates()
+	{
+		List<TrafficCarState> stateList = new ArrayList<TrafficCarState>();
+		for(TrafficCar vehicle : PhysicalTraffic.getVehicleList())
+			stateList.add(new TrafficCarState(vehicle.getName(), vehicle.getPosition(), vehicle.getRotation()));
+		return stateList;
+	}
+	
+	
 	/**
 	 * 
 	 * see eu.opends.analyzer.IAnalyzationDataWriter#write(float,
@@ -192,8 +216,13 @@ public class DataWriter
 						+ ":" + r.getYrot() + ":" + r.getZrot() + ":"
 						+ r.getWrot() + ":" + r.getSpeed() + ":"
 						+ r.getSteeringWheelPos() + ":" + r.getAcceleratorPedalPos() + ":"
-						+ r.getBrakePedalPos() + ":" + r.isEngineOn() + newLine
+						+ r.getBrakePedalPos() + ":" + r.isEngineOn()
 						);
+				
+				if(recordTraffic)
+					sb.append(":" + TrafficCarState.toRecordString(r.getTrafficCarStateList()));
+				
+				sb.append(newLine);
 			}
 			out.write(sb.toString());
 			arrayDataList.clear();
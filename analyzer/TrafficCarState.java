@@ -0,0 +1,220 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.analyzer;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+
+/**
+ * Data object containing name, position and rotation of a traffic car at the
+ * time of a recorded data unit. The states of all traffic cars are stored in
+ * a single column of the drive log: "name,x,y,z,xRot,yRot,zRot,wRot;...".
+ * Separators contained in names (":" of the drive log, ";" and ",") as well 
+ * as "%" are escaped as "%3A", "%3B", "%2C" and "%25".
+ *
+ * @author Rafael Math
+ */
+public class TrafficCarState implements Serializable
+{
+	private static final long serialVersionUID = 3650198272415092647L;
+	private String name;
+	private float xpos, ypos, zpos, xrot, yrot, zrot, wrot;
+
+
+	public TrafficCarState(String name, Vector3f position, Quaternion rotation)
+	{
+		this.name = name;
+		this.xpos = Math.round(position.getX() * 1000) / 1000.0f;
+		this.ypos = Math.round(position.getY() * 1000) / 1000.0f;
+		this.zpos = Math.round(position.getZ() * 1000) / 1000.0f;
+		this.xrot = Math.round(rotation.getX() * 10000) / 10000.0f;
+		this.yrot = Math.round(rotation.getY() * 10000) / 10000.0f;
+		this.zrot = Math.round(rotation.getZ() * 10000) / 10000.0f;
+		this.wrot = Math.round(rotation.getW() * 10000) / 10000.0f;
+	}
+
+
+	public String getName()
+	{
+		return name;
+	}
+
+
+	public Vector3f getPosition()
+	{
+		return new Vector3f(xpos, ypos, zpos);
+	}
+
+
+	public Quaternion getRotation()
+	{
+		return new Quaternion(xrot, yrot, zrot, wrot);
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return escape(name) + "," + xpos + "," + ypos + "," + zpos + "," + xrot + "," + yrot + "," + zrot + "," + wrot;
+	}
+
+
+	private static String escape(String name)
+	{
+		StringBuffer sb = new StringBuffer(name.length());
+		for(int i=0; i<name.length(); i++)
+		{
+			char c = name.charAt(i);
+			if(c == '%' || c == ':' || c == ';' || c == ',')
+				sb.append('%').append(String.format("%02X", (int) c));
+			else
+				sb.append(c);
+		}
+		return sb.toString();
+	}
+
+
+	private static String unescape(String name)
+	{
+		if(name.indexOf('%') < 0)
+			return name;
+		
+		StringBuffer sb = new StringBuffer(name.length());
+		for(int i=0; i<name.length(); i++)
+		{
+			char c = name.charAt(i);
+			if(c == '%' && i+2 < name.length())
+			{
+				sb.append((char) Integer.parseInt(name.substring(i+1, i+3), 16));
+				i += 2;
+			}
+			else
+				sb.append(c);
+		}
+		return sb.toString();
+	}
+
+
+	/**
+	 * Builds the drive log column of the given traffic car states.
+	 *
+	 * @param stateList
+	 * 			States of all recorded traffic cars.
+	 *
+	 * @return
+	 * 			Semicolon-separated list of traffic car states.
+	 */
+	public static String toRecordString(List<TrafficCarState> stateList)
+	{
+		StringBuffer sb = new StringBuffer();
+		for(int i=0; i<stateList.size(); i++)
+		{
+			if(i > 0)
+				sb.append(";");
+			sb.append(stateList.get(i).toString());
+		}
+		return sb.toString();
+	}
+
+
+	/**
+	 * Parses the traffic car states from the drive log column.
+	 *
+	 * @param recordString
+	 * 			Semicolon-separated list of traffic car states.
+	 *
+	 * @return
+	 * 			List of traffic car states (empty if none available).
+	 */
+	public static List<TrafficCarState> parseRecordString(String recordString)
+	{
+		List<TrafficCarState> stateList = new ArrayList<TrafficCarState>();
+
+		if(recordString == null || recordString.isEmpty())
+			return stateList;
+
+		for(String stateString : recordString.split(";"))
+		{
+			String[] values = stateString.split(",");
+			if(values.length == 8)
+			{
+				Vector3f position = new Vector3f(Float.parseFloat(values[1]),
+						Float.parseFloat(values[2]), Float.parseFloat(values[3]));
+				Quaternion rotation = new Quaternion(Float.parseFloat(values[4]),
+						Float.parseFloat(values[5]), Float.parseFloat(values[6]), Float.parseFloat(values[7]));
+				stateList.add(new TrafficCarState(unescape(values[0]), position, rotation));
+			}
+		}
+
+		return stateList;
+	}
+
+
+	/**
+	 * Interpolates the states of all traffic cars contained in both lists. Traffic
+	 * cars only available in one list (spawned or despawned in between) are taken
+	 * from the previous list.
+	 *
+	 * @param previousList
+	 * 			States at the previous data unit.
+	 *
+	 * @param nextList
+	 * 			States at the next data unit.
+	 *
+	 * @param percentage
+	 * 			Progress between previous and next data unit (0..1).
+	 *
+	 * @return
+	 * 			Interpolated states.
+	 */
+	public static List<TrafficCarState> interpolate(List<TrafficCarState> previousList,
+			List<TrafficCarState> nextList, float percentage)
+	{
+		Map<String, TrafficCarState> nextMap = new HashMap<String, TrafficCarState>();
+		for(TrafficCarState nextState : nextList)
+			nextMap.put(nextState.getName(), nextState);
+
+		List<TrafficCarState> stateList = new ArrayList<TrafficCarState>(previousList.size());
+		for(TrafficCarState previousState : previousList)
+		{
+			TrafficCarState nextState = nextMap.get(previousState.getName());
+			if(nextState == null)
+			{
+				stateList.add(previousState);
+			}
+			else
+			{
+				Vector3f previousPos = previousState.getPosition();
+				Vector3f track = nextState.getPosition().subtract(previousPos);
+				Vector3f position = previousPos.add(track.multLocal(percentage));
+				Quaternion rotation = new Quaternion();
+				rotation.slerp(previousState.getRotation(), nextState.getRotation(), percentage);
+				stateList.add(new TrafficCarState(previousState.getName(), position, rotation));
+			}
+		}
+
+		return stateList;
+	}
+}
@@ -29,7 +29,10 @@ import com.jme3.audio.Listener;
 import com.jme3.audio.AudioSource.Status;
 import com.jme3.renderer.Camera;
 
+import eu.opends.basics.SimulationBasics;
 import eu.opends.main.Simulator;
+import eu.opends.tools.SimulationScheduler.Clock;
+import eu.opends.tools.SimulationScheduler.PeriodicTask;
 
 /**
  * 
@@ -37,6 +40,9 @@ import eu.opends.main.Simulator;
  */
 public class AudioCenter 
 {
+	// time (in seconds) between two volume steps when fading out
+	private static final float FADE_OUT_INTERVAL = 0.2f;
+	
 	private static Simulator sim;
 	private static float engineVolume;
 	private static AudioRenderer audioRenderer;
@@ -90,17 +96,38 @@ public class AudioCenter
 	}
 	
 	
-	public static void playSoundDelayed(String soundID, int milliSeconds)
+	public static void playSoundDelayed(final String soundID, int milliSeconds)
 	{
-		AudioDelayThread t = new AudioDelayThread(soundID, milliSeconds, "playSound");
-		t.start();
+		SimulationBasics.getScheduler().schedule(new Runnable()
+		{
+			public void run()
+			{
+				playSound(soundID);
+			}
+		}, milliSeconds/1000f, Clock.REAL);
 	}
 	
 	
-	private static void fadeOut(String soundID, int milliSeconds) 
+	private static void fadeOut(final String soundID, int milliSeconds) 
 	{
-		AudioDelayThread t = new AudioDelayThread(soundID, milliSeconds, "fadeOut");
-		t.start();
+		final float initialVolume = getAudioNode(soundID).getVolume();
+		
+		// decrease volume by 0.1 every 200 ms, then stop sound and restore initial volume
+		SimulationBasics.getScheduler().schedulePeriodic(new PeriodicTask()
+		{
+			public boolean update()
+			{
+				float volume = Math.max(getAudioNode(soundID).getVolume() - 0.1f, 0);
+				setVolume(soundID, volume);
+				
+				if(volume > 0)
+					return true;
+				
+				stopSound(soundID);
+				setVolume(soundID, initialVolume);
+				return false;
+			}
+		}, milliSeconds/1000f + FADE_OUT_INTERVAL, FADE_OUT_INTERVAL, Clock.REAL);
 	}
 
 	
@@ -62,6 +62,9 @@ public class InternalMapProcessing
 			generateDrivingTaskTriggers();
 			addTriggersToTriggerNode();
 		}
+		
+		// make map objects and triggers available for name lookup
+		sim.getSceneRegistry().register(sceneNode);
 	}
 
 	
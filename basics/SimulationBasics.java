@@ -48,11 +48,16 @@ import eu.opends.main.SimulationDefaults;
 import eu.opends.main.Simulator;
 import eu.opends.niftyGui.InstructionScreenGUI;
 import eu.opends.niftyGui.KeyMappingGUI;
+import eu.opends.network.NetworkTransport;
+import eu.opends.network.TelemetryPublisher;
 import eu.opends.niftyGui.ShutDownGUI;
 import eu.opends.oculusRift.StereoCamAppState;
 import eu.opends.tools.PropertiesLoader;
+import eu.opends.tools.SceneRegistry;
+import eu.opends.tools.SimulationScheduler;
 import eu.opends.tools.XMLLoader;
 import eu.opends.trigger.TriggerAction;
+import eu.opends.trigger.rule.RuleEngine;
 
 /**
  * 
@@ -66,11 +71,16 @@ public class SimulationBasics extends SimpleApplication
 	protected static InteractionLoader interactionLoader;
 	protected static SettingsLoader settingsLoader;
 	protected static Map<String,List<TriggerAction>> triggerActionListMap = new HashMap<String,List<TriggerAction>>();
+	protected static SimulationScheduler scheduler = new SimulationScheduler();
+	protected static NetworkTransport networkTransport = new NetworkTransport();
+	protected static TelemetryPublisher telemetryPublisher = new TelemetryPublisher();
+	protected static RuleEngine ruleEngine = new RuleEngine();
 	protected BulletAppState bulletAppState;
 	protected LightFactory lightFactory;
 	protected CameraFactory cameraFactory;
 	protected Node sceneNode;
 	protected Node triggerNode;
+	protected SceneRegistry sceneRegistry;
 	protected KeyMappingGUI keyMappingGUI;
 	protected ShutDownGUI shutDownGUI;
 	protected InstructionScreenGUI instructionScreenGUI;
@@ -104,6 +114,12 @@ public class SimulationBasics extends SimpleApplication
 	}
 	
 	
+	public SceneRegistry getSceneRegistry()
+	{
+		return sceneRegistry;
+	}
+	
+	
     public BulletAppState getBulletAppState() 
     {
         return bulletAppState;
@@ -170,6 +186,30 @@ public class SimulationBasics extends SimpleApplication
 	{
 		return triggerActionListMap;
 	}
+	
+	
+	public static SimulationScheduler getScheduler() 
+	{
+		return scheduler;
+	}
+	
+	
+	public static NetworkTransport getNetworkTransport() 
+	{
+		return networkTransport;
+	}
+	
+	
+	public static TelemetryPublisher getTelemetryPublisher() 
+	{
+		return telemetryPublisher;
+	}
+	
+	
+	public static RuleEngine getRuleEngine() 
+	{
+		return ruleEngine;
+	}
 
 	
 	public AppSettings getSettings() 
@@ -241,6 +281,9 @@ public class SimulationBasics extends SimpleApplication
 		
 		triggerNode = new Node("triggerNode");
 		sceneNode.attachChild(triggerNode);
+		
+		sceneRegistry = new SceneRegistry(rootNode);
+		sceneRegistry.register(sceneNode);
     	
         // apply shadow casting       
         //if (settings.getRenderer().startsWith("LWJGL")) 
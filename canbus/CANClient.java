@@ -18,20 +18,26 @@
 
 package eu.opends.canbus;
 
-import java.net.Socket;
-import java.net.SocketException;
+import java.nio.ByteBuffer;
 //import java.util.Calendar;
 //import java.util.GregorianCalendar;
-import java.io.*;
 
 //import com.jme3.math.Vector3f;
 
+import eu.opends.basics.SimulationBasics;
 import eu.opends.car.Car;
 import eu.opends.drivingTask.settings.SettingsLoader;
 import eu.opends.drivingTask.settings.SettingsLoader.Setting;
 import eu.opends.environment.XMLParser;
 import eu.opends.main.SimulationDefaults;
 import eu.opends.main.Simulator;
+import eu.opends.tools.Vector3d;
+import eu.opends.network.Connection;
+import eu.opends.network.ConnectionListener;
+import eu.opends.network.MessageFramer;
+import eu.opends.network.MessageWorker;
+import eu.opends.network.TelemetrySink;
+import eu.opends.network.XMLFragmentFramer;
 
 /**
  * This class represents the connector to the CAN-Interface. Steering, gas, brake and 
@@ -40,22 +46,128 @@ import eu.opends.main.Simulator;
  * the position and speed on a in-car display. Furthermore trigger collisions can be 
  * sent to the CAN-Interface.
  * 
+ * Instructions are received as XML or - if CANInterface/protocol is set to 
+ * "binary" - as binary CAN frames (see CANFrameDecoder) with the following IDs:
+ * 
+ * STEERING_ID: steering angle of the real car in degrees (float)
+ * ACCELERATOR_ID: accelerator pedal 0..1 (float)
+ * BRAKE_ID: brake pedal 0..1 (float)
+ * BUTTON_ID: BUTTON_CHANGE_VIEW or BUTTON_RESET_CAR (byte)
+ * 
+ * Steering and pedal values (of both protocols) are passed to the render thread 
+ * by lock-free mailboxes; only the latest value will be applied in each frame.
+ * Button actions are enqueued to the scheduler of the render thread.
+ * 
  * @author Rafael Math
  */
-public class CANClient extends Thread
+public class CANClient implements ConnectionListener
 {
+	// maximum length (in bytes) of a CAN instruction
+	private static final int MAX_MESSAGE_LENGTH = 10000;
+	
+	// CAN IDs of binary frames
+	public static final int STEERING_ID = 0x100;
+	public static final int ACCELERATOR_ID = 0x101;
+	public static final int BRAKE_ID = 0x102;
+	public static final int BUTTON_ID = 0x103;
+	
+	public static final byte BUTTON_CHANGE_VIEW = 1;
+	public static final byte BUTTON_RESET_CAR = 2;
+	
 	// angle the real car wheel must be rotated for full lock in simulator 
 	private float maxSteeringAngle;	
 	private Simulator sim;
 	private Car car;
-	//private int framerate;
+	private int framerate;
 	private boolean stoprequested;
-	private boolean errorOccurred;
+	private volatile boolean errorOccurred;
 	private float steeringAngle;
-	private boolean doSteering;
+	private volatile boolean doSteering;
 	//private Calendar timeOfLastFire;
-	private PrintWriter printWriter;
-	private Socket socket;
+	private Connection connection;
+	private CarStateSink carStateSink = null;
+	private CANFrameDecoder decoder = null;
+	
+	// values passed from network thread to render thread
+	private CANMailbox steeringMailbox = new CANMailbox();
+	private CANMailbox acceleratorMailbox = new CANMailbox();
+	private CANMailbox brakeMailbox = new CANMailbox();
+	
+	private final Runnable changeView = new Runnable() {
+		public void run() {
+			sim.getCameraFactory().changeCamera();
+		}
+	};
+	
+	private final Runnable resetCar = new Runnable() {
+		public void run() {
+			car.setToNextResetPosition();
+		}
+	};
+	
+	// arrival time of the XML instruction currently evaluated (worker thread only)
+	private long messageArrivalTime;
+	
+	// parses XML instructions, so the network thread only frames messages
+	private MessageWorker worker;
+	
+	// latency (in microseconds) from arrival to applied steering (render thread only)
+	private long appliedSteeringValues = 0;
+	private long steeringLatencySum = 0;
+	private int maxSteeringLatency = 0;
+	
+	
+	/**
+	 * Car state captured on the render thread.
+	 */
+	private static class CarState
+	{
+		private float speed;
+		private float heading;
+		private double latitude;
+		private double longitude;
+	}
+	
+	
+	/**
+	 * Sends heading, geo coordinates and speed at the configured update rate.
+	 */
+	private class CarStateSink extends TelemetrySink<CarState>
+	{
+		public CarStateSink(int framerate)
+		{
+			super("CAN-Interface", framerate);
+		}
+		
+		
+		@Override
+		protected CarState createSnapshot()
+		{
+			return new CarState();
+		}
+		
+		
+		@Override
+		protected boolean capture(CarState snapshot)
+		{
+			snapshot.speed = ((float) car.getCurrentSpeedKmhRounded());  // in kph
+			snapshot.heading = car.getHeadingDegree();                   // 0..360 degree
+			Vector3d geoPosition = car.getGeoPosition();
+			snapshot.latitude = geoPosition.getX();                      // N-S position
+			snapshot.longitude = geoPosition.getY();                     // W-E position
+			return !errorOccurred;
+		}
+		
+		
+		@Override
+		protected void send(CarState snapshot)
+		{
+		 	// send car data (speed, heading, latitude and longitude) to CAN-Interface
+			String positionString = "$SimCarState#" + snapshot.speed + "#" + snapshot.heading + "#" + 
+					snapshot.latitude + "#" + snapshot.longitude + "%";
+		 	connection.send(positionString);
+		}
+	}
 	
 	
 	/**
@@ -66,8 +178,6 @@ public class CANClient extends Thread
 	 */
 	public CANClient(Simulator sim)
     {
-		super();
-		
 		this.sim = sim;
 		this.car = sim.getCar();
 		stoprequested = false;
@@ -79,124 +189,216 @@ public class CANClient extends Thread
 		SettingsLoader settingsLoader = Simulator.getDrivingTask().getSettingsLoader();
 		String ip = settingsLoader.getSetting(Setting.CANInterface_ip, SimulationDefaults.CANInterface_ip);
 		int port = settingsLoader.getSetting(Setting.CANInterface_port, SimulationDefaults.CANInterface_port);
-		//framerate = settingsLoader.getSetting(Setting.CANInterface_updateRate, SimulationDefaults.CANInterface_updateRate);
+		framerate = settingsLoader.getSetting(Setting.CANInterface_updateRate, SimulationDefaults.CANInterface_updateRate);
 		maxSteeringAngle = settingsLoader.getSetting(Setting.CANInterface_maxSteeringAngle, SimulationDefaults.CANInterface_maxSteeringAngle); 
 
 		
+		String protocol = settingsLoader.getSetting(Setting.CANInterface_protocol, SimulationDefaults.CANInterface_protocol);
+		MessageFramer framer;
+		if(protocol.equalsIgnoreCase("binary"))
+		{
+			decoder = createDecoder();
+			framer = decoder;
+		}
+		else
+		{
+			framer = new XMLFragmentFramer(MAX_MESSAGE_LENGTH);
+			worker = new MessageWorker("CANClientWorker");
+		}
+		
 		try {
 
 			
-			// connect to Server
-			socket = new Socket(ip,port);
-			socket.setSoTimeout(10);
+			// connect to Server (instructions will be passed to messageReceived())
+			connection = SimulationBasics.getNetworkTransport().connect(ip, port, framer, this);
+			
+			// car data will be sent by the telemetry publisher thread
+			if(settingsLoader.getSetting(Setting.CANInterface_sendCarData, SimulationDefaults.CANInterface_sendCarData))
+			{
+				carStateSink = new CarStateSink(framerate);
+				SimulationBasics.getTelemetryPublisher().addSink(carStateSink);
+			}
 
 		} catch (Exception e) {
 			e.printStackTrace();
 			System.err.println("No TCP connection possible to CAN-Interface at " + ip + ":" + port);
 			errorOccurred = true;
+			
+			if(worker != null)
+				worker.close();
 		}
     }
 	
     
 	/**
-	 * Listens for incoming CAN instructions (as XML), such as gas, brake, steering angle, 
-	 * reset and change view, which will be forwarded to the XML-parser
+	 * Creates the decoder for binary CAN frames with a handler for each 
+	 * supported CAN ID (handlers are called on the network thread).
+	 */
+	private CANFrameDecoder createDecoder()
+	{
+		CANFrameDecoder frameDecoder = new CANFrameDecoder();
+		
+		frameDecoder.addHandler(STEERING_ID, new CANFrameDecoder.FrameHandler() {
+			public void frameReceived(ByteBuffer data, long arrivalTime) {
+				// same direction as XML instruction "steering"
+				setSteeringAngle(-data.getFloat(), arrivalTime);
+			}
+		});
+		
+		frameDecoder.addHandler(ACCELERATOR_ID, new CANFrameDecoder.FrameHandler() {
+			public void frameReceived(ByteBuffer data, long arrivalTime) {
+				// no backward driving by binary frames
+				acceleratorMailbox.put(Math.max(data.getFloat(), 0), arrivalTime);
+			}
+		});
+		
+		frameDecoder.addHandler(BRAKE_ID, new CANFrameDecoder.FrameHandler() {
+			public void frameReceived(ByteBuffer data, long arrivalTime) {
+				brakeMailbox.put(data.getFloat(), arrivalTime);
+			}
+		});
+		
+		frameDecoder.addHandler(BUTTON_ID, new CANFrameDecoder.FrameHandler() {
+			public void frameReceived(ByteBuffer data, long arrivalTime) {
+				byte button = data.get();
+				if(button == BUTTON_CHANGE_VIEW)
+					changeView();
+				else if(button == BUTTON_RESET_CAR)
+					resetCar();
+			}
+		});
+		
+		return frameDecoder;
+	}
+	
+    
+	/**
+	 * Evaluates incoming CAN instructions (binary frames or XML), such as gas, brake, 
+	 * steering angle, reset and change view. XML instructions will be forwarded to the 
+	 * XML-parser on the worker thread. Called on the network thread.
 	 */
 	@Override
-	public void run() 
+	public void messageReceived(Connection connection, ByteBuffer message) 
 	{
-		// when loop is left, connection will be closed
-		// loop will be left when requested or error occurred
-		while(!stoprequested && !errorOccurred)
+		final long readTime = connection.getReadTime();
+		
+		if(decoder != null)
 		{
-			try {
-
-				// delete "NUL" at the end of each line
-				String message = readMessage(socket).replace("\0", "");
+			decoder.decode(message, readTime);
+			return;
+		}
+		
+		// delete "NUL" at the end of each line
+		final String instruction = connection.getString(message).replace("\0", "");
+		
+		worker.submit(new Runnable()
+		{
+			public void run()
+			{
+				messageArrivalTime = readTime;
 				
 				// print XML instruction
-				//System.out.println(message);
+				//System.out.println(instruction);
 				
 				// parse and evaluate XML instruction
-				XMLParser parser = new XMLParser("<CAN>" + message + "</CAN>");
-				parser.evalCANInstruction(sim,this);
-				
-			} catch (SocketException e) {
-				
-				// will be thrown if e.g. server was shut down
-				System.err.println("Socket error: Connection to CAN-Interface has to be closed");
-				errorOccurred = true;
-				
-			} catch (Exception e) {
+				XMLParser parser = new XMLParser("<CAN>" + instruction + "</CAN>");
+				parser.evalCANInstruction(sim, CANClient.this);
 			}
+		});
+	}
+	
+	
+	@Override
+	public void connectionClosed(Connection connection)
+	{
+		synchronized(this)
+		{
+			if(!stoprequested)
+				System.err.println("Socket error: Connection to CAN-Interface has to be closed");
 			
-			// set virtual car's steering angle to the given steering angle
-			if(doSteering)
-				updateSteeringAngle();
+			errorOccurred = true;
 		}
 		
-		// close TCP connection to CAN-Interface if connected at all
-		try {
-			if ((socket != null) && (printWriter != null))
-			{
-				// wait for 10 ms
-				try {Thread.sleep(100);} 
-				catch (InterruptedException e){}
-
-				printWriter.print("exit");
-				printWriter.flush();
-				
-				// close socket connection
-				printWriter.close();
-				socket.close();
-				
-				System.out.println("Connection to CAN-Interface closed");
-			}
-		} catch (Exception ex) {
-			System.err.println("Could not close connection to CAN-Interface");
-		}
+		if(worker != null)
+			worker.close();
+		
+		System.out.println("Connection to CAN-Interface closed (" + connection.getStatistics() + ")");
+		
+		System.out.println("CAN-Interface: " + getSteeringStatistics());
+		if(decoder != null)
+			System.out.println("CAN frames: " + decoder.getStatistics());
 	}
-
+	
 	
 	/**
-	 * Sends car data to the CAN-Interface, such as heading, geo coordinates and speed.
+	 * Sets the virtual car's steering angle to the steering angle of the real car 
+	 * (if not suppressed) and passes it to the steering task. Called on the 
+	 * render thread.
 	 */
-	public synchronized void sendCarData()
+	public void update()
 	{
-		/*
-		// break, if no connection established
-		if(socket == null || errorOccurred)
+		if(errorOccurred)
 			return;
 		
-		// generate time stamp
-		Calendar currentTime = new GregorianCalendar();
+		boolean isNewValue = steeringMailbox.take();
+		if(isNewValue)
+		{
+			steeringAngle = steeringMailbox.getValue();
+			sim.getSteeringTask().setSteeringIntensity(0.02f*steeringAngle);
+		}
 		
-		// if enough time has passed by since last fire, the event will be forwarded
-		if(forwardEvent(currentTime))
+		if(doSteering)
 		{
-			float speed = ((float) car.getCurrentSpeedKmhRounded());  // in kph
-			float heading = car.getHeadingDegree();       // 0..360 degree
-			Vector3f geoPosition = car.getGeoPosition();
-			float latitude = geoPosition.getX();          // N-S position in model coordinates
-			float longitude = geoPosition.getY();         // W-E position in model coordinates
-
-			try { 	
-
-			 	// send car data (speed, heading, latitude and longitude) to CAN-Interface and flush
-				String positionString = "$SimCarState#" + speed + "#" + heading + "#" + latitude + "#" + longitude + "%";
-				printWriter = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()));
-			 	printWriter.print(positionString);
-			 	printWriter.flush();
-			 				 	
-			} catch (IOException e) {
-				System.err.println("CANClient_sendCarData(): " + e.toString());
+			updateSteeringAngle();
+			
+			if(isNewValue)
+			{
+				int latency = steeringMailbox.getAge(System.nanoTime());
+				appliedSteeringValues++;
+				steeringLatencySum += latency;
+				maxSteeringLatency = Math.max(maxSteeringLatency, latency);
+			}
+		}
+		
+		// pedal values (negative accelerator values: backward)
+		if(acceleratorMailbox.take())
+		{
+			float value = Math.max(Math.min(acceleratorMailbox.getValue(), 1), -1);
+			car.setAcceleratorPedalIntensity(-value);
+			sim.getThreeVehiclePlatoonTask().reportAcceleratorIntensity(Math.abs(value));
+			if(value > 0)
+				sim.getSteeringTask().getPrimaryTask().reportGreenLight();
+		}
+		
+		if(brakeMailbox.take())
+		{
+			float value = Math.max(Math.min(brakeMailbox.getValue(), 1), 0);
+			car.setBrakePedalIntensity(value); // 1 --> full braking
+			sim.getThreeVehiclePlatoonTask().reportBrakeIntensity(value);
+			if(value > 0)
+			{
+				sim.getSteeringTask().getPrimaryTask().reportRedLight();
+				sim.getCar().disableCruiseControlByBrake();
 			}
-
 		}
-		*/
 	}
 	
 	
+	/**
+	 * @return
+	 * 			Number of steering values applied, mean and maximum latency from 
+	 * 			arrival to application and number of superseded values.
+	 */
+	public String getSteeringStatistics()
+	{
+		float meanLatency = (appliedSteeringValues > 0) ? steeringLatencySum / (float) appliedSteeringValues : 0;
+		return appliedSteeringValues + " steering values applied (latency: mean " + 
+				String.format("%.2f", meanLatency/1000f) + " ms, max " + 
+				String.format("%.2f", maxSteeringLatency/1000f) + " ms), " + 
+				steeringMailbox.getSupersededValues() + " superseded";
+	}
+
+	
 	/**
 	 * Sends trigger reports to the CAN-Interface if the simulated car has hit a trigger.
 	 * 
@@ -207,20 +409,12 @@ public class CANClient extends Thread
 	{
 		/*
 		// break, if no connection established
-		if(socket == null || errorOccurred)
+		if(connection == null || errorOccurred)
 			return;
 
-		try { 	
-
-		 	// send trigger data to CAN-bus and flush
-			String triggerString = "$SimCarTrigger#" + triggerID + "%";
-			printWriter = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()));
-		 	printWriter.print(triggerString);
-		 	printWriter.flush();
-		 				 	
-		} catch (IOException e) {
-			System.err.println("CANClient_sendTriggerData(): " + e.toString());
-		}
+	 	// send trigger data to CAN-bus
+		String triggerString = "$SimCarTrigger#" + triggerID + "%";
+	 	connection.send(triggerString);
 		*/
 	}
 
@@ -236,20 +430,12 @@ public class CANClient extends Thread
 	{
 		/*
 		// break, if no connection established
-		if(socket == null || errorOccurred)
+		if(connection == null || errorOccurred)
 			return;
 
-		try { 	
-
-		 	// send deviation data to CAN-Interface and flush
-			String positionString = "$SimDeviationState#" + deviation + "%";
-			printWriter = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()));
-		 	printWriter.print(positionString);
-		 	printWriter.flush();
-		 				 	
-		} catch (IOException e) {
-			System.err.println("CANClient_sendDeviationData(): " + e.toString());
-		}
+	 	// send deviation data to CAN-Interface
+		String positionString = "$SimDeviationState#" + deviation + "%";
+	 	connection.send(positionString);
 		*/
 	}
 	
@@ -262,12 +448,64 @@ public class CANClient extends Thread
 	 * @param steeringAngle
 	 * 			Steering angle as read from the real car
 	 */
-	public synchronized void setSteeringAngle(float steeringAngle) 
+	public void setSteeringAngle(float steeringAngle) 
 	{
+		setSteeringAngle(steeringAngle, messageArrivalTime);
+	}
+	
+	
+	private void setSteeringAngle(float steeringAngle, long arrivalTime) 
+	{
+		// applied by the render thread in the next frame
+		steeringMailbox.put(steeringAngle, arrivalTime);
+		
 		// set doSteering to true in order to perform steering instructions 
 		// from the real car; otherwise the keyboard will suppress car steering
 		this.doSteering = true;
-		this.steeringAngle = steeringAngle;
+	}
+	
+	
+	/**
+	 * Sets the accelerator pedal of the virtual car in the next frame. Called 
+	 * on the network thread.
+	 * 
+	 * @param intensity
+	 * 			0..1 (forward) or -1..0 (backward)
+	 */
+	public void setAcceleratorPedal(float intensity)
+	{
+		acceleratorMailbox.put(intensity, messageArrivalTime);
+	}
+	
+	
+	/**
+	 * Sets the brake pedal of the virtual car in the next frame. Called on 
+	 * the network thread.
+	 * 
+	 * @param intensity
+	 * 			0..1 (1 --> full braking)
+	 */
+	public void setBrakePedal(float intensity)
+	{
+		brakeMailbox.put(intensity, messageArrivalTime);
+	}
+	
+	
+	/**
+	 * Changes the camera view in the next frame.
+	 */
+	public void changeView()
+	{
+		SimulationBasics.getScheduler().enqueue(changeView);
+	}
+	
+	
+	/**
+	 * Resets the virtual car to the next reset position in the next frame.
+	 */
+	public void resetCar()
+	{
+		SimulationBasics.getScheduler().enqueue(resetCar);
 	}
 	
 	
@@ -275,18 +513,31 @@ public class CANClient extends Thread
 	 * Sets "doSteering" to false in order to suppress the steering of the real car.
 	 * E.g. if the keyboard steering has higher priority
 	 */
-	public synchronized void suppressSteering() 
+	public void suppressSteering() 
 	{
 		this.doSteering = false;
 	}
 	
 	
 	/**
-	 * Requests the connection to close after the current loop
+	 * Sends "exit" to the CAN-Interface and closes the connection (after 
+	 * pending messages have been sent)
 	 */
 	public synchronized void requestStop() 
 	{
+		if(stoprequested)
+			return;
+		
 		stoprequested = true;
+		
+		if(carStateSink != null)
+			SimulationBasics.getTelemetryPublisher().removeSink(carStateSink);
+		
+		if(connection != null && !errorOccurred)
+		{
+			connection.send("exit");
+			connection.close();
+		}
 	}
 	
 	
@@ -319,27 +570,6 @@ public class CANClient extends Thread
 	}
     
 	
-	/**
-	 * Reads an incoming message from the socket connection.
-	 * 
-	 * @param socket
-	 * 			Socket connection
-	 * 
-	 * @return
-	 * 			Message string of up to 10,000 characters
-	 * 
-	 * @throws IOException
-	 */
-	private String readMessage(Socket socket) throws IOException 
-	{
-		BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-		char[] buffer = new char[10000];
-		int nrOfChars = bufferedReader.read(buffer, 0, buffer.length);
-		
-		return new String(buffer, 0, nrOfChars);
-	}
-	
-	
 	/**
 	 * This method checks whether the incoming camera information should 
 	 * be sent to the server at the current time complying with the given 
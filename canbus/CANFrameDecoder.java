@@ -0,0 +1,167 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package eu.opends.canbus;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import eu.opends.network.MessageFramer;
+
+/**
+ * Decoder of binary CAN frames as received from the CAN-Interface (used 
+ * instead of XML instructions if CANInterface/protocol is set to "binary"). 
+ * Each frame has a fixed length of 13 bytes (big endian):
+ * 
+ * CAN ID (int; flags in the upper 3 bits will be ignored) | data length (byte: 0..8) | 
+ * data (8 bytes; bytes beyond the data length will be ignored)
+ * 
+ * Frames are dispatched to the handler registered for their CAN ID by binary 
+ * search in a sorted table; the payload is passed as a view of the receive 
+ * buffer, so no objects are created per frame.
+ * 
+ * @author Rafael Math
+ */
+public class CANFrameDecoder implements MessageFramer
+{
+	public static final int FRAME_LENGTH = 13;
+	public static final int MAX_DATA_LENGTH = 8;
+	private static final int ID_MASK = 0x1FFFFFFF;
+	
+	
+	public interface FrameHandler
+	{
+		/**
+		 * Called on the network thread for each frame with the registered ID.
+		 * 
+		 * @param data
+		 * 			Payload of the frame (from position to limit); only valid 
+		 * 			during this call.
+		 * 
+		 * @param arrivalTime
+		 * 			Time the frame has been received (System.nanoTime()).
+		 */
+		public void frameReceived(ByteBuffer data, long arrivalTime);
+	}
+	
+	
+	// sorted by ID
+	private int[] ids = new int[0];
+	private FrameHandler[] handlers = new FrameHandler[0];
+	
+	private long decodedFrames = 0;
+	private long unknownFrames = 0;
+	
+	
+	/**
+	 * Registers a handler for the given CAN ID (must be called before 
+	 * frames are received).
+	 */
+	public void addHandler(int id, FrameHandler handler)
+	{
+		id &= ID_MASK;
+		
+		int index = Arrays.binarySearch(ids, id);
+		if(index >= 0)
+		{
+			handlers[index] = handler;
+			return;
+		}
+		
+		index = -index - 1;
+		
+		int[] newIDs = new int[ids.length + 1];
+		FrameHandler[] newHandlers = new FrameHandler[handlers.length + 1];
+		System.arraycopy(ids, 0, newIDs, 0, index);
+		System.arraycopy(handlers, 0, newHandlers, 0, index);
+		newIDs[index] = id;
+		newHandlers[index] = handler;
+		System.arraycopy(ids, index, newIDs, index + 1, ids.length - index);
+		System.arraycopy(handlers, index, newHandlers, index + 1, handlers.length - index);
+		
+		ids = newIDs;
+		handlers = newHandlers;
+	}
+	
+	
+	/**
+	 * Dispatches the given frame to its handler.
+	 * 
+	 * @param frame
+	 * 			Frame (FRAME_LENGTH bytes from position); will be consumed.
+	 * 
+	 * @param arrivalTime
+	 * 			Time the frame has been received (System.nanoTime()).
+	 */
+	public void decode(ByteBuffer frame, long arrivalTime)
+	{
+		int start = frame.position();
+		int id = frame.getInt() & ID_MASK;
+		int length = Math.min(frame.get() & 0xFF, MAX_DATA_LENGTH);
+		
+		int index = Arrays.binarySearch(ids, id);
+		if(index < 0)
+		{
+			unknownFrames++;
+			frame.position(start + FRAME_LENGTH);
+			return;
+		}
+		
+		decodedFrames++;
+		int end = frame.limit();
+		frame.limit(frame.position() + length);
+		
+		try {
+			
+			handlers[index].frameReceived(frame, arrivalTime);
+			
+		} finally {
+			
+			frame.limit(end);
+			frame.position(start + FRAME_LENGTH);
+		}
+	}
+	
+	
+	@Override
+	public int getMessageLength(ByteBuffer buffer)
+	{
+		return (buffer.remaining() >= FRAME_LENGTH) ? FRAME_LENGTH : 0;
+	}
+	
+	
+	@Override
+	public int getHeaderLength()
+	{
+		return 0;
+	}
+	
+	
+	@Override
+	public int getTrailerLength()
+	{
+		return 0;
+	}
+	
+	
+	public String getStatistics()
+	{
+		return decodedFrames + " frames decoded, " + unknownFrames + " with unknown ID";
+	}
+}
@@ -0,0 +1,120 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package eu.opends.canbus;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latest value of a CAN signal (e.g. steering angle) passed from the network 
+ * thread to the render thread without locking or allocation. Value and 
+ * arrival time are packed into a single atomic long: the upper 32 bits hold 
+ * the value, the lower 32 bits the arrival time in microseconds (wrapping 
+ * every 71 minutes, which does not affect time differences). Values not 
+ * taken before the next value arrives are superseded.
+ * 
+ * @author Rafael Math
+ */
+public class CANMailbox
+{
+	// never produced by put() as Float.floatToIntBits() returns the canonical NaN
+	private static final long EMPTY = 0x7FC00001L << 32;
+	
+	private final AtomicLong slot = new AtomicLong(EMPTY);
+	
+	// producer thread only
+	private long supersededValues = 0;
+	
+	// consumer thread only
+	private float value;
+	private int arrivalTime;
+	
+	
+	/**
+	 * Replaces the current value (producer thread).
+	 * 
+	 * @param value
+	 * 			New value.
+	 * 
+	 * @param arrivalTimeNanos
+	 * 			Arrival time of the value (System.nanoTime()).
+	 */
+	public void put(float value, long arrivalTimeNanos)
+	{
+		long packed = ((long) Float.floatToIntBits(value) << 32) | 
+				(((int) (arrivalTimeNanos / 1000)) & 0xFFFFFFFFL);
+		
+		if(slot.getAndSet(packed) != EMPTY)
+			supersededValues++;
+	}
+	
+	
+	/**
+	 * Takes the latest value (consumer thread). Afterwards the value is 
+	 * available by getValue().
+	 * 
+	 * @return
+	 * 			False, if no new value has arrived since the last call.
+	 */
+	public boolean take()
+	{
+		long packed = slot.getAndSet(EMPTY);
+		if(packed == EMPTY)
+			return false;
+		
+		value = Float.intBitsToFloat((int) (packed >>> 32));
+		arrivalTime = (int) packed;
+		return true;
+	}
+	
+	
+	/**
+	 * @return
+	 * 			Value returned by the last successful call of take().
+	 */
+	public float getValue()
+	{
+		return value;
+	}
+	
+	
+	/**
+	 * @param nowNanos
+	 * 			Current time (System.nanoTime()).
+	 * 
+	 * @return
+	 * 			Time (in microseconds) between arrival of the value taken last 
+	 * 			and the given time.
+	 */
+	public int getAge(long nowNanos)
+	{
+		return ((int) (nowNanos / 1000)) - arrivalTime;
+	}
+	
+	
+	/**
+	 * @return
+	 * 			Number of values replaced before they have been taken 
+	 * 			(approximate if not called by the producer thread).
+	 */
+	public long getSupersededValues()
+	{
+		return supersededValues;
+	}
+}
@@ -0,0 +1,192 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.car;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Matrix3f;
+import com.jme3.math.Vector3f;
+
+import eu.opends.main.Simulator;
+import eu.opends.network.TelemetrySink;
+
+/**
+ * Sends motion data (acceleration, velocity and orientation of the driving car) 
+ * via UDP to the Simphynity Motion Seat. The render thread only copies the car 
+ * state; accelerations are computed and packets are encoded into a reusable 
+ * buffer by the telemetry publisher thread.
+ * 
+ * @author Rafael Math
+ */
+public class SimphynitySink extends TelemetrySink<SimphynitySink.MotionState>
+{
+	// local port packets are sent from
+	private static final int LOCAL_PORT = 20778;
+	
+	// 4 flags, 18 floats, 1 time stamp
+	private static final int PACKET_SIZE = 4 + 18*4 + 4;
+	
+	private static final float ONE_G_MS = 9.80665f;
+	
+	private Car car;
+	private Simulator sim;
+	private DatagramSocket socket;
+	private DatagramPacket packet;
+	private ByteBuffer buffer;
+	
+	// sender thread only
+	private long oldTime = 0;
+	private Vector3f localSpeedVector = new Vector3f(0,0,0);
+	private Vector3f currentLocalSpeedVector = new Vector3f();
+	private Vector3f currentLocalAccelerationVector = new Vector3f();
+	private int gameTime = 0;
+	
+	
+	/**
+	 * State of the driving car captured on the render thread.
+	 */
+	public static class MotionState
+	{
+		private long time;
+		private Vector3f globalSpeedVector = new Vector3f();
+		private float heading;
+		private float speedKmh;
+		private float gasPedalPressIntensity;
+		private Matrix3f rotationMatrix = new Matrix3f();
+	}
+	
+	
+	/**
+	 * Creates a sink sending to the given address. The host name will be 
+	 * resolved once.
+	 * 
+	 * @throws IOException
+	 * 			If the host is unknown or no local socket could be opened.
+	 */
+	public SimphynitySink(Simulator sim, Car car, String ip, int port, int rate) throws IOException
+	{
+		super("Simphynity", rate);
+		this.sim = sim;
+		this.car = car;
+		
+		InetAddress address = InetAddress.getByName(ip);
+		socket = new DatagramSocket(LOCAL_PORT);
+		
+		// packet and buffer share the same byte array
+		byte[] data = new byte[PACKET_SIZE];
+		packet = new DatagramPacket(data, data.length, address, port);
+		buffer = ByteBuffer.wrap(data);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	
+	@Override
+	protected MotionState createSnapshot()
+	{
+		return new MotionState();
+	}
+	
+	
+	@Override
+	protected boolean capture(MotionState snapshot)
+	{
+		// no updates while simulation is paused (as car will not be updated)
+		if(sim.isPause())
+			return false;
+		
+		snapshot.time = System.currentTimeMillis();
+		car.getCarControl().getLinearVelocity(snapshot.globalSpeedVector);
+		snapshot.heading = car.getHeadingDegree() * FastMath.DEG_TO_RAD;
+		snapshot.speedKmh = car.getCurrentSpeedKmh();
+		snapshot.gasPedalPressIntensity = car.getGasPedalPressIntensity();
+		car.getRotation().toRotationMatrix(snapshot.rotationMatrix);
+		return true;
+	}
+	
+	
+	@Override
+	protected void send(MotionState snapshot) throws IOException
+	{
+		float timeDiff = ((float) (snapshot.time - oldTime)) / 1000f; // in seconds
+		if(timeDiff <= 0)
+			return;
+		
+		Vector3f globalSpeedVector = snapshot.globalSpeedVector;
+	    float heading = snapshot.heading;
+	    float speedForward = FastMath.sin(heading) * globalSpeedVector.x - FastMath.cos(heading) * globalSpeedVector.z;
+	    float speedLateral = FastMath.cos(heading) * globalSpeedVector.x + FastMath.sin(heading) * globalSpeedVector.z;
+	    float speedVertical = globalSpeedVector.y;
+	    currentLocalSpeedVector.set(speedForward, speedLateral, speedVertical); // in m/s
+	    currentLocalSpeedVector.subtract(localSpeedVector, currentLocalAccelerationVector).divideLocal(timeDiff); // in m/s^2
+	    
+	    if(snapshot.speedKmh < 3 && snapshot.gasPedalPressIntensity < 0.1f)
+	    	currentLocalAccelerationVector.x = 0;
+	    
+	    oldTime = snapshot.time;
+	    localSpeedVector.set(currentLocalSpeedVector);
+	    
+	    buffer.clear();
+	    
+	    // useLocalVals
+	    buffer.put((byte) 1);
+	    buffer.put((byte) 0);
+	    buffer.put((byte) 0);
+	    buffer.put((byte) 0);
+	    
+	    // localAccel
+	    buffer.putFloat(Math.max(Math.min(-currentLocalAccelerationVector.x, ONE_G_MS), -ONE_G_MS)); // -1G - +1G
+	    buffer.putFloat(Math.max(Math.min(-currentLocalAccelerationVector.y, ONE_G_MS), -ONE_G_MS)); // -1G - +1G
+	    buffer.putFloat(ONE_G_MS - Math.max(Math.min(-currentLocalAccelerationVector.z, ONE_G_MS), -ONE_G_MS)); // 0 - 2G
+	    
+	    // localVel
+	    buffer.putFloat(Math.max(Math.min(currentLocalSpeedVector.x / 40f, 1f), 0f)); // 0.0 - 1.0
+	    buffer.putFloat(Math.max(Math.min(currentLocalSpeedVector.y / 40f, 1f), 0f)); // 0.0 - 1.0
+	    buffer.putFloat(Math.max(Math.min(-currentLocalSpeedVector.z / 40f, 1f), 0f)); // 0.0 - 1.0
+	    
+	    // globalVel
+	    buffer.putFloat(globalSpeedVector.x / 40f);
+	    buffer.putFloat(globalSpeedVector.y / 40f);
+	    buffer.putFloat(globalSpeedVector.z / 40f);
+	    
+	    // rotationMatrix
+	    Matrix3f rotationMatrix = snapshot.rotationMatrix;
+	    for(int i=0; i<3; i++)
+	    	for(int j=0; j<3; j++)
+	    		buffer.putFloat(rotationMatrix.get(i, j));
+	    
+	    // packetTimeMillis (sent as float, as expected by the receiver)
+	    gameTime += (timeDiff * 1000);
+	    buffer.putFloat(gameTime);
+	    
+	    socket.send(packet);
+	}
+	
+	
+	@Override
+	protected void close()
+	{
+		socket.close();
+	}
+}
@@ -18,20 +18,11 @@
 
 package eu.opends.car;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.net.SocketException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 
 import com.jme3.bounding.BoundingBox;
 import com.jme3.math.ColorRGBA;
 import com.jme3.math.FastMath;
-import com.jme3.math.Matrix3f;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Geometry;
 
@@ -66,10 +57,7 @@ public class SteeringCar extends Car
     private boolean handBrakeApplied = false;
     
     // Simphynity Motion Seat
-    private DatagramSocket socket;
-	private int gameTime = 0;
-	private long oldTime = 0;
-	private Vector3f localSpeedVector = new Vector3f(0,0,0);
+    private SimphynitySink simphynitySink = null;
     
     // adaptive cruise control
 	private boolean isAdaptiveCruiseControl = false;
@@ -142,10 +130,22 @@ public class SteeringCar extends Car
     	targetSpeedCruiseControl = scenarioLoader.getCarProperty(CarProperty.cruiseControl_initialSpeed, SimulationDefaults.cruiseControl_initialSpeed);
 		isCruiseControl = (targetSpeedCruiseControl > 0);
     	
-    	try {
-			socket = new DatagramSocket(20778);
-		} catch (SocketException e) {
-			e.printStackTrace(); 
+    	// motion data will be sent by the telemetry publisher thread
+    	SettingsLoader settingsLoader = SimulationBasics.getSettingsLoader();
+        if(settingsLoader.getSetting(Setting.Simphynity_enableConnection, SimulationDefaults.Simphynity_enableConnection))
+		{
+			String ip = settingsLoader.getSetting(Setting.Simphynity_ip, SimulationDefaults.Simphynity_ip);
+			if(ip == null || ip.isEmpty())
+				ip = "127.0.0.1";
+			int port = settingsLoader.getSetting(Setting.Simphynity_port, SimulationDefaults.Simphynity_port);
+			int rate = settingsLoader.getSetting(Setting.Simphynity_updateRate, SimulationDefaults.Simphynity_updateRate);
+			
+			try {
+				simphynitySink = new SimphynitySink(sim, this, ip, port, rate);
+				SimulationBasics.getTelemetryPublisher().addSink(simphynitySink);
+			} catch (IOException e) {
+				e.printStackTrace(); 
+			}
 		}
 	}
 
@@ -260,143 +260,8 @@ public class SteeringCar extends Car
         updateFrictionSlip();
         
         updateWheel();
-        
-        SettingsLoader settingsLoader = SimulationBasics.getSettingsLoader();
-        if(settingsLoader.getSetting(Setting.Simphynity_enableConnection, SimulationDefaults.Simphynity_enableConnection))
-		{
-			String ip = settingsLoader.getSetting(Setting.Simphynity_ip, SimulationDefaults.Simphynity_ip);
-			if(ip == null || ip.isEmpty())
-				ip = "127.0.0.1";
-			int port = settingsLoader.getSetting(Setting.Simphynity_port, SimulationDefaults.Simphynity_port);
-
-        	sendSimphynityInstructions(ip, port);
-		}
 	}
 
-
-	private void sendSimphynityInstructions(String ip, int port)
-	{
-		long time = System.currentTimeMillis();  // in milliseconds
-		float timeDiff = ((float) (time - oldTime)) / 1000f; // in seconds
-		
-		// send updates at most 40 times per second (acceleration changes more stable)
-		if(timeDiff > 0.025f)
-		{			
-		    Vector3f globalSpeedVector = this.getCarControl().getLinearVelocity();
-		    float heading = this.getHeadingDegree() * FastMath.DEG_TO_RAD;
-		    float speedForward = FastMath.sin(heading) * globalSpeedVector.x - FastMath.cos(heading) * globalSpeedVector.z;
-		    float speedLateral = FastMath.cos(heading) * globalSpeedVector.x + FastMath.sin(heading) * globalSpeedVector.z;
-		    float speedVertical = globalSpeedVector.y;
-		    Vector3f currentLocalSpeedVector = new Vector3f(speedForward, speedLateral, speedVertical); // in m/s
-		    Vector3f currentLocalAccelerationVector = currentLocalSpeedVector.subtract(localSpeedVector).divide(timeDiff); // in m/s^2
-		    
-		    if(getCurrentSpeedKmh() < 3 && this.getGasPedalPressIntensity() < 0.1f)
-		    	currentLocalAccelerationVector.x = 0;
-		    	
-		    //System.err.println(currentLocalAccelerationVector.x);
-		    
-		    oldTime = time;
-		    localSpeedVector = currentLocalSpeedVector;
-		   	    
-		    try
-		    {
-		    	InetAddress adress = InetAddress.getByName(ip);
-		    	
-		        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		        final DataOutputStream daos = new DataOutputStream(baos);
-		        
-		        // useLocalVals            
-		        daos.writeBoolean(true);
-		        daos.writeBoolean(false);
-		        daos.writeBoolean(false);
-		        daos.writeBoolean(false);
-		        
-		        // localAccel
-		        float ONE_G_MS = 9.80665f;
-		       	daos.writeFloat(convertFloat(Math.max(Math.min(-currentLocalAccelerationVector.x, ONE_G_MS), -ONE_G_MS))); // -1G - +1G            
-		        daos.writeFloat(convertFloat(Math.max(Math.min(-currentLocalAccelerationVector.y, ONE_G_MS), -ONE_G_MS)));  // -1G - +1G
-		        daos.writeFloat(convertFloat(ONE_G_MS - Math.max(Math.min(-currentLocalAccelerationVector.z, ONE_G_MS), -ONE_G_MS))); // 0 - 2G
-		        
-		        // localVel
-		        daos.writeFloat(convertFloat(Math.max(Math.min(currentLocalSpeedVector.x / 40f, 1f), 0f))); // 0.0 - 1.0
-		        daos.writeFloat(convertFloat(Math.max(Math.min(currentLocalSpeedVector.y / 40f, 1f), 0f))); // 0.0 - 1.0
-		        daos.writeFloat(convertFloat(Math.max(Math.min(-currentLocalSpeedVector.z / 40f, 1f), 0f))); // 0.0 - 1.0
-		     
-		        // globalVel
-		        Vector3f globalVelocity = getCarControl().getLinearVelocity().divide(40f);
-		        daos.writeFloat(convertFloat(globalVelocity.x));
-		        daos.writeFloat(convertFloat(globalVelocity.y));
-		        daos.writeFloat(convertFloat(globalVelocity.z));
-		        
-		        // rotationMatrix
-		        Matrix3f rotationMatrix = getRotation().toRotationMatrix();
-		        daos.writeFloat(convertFloat(rotationMatrix.get(0, 0)));
-		        daos.writeFloat(convertFloat(rotationMatrix.get(0, 1)));
-		        daos.writeFloat(convertFloat(rotationMatrix.get(0, 2)));
-		        daos.writeFloat(convertFloat(rotationMatrix.get(1, 0)));
-		        daos.writeFloat(convertFloat(rotationMatrix.get(1, 1)));
-		        daos.writeFloat(convertFloat(rotationMatrix.get(1, 2)));
-		        daos.writeFloat(convertFloat(rotationMatrix.get(2, 0)));
-		        daos.writeFloat(convertFloat(rotationMatrix.get(2, 1)));
-		        daos.writeFloat(convertFloat(rotationMatrix.get(2, 2)));
-		           
-		        // packetTimeMillis
-		        if(!sim.isPause())
-		        	gameTime += (timeDiff * 1000);
-		        daos.writeInt(convertInt(gameTime));
-		        
-		        daos.close();
-		        
-		        final byte[] bytes = baos.toByteArray();            
-		
-		    	DatagramPacket packet = new DatagramPacket(bytes, bytes.length, adress, port);
-		    	socket.send(packet);
-		    	
-		    	System.err.println("Sim: " + ip + port);
-		    }
-		    catch (Exception e)
-		    {
-		    	e.printStackTrace();
-		    }
-		}
-	}
-	
-	
-	private float convertFloat(float in)
-	{
-		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        final DataOutputStream daos = new DataOutputStream(baos);
-        
-        try {
-			daos.writeFloat(in);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-        byte[] byteArray = baos.toByteArray();
-        
-		ByteBuffer bb = ByteBuffer.wrap(byteArray);
-		bb.order(ByteOrder.LITTLE_ENDIAN);
-		return bb.getFloat();
-	}
-	
-	
-	private int convertInt(int in)
-	{
-		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        final DataOutputStream daos = new DataOutputStream(baos);
-        
-        try {
-			daos.writeFloat(in);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-        byte[] byteArray = baos.toByteArray();
-        
-		ByteBuffer bb = ByteBuffer.wrap(byteArray);
-		bb.order(ByteOrder.LITTLE_ENDIAN);
-		return bb.getInt();
-	}
-	
 	
     float leftWheelsPos = 2.2f;
     float backAxleHeight = -3.0f;
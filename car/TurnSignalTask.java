@@ -19,31 +19,38 @@
 package eu.opends.car;
 
 import eu.opends.audio.AudioCenter;
+import eu.opends.basics.SimulationBasics;
 import eu.opends.camera.CameraFactory.CameraMode;
 import eu.opends.car.LightTexturesContainer.LightState;
 import eu.opends.car.LightTexturesContainer.TurnSignalState;
 import eu.opends.main.Simulator;
 import eu.opends.tools.PanelCenter;
+import eu.opends.tools.SimulationScheduler.Clock;
+import eu.opends.tools.SimulationScheduler.PeriodicTask;
+import eu.opends.tools.SimulationScheduler.ScheduledTask;
 
 /**
- * This thread changes the light textures in the given interval in order
- * to simulate flashing lights.
+ * This task changes the light textures in the given interval in order
+ * to simulate flashing lights. It is executed by the scheduler on the 
+ * render thread; a change of the turn signal state restarts the interval.
  * 
  * @author Rafael Math
  */
-public class TurnSignalThread extends Thread 
+public class TurnSignalTask implements PeriodicTask 
 {
-	private int lightChangeInterval = 375;
-	private int threadUpdateInterval = 25;
+	// time (in seconds) between switching lights on and off
+	private static final float LIGHT_CHANGE_INTERVAL = 0.375f;
+	
 	private LightTexturesContainer lightTexturesContainer;
 	private Simulator sim;
 	private Car car;
 	private TurnSignalState targetState;
+	private TurnSignalState currentState;
 	private boolean targetStateHasChanged = false;
-	private boolean stopRequested = false;
+	private ScheduledTask scheduledTask = null;
 	
 	
-	public TurnSignalThread(LightTexturesContainer lightTexturesContainer, Simulator sim, Car car)
+	public TurnSignalTask(LightTexturesContainer lightTexturesContainer, Simulator sim, Car car)
 	{
 		this.lightTexturesContainer = lightTexturesContainer;
 		this.sim = sim;
@@ -51,45 +58,34 @@ public class TurnSignalThread extends Thread
 	}
 	
 	
-	public void run()
+	@Override
+	public boolean update()
 	{
-		TurnSignalState currentState = targetState;
-		long previousBlinkerUpdate = System.currentTimeMillis();
-		
-		while(!stopRequested)
+		synchronized(this)
 		{
-			if(targetStateHasChanged || previousBlinkerUpdate <= (System.currentTimeMillis() - lightChangeInterval))
+			if(targetStateHasChanged)
 			{
-				if(targetStateHasChanged)
-				{
-					currentState = targetState;
-					targetStateHasChanged = false;
-				}
-				
-				if(car instanceof SteeringCar)
-				{
-					// set current state to turn signal arrows
-					applyTurnArrows(currentState);
-				}
-				
-				// set current state to turn signal lights (change textures) if not already set
-				applyTurnSignal(currentState);
-				
-				// switch to next signal state (on-off-on-off-...)
-				if(currentState != TurnSignalState.OFF)
-					currentState = TurnSignalState.OFF;
-				else
-					currentState = targetState;
-				
-				previousBlinkerUpdate = System.currentTimeMillis();
-			}
-			
-			try {
-				Thread.sleep(threadUpdateInterval);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+				currentState = targetState;
+				targetStateHasChanged = false;
 			}
 		}
+		
+		if(car instanceof SteeringCar)
+		{
+			// set current state to turn signal arrows
+			applyTurnArrows(currentState);
+		}
+		
+		// set current state to turn signal lights (change textures) if not already set
+		applyTurnSignal(currentState);
+		
+		// switch to next signal state (on-off-on-off-...)
+		if(currentState != TurnSignalState.OFF)
+			currentState = TurnSignalState.OFF;
+		else
+			currentState = targetState;
+		
+		return true;
 	}
 	
 	
@@ -125,14 +121,32 @@ public class TurnSignalThread extends Thread
 
 	public synchronized void setTurnSignalState(TurnSignalState targetState)
 	{
+		if(scheduledTask != null && targetState == this.targetState)
+			return;
+		
 		this.targetState = targetState;
 		targetStateHasChanged = true;
+		
+		// apply new state immediately and restart interval
+		if(scheduledTask != null)
+			scheduledTask.cancel();
+		scheduledTask = SimulationBasics.getScheduler().schedulePeriodic(this, 0, LIGHT_CHANGE_INTERVAL, Clock.REAL);
+	}
+	
+	
+	public synchronized boolean isRunning()
+	{
+		return scheduledTask != null;
 	}
 	
 	
 	public synchronized void requestStop()
 	{
-		stopRequested = true;
+		if(scheduledTask != null)
+		{
+			scheduledTask.cancel();
+			scheduledTask = null;
+		}
 	}
 	
 	
@@ -166,7 +180,7 @@ public class TurnSignalThread extends Thread
 	}
 
 
-	public TurnSignalState getTurnSignalState() 
+	public synchronized TurnSignalState getTurnSignalState() 
 	{
 		return targetState;		
 	}
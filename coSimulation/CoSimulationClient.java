@@ -0,0 +1,489 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.coSimulation;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import com.jme3.collision.CollisionResults;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Node;
+
+import eu.opends.car.Car;
+import eu.opends.drivingTask.settings.SettingsLoader;
+import eu.opends.drivingTask.settings.SettingsLoader.Setting;
+import eu.opends.main.SimulationDefaults;
+import eu.opends.main.Simulator;
+import eu.opends.traffic.PhysicalTraffic;
+import eu.opends.traffic.TrafficCarData;
+
+/**
+ * This class connects the simulator to an external (microscopic) traffic
+ * simulation via UDP. After each simulation step the external simulation
+ * sends the states of all its vehicles as a batch of binary datagrams (see
+ * VehicleStateFrame); the receiver thread assembles them into complete frames.
+ * On the render thread the vehicles are created, moved (interpolated between
+ * two steps) and removed accordingly. The state of the driving car is sent
+ * back to the external simulation at a fixed rate (see EgoState).
+ *
+ * @author Rafael Math
+ */
+public class CoSimulationClient extends Thread
+{
+	private final static Logger logger = Logger.getLogger(CoSimulationClient.class);
+
+	// height above the given position where ground detection starts (in meters)
+	private static final float GROUND_PROBE_HEIGHT = 2f;
+
+	// limits of the interpolation interval (in seconds)
+	private static final float MIN_STEP_DURATION = 0.001f;
+	private static final float MAX_STEP_DURATION = 1f;
+
+	private Simulator sim;
+	private Car car;
+	private volatile boolean stoprequested = false;
+	private DatagramSocket socket;
+	private InetAddress remoteAddress;
+	private int remotePort;
+	private byte[] receiveBuffer = new byte[VehicleStateFrame.MAX_PART_SIZE * 2];
+
+	// receiver thread: frame currently assembled
+	private VehicleStateFrame assembledFrame = null;
+	private BitSet receivedParts = new BitSet();
+	private int lastCompletedStep = Integer.MIN_VALUE;
+	private boolean hasSession = false;
+	private int session;
+	private int previousSession;
+
+	// handover from receiver thread to render thread
+	private VehicleStateFrame latestFrame = null;
+
+	// render thread
+	private Node coSimulationNode = new Node("coSimulationNode");
+	private Map<Integer, ExternalVehicle> vehicleMap = new HashMap<Integer, ExternalVehicle>();
+	private Map<Byte, LinkedList<ExternalVehicle>> poolMap = new HashMap<Byte, LinkedList<ExternalVehicle>>();
+	private Set<Integer> updatedVehicles = new HashSet<Integer>();
+	private List<String> modelPathList = new ArrayList<String>();
+	private String defaultModelPath;
+	private boolean adjustHeight;
+	private double lastFrameTime = -1;
+	private int lastAppliedStep = -1;
+	private boolean hasAppliedSession = false;
+	private int appliedSession;
+	private float feedbackInterval;
+	private float timeSinceFeedback = 0;
+	private double elapsedTime = 0;
+
+	// statistics
+	private volatile long completedFrames = 0;
+	private volatile long incompleteFrames = 0;
+	private volatile long duplicateParts = 0;
+	private volatile long restarts = 0;
+	private long skippedFrames = 0;
+
+
+	/**
+	 * Creates a new co-simulation connection.
+	 *
+	 * @param sim
+	 * 			The simulator
+	 */
+	public CoSimulationClient(Simulator sim)
+	{
+		super();
+		this.sim = sim;
+		this.car = sim.getCar();
+
+		SettingsLoader settingsLoader = Simulator.getSettingsLoader();
+		String ip = settingsLoader.getSetting(Setting.CoSimulation_ip, SimulationDefaults.CoSimulation_ip);
+		if(ip == null || ip.isEmpty())
+			ip = "127.0.0.1";
+		remotePort = settingsLoader.getSetting(Setting.CoSimulation_port, SimulationDefaults.CoSimulation_port);
+		int localPort = settingsLoader.getSetting(Setting.CoSimulation_localPort, SimulationDefaults.CoSimulation_localPort);
+		int feedbackRate = settingsLoader.getSetting(Setting.CoSimulation_feedbackRate, SimulationDefaults.CoSimulation_feedbackRate);
+		feedbackInterval = 1f / Math.max(1, feedbackRate);
+		adjustHeight = settingsLoader.getSetting(Setting.CoSimulation_adjustHeight, SimulationDefaults.CoSimulation_adjustHeight);
+
+		// vehicle type n will be displayed with the model of the n-th traffic car
+		for(TrafficCarData vehicleData : PhysicalTraffic.getVehicleDataList())
+			modelPathList.add(vehicleData.getModelPath());
+		defaultModelPath = Simulator.getDrivingTask().getScenarioLoader().getModelPath();
+
+		// external vehicles are not part of the scene node, so ground detection does not hit them
+		sim.getRootNode().attachChild(coSimulationNode);
+
+		try {
+
+			remoteAddress = InetAddress.getByName(ip);
+			socket = new DatagramSocket(localPort);
+
+			// set time to wait after an unsuccessful receive attempt
+			socket.setSoTimeout(300);
+
+			logger.info("Co-simulation: listening on port " + localPort + ", sending ego state to " + ip + ":" + remotePort);
+
+		} catch (Exception e) {
+			System.err.println("CoSimulationClient_Constructor: " + e.toString());
+		}
+	}
+
+
+	/**
+	 * Receives vehicle state datagrams and assembles them into complete frames.
+	 * Incomplete frames (lost datagrams) will be dropped as soon as a newer step
+	 * arrives. A frame is complete when every part index has been received 
+	 * (duplicate datagrams are ignored). A new session ID starts the step 
+	 * numbering from scratch (restart of the external simulation).
+	 */
+	@Override
+	public void run()
+	{
+		DatagramPacket packet = new DatagramPacket(receiveBuffer, receiveBuffer.length);
+
+		while(!stoprequested && socket != null)
+		{
+			try {
+
+				socket.receive(packet);
+
+			} catch (SocketTimeoutException e) {
+				// no data available; try again
+				continue;
+			} catch (Exception e) {
+				if(!stoprequested)
+					System.err.println("CoSimulationClient_run(): " + e.toString());
+				continue;
+			}
+
+			VehicleStateFrame part = VehicleStateFrame.decode(packet.getData(), packet.getLength());
+			if(part != null)
+				assemble(part);
+		}
+
+		if(socket != null)
+			socket.close();
+	}
+
+
+	private void assemble(VehicleStateFrame part)
+	{
+		int step = part.getStep();
+
+		if(!hasSession || part.getSession() != session)
+		{
+			// late datagram of the session before the restart
+			if(hasSession && part.getSession() == previousSession)
+				return;
+
+			// new session: external simulation has been (re)started
+			if(hasSession)
+			{
+				restarts++;
+				logger.info("Co-simulation: external simulation restarted (step " + step + ")");
+			}
+
+			if(assembledFrame != null)
+				incompleteFrames++;
+
+			previousSession = session;
+			session = part.getSession();
+			hasSession = true;
+			assembledFrame = null;
+			lastCompletedStep = Integer.MIN_VALUE;
+		}
+
+		// ignore outdated parts
+		if(step <= lastCompletedStep)
+			return;
+
+		if(assembledFrame == null || step > assembledFrame.getStep())
+		{
+			if(assembledFrame != null)
+				incompleteFrames++;
+
+			assembledFrame = part;
+			receivedParts.clear();
+			receivedParts.set(part.getPartIndex());
+		}
+		else if(step == assembledFrame.getStep())
+		{
+			// ignore duplicate and inconsistent parts
+			if(receivedParts.get(part.getPartIndex()) || part.getPartCount() != assembledFrame.getPartCount())
+			{
+				duplicateParts++;
+				return;
+			}
+
+			assembledFrame.merge(part);
+			receivedParts.set(part.getPartIndex());
+		}
+		else
+			return;
+
+		if(receivedParts.cardinality() >= assembledFrame.getPartCount())
+		{
+			lastCompletedStep = step;
+			completedFrames++;
+			publish(assembledFrame);
+			assembledFrame = null;
+		}
+	}
+
+
+	private synchronized void publish(VehicleStateFrame frame)
+	{
+		if(latestFrame != null)
+			skippedFrames++;
+
+		latestFrame = frame;
+	}
+
+
+	private synchronized VehicleStateFrame pollFrame()
+	{
+		VehicleStateFrame frame = latestFrame;
+		latestFrame = null;
+		return frame;
+	}
+
+
+	/**
+	 * Applies the latest complete frame (if any), moves all external vehicles
+	 * and sends the state of the driving car. Must be called from the render
+	 * thread.
+	 *
+	 * @param tpf
+	 * 			Time per frame (in seconds).
+	 */
+	public void update(float tpf)
+	{
+		VehicleStateFrame frame = pollFrame();
+		if(frame != null)
+			applyFrame(frame);
+
+		if(!sim.isPause())
+		{
+			elapsedTime += tpf;
+			for(ExternalVehicle vehicle : vehicleMap.values())
+				vehicle.update(tpf);
+		}
+
+		timeSinceFeedback += tpf;
+		if(timeSinceFeedback >= feedbackInterval)
+		{
+			timeSinceFeedback = 0;
+			sendEgoState();
+		}
+	}
+
+
+	private void applyFrame(VehicleStateFrame frame)
+	{
+		// restart of the external simulation: simulation time and vehicle IDs start from scratch
+		boolean isRestart = hasAppliedSession && frame.getSession() != appliedSession;
+		if(!hasAppliedSession || isRestart)
+		{
+			lastFrameTime = -1;
+			lastAppliedStep = -1;
+			appliedSession = frame.getSession();
+			hasAppliedSession = true;
+		}
+
+		// duration of the step is taken from the simulation time of the external simulation
+		float duration = MAX_STEP_DURATION;
+		if(lastFrameTime >= 0)
+			duration = (float) (frame.getTime() - lastFrameTime);
+		duration = Math.max(MIN_STEP_DURATION, Math.min(MAX_STEP_DURATION, duration));
+		lastFrameTime = frame.getTime();
+		lastAppliedStep = frame.getStep();
+
+		updatedVehicles.clear();
+		for(VehicleState state : frame.getVehicleStateList())
+		{
+			Vector3f position = state.getPosition();
+			if(adjustHeight)
+				position = adjustHeight(position);
+
+			ExternalVehicle vehicle = vehicleMap.get(state.getID());
+			if(vehicle == null)
+			{
+				vehicle = obtainVehicle(state.getType());
+				if(vehicle == null)
+					continue;
+
+				vehicle.place(position, state.getHeading());
+				vehicle.setActive(true);
+				vehicleMap.put(state.getID(), vehicle);
+			}
+			else if(isRestart)
+				vehicle.place(position, state.getHeading());
+			else
+				vehicle.setTarget(position, state.getHeading(), duration);
+
+			updatedVehicles.add(state.getID());
+		}
+
+		// remove vehicles that have left the external simulation
+		Iterator<Entry<Integer, ExternalVehicle>> iterator = vehicleMap.entrySet().iterator();
+		while(iterator.hasNext())
+		{
+			Entry<Integer, ExternalVehicle> entry = iterator.next();
+			if(!updatedVehicles.contains(entry.getKey()))
+			{
+				ExternalVehicle vehicle = entry.getValue();
+				vehicle.setActive(false);
+				poolMap.get(vehicle.getType()).add(vehicle);
+				iterator.remove();
+			}
+		}
+	}
+
+
+	private ExternalVehicle obtainVehicle(byte type)
+	{
+		LinkedList<ExternalVehicle> pool = poolMap.get(type);
+		if(pool == null)
+		{
+			pool = new LinkedList<ExternalVehicle>();
+			poolMap.put(type, pool);
+		}
+
+		if(!pool.isEmpty())
+			return pool.poll();
+
+		String modelPath = defaultModelPath;
+		if(type >= 0 && type < modelPathList.size())
+			modelPath = modelPathList.get(type);
+
+		try {
+
+			return new ExternalVehicle(sim, coSimulationNode, type, modelPath);
+
+		} catch (Exception e) {
+			System.err.println("Could not create external vehicle with model '" + modelPath + "'!");
+			return null;
+		}
+	}
+
+
+	/**
+	 * Places the given position onto the ground below (if available)
+	 */
+	private Vector3f adjustHeight(Vector3f position)
+	{
+		Vector3f origin = position.add(0, GROUND_PROBE_HEIGHT, 0);
+		Ray ray = new Ray(origin, new Vector3f(0,-1,0));
+
+		CollisionResults results = new CollisionResults();
+		sim.getSceneNode().collideWith(ray, results);
+
+		if(results.size() > 0)
+			return results.getClosestCollision().getContactPoint();
+
+		return position;
+	}
+
+
+	private void sendEgoState()
+	{
+		if(socket == null || remoteAddress == null)
+			return;
+
+		float[] angles = car.getRotation().toAngles(null);
+		byte flags = sim.isPause() ? EgoState.FLAG_PAUSED : 0;
+		EgoState egoState = new EgoState(lastAppliedStep, elapsedTime, car.getPosition(), angles[1],
+				car.getCurrentSpeedKmh() / 3.6f, flags);
+
+		try {
+
+			byte[] data = egoState.encode();
+			socket.send(new DatagramPacket(data, data.length, remoteAddress, remotePort));
+
+		} catch (Exception e) {
+			System.err.println("CoSimulationClient_sendEgoState(): " + e.toString());
+		}
+	}
+
+
+	public int getNumberOfVehicles()
+	{
+		return vehicleMap.size();
+	}
+
+
+	public long getCompletedFrames()
+	{
+		return completedFrames;
+	}
+
+
+	public long getIncompleteFrames()
+	{
+		return incompleteFrames;
+	}
+
+
+	/**
+	 * Number of complete frames that were replaced by a newer frame before
+	 * the render thread could apply them
+	 *
+	 * @return
+	 * 			number of skipped frames
+	 */
+	public synchronized long getSkippedFrames()
+	{
+		return skippedFrames;
+	}
+
+
+	/**
+	 * Stops the receiver thread and removes all external vehicles. Must be
+	 * called from the render thread.
+	 */
+	public void close()
+	{
+		stoprequested = true;
+
+		for(ExternalVehicle vehicle : vehicleMap.values())
+			vehicle.setActive(false);
+		vehicleMap.clear();
+		poolMap.clear();
+
+		coSimulationNode.removeFromParent();
+
+		logger.info("Co-simulation closed (complete frames: " + completedFrames + ", incomplete frames: " +
+				incompleteFrames + ", skipped frames: " + getSkippedFrames() + ", duplicate parts: " + 
+				duplicateParts + ", restarts: " + restarts + ")");
+	}
+}
@@ -0,0 +1,190 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.coSimulation;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+
+/**
+ * Local stand-in for an external traffic simulation. Moves the given number of
+ * vehicles on concentric circles around the first reported position of the
+ * driving car and sends their states to the simulator at a fixed step rate.
+ * Stepping is suspended while the simulator reports to be paused. Can be used
+ * to test the co-simulation bridge without an external traffic simulator.
+ *
+ * Usage: CoSimulationStandIn [vehicles] [simulatorIP] [simulatorPort] [localPort] [stepLength]
+ *
+ * @author Rafael Math
+ */
+public class CoSimulationStandIn
+{
+	private static final float LANE_WIDTH = 4f;
+	private static final float MIN_RADIUS = 30f;
+	private static final int VEHICLES_PER_LANE = 20;
+
+	private int numberOfVehicles;
+	private InetAddress simulatorAddress;
+	private int simulatorPort;
+	private DatagramSocket socket;
+	private float stepLength;
+	private byte[] receiveBuffer = new byte[EgoState.SIZE * 2];
+
+	private Vector3f center = null;
+	private boolean paused = false;
+	private int session = new Random().nextInt();
+	private int step = 0;
+	private double time = 0;
+
+
+	public CoSimulationStandIn(int numberOfVehicles, String simulatorIP, int simulatorPort,
+			int localPort, float stepLength) throws Exception
+	{
+		this.numberOfVehicles = numberOfVehicles;
+		this.simulatorAddress = InetAddress.getByName(simulatorIP);
+		this.simulatorPort = simulatorPort;
+		this.stepLength = stepLength;
+
+		socket = new DatagramSocket(localPort);
+		socket.setSoTimeout(1);
+	}
+
+
+	public void run() throws Exception
+	{
+		long stepLengthMillis = (long) (stepLength * 1000);
+
+		while(true)
+		{
+			long startTime = System.currentTimeMillis();
+
+			receiveEgoStates();
+
+			if(center != null && !paused)
+			{
+				step++;
+				time += stepLength;
+
+				for(byte[] data : new VehicleStateFrame(session, step, time, computeVehicleStates()).encode())
+					socket.send(new DatagramPacket(data, data.length, simulatorAddress, simulatorPort));
+			}
+
+			long sleepTime = stepLengthMillis - (System.currentTimeMillis() - startTime);
+			if(sleepTime > 0)
+				Thread.sleep(sleepTime);
+		}
+	}
+
+
+	private void receiveEgoStates() throws Exception
+	{
+		DatagramPacket packet = new DatagramPacket(receiveBuffer, receiveBuffer.length);
+
+		while(true)
+		{
+			try {
+
+				socket.receive(packet);
+
+			} catch (SocketTimeoutException e) {
+				// no further ego states available
+				return;
+			}
+
+			EgoState egoState = EgoState.decode(packet.getData(), packet.getLength());
+			if(egoState != null)
+			{
+				if(center == null)
+				{
+					center = egoState.getPosition().clone();
+					System.out.println("Driving car reported at " + center + ", starting " +
+							numberOfVehicles + " vehicles");
+				}
+
+				paused = egoState.isPaused();
+			}
+		}
+	}
+
+
+	private List<VehicleState> computeVehicleStates()
+	{
+		List<VehicleState> vehicleStateList = new ArrayList<VehicleState>(numberOfVehicles);
+
+		for(int i=0; i<numberOfVehicles; i++)
+		{
+			int lane = i / VEHICLES_PER_LANE;
+			float radius = MIN_RADIUS + lane * LANE_WIDTH;
+
+			// alternate driving direction per lane
+			float speed = 8f + (lane % 3) * 3f;
+			float direction = (lane % 2 == 0) ? 1 : -1;
+			float angularSpeed = direction * speed / radius;
+			float angle = (FastMath.TWO_PI * (i % VEHICLES_PER_LANE)) / VEHICLES_PER_LANE +
+					angularSpeed * (float) time;
+
+			Vector3f position = new Vector3f(center.getX() + radius * FastMath.sin(angle), center.getY(),
+					center.getZ() + radius * FastMath.cos(angle));
+
+			// tangent of the circle
+			float heading = angle + direction * FastMath.HALF_PI;
+
+			vehicleStateList.add(new VehicleState(i, (byte) (i % 4), position, heading, speed, (byte) 0));
+		}
+
+		return vehicleStateList;
+	}
+
+
+	public static void main(String[] args)
+	{
+		int vehicles = 200;
+		String simulatorIP = "127.0.0.1";
+		int simulatorPort = 2011;
+		int localPort = 2012;
+		float stepLength = 0.1f;
+
+		try {
+
+			if(args.length > 0)
+				vehicles = Integer.parseInt(args[0]);
+			if(args.length > 1)
+				simulatorIP = args[1];
+			if(args.length > 2)
+				simulatorPort = Integer.parseInt(args[2]);
+			if(args.length > 3)
+				localPort = Integer.parseInt(args[3]);
+			if(args.length > 4)
+				stepLength = Float.parseFloat(args[4]);
+
+			System.out.println("Co-simulation stand-in: waiting for driving car on port " + localPort);
+			new CoSimulationStandIn(vehicles, simulatorIP, simulatorPort, localPort, stepLength).run();
+
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+}
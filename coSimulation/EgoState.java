@@ -0,0 +1,150 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.coSimulation;
+
+import java.nio.ByteBuffer;
+
+import com.jme3.math.Vector3f;
+
+/**
+ * State of the driving car sent back to the external traffic simulation,
+ * so external vehicles can react to the driver. Layout (big endian):
+ *
+ * <pre>
+ * int    magic ("ODSE")
+ * byte   protocol version
+ * int    last received step number
+ * double time since start of the co-simulation (s)
+ * float  x, y, z
+ * float  heading (rotation around y-axis in radians)
+ * float  speed (m/s)
+ * byte   flags (FLAG_PAUSED)
+ * </pre>
+ *
+ * @author Rafael Math
+ */
+public class EgoState
+{
+	public static final int MAGIC = 0x4F445345;
+	public static final int SIZE = 4 + 1 + 4 + 8 + 4*3 + 4 + 4 + 1;
+
+	public static final byte FLAG_PAUSED = 1;
+
+	private int lastStep;
+	private double time;
+	private Vector3f position;
+	private float heading;
+	private float speed;
+	private byte flags;
+
+
+	public EgoState(int lastStep, double time, Vector3f position, float heading, float speed, byte flags)
+	{
+		this.lastStep = lastStep;
+		this.time = time;
+		this.position = position;
+		this.heading = heading;
+		this.speed = speed;
+		this.flags = flags;
+	}
+
+
+	public int getLastStep()
+	{
+		return lastStep;
+	}
+
+
+	public double getTime()
+	{
+		return time;
+	}
+
+
+	public Vector3f getPosition()
+	{
+		return position;
+	}
+
+
+	public float getHeading()
+	{
+		return heading;
+	}
+
+
+	public float getSpeed()
+	{
+		return speed;
+	}
+
+
+	public boolean isPaused()
+	{
+		return (flags & FLAG_PAUSED) != 0;
+	}
+
+
+	public byte[] encode()
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+		buffer.putInt(MAGIC);
+		buffer.put(VehicleStateFrame.VERSION);
+		buffer.putInt(lastStep);
+		buffer.putDouble(time);
+		buffer.putFloat(position.getX());
+		buffer.putFloat(position.getY());
+		buffer.putFloat(position.getZ());
+		buffer.putFloat(heading);
+		buffer.putFloat(speed);
+		buffer.put(flags);
+		return buffer.array();
+	}
+
+
+	/**
+	 * Parses an ego state datagram.
+	 *
+	 * @param data
+	 * 			Datagram payload.
+	 *
+	 * @param length
+	 * 			Number of valid bytes.
+	 *
+	 * @return
+	 * 			Ego state or null, if the data is not a valid ego state.
+	 */
+	public static EgoState decode(byte[] data, int length)
+	{
+		if(length < SIZE)
+			return null;
+
+		ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+		if(buffer.getInt() != MAGIC || buffer.get() != VehicleStateFrame.VERSION)
+			return null;
+
+		int lastStep = buffer.getInt();
+		double time = buffer.getDouble();
+		Vector3f position = new Vector3f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+		float heading = buffer.getFloat();
+		float speed = buffer.getFloat();
+		byte flags = buffer.get();
+		return new EgoState(lastStep, time, position, heading, speed, flags);
+	}
+}
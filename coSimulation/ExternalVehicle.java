@@ -0,0 +1,200 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.coSimulation;
+
+import com.jme3.bullet.control.VehicleControl;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Node;
+
+import eu.opends.car.CarModelLoader;
+import eu.opends.main.Simulator;
+
+/**
+ * Render-side counterpart of a vehicle of the external traffic simulation.
+ * Between two simulation steps the vehicle is moved from its previous to its
+ * new state (linear interpolation of position and heading), so the motion
+ * looks smooth even if the external simulation runs at a low step rate.
+ * The vehicle body is kinematic: it is moved by the external simulation, but
+ * the driving car can still collide with it.
+ *
+ * @author Rafael Math
+ */
+public class ExternalVehicle
+{
+	private Simulator sim;
+	private Node parentNode;
+	private byte type;
+	private Node carNode;
+	private VehicleControl carControl;
+	private boolean isActive = false;
+
+	private Vector3f previousPosition = new Vector3f();
+	private Vector3f targetPosition = new Vector3f();
+	private Vector3f currentPosition = new Vector3f();
+	private float previousHeading = 0;
+	private float targetHeading = 0;
+	private float currentHeading = 0;
+	private float elapsedTime = 0;
+	private float stepDuration = 1;
+	private Quaternion rotation = new Quaternion();
+
+
+	public ExternalVehicle(Simulator sim, Node parentNode, byte type, String modelPath)
+	{
+		this.sim = sim;
+		this.parentNode = parentNode;
+		this.type = type;
+
+		CarModelLoader carModel = new CarModelLoader(sim, null, modelPath, 0);
+		carNode = carModel.getCarNode();
+		carControl = carModel.getCarControl();
+		carControl.setKinematic(true);
+	}
+
+
+	public byte getType()
+	{
+		return type;
+	}
+
+
+	public Node getCarNode()
+	{
+		return carNode;
+	}
+
+
+	public Vector3f getPosition()
+	{
+		return currentPosition;
+	}
+
+
+	public boolean isActive()
+	{
+		return isActive;
+	}
+
+
+	/**
+	 * Adds the vehicle to (or removes it from) scene and physics space.
+	 *
+	 * @param active
+	 * 			If true, the vehicle will be shown.
+	 */
+	public void setActive(boolean active)
+	{
+		if(active == isActive)
+			return;
+
+		if(active)
+		{
+			parentNode.attachChild(carNode);
+			sim.getPhysicsSpace().add(carControl);
+		}
+		else
+		{
+			sim.getPhysicsSpace().remove(carControl);
+			parentNode.detachChild(carNode);
+		}
+
+		isActive = active;
+	}
+
+
+	/**
+	 * Places the vehicle at the given position without interpolation (e.g.
+	 * when the vehicle appears in the external simulation).
+	 *
+	 * @param position
+	 * 			Position of the vehicle.
+	 *
+	 * @param heading
+	 * 			Rotation around the y-axis (in radians).
+	 */
+	public void place(Vector3f position, float heading)
+	{
+		previousPosition.set(position);
+		targetPosition.set(position);
+		previousHeading = heading;
+		targetHeading = heading;
+		elapsedTime = stepDuration;
+		apply(position, heading);
+	}
+
+
+	/**
+	 * Sets the state of the next simulation step. The vehicle will move from
+	 * its current state to the given one within the given duration.
+	 *
+	 * @param position
+	 * 			Position at the end of the step.
+	 *
+	 * @param heading
+	 * 			Rotation around the y-axis (in radians) at the end of the step.
+	 *
+	 * @param duration
+	 * 			Duration of the step (in seconds).
+	 */
+	public void setTarget(Vector3f position, float heading, float duration)
+	{
+		previousPosition.set(currentPosition);
+		previousHeading = currentHeading;
+		targetPosition.set(position);
+		targetHeading = heading;
+		stepDuration = duration;
+		elapsedTime = 0;
+	}
+
+
+	public void update(float tpf)
+	{
+		if(elapsedTime >= stepDuration)
+			return;
+
+		elapsedTime += tpf;
+		float percentage = Math.min(1f, elapsedTime / stepDuration);
+
+		// interpolate position
+		Vector3f position = targetPosition.subtract(previousPosition).multLocal(percentage).addLocal(previousPosition);
+
+		// interpolate heading along the shorter direction
+		float headingDiff = targetHeading - previousHeading;
+		while(headingDiff > FastMath.PI)
+			headingDiff -= FastMath.TWO_PI;
+		while(headingDiff < -FastMath.PI)
+			headingDiff += FastMath.TWO_PI;
+		float heading = previousHeading + headingDiff * percentage;
+
+		apply(position, heading);
+	}
+
+
+	private void apply(Vector3f position, float heading)
+	{
+		currentPosition.set(position);
+		currentHeading = heading;
+
+		rotation.fromAngles(0, heading, 0);
+		carNode.setLocalTranslation(position);
+		carNode.setLocalRotation(rotation);
+	}
+}
@@ -0,0 +1,153 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.coSimulation;
+
+import java.nio.ByteBuffer;
+
+import com.jme3.math.Vector3f;
+
+/**
+ * State of a single vehicle of the external traffic simulation at the end of
+ * a simulation step. Positions are given in model coordinates of the simulator
+ * (y-axis pointing up), the heading is the rotation around the y-axis (radians).
+ *
+ * @author Rafael Math
+ */
+public class VehicleState
+{
+	// number of bytes of a serialized vehicle state
+	public static final int SIZE = 4 + 1 + 4*3 + 4 + 4 + 1;
+
+	public static final byte FLAG_BRAKE = 1;
+	public static final byte FLAG_TURN_LEFT = 2;
+	public static final byte FLAG_TURN_RIGHT = 4;
+
+	private int id;
+	private byte type;
+	private Vector3f position;
+	private float heading;
+	private float speed;
+	private byte flags;
+
+
+	/**
+	 * Creates a new vehicle state.
+	 *
+	 * @param id
+	 * 			Unique ID of the vehicle in the external traffic simulation.
+	 *
+	 * @param type
+	 * 			Vehicle type (index of the traffic car model to use).
+	 *
+	 * @param position
+	 * 			Position of the vehicle.
+	 *
+	 * @param heading
+	 * 			Rotation around the y-axis (in radians).
+	 *
+	 * @param speed
+	 * 			Speed of the vehicle (in m/s).
+	 *
+	 * @param flags
+	 * 			Combination of FLAG_BRAKE, FLAG_TURN_LEFT and FLAG_TURN_RIGHT.
+	 */
+	public VehicleState(int id, byte type, Vector3f position, float heading, float speed, byte flags)
+	{
+		this.id = id;
+		this.type = type;
+		this.position = position;
+		this.heading = heading;
+		this.speed = speed;
+		this.flags = flags;
+	}
+
+
+	public int getID()
+	{
+		return id;
+	}
+
+
+	public byte getType()
+	{
+		return type;
+	}
+
+
+	public Vector3f getPosition()
+	{
+		return position;
+	}
+
+
+	public float getHeading()
+	{
+		return heading;
+	}
+
+
+	public float getSpeed()
+	{
+		return speed;
+	}
+
+
+	public byte getFlags()
+	{
+		return flags;
+	}
+
+
+	public boolean isFlagSet(byte flag)
+	{
+		return (flags & flag) != 0;
+	}
+
+
+	public void write(ByteBuffer buffer)
+	{
+		buffer.putInt(id);
+		buffer.put(type);
+		buffer.putFloat(position.getX());
+		buffer.putFloat(position.getY());
+		buffer.putFloat(position.getZ());
+		buffer.putFloat(heading);
+		buffer.putFloat(speed);
+		buffer.put(flags);
+	}
+
+
+	public static VehicleState read(ByteBuffer buffer)
+	{
+		int id = buffer.getInt();
+		byte type = buffer.get();
+		Vector3f position = new Vector3f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+		float heading = buffer.getFloat();
+		float speed = buffer.getFloat();
+		byte flags = buffer.get();
+		return new VehicleState(id, type, position, heading, speed, flags);
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return "vehicle " + id + " (type " + type + "): " + position + ", heading: " + heading + ", speed: " + speed;
+	}
+}
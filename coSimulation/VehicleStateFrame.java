@@ -0,0 +1,207 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.coSimulation;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * States of all vehicles of the external traffic simulation after one
+ * simulation step. On the wire a frame is split into parts (one UDP datagram
+ * each) of up to MAX_VEHICLES_PER_PART vehicles. Layout of a part (big endian):
+ *
+ * <pre>
+ * int    magic ("ODSV")
+ * byte   protocol version
+ * int    session ID (chosen at random whenever the external simulation starts)
+ * int    step number
+ * double simulation time (s)
+ * short  part index
+ * short  number of parts
+ * short  number of vehicles in this part
+ * VehicleState[] (see VehicleState.write())
+ * </pre>
+ *
+ * Every frame contains the complete traffic: vehicles missing from a frame
+ * have left the external simulation. Step numbers only increase within a 
+ * session; a new session ID indicates a restart of the external simulation.
+ *
+ * @author Rafael Math
+ */
+public class VehicleStateFrame
+{
+	public static final int MAGIC = 0x4F445356;
+	public static final byte VERSION = 2;
+	public static final int HEADER_SIZE = 4 + 1 + 4 + 4 + 8 + 2 + 2 + 2;
+
+	// keep datagrams below a typical Ethernet MTU
+	public static final int MAX_PART_SIZE = 1400;
+	public static final int MAX_VEHICLES_PER_PART = (MAX_PART_SIZE - HEADER_SIZE) / VehicleState.SIZE;
+
+	private int session;
+	private int step;
+	private double time;
+	private int partIndex;
+	private int partCount;
+	private List<VehicleState> vehicleStateList;
+
+
+	public VehicleStateFrame(int session, int step, double time, List<VehicleState> vehicleStateList)
+	{
+		this(session, step, time, 0, 1, vehicleStateList);
+	}
+
+
+	private VehicleStateFrame(int session, int step, double time, int partIndex, int partCount,
+			List<VehicleState> vehicleStateList)
+	{
+		this.session = session;
+		this.step = step;
+		this.time = time;
+		this.partIndex = partIndex;
+		this.partCount = partCount;
+		this.vehicleStateList = vehicleStateList;
+	}
+
+
+	public int getSession()
+	{
+		return session;
+	}
+
+
+	public int getStep()
+	{
+		return step;
+	}
+
+
+	public double getTime()
+	{
+		return time;
+	}
+
+
+	public int getPartIndex()
+	{
+		return partIndex;
+	}
+
+
+	public int getPartCount()
+	{
+		return partCount;
+	}
+
+
+	public List<VehicleState> getVehicleStateList()
+	{
+		return vehicleStateList;
+	}
+
+
+	/**
+	 * Adds the vehicles of a further part of the same step to this frame.
+	 *
+	 * @param part
+	 * 			Part of the same step.
+	 */
+	public void merge(VehicleStateFrame part)
+	{
+		vehicleStateList.addAll(part.getVehicleStateList());
+	}
+
+
+	/**
+	 * Serializes this frame into one or more datagrams.
+	 *
+	 * @return
+	 * 			List of datagram payloads (at least one, even if no vehicles available).
+	 */
+	public List<byte[]> encode()
+	{
+		int vehicleCount = vehicleStateList.size();
+		int parts = Math.max(1, (vehicleCount + MAX_VEHICLES_PER_PART - 1) / MAX_VEHICLES_PER_PART);
+
+		List<byte[]> datagramList = new ArrayList<byte[]>(parts);
+		for(int i=0; i<parts; i++)
+		{
+			int from = i * MAX_VEHICLES_PER_PART;
+			int to = Math.min(vehicleCount, from + MAX_VEHICLES_PER_PART);
+
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + (to - from) * VehicleState.SIZE);
+			buffer.putInt(MAGIC);
+			buffer.put(VERSION);
+			buffer.putInt(session);
+			buffer.putInt(step);
+			buffer.putDouble(time);
+			buffer.putShort((short) i);
+			buffer.putShort((short) parts);
+			buffer.putShort((short) (to - from));
+
+			for(int j=from; j<to; j++)
+				vehicleStateList.get(j).write(buffer);
+
+			datagramList.add(buffer.array());
+		}
+
+		return datagramList;
+	}
+
+
+	/**
+	 * Parses one part of a frame.
+	 *
+	 * @param data
+	 * 			Datagram payload.
+	 *
+	 * @param length
+	 * 			Number of valid bytes.
+	 *
+	 * @return
+	 * 			Part of a frame or null, if the data is not a valid vehicle state frame.
+	 */
+	public static VehicleStateFrame decode(byte[] data, int length)
+	{
+		if(length < HEADER_SIZE)
+			return null;
+
+		ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+		if(buffer.getInt() != MAGIC || buffer.get() != VERSION)
+			return null;
+
+		int session = buffer.getInt();
+		int step = buffer.getInt();
+		double time = buffer.getDouble();
+		int partIndex = buffer.getShort();
+		int partCount = buffer.getShort();
+		int vehicleCount = buffer.getShort();
+
+		if(partIndex < 0 || partIndex >= partCount || vehicleCount < 0 ||
+				buffer.remaining() < vehicleCount * VehicleState.SIZE)
+			return null;
+
+		List<VehicleState> vehicleStateList = new ArrayList<VehicleState>(vehicleCount);
+		for(int i=0; i<vehicleCount; i++)
+			vehicleStateList.add(VehicleState.read(buffer));
+
+		return new VehicleStateFrame(session, step, time, partIndex, partCount, vehicleStateList);
+	}
+}
@@ -306,6 +306,16 @@ public class InteractionLoader
 					System.err.println("Invalid key '" + key + "' for trigger '" + triggerName + "'");
 				}
 			}
+			else if(triggerDescription.getCondition().startsWith("rule:"))
+			{
+				// compile condition (e.g. "rule:speed > 80 and distance(TrafficLight.01_01) < 50")
+				String condition = triggerDescription.getCondition().substring("rule:".length());
+				
+				List<TriggerAction> triggerActionList = getTriggerActionList(triggerDescription);
+				
+				if(!triggerActionList.isEmpty())
+					SimulationBasics.getRuleEngine().addRule(triggerDescription.getName(), condition, triggerActionList);
+			}
 		}
 	}
 
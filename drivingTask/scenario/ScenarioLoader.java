@@ -44,7 +44,9 @@ import eu.opends.drivingTask.DrivingTaskDataQuery;
 import eu.opends.drivingTask.DrivingTaskDataQuery.Layer;
 import eu.opends.drivingTask.scene.SceneLoader;
 import eu.opends.effects.WeatherSettings;
+import eu.opends.environment.LaneIndex;
 import eu.opends.environment.LaneLimit;
+import eu.opends.environment.ReferenceLine;
 import eu.opends.environment.TrafficLight;
 import eu.opends.environment.TrafficLightPhase;
 import eu.opends.environment.TrafficLightPositionData;
@@ -76,8 +78,10 @@ public class ScenarioLoader
 	private String driverCarModelPath;
 	private CameraFlightSettings cameraFlightSettings;
 	private Map<String, LaneLimit> laneList = new HashMap<String, LaneLimit>();
+	private LaneIndex laneIndex;
 	private Map<String, IdealTrackContainer> idealTrackMap = new HashMap<String, IdealTrackContainer>();
 	private List<Intersection> intersectionList = new ArrayList<Intersection>();
+	private boolean intersectionsExtracted = false;
 	private List<TrafficLight> globalTrafficLightList = new ArrayList<TrafficLight>();
 	private Matrix modelToGeoMatrix;
 	private Matrix geoToModelMatrix;
@@ -226,6 +230,44 @@ public class ScenarioLoader
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
+		
+		laneIndex = new LaneIndex(laneList, extractReferenceLine());
+	}
+	
+	
+	/**
+	 * Reads the (optional) reference line of the road. If available, lane limits
+	 * are lateral offsets from this line instead of x-coordinates.
+	 * 
+	 * @return
+	 * 			Reference line or null if not available.
+	 */
+	private ReferenceLine extractReferenceLine()
+	{
+		String path = "/scenario:scenario/scenario:road/scenario:referenceLine/scenario:point";
+		
+		try {
+			NodeList pointNodes = (NodeList) dtData.xPathQuery(Layer.SCENARIO, 
+					path, XPathConstants.NODESET);
+			
+			List<Vector3f> pointList = new ArrayList<Vector3f>();
+			for (int k = 1; k <= pointNodes.getLength(); k++) 
+			{
+				Vector3f point = dtData.getVector3f(Layer.SCENARIO, path + "["+k+"]");
+				if(point != null)
+					pointList.add(point);
+			}
+			
+			if(pointList.size() >= 2)
+				return new ReferenceLine(pointList);
+			else if(pointList.size() == 1)
+				System.err.println("Reference line of road needs at least two points");
+			
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		
+		return null;
 	}
 	
 
@@ -515,6 +557,12 @@ public class ScenarioLoader
 	}
 	
 	
+	public LaneIndex getLaneIndex()
+	{
+		return laneIndex;
+	}
+	
+	
 	/**
 	 * Looks up the sub node (specified in parameter name) of the given element node
 	 * and writes the data to the global variable with the same name. If this was 
@@ -841,7 +889,12 @@ public class ScenarioLoader
 
 	public List<Intersection> getIntersections()
 	{
-		extractIntersections();
+		// extract only once, as traffic lights register their triggers on creation
+		if(!intersectionsExtracted)
+		{
+			extractIntersections();
+			intersectionsExtracted = true;
+		}
 		return intersectionList;
 	}
 
@@ -91,6 +91,10 @@ public class SettingsLoader
 		General_topView_verticalDistance("settings:general/settings:topView/settings:verticalDistance"),
 		General_topView_carOffset("settings:general/settings:topView/settings:carOffset"),
 		General_captureVideo("settings:general/settings:captureVideo"),
+		General_schedulerFrameBudget("settings:general/settings:schedulerFrameBudget"),
+		General_profiler_enabled("settings:general/settings:profiler/settings:enabled"),
+		General_profiler_trackAllocations("settings:general/settings:profiler/settings:trackAllocations"),
+		General_profiler_csvFile("settings:general/settings:profiler/settings:csvFile"),
 		Analyzer_fileName("settings:analyzer/settings:fileName"),
 		Analyzer_suppressPDFPopup("settings:analyzer/settings:suppressPDFPopup"), 
 		ObjectLocator_enable("settings:objectLocator/settings:enable"),
@@ -113,19 +117,32 @@ public class SettingsLoader
 		Simphynity_enableConnection("settings:simphynity/settings:enableConnection"),
 		Simphynity_ip("settings:simphynity/settings:ip"),
 		Simphynity_port("settings:simphynity/settings:port"),
+		Simphynity_updateRate("settings:simphynity/settings:updateRate"),
 		CANInterface_enableConnection("settings:CANInterface/settings:enableConnection"),
 		CANInterface_ip("settings:CANInterface/settings:ip"),
 		CANInterface_port("settings:CANInterface/settings:port"),
 		CANInterface_updateRate("settings:CANInterface/settings:updateRate"),
+		CANInterface_sendCarData("settings:CANInterface/settings:sendCarData"),
+		CANInterface_protocol("settings:CANInterface/settings:protocol"),
 		CANInterface_maxSteeringAngle("settings:CANInterface/settings:maxSteeringAngle"),
 		MultiDriver_enableConnection("settings:multiDriver/settings:enableConnection"),
 		MultiDriver_ip("settings:multiDriver/settings:ip"),
 		MultiDriver_port("settings:multiDriver/settings:port"),
 		MultiDriver_updateRate("settings:multiDriver/settings:updateRate"),
+		MultiDriver_protocol("settings:multiDriver/settings:protocol"),
+		MultiDriver_interpolation_enabled("settings:multiDriver/settings:interpolation/settings:enabled"),
+		MultiDriver_interpolation_delay("settings:multiDriver/settings:interpolation/settings:delay"),
+		MultiDriver_interpolation_maxExtrapolation("settings:multiDriver/settings:interpolation/settings:maxExtrapolation"),
 		VsimrtiServer_startServer("settings:vsimrtiServer/settings:startServer"),
 		VsimrtiServer_port("settings:vsimrtiServer/settings:port"),
 		SettingsControllerServer_startServer("settings:settingsControllerServer/settings:startServer"),
 		SettingsControllerServer_port("settings:settingsControllerServer/settings:port"),
+		StateBroadcast_mode("settings:stateBroadcast/settings:mode"),
+		StateBroadcast_group("settings:stateBroadcast/settings:group"),
+		StateBroadcast_port("settings:stateBroadcast/settings:port"),
+		StateBroadcast_timeToLive("settings:stateBroadcast/settings:timeToLive"),
+		StateBroadcast_slaveCamera("settings:stateBroadcast/settings:slaveCamera"),
+		StateBroadcast_cameraAngleOffset("settings:stateBroadcast/settings:cameraAngleOffset"),
 		ReactionMeasurement_groupRed("settings:reactionMeasurement/settings:groupRed"),
 		ReactionMeasurement_groupYellow("settings:reactionMeasurement/settings:groupYellow"),
 		ReactionMeasurement_groupGreen("settings:reactionMeasurement/settings:groupGreen"),
@@ -156,7 +173,24 @@ public class SettingsLoader
 		Eyetracker_warningFrame_show("settings:eyetracker/settings:warningFrame/settings:show"),
 		Eyetracker_warningFrame_threshold("settings:eyetracker/settings:warningFrame/settings:threshold"),
 		Eyetracker_warningFrame_flashingInterval("settings:eyetracker/settings:warningFrame/settings:flashingInterval"),
-		OculusRift_isAttached("settings:oculusRift/settings:isAttached");
+		OculusRift_isAttached("settings:oculusRift/settings:isAttached"),
+		TrafficPopulation_enable("settings:trafficPopulation/settings:enable"),
+		TrafficPopulation_targetVehicles("settings:trafficPopulation/settings:targetVehicles"),
+		TrafficPopulation_poolSize("settings:trafficPopulation/settings:poolSize"),
+		TrafficPopulation_minSpawnDistance("settings:trafficPopulation/settings:minSpawnDistance"),
+		TrafficPopulation_maxSpawnDistance("settings:trafficPopulation/settings:maxSpawnDistance"),
+		TrafficPopulation_despawnDistance("settings:trafficPopulation/settings:despawnDistance"),
+		TrafficPopulation_maxSpawnsPerUpdate("settings:trafficPopulation/settings:maxSpawnsPerUpdate"),
+		TrafficSimulation_fixedStep("settings:trafficSimulation/settings:fixedStep"),
+		TrafficSimulation_seed("settings:trafficSimulation/settings:seed"),
+		TrafficSimulation_timeStep("settings:trafficSimulation/settings:timeStep"),
+		TrafficSimulation_recordTraffic("settings:trafficSimulation/settings:recordTraffic"),
+		CoSimulation_enableConnection("settings:coSimulation/settings:enableConnection"),
+		CoSimulation_ip("settings:coSimulation/settings:ip"),
+		CoSimulation_port("settings:coSimulation/settings:port"),
+		CoSimulation_localPort("settings:coSimulation/settings:localPort"),
+		CoSimulation_feedbackRate("settings:coSimulation/settings:feedbackRate"),
+		CoSimulation_adjustHeight("settings:coSimulation/settings:adjustHeight");
 		
 		
 		private String path;
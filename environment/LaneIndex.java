@@ -0,0 +1,184 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.environment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.jme3.math.Vector3f;
+
+/**
+ * Index of the lanes of a road, sorted by their lower lateral limit, so the 
+ * lane at a given position is found by binary search. Lane limits are given 
+ * as x-coordinates (straight road along the z-axis) or, if a reference line 
+ * is available, as lateral offsets from this line (curved road).
+ * 
+ * @author Rafael Math
+ */
+public class LaneIndex
+{
+	private String[] laneIDs;
+	private float[] lowerLimits;
+	private float[] upperLimits;
+	
+	// maximum upper limit of all lanes up to the given position in the sorted arrays
+	private float[] maxUpperLimits;
+	
+	private Map<String, Integer> laneIndexMap = new HashMap<String, Integer>();
+	private ReferenceLine referenceLine;
+	
+	
+	/**
+	 * Creates a new lane index.
+	 * 
+	 * @param laneMap
+	 * 			Map of lane IDs and lane limits.
+	 * 
+	 * @param referenceLine
+	 * 			Line the lane limits are relative to (null, if lane limits are 
+	 * 			x-coordinates).
+	 */
+	public LaneIndex(Map<String, LaneLimit> laneMap, ReferenceLine referenceLine)
+	{
+		this.referenceLine = referenceLine;
+		
+		List<Entry<String, LaneLimit>> laneList = new ArrayList<Entry<String, LaneLimit>>(laneMap.entrySet());
+		Collections.sort(laneList, new Comparator<Entry<String, LaneLimit>>() {
+			public int compare(Entry<String, LaneLimit> lane1, Entry<String, LaneLimit> lane2)
+			{
+				return Float.compare(lane1.getValue().getXMin(), lane2.getValue().getXMin());
+			}
+		});
+		
+		int size = laneList.size();
+		laneIDs = new String[size];
+		lowerLimits = new float[size];
+		upperLimits = new float[size];
+		maxUpperLimits = new float[size];
+		
+		for(int i=0; i<size; i++)
+		{
+			laneIDs[i] = laneList.get(i).getKey();
+			lowerLimits[i] = laneList.get(i).getValue().getXMin();
+			upperLimits[i] = laneList.get(i).getValue().getXMax();
+			maxUpperLimits[i] = (i == 0) ? upperLimits[i] : Math.max(maxUpperLimits[i-1], upperLimits[i]);
+			laneIndexMap.put(laneIDs[i], i);
+		}
+	}
+	
+	
+	/**
+	 * Maps the given position to the coordinate lane limits are given in.
+	 * 
+	 * @param position
+	 * 			Position (e.g. of the car).
+	 * 
+	 * @return
+	 * 			x-coordinate or lateral offset from reference line.
+	 */
+	public float getLateralPosition(Vector3f position)
+	{
+		if(referenceLine != null)
+			return referenceLine.getLateralOffset(position);
+		else
+			return position.getX();
+	}
+	
+	
+	/**
+	 * Looks up the lane at the given position.
+	 * 
+	 * @param position
+	 * 			Position (e.g. of the car).
+	 * 
+	 * @param margin
+	 * 			Distance to keep from both limits of the lane (e.g. half the width 
+	 * 			of the car to detect a car completely inside a lane).
+	 * 
+	 * @return
+	 * 			ID of the lane or null if the position is not inside any lane.
+	 */
+	public String getLane(Vector3f position, float margin)
+	{
+		float lateralPosition = getLateralPosition(position);
+		
+		// last lane with lowerLimit + margin <= lateralPosition
+		int low = 0;
+		int high = lowerLimits.length - 1;
+		int candidate = -1;
+		while(low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			if(lowerLimits[middle] + margin <= lateralPosition)
+			{
+				candidate = middle;
+				low = middle + 1;
+			}
+			else
+				high = middle - 1;
+		}
+		
+		// overlapping lanes: go back as long as a previous lane may still contain the position
+		for(int i=candidate; i>=0 && maxUpperLimits[i] - margin >= lateralPosition; i--)
+		{
+			if(upperLimits[i] - margin >= lateralPosition)
+				return laneIDs[i];
+		}
+		
+		return null;
+	}
+	
+	
+	/**
+	 * Checks whether the given position is inside the given lane.
+	 * 
+	 * @param laneID
+	 * 			ID of the lane.
+	 * 
+	 * @param position
+	 * 			Position (e.g. of the car).
+	 * 
+	 * @param margin
+	 * 			Distance to keep from both limits of the lane (negative values 
+	 * 			extend the lane).
+	 * 
+	 * @return
+	 * 			True, if the position is inside the lane.
+	 */
+	public boolean isInLane(String laneID, Vector3f position, float margin)
+	{
+		Integer index = laneIndexMap.get(laneID);
+		if(index == null)
+			return false;
+		
+		float lateralPosition = getLateralPosition(position);
+		return (lowerLimits[index] + margin <= lateralPosition && lateralPosition <= upperLimits[index] - margin);
+	}
+	
+	
+	public boolean hasReferenceLine()
+	{
+		return referenceLine != null;
+	}
+}
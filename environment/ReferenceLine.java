@@ -0,0 +1,149 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.environment;
+
+import java.util.List;
+
+import com.jme3.math.Vector3f;
+
+/**
+ * Polyline (in the x-z-plane) lane boundaries of curved roads are given
+ * relative to. Positions are mapped to their signed lateral offset from the 
+ * line; for a line running along the positive z-axis through the origin, the 
+ * offset equals the x-coordinate (positive to the right of the direction of 
+ * the line as seen from above, like the x-range of straight lanes).
+ * 
+ * The segment found last is cached, so consecutive lookups of a moving object
+ * only test the neighboring segments. A full search is performed at the first
+ * lookup and whenever the position is far away from the cached segment (e.g.
+ * after a reset of the car).
+ * 
+ * Must only be accessed from the render thread.
+ * 
+ * @author Rafael Math
+ */
+public class ReferenceLine
+{
+	// positions farther away than this distance (in meters) from the cached segment cause a full search
+	private static final float MAX_TRACKING_DISTANCE = 50f;
+	
+	private float[] x;
+	private float[] z;
+	private int segment = -1;
+	
+	
+	public ReferenceLine(List<Vector3f> pointList)
+	{
+		if(pointList.size() < 2)
+			throw new IllegalArgumentException("Reference line needs at least two points");
+		
+		x = new float[pointList.size()];
+		z = new float[pointList.size()];
+		for(int i=0; i<pointList.size(); i++)
+		{
+			x[i] = pointList.get(i).getX();
+			z[i] = pointList.get(i).getZ();
+		}
+	}
+	
+	
+	/**
+	 * Computes the signed lateral offset of the given position from the line.
+	 * 
+	 * @param position
+	 * 			Position to map (y-coordinate will be ignored).
+	 * 
+	 * @return
+	 * 			Lateral offset (in meters).
+	 */
+	public float getLateralOffset(Vector3f position)
+	{
+		float px = position.getX();
+		float pz = position.getZ();
+		
+		if(segment < 0 || getDistanceSquared(segment, px, pz) > MAX_TRACKING_DISTANCE * MAX_TRACKING_DISTANCE)
+			segment = findNearestSegment(px, pz);
+		
+		// follow the line from the cached segment in the direction of the position
+		int lastSegment = x.length - 2;
+		if(getProjection(segment, px, pz) > 1)
+		{
+			while(segment < lastSegment && getProjection(segment, px, pz) > 1)
+				segment++;
+		}
+		else
+		{
+			while(segment > 0 && getProjection(segment, px, pz) < 0)
+				segment--;
+		}
+		
+		// signed distance along normal (dz, -dx) of current segment
+		float dx = x[segment+1] - x[segment];
+		float dz = z[segment+1] - z[segment];
+		float length = (float) Math.sqrt(dx * dx + dz * dz);
+		if(length == 0)
+			return px - x[segment];
+		
+		return ((px - x[segment]) * dz - (pz - z[segment]) * dx) / length;
+	}
+	
+	
+	private int findNearestSegment(float px, float pz)
+	{
+		int nearestSegment = 0;
+		float minDistance = Float.MAX_VALUE;
+		
+		for(int i=0; i<x.length-1; i++)
+		{
+			float distance = getDistanceSquared(i, px, pz);
+			if(distance < minDistance)
+			{
+				minDistance = distance;
+				nearestSegment = i;
+			}
+		}
+		
+		return nearestSegment;
+	}
+	
+	
+	/**
+	 * Parameter of the projection of the given position onto the given 
+	 * segment (0 = start point, 1 = end point).
+	 */
+	private float getProjection(int i, float px, float pz)
+	{
+		float dx = x[i+1] - x[i];
+		float dz = z[i+1] - z[i];
+		float lengthSquared = dx * dx + dz * dz;
+		if(lengthSquared == 0)
+			return 0;
+		
+		return ((px - x[i]) * dx + (pz - z[i]) * dz) / lengthSquared;
+	}
+	
+	
+	private float getDistanceSquared(int i, float px, float pz)
+	{
+		float t = Math.max(0, Math.min(1, getProjection(i, px, pz)));
+		float cx = x[i] + t * (x[i+1] - x[i]) - px;
+		float cz = z[i] + t * (z[i+1] - z[i]) - pz;
+		return cx * cx + cz * cz;
+	}
+}
@@ -18,8 +18,10 @@
 
 package eu.opends.environment;
 
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 
 
@@ -28,6 +30,9 @@ import eu.opends.environment.TrafficLight.*;
 import eu.opends.environment.TrafficLightException.NoInternalProgramException;
 import eu.opends.hmi.HMICenter;
 import eu.opends.main.Simulator;
+import eu.opends.traffic.PhysicalTraffic;
+import eu.opends.traffic.TrafficCarData;
+import eu.opends.traffic.Waypoint;
 import eu.opends.visualization.*;
 
 /**
@@ -57,11 +62,15 @@ public class TrafficLightCenter
 	
 	private List<Intersection> intersectionsList;
 	private static List<TrafficLight> globalTrafficLightsList;
+	private static Map<String, TrafficLight> trafficLightNameMap = new HashMap<String, TrafficLight>();
+	private static Map<String, TrafficLight> trafficLightLocationMap = new HashMap<String, TrafficLight>();
 	private Simulator sim;
 	private TrafficLightMode mode;
 	private TrafficLightExternalConnector trafficLightExternalConnector;
 	private List<TrafficLightInternalProgram> trafficLightProgramList = 
 		new LinkedList<TrafficLightInternalProgram>();
+	private Map<String, TrafficLightInternalProgram> trafficLightProgramMap = 
+		new HashMap<String, TrafficLightInternalProgram>();
 
 
 	/**
@@ -80,6 +89,7 @@ public class TrafficLightCenter
 		// create traffic lights and add them to the traffic lights list		
 		intersectionsList = Simulator.getDrivingTask().getScenarioLoader().getIntersections();
 		globalTrafficLightsList = Simulator.getDrivingTask().getScenarioLoader().getTrafficLights();
+		buildRegistry();
 		
 		// set internal traffic light program as default
 		mode = TrafficLightMode.TRIGGER; // TODO allow different modes
@@ -99,14 +109,63 @@ public class TrafficLightCenter
 			
 			trafficLightInternalProgram.start();
 			trafficLightProgramList.add(trafficLightInternalProgram);
+			trafficLightProgramMap.put(intersection.getIntersectionID(), trafficLightInternalProgram);
 		}	
 		
+		// let way points of traffic vehicles refer to their traffic lights directly
+		resolveWayPointTrafficLights();
+		
 		// start trafficLight-thread
 		trafficLightExternalConnector = new TrafficLightExternalConnector(sim,2001,2048);
 		trafficLightExternalConnector.start();
 	}
 	
 	
+	/**
+	 * Indexes all traffic lights by name and by location (intersection, road 
+	 * and lane), so look-ups do not need to scan the list of traffic lights
+	 */
+	private static void buildRegistry()
+	{
+		trafficLightNameMap.clear();
+		trafficLightLocationMap.clear();
+		
+		for(TrafficLight trafficLight : globalTrafficLightsList)
+		{
+			// first traffic light with a given name wins (as with the former list scan)
+			if(!trafficLightNameMap.containsKey(trafficLight.getName()))
+				trafficLightNameMap.put(trafficLight.getName(), trafficLight);
+			
+			TrafficLightPositionData positionData = trafficLight.getPositionData();
+			if(trafficLight.getIntersectionID() != null && positionData != null && positionData.getRoadID() != null)
+			{
+				String locationKey = getLocationKey(trafficLight.getIntersectionID(), 
+						positionData.getRoadID(), positionData.getLane());
+				if(!trafficLightLocationMap.containsKey(locationKey))
+					trafficLightLocationMap.put(locationKey, trafficLight);
+			}
+		}
+	}
+	
+	
+	private static String getLocationKey(String intersectionID, String roadID, int lane)
+	{
+		return intersectionID + "|" + roadID + "|" + lane;
+	}
+	
+	
+	/**
+	 * Resolves the traffic light references of all way points of the traffic 
+	 * vehicles once, so traffic cars can read the traffic light state directly
+	 */
+	private void resolveWayPointTrafficLights()
+	{
+		for(TrafficCarData vehicleData : PhysicalTraffic.getVehicleDataList())
+			for(Waypoint wayPoint : vehicleData.getFollowBoxSettings().getWayPoints())
+				wayPoint.resolveTrafficLight();
+	}
+	
+	
 	/**
 	 * Evaluates an XML-string containing traffic light circuits from 
 	 * external sources
@@ -137,26 +196,20 @@ public class TrafficLightCenter
 		if((mode == TrafficLightMode.TRIGGER) && (type == TriggerType.REQUEST))
 		{
 			TrafficLight trafficLight = getTrafficLightByName(trafficLightName);
-			for(TrafficLightInternalProgram trafficLightInternalProgram : trafficLightProgramList)
+			TrafficLightInternalProgram trafficLightInternalProgram = 
+					trafficLightProgramMap.get(trafficLight.getIntersectionID());
+			if(trafficLightInternalProgram != null)
 			{
-				if(trafficLightInternalProgram.getIntersectionID().equals(trafficLight.getIntersectionID()))
-				{
-					trafficLightInternalProgram.requestGreen(trafficLight);
-					if(trafficLight.getState() == TrafficLightState.RED)
-						HMICenter.reportRedTrafficLightCollision(trafficLight,sim.getCar());
-				}
+				trafficLightInternalProgram.requestGreen(trafficLight);
+				if(trafficLight.getState() == TrafficLightState.RED)
+					HMICenter.reportRedTrafficLightCollision(trafficLight,sim.getCar());
 			}
 		}
 		else if((mode == TrafficLightMode.PROGRAM) && (type == TriggerType.PHASE))
 		{
 			TrafficLight trafficLight = getTrafficLightByName(trafficLightName);
-			for(TrafficLightInternalProgram trafficLightInternalProgram : trafficLightProgramList)
-			{
-				if(trafficLightInternalProgram.getIntersectionID().equals(trafficLight.getIntersectionID()))
-				{
-					HMICenter.reportTrafficLightCollision(trafficLight,sim.getCar());
-				}
-			}
+			if(trafficLightProgramMap.containsKey(trafficLight.getIntersectionID()))
+				HMICenter.reportTrafficLightCollision(trafficLight,sim.getCar());
 		}
 	}
 
@@ -225,13 +278,11 @@ public class TrafficLightCenter
 	 * 			traffic light object for given input string
 	 */
 	public static TrafficLight getTrafficLightByName(String trafficLightName)
-	{		
-		for(TrafficLight trafficLight : globalTrafficLightsList)
-		{
-			if(trafficLight.getName().equals(trafficLightName))
-				return trafficLight;
-		}
-		return null;
+	{
+		if(trafficLightName == null)
+			return null;
+		
+		return trafficLightNameMap.get(trafficLightName);
 	}
 	
 	
@@ -254,26 +305,10 @@ public class TrafficLightCenter
 	 */
 	public TrafficLight getTrafficLightByLocation(String intersectionID, String roadID, int lane) 
 	{
-		try{
-			
-			// go through traffic light list
-			for(TrafficLight trafficLight : globalTrafficLightsList)
-			{
-				if(
-						   trafficLight.getIntersectionID().equals(intersectionID)
-						&& trafficLight.getPositionData().getRoadID().equals(roadID)
-						&& trafficLight.getPositionData().getLane() == lane
-				   )
-					// return traffic light that matches with the given intersectionID, 
-					// roadID and lane
-					return trafficLight;
-			}
-			
-		}catch(NullPointerException e){
+		if(intersectionID == null || roadID == null)
 			return null;
-		}
 		
-		return null;
+		return trafficLightLocationMap.get(getLocationKey(intersectionID, roadID, lane));
 	}
 	
 	
@@ -292,13 +327,10 @@ public class TrafficLightCenter
 	public TrafficLightInternalProgram getInternalProgram(String intersectionID) 
 			throws NoInternalProgramException
 	{
-		// go through all internal programs (normally one program for each intersection)
-		for(TrafficLightInternalProgram trafficLightInternalProgram : trafficLightProgramList)
-		{
-			// return internal program if it matches the given intersectionID
-			if(trafficLightInternalProgram.getIntersectionID().equals(intersectionID))
-				return trafficLightInternalProgram;
-		}
+		// normally one program for each intersection
+		TrafficLightInternalProgram trafficLightInternalProgram = trafficLightProgramMap.get(intersectionID);
+		if(trafficLightInternalProgram != null)
+			return trafficLightInternalProgram;
 		
 		// if no internal program found --> throw exception
 		throw new NoInternalProgramException("Not assigned to any internal program!");
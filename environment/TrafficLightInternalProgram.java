@@ -25,13 +25,17 @@ import java.util.ListIterator;
 import eu.opends.environment.TrafficLight.*;
 import eu.opends.environment.TrafficLightCenter.*;
 import eu.opends.environment.TrafficLightException.*;
+import eu.opends.basics.SimulationBasics;
 import eu.opends.main.Simulator;
+import eu.opends.tools.SimulationScheduler.ScheduledTask;
 
 
 /**
  * This class represents the internal traffic light program. It provides 
  * rules to switch traffic lights of a specific intersection. Each intersection
- * requires an individual instance which runs as thread. Before a traffic light
+ * requires an individual instance which is executed by the scheduler on the 
+ * render thread (every second or after the step of a switching sequence has 
+ * passed by; not while the simulation is paused). Before a traffic light
  * will be switched to green, all traffic lights as given in the *-tlr.xml file 
  * will be switched to red first. If no rules file available, all other traffic 
  * lights will be switched to red. Traffic lights to switch green will be queued 
@@ -39,8 +43,15 @@ import eu.opends.main.Simulator;
  * 
  * @author Rafael Math
  */
-public class TrafficLightInternalProgram extends Thread
+public class TrafficLightInternalProgram implements Runnable
 {
+	// steps of switching a traffic light to green in TRIGGER mode
+	private enum TriggerStep
+	{
+		IDLE, FINISH_INITIAL_RED, FINISH_RED, CHECK_RED, GREEN, HOLD_GREEN;
+	}
+	
+
 	private Simulator sim;
 	private TrafficLightCenter trafficLightCenter;
 	private boolean stoprequested;
@@ -52,6 +63,8 @@ public class TrafficLightInternalProgram extends Thread
 	private TrafficLightPhase phase;
 	private ListIterator<TrafficLightPhase> iterator;
 	private boolean allTrafficLightsOff;
+	private TriggerStep triggerStep = TriggerStep.IDLE;
+	private ScheduledTask scheduledTask = null;
 
 	
 	/**
@@ -69,7 +82,6 @@ public class TrafficLightInternalProgram extends Thread
 	public TrafficLightInternalProgram(Simulator sim, TrafficLightCenter trafficLightCenter, String intersectionID, 
 			List<TrafficLight> allTrafficLightsList, LinkedList<TrafficLightPhase> intersectionPhasesList) 
 	{
-		super();
 		this.sim = sim;
 		this.trafficLightCenter = trafficLightCenter;
 		this.intersectionID = intersectionID;
@@ -134,11 +146,23 @@ public class TrafficLightInternalProgram extends Thread
 	
 
 	/**
-	 * Stops the traffic light program by exiting the loop
+	 * Starts the traffic light program
+	 */
+	public synchronized void start()
+	{
+		scheduledTask = SimulationBasics.getScheduler().schedule(this, 0);
+	}
+	
+	
+	/**
+	 * Stops the traffic light program by cancelling the next execution
 	 */
 	public synchronized void requestStop()
 	{
 		stoprequested = true;
+		
+		if(scheduledTask != null)
+			scheduledTask.cancel();
 	}
 	
 	
@@ -253,42 +277,38 @@ public class TrafficLightInternalProgram extends Thread
 	
 	
 	/**
-	 * This method contains a loop with the basic rules to switch the traffic lights
-	 * of a certain intersection. Instructions will only be carried out in TRIGGER,
-	 * PROGRAMM or BLINKING mode. Each execution of this loop takes at least 1 second.
+	 * This method contains the basic rules to switch the traffic lights of a 
+	 * certain intersection. Instructions will only be carried out in TRIGGER,
+	 * PROGRAMM or BLINKING mode. Each execution reschedules the program after 
+	 * 1 second (or after the duration of the current step in TRIGGER mode).
 	 */
 	@Override
-	public void run() 
+	public synchronized void run() 
 	{		
-		while (!stoprequested) 
-		{
-			TrafficLightMode currentMode = trafficLightCenter.getMode();
+		if(stoprequested)
+			return;
+		
+		TrafficLightMode currentMode = trafficLightCenter.getMode();
+		float delay = 1;
 
-			if(!sim.isPause())
-			{
-				if(currentMode == TrafficLightMode.TRIGGER)
-					runTriggerMode();
-	
-				else if(currentMode == TrafficLightMode.BLINKING)
-					runBlinkingMode();
-				
-				else if(currentMode == TrafficLightMode.PROGRAM)
-					runProgramMode();
-			}
+		// a switching sequence will not be continued if the mode has changed
+		if(currentMode != TrafficLightMode.TRIGGER && triggerStep != TriggerStep.IDLE)
+			finishTrafficLight();
+		
+		if(currentMode == TrafficLightMode.TRIGGER)
+			delay = runTriggerMode();
 
-			previousMode = currentMode;
-			
-			try {
-				// halt thread for 1 second to provide a clock for BLINKING mode; 
-				// otherwise prevent loop from repeating 
-				// to fast in OFF or EXTERNAL mode 
-				Thread.sleep(1000);
-				
-			} catch (InterruptedException e){}
-		}
+		else if(currentMode == TrafficLightMode.BLINKING)
+			runBlinkingMode();
+		
+		else if(currentMode == TrafficLightMode.PROGRAM)
+			runProgramMode();
 
-		// if loop was left: traffic light program will be terminated
-		//System.out.println("Program terminated");
+		previousMode = currentMode;
+		
+		// repeat after 1 second to provide a clock for BLINKING mode; 
+		// simulation time does not advance while paused
+		scheduledTask = SimulationBasics.getScheduler().schedule(this, delay);
 	}
 
 
@@ -298,22 +318,87 @@ public class TrafficLightInternalProgram extends Thread
 	 * have to be switched to red first. The traffic lights required to turn red will 
 	 * be loaded from an external source; if not available, all other traffic lights 
 	 * will be switched to red. After this, the selected traffic light will be switched
-	 * to yellow-red and finally to green. After processing, it will be removed from queue. 
+	 * to yellow-red and finally to green. After processing, it will be removed from queue.
+	 * Each call performs one step of this sequence.
+	 * 
+	 * @return
+	 * 			Time (in seconds) until the next step is due.
 	 */
-	private void runTriggerMode() 
+	private float runTriggerMode() 
 	{
-		
-		// if mode has changed to TRIGGER mode --> initialize first
-		if(previousMode != TrafficLightMode.TRIGGER)
+		switch(triggerStep)
 		{
-			// clear queue of traffic lights waiting to be switched to green
-			trafficLightsListForGreen.clear();
-			
-			// switch all traffic lights of current intersection to red
-			requestIntersectionRed(null);
+			case IDLE :
+				
+				// if mode has changed to TRIGGER mode --> initialize first
+				if(previousMode != TrafficLightMode.TRIGGER)
+				{
+					// clear queue of traffic lights waiting to be switched to green
+					trafficLightsListForGreen.clear();
+					
+					// switch all traffic lights of current intersection to red
+					// (green traffic lights will be switched to red after one second)
+					shiftIntersectionToRed(null);
+					if(!isIntersectionRed(null))
+					{
+						triggerStep = TriggerStep.FINISH_INITIAL_RED;
+						return 1;
+					}
+				}
+				return startNextTrafficLight();
+				
+			case FINISH_INITIAL_RED :
+				
+				shiftIntersectionToRed(null);
+				triggerStep = TriggerStep.IDLE;
+				return startNextTrafficLight();
+				
+			case FINISH_RED :
+				
+				// shift one further step (all remaining yellow lights to red) and wait a second
+				shiftIntersectionToRed(trafficLightsListForGreen.get(0));
+				triggerStep = TriggerStep.CHECK_RED;
+				return 1;
+				
+			case CHECK_RED :
+				
+				// if all required traffic lights are red
+				TrafficLight trafficLight = trafficLightsListForGreen.get(0);
+				if(isIntersectionRed(trafficLight))
+				{
+					// switch selected traffic light to YELLOWRED and wait 1 second
+					trafficLight.setState(TrafficLightState.YELLOWRED);
+					triggerStep = TriggerStep.GREEN;
+					return 1;
+				}
+				finishTrafficLight();
+				return 1;
+				
+			case GREEN :
+				
+				// switch selected traffic light to GREEN and wait 3 seconds
+				trafficLightsListForGreen.get(0).setState(TrafficLightState.GREEN);
+				triggerStep = TriggerStep.HOLD_GREEN;
+				return 3;
+				
+			case HOLD_GREEN :
+				
+				finishTrafficLight();
+				return 1;
 		}
 		
-		
+		return 1;
+	}
+	
+	
+	/**
+	 * Starts switching the first traffic light in the queue to green (if any).
+	 * 
+	 * @return
+	 * 			Time (in seconds) until the next step is due.
+	 */
+	private float startNextTrafficLight()
+	{
 		// if there are traffic lights waiting to be switched to green --> process queue
 		if(!trafficLightsListForGreen.isEmpty())
 		{
@@ -326,26 +411,34 @@ public class TrafficLightInternalProgram extends Thread
 			{
 				// switch all those traffic lights of the current intersection to red, 
 				// that are required to switch the selected traffic light to green and 
-				// wait a second
-				requestIntersectionRed(trafficLight);
-				wait(1);
+				// wait a second (GREEN --> YELLOW --> RED)
+				shiftIntersectionToRed(trafficLight);
 				
-				// if all required traffic lights are red
 				if(isIntersectionRed(trafficLight))
-				{
-					// switch selected traffic light to YELLOWRED and wait 1 second
-					trafficLight.setState(TrafficLightState.YELLOWRED);
-					wait(1);
-					
-					// switch selected traffic light to GREEN and wait 3 seconds
-					trafficLight.setState(TrafficLightState.GREEN);
-					wait(3);
-				}
+					triggerStep = TriggerStep.CHECK_RED;
+				else
+					triggerStep = TriggerStep.FINISH_RED;
+				
+				return 1;
 			}
 			
-			// remove processed traffic light from queue
+			// remove traffic light from queue
 			trafficLightsListForGreen.remove(0);
 		}
+		
+		return 1;
+	}
+	
+	
+	/**
+	 * Removes the processed traffic light from the queue.
+	 */
+	private void finishTrafficLight()
+	{
+		if(!trafficLightsListForGreen.isEmpty())
+			trafficLightsListForGreen.remove(0);
+		
+		triggerStep = TriggerStep.IDLE;
 	}
 
 
@@ -468,35 +561,6 @@ public class TrafficLightInternalProgram extends Thread
 	}
 	
 	
-	/**
-	 * Switches all traffic lights to red which are required to switch the 
-	 * given one to green. Green traffic lights will first be switched to
-	 * yellow, after a second they will be switched to red.
-	 * 
-	 * @param trafficLightForGreen
-	 *  		Traffic light waiting for green, while all other interfering 
-	 *  		traffic lights at this intersection will be switched to red.
-	 *  		If null, all traffic lights at this intersection will be 
-	 *  		switched to red.
-	 */
-	private void requestIntersectionRed(TrafficLight trafficLightForGreen)
-	{
-		// shift rules: 1. GREEN --> YELLOW
-		//				2. wait 1 second
-		//				3. YELLOW --> RED
-		
-		// shift one step (all yellow lights to red and all green lights to yellow) 
-		shiftIntersectionToRed(trafficLightForGreen);
-		
-		if(!isIntersectionRed(trafficLightForGreen))
-		{
-			wait(1);
-			// shift one further step (all remaining yellow lights to red)
-			shiftIntersectionToRed(trafficLightForGreen);
-		}
-	}
-	
-	
 	/**
 	 * Walks through the list of all traffic lights of the current intersection
 	 * and shifts the light status one step closer to red for all traffic lights
@@ -577,23 +641,6 @@ public class TrafficLightInternalProgram extends Thread
 		return allRed;
 	}
 
-	
-	/**
-	 * Stops the loop for the given number of seconds (for INTERNAL mode only)
-	 * 
-	 * @param seconds
-	 * 			number of seconds to stop the thread
-	 */
-	private void wait(int seconds)
-	{
-		// wait only if INTERNAL mode is still running
-		if(sim.getTrafficLightCenter().getMode() == TrafficLightMode.TRIGGER)
-		{
-			try {
-				Thread.sleep(seconds*1000);
-			} catch (InterruptedException e){}
-		}
-	}
 
 	
 }
@@ -26,8 +26,8 @@ import javax.xml.parsers.*;
 import org.w3c.dom.*;
 import org.xml.sax.InputSource;
 
+import eu.opends.basics.SimulationBasics;
 import eu.opends.canbus.CANClient;
-import eu.opends.car.SteeringCar;
 import eu.opends.environment.TrafficLight.*;
 import eu.opends.environment.TrafficLightException.InvalidStateCharacterException;
 import eu.opends.main.Simulator;
@@ -153,8 +153,6 @@ public class XMLParser
 			//<message><action name="button">cs</action></message>
 			//<message><action name="button">return</action></message>
 			
-			SteeringCar car = sim.getCar();
-			
 			NodeList nodeLst = doc.getElementsByTagName("message");
 			for(int i=0; i<nodeLst.getLength(); i++)
 			{
@@ -174,7 +172,6 @@ public class XMLParser
 						if(actionID.equals("steering"))
 						{
 							float value = Float.parseFloat(valueString);
-							System.out.println("Steering: " + value);
 							
 							// for Sim-TD Smart
 							canClient.setSteeringAngle(-value);
@@ -182,100 +179,73 @@ public class XMLParser
 							// for Mercedes R-class
 							//canClient.setSteeringAngle(value);
 							
-							sim.getSteeringTask().setSteeringIntensity(-0.02f*value);
+							// steering intensity of the steering task will be set 
+							// by the render thread (see CANClient.update())
 						}
 						
 						// performs "cruise forward"-button
 						else if(actionID.equals("MFLplus_State") || actionID.equals("MFLtelefoneEnd_State"))	
 						{
 							int value = Integer.parseInt(valueString);
-							System.out.println("Gas: " + value);
 							if(value == 0)
-								car.setAcceleratorPedalIntensity(0);
-								//car.releaseAccel();
+								canClient.setAcceleratorPedal(0);
 							else
-								car.setAcceleratorPedalIntensity(-1);
+								canClient.setAcceleratorPedal(1);
 						}
 						
 						// performs "cruise forward"-button
 						else if(actionID.equals("acceleration"))	
 						{
 							float value = Float.parseFloat(valueString);
-							System.out.println("Gas: " + value);
 							value = value*6;
 							if(value <= 0)
-							{
-								car.setAcceleratorPedalIntensity(0);
-								//car.releaseAccel();
-							}
+								canClient.setAcceleratorPedal(0);
 							else
-							{
-								car.setAcceleratorPedalIntensity(Math.max(-value,-1.0f));
-								sim.getSteeringTask().getPrimaryTask().reportGreenLight();
-							}
-							
-							sim.getThreeVehiclePlatoonTask().reportAcceleratorIntensity(Math.abs(value));
+								canClient.setAcceleratorPedal(Math.min(value, 1.0f));
 						}
 						
 						// performs "cruise backward"-button
 						else if(actionID.equals("MFLminus_State"))	
 						{
 							int value = Integer.parseInt(valueString);
-							System.out.println("Back: " + value);
 							if(value == 0)
-								car.setAcceleratorPedalIntensity(0);
-								//car.releaseAccel();
+								canClient.setAcceleratorPedal(0);
 							else
-								car.setAcceleratorPedalIntensity(1);
+								canClient.setAcceleratorPedal(-1);
 						}
 						
 						// performs brake pedal
 						else if(actionID.equals("KL54_RM_State"))	
 						{
 							int value = Integer.parseInt(valueString);
-							System.out.println("Brake: " + value);
 							if(value == 0)
-								//car.setGasPedalIntensity(0);
-								car.setBrakePedalIntensity(0);
-								//car.releaseAccel();
+								canClient.setBrakePedal(0);
 							else
-								car.setBrakePedalIntensity(1); // 1 --> full braking
+								canClient.setBrakePedal(1); // 1 --> full braking
 						}
 						
 						// performs brake pedal
 						else if(actionID.equals("brake"))	
 						{
 							float value = Float.parseFloat(valueString);
-							System.out.println("Brake: " + value);
 							if(value <= 0)
-							{
-								//car.setGasPedalIntensity(0);
-								car.setBrakePedalIntensity(0);
-								sim.getThreeVehiclePlatoonTask().reportBrakeIntensity(0);
-								//car.releaseAccel();
-							}
+								canClient.setBrakePedal(0);
 							else
-							{
-								value = Math.min(value,1.0f);
-								car.setBrakePedalIntensity(value); // 1 --> full braking
-								sim.getSteeringTask().getPrimaryTask().reportRedLight();
-								sim.getThreeVehiclePlatoonTask().reportBrakeIntensity(value);
-								car.disableCruiseControlByBrake();
-							}
+								canClient.setBrakePedal(Math.min(value,1.0f)); // 1 --> full braking
 						}
 						
 						// performs "change view"-button
 						else if(actionID.equals("button") && valueString.equals("cs"))	
 						{
 							System.out.println("Change view");
-							sim.getCameraFactory().changeCamera();
+							canClient.changeView();
 						}
 
 						// performs "reset car"-button
 						else if(actionID.equals("button") && valueString.equals("return"))	
 						{
 							System.out.println("Reset car");
-							car.setToNextResetPosition();
+							canClient.resetCar();
 						}
 						
 						// shows message on display
@@ -287,7 +257,14 @@ public class XMLParser
 							} catch(Exception e){
 								duration = 0;
 							}
-							PanelCenter.getMessageBox().addMessage(valueString,duration);
+							
+							final String message = valueString;
+							final int messageDuration = duration;
+							SimulationBasics.getScheduler().enqueue(new Runnable() {
+								public void run() {
+									PanelCenter.getMessageBox().addMessage(message, messageDuration);
+								}
+							});
 						}
 						
 						
@@ -300,7 +277,6 @@ public class XMLParser
 							//System.out.println("steering: " + percentage);
 
 							canClient.setSteeringAngle(percentage);
-							sim.getSteeringTask().setSteeringIntensity(0.02f*percentage);
 						}
 						
 
@@ -312,11 +288,7 @@ public class XMLParser
 							//System.out.println("channel1: " + percentage);
 							//System.out.println(System.currentTimeMillis() + " - accelerate: " + percentage);
 							
-							car.setAcceleratorPedalIntensity(-percentage);
-							sim.getThreeVehiclePlatoonTask().reportAcceleratorIntensity(percentage);
-							
-							if(percentage > 0)
-								sim.getSteeringTask().getPrimaryTask().reportGreenLight();
+							canClient.setAcceleratorPedal(percentage);
 						}
 						
 
@@ -328,14 +300,7 @@ public class XMLParser
 							//System.out.println("channel2: " + percentage);
 							//System.out.println("brake: " + percentage);
 
-							car.setBrakePedalIntensity(percentage); // 1 --> full braking
-							sim.getThreeVehiclePlatoonTask().reportBrakeIntensity(percentage);
-							
-							if(percentage > 0)
-							{
-								sim.getSteeringTask().getPrimaryTask().reportRedLight();
-								car.disableCruiseControlByBrake();
-							}
+							canClient.setBrakePedal(percentage); // 1 --> full braking
 						}
 
 						
@@ -562,6 +527,11 @@ public class XMLParser
 			//	<registered id="1" />
 			//</multiDriver>
 			//
+			// (server accepting the binary protocol requested by the client:)
+			//<multiDriver>
+			//	<registered id="1" protocol="binary" />
+			//</multiDriver>
+			//
 			//<multiDriver>
 			//	<update>
 			//		<add id="1" modelPath="test/subfolder/model.scene" driverName="test driver" />
@@ -583,7 +553,7 @@ public class XMLParser
 				for(int j=0; j<registeredList.getLength(); j++)
 				{
 					Element currentRegistered = (Element) registeredList.item(j);
-					client.setID(currentRegistered.getAttribute("id"));
+					client.setID(currentRegistered.getAttribute("id"), currentRegistered.getAttribute("protocol"));
 				}
 				
 				NodeList updateList = ((Element) currentNode).getElementsByTagName("update");
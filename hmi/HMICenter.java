@@ -34,6 +34,7 @@ public class HMICenter
 {	
 	private static Simulator sim;
 	private static boolean sendDataToHMI = false;
+	private static HMIEngine engine;
 	
 	
 	/**
@@ -45,6 +46,39 @@ public class HMICenter
 	public static void init(Simulator simulator)
 	{
 		sim = simulator;
+		engine = new HMIEngine(simulator);
+	}
+	
+	
+	/**
+	 * Returns the engine updating all active presentations (e.g. to set the 
+	 * HMI sink).
+	 * 
+	 * @return
+	 * 			The HMI engine
+	 */
+	public static HMIEngine getEngine()
+	{
+		return engine;
+	}
+	
+	
+	/**
+	 * Starts sending permanent updates of the given presentation to the HMI.
+	 * 
+	 * @param presentationModel
+	 * 			Presentation model containing parameter changes
+	 * 
+	 * @param triggerID
+	 * 			Trigger ID (from the trigger report list) which is related
+	 * 			to the presentation or null
+	 * 
+	 * @param presentationID
+	 * 			Presentation ID
+	 */
+	public static void startPresentation(PresentationModel presentationModel, String triggerID, long presentationID)
+	{
+		engine.addPresentation(presentationModel, triggerID, presentationID);
 	}
 	
 	
@@ -89,8 +123,7 @@ public class HMICenter
 			long presentationID = presentationModel.createPresentation();
 			
 			// send permanent messages with distance to HMI GUI and screen
-			HMIThread thread = new HMIThread(sim, presentationModel, triggerName, presentationID);
-			thread.start();
+			startPresentation(presentationModel, triggerName, presentationID);
 		}
 	}
 
@@ -124,8 +157,7 @@ public class HMICenter
 			long presentationID = presentationModel.createPresentation();
 
 			// send permanent messages with distance to HMI GUI and screen
-			HMIThread thread = new HMIThread(sim, presentationModel, trafficLightName, presentationID);
-			thread.start();
+			startPresentation(presentationModel, trafficLightName, presentationID);
 		}
 	}
 	
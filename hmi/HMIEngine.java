@@ -0,0 +1,252 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.hmi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.log4j.Logger;
+
+import eu.opends.basics.SimulationBasics;
+import eu.opends.hmi.HMISink.PresentationUpdate;
+import eu.opends.tools.SimulationScheduler.Clock;
+import eu.opends.tools.SimulationScheduler.PeriodicTask;
+import eu.opends.trigger.TriggerCenter;
+
+/**
+ * Updates all active presentations (traffic light, local danger warning, 
+ * speed limit, road works, ...) on a shared fixed-rate tick executed by the
+ * scheduler on the render thread. Parameters of a presentation are only 
+ * delivered if they differ from the values sent before; all updates of a 
+ * tick are passed to the HMI sink at once. The tick is only scheduled while
+ * presentations are active.
+ * 
+ * @author Rafael Math
+ */
+public class HMIEngine implements PeriodicTask
+{
+	private static final Logger logger = Logger.getLogger(HMIEngine.class);
+	
+	// time (in seconds) between two updates
+	private static final float UPDATE_INTERVAL = 0.1f;
+	
+	private SimulationBasics sim;
+	private HMISink sink = null;
+	private boolean isScheduled = false;
+	
+	private List<ActivePresentation> presentationList = new ArrayList<ActivePresentation>();
+	private List<PresentationUpdate> updateList = new ArrayList<PresentationUpdate>();
+	private List<Long> cancelList = new ArrayList<Long>();
+	private Map<String, Object> parameters = new HashMap<String, Object>();
+	
+	
+	private static class ActivePresentation
+	{
+		private PresentationModel presentationModel;
+		private String triggerID;
+		private long presentationID;
+		private Map<String, Object> sentParameters = new HashMap<String, Object>();
+		
+		
+		private ActivePresentation(PresentationModel presentationModel, String triggerID, long presentationID)
+		{
+			this.presentationModel = presentationModel;
+			this.triggerID = triggerID;
+			this.presentationID = presentationID;
+		}
+	}
+	
+	
+	public HMIEngine(SimulationBasics sim)
+	{
+		this.sim = sim;
+	}
+	
+	
+	/**
+	 * Sets the receiver of presentation updates. If no sink is set, updates
+	 * will be computed but not delivered.
+	 * 
+	 * @param sink
+	 * 			HMI sink (may be null).
+	 */
+	public void setSink(HMISink sink)
+	{
+		this.sink = sink;
+	}
+	
+	
+	/**
+	 * Adds a presentation to the engine. It will be updated until the stop 
+	 * condition of its presentation model holds.
+	 * 
+	 * @param presentationModel
+	 * 			Presentation model containing parameter changes
+	 * 
+	 * @param triggerID
+	 * 			Trigger ID (from the trigger report list) which is related
+	 * 			to the presentation or null
+	 * 
+	 * @param presentationID
+	 * 			Presentation ID (negative, if the presentation could not be created)
+	 */
+	public void addPresentation(PresentationModel presentationModel, String triggerID, long presentationID)
+	{
+		// initialize "previous" and "current" parameters
+		presentationModel.computePreviousParameters();
+		presentationModel.computeCurrentParameters();
+		
+		if(logger.isDebugEnabled())
+			logger.debug(presentationModel.generateMessage());
+		
+		presentationList.add(new ActivePresentation(presentationModel, triggerID, presentationID));
+		
+		if(!isScheduled)
+		{
+			SimulationBasics.getScheduler().schedulePeriodic(this, 0, UPDATE_INTERVAL, Clock.REAL);
+			isScheduled = true;
+		}
+	}
+	
+	
+	public int getNumberOfActivePresentations()
+	{
+		return presentationList.size();
+	}
+
+
+	/**
+	 * Updates all active presentations. Will be called every 100 ms while 
+	 * presentations are active.
+	 */
+	@Override
+	public boolean update() 
+	{
+		boolean isPause = sim.isPause();
+		
+		for(int i=presentationList.size()-1; i>=0; i--)
+		{
+			ActivePresentation presentation = presentationList.get(i);
+			PresentationModel presentationModel = presentation.presentationModel;
+			
+			if(presentationModel.stopPresentation())
+			{
+				presentationList.remove(i);
+				finish(presentation);
+				continue;
+			}
+			
+			// if parameters have changed (difference between "previous" and "current" parameters)
+			if(presentation.presentationID >= 0 && (presentationModel.hasChangedParameter() || isPause))
+			{
+				parameters.clear();
+				presentationModel.updatePresentation(presentation.presentationID, parameters);
+				
+				Map<String, Object> changedParameters = getChangedParameters(presentation.sentParameters, parameters);
+				if(changedParameters != null)
+					updateList.add(new PresentationUpdate(presentation.presentationID, changedParameters));
+				
+				if(logger.isDebugEnabled())
+					logger.debug(presentationModel.generateMessage());
+			}
+			
+			// assign "current" parameters to "previous" parameters
+			presentationModel.shiftCurrentToPreviousParameters();
+			
+			// update "current" parameters
+			presentationModel.computeCurrentParameters();
+		}
+		
+		deliver();
+		
+		if(presentationList.isEmpty())
+		{
+			isScheduled = false;
+			return false;
+		}
+		
+		return true;
+	}
+	
+	
+	/**
+	 * Returns the parameters that differ from the parameters sent before and 
+	 * records them as sent.
+	 * 
+	 * @return
+	 * 			Map of changed parameters or null if nothing has changed.
+	 */
+	private static Map<String, Object> getChangedParameters(Map<String, Object> sentParameters, 
+			Map<String, Object> parameters)
+	{
+		Map<String, Object> changedParameters = null;
+		
+		for(Entry<String, Object> parameter : parameters.entrySet())
+		{
+			Object value = parameter.getValue();
+			Object sentValue = sentParameters.get(parameter.getKey());
+			
+			if(value == null ? (sentValue != null || !sentParameters.containsKey(parameter.getKey())) 
+					: !value.equals(sentValue))
+			{
+				if(changedParameters == null)
+					changedParameters = new HashMap<String, Object>();
+				
+				changedParameters.put(parameter.getKey(), value);
+				sentParameters.put(parameter.getKey(), value);
+			}
+		}
+		
+		return changedParameters;
+	}
+	
+	
+	private void finish(ActivePresentation presentation)
+	{
+		// remove trigger from report list
+		if(presentation.triggerID != null)
+			TriggerCenter.removeTriggerReport(presentation.triggerID);
+		
+		// cancel presentation
+		if(presentation.presentationID >= 0)
+			cancelList.add(presentation.presentationID);
+		
+		if(logger.isDebugEnabled())
+			logger.debug("Cancel presentation task " + presentation.presentationID);
+	}
+	
+	
+	private void deliver()
+	{
+		if(sink != null)
+		{
+			if(!updateList.isEmpty())
+				sink.updatePresentations(new ArrayList<PresentationUpdate>(updateList));
+			
+			if(!cancelList.isEmpty())
+				sink.cancelPresentations(new ArrayList<Long>(cancelList));
+		}
+		
+		updateList.clear();
+		cancelList.clear();
+	}
+}
@@ -0,0 +1,77 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.hmi;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Receiver of presentation updates (e.g. connector to the SIM-TD HMI). All
+ * updates computed in one tick of the HMI engine are delivered in one call.
+ * 
+ * @author Rafael Math
+ */
+public interface HMISink
+{
+	/**
+	 * Parameters of a presentation that have changed since the last update.
+	 */
+	public static class PresentationUpdate
+	{
+		private long presentationID;
+		private Map<String, Object> parameters;
+		
+		
+		public PresentationUpdate(long presentationID, Map<String, Object> parameters)
+		{
+			this.presentationID = presentationID;
+			this.parameters = parameters;
+		}
+		
+		
+		public long getPresentationID()
+		{
+			return presentationID;
+		}
+		
+		
+		public Map<String, Object> getParameters()
+		{
+			return parameters;
+		}
+	}
+	
+	
+	/**
+	 * Delivers the parameter changes of all updated presentations.
+	 * 
+	 * @param updateList
+	 * 			List of presentation updates.
+	 */
+	public void updatePresentations(List<PresentationUpdate> updateList);
+	
+	
+	/**
+	 * Cancels the given presentations.
+	 * 
+	 * @param presentationIDList
+	 * 			IDs of the presentations to cancel.
+	 */
+	public void cancelPresentations(List<Long> presentationIDList);
+}
@@ -19,6 +19,7 @@
 package eu.opends.hmi;
 
 import java.util.HashMap;
+import java.util.Map;
 
 import com.jme3.math.Vector3f;
 
@@ -209,7 +210,7 @@ public class LocalDangerWarningPresentationModel extends PresentationModel
 	}
 	
 	
-	protected void fillPresentationTaskTimes(HashMap<String, Object> parameters, boolean isUpdate)
+	protected void fillPresentationTaskTimes(Map<String, Object> parameters, boolean isUpdate)
 	{
 		long timeNow = System.currentTimeMillis();
 		long timeEndMillis = timeNow + (long) getTimeToTarget(targetPosition);
@@ -271,19 +272,14 @@ public class LocalDangerWarningPresentationModel extends PresentationModel
 	 * area has changed.
 	 */
 	@Override
-	public void updatePresentation(long presentationID) 
+	public void updatePresentation(long presentationID, Map<String, Object> parameters) 
 	{
-		HashMap<String, Object> parameters = new HashMap<String, Object>();
-
 		// parameters according to "presentationModel.xml" 
 		//parameters.put("timeEnd", System.currentTimeMillis() + (long) getTimeToTarget(targetPosition));
 		fillPresentationTaskTimes(parameters, true);
 		
 		// parameters according to "localDangerWarnings.xml"
 		parameters.put("distanceToEvent", getRoundedDistanceToTarget(targetPosition));
-
-		// send parameters to HMI bundle
-		// TODO controller.update(presentationID, parameters);
 	}
 
 
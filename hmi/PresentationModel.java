@@ -18,6 +18,8 @@
 
 package eu.opends.hmi;
 
+import java.util.Map;
+
 import com.jme3.math.Vector3f;
 
 import eu.opends.car.Car;
@@ -184,9 +186,17 @@ public abstract class PresentationModel
 	
 	
 	/**
-	 * Updates a presentation task on the SIM-TD HMI GUI.
+	 * Computes the parameters of a presentation task update on the SIM-TD HMI GUI.
+	 * Only parameters differing from the previous update will be sent to the HMI 
+	 * (see HMIEngine).
+	 * 
+	 * @param presentationID
+	 * 			Presentation ID
+	 * 
+	 * @param parameters
+	 * 			Map the parameters will be written to.
 	 */
-	public abstract void updatePresentation(long presentationID);
+	public abstract void updatePresentation(long presentationID, Map<String, Object> parameters);
 
 	
 	/**
@@ -19,6 +19,7 @@
 package eu.opends.hmi;
 
 import java.util.HashMap;
+import java.util.Map;
 
 import eu.opends.car.Car;
 import eu.opends.environment.TrafficLight;
@@ -106,15 +107,10 @@ public class RedTrafficLightPresentationModel extends PresentationModel
 	 * to arrive at the traffic light has changed.
 	 */
 	@Override
-	public void updatePresentation(long presentationID) 
+	public void updatePresentation(long presentationID, Map<String, Object> parameters) 
 	{
-		HashMap<String, Object> parameters = new HashMap<String, Object>();
-
 		// parameters according to "presentationModel.xml"
 		parameters.put("timeEnd", System.currentTimeMillis() + (long) getTimeToTarget(targetPosition));
-		
-		// send parameters to HMI bundle
-		// TODO controller.update(presentationID, parameters);
 	}
 	
 
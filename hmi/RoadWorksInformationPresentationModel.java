@@ -22,6 +22,7 @@ import java.io.File;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.Map;
 
 import org.jdom.Document;
 import org.jdom.input.SAXBuilder;
@@ -160,9 +161,8 @@ public class RoadWorksInformationPresentationModel extends PresentationModel
 	 * changed.
 	 */
 	@Override
-	public void updatePresentation(long presentationID) 
+	public void updatePresentation(long presentationID, Map<String, Object> parameters) 
 	{
-		HashMap<String, Object> parameters = new HashMap<String, Object>();
 		int distanceToRoadWorksStart = getRoundedDistanceToTarget(roadWorksStartPosition);
 		long timeToRoadWorksEnd = (long) getTimeToTarget(targetPosition);
 		int remainingSeconds = (int)(timeToRoadWorksEnd/1000);
@@ -190,9 +190,6 @@ public class RoadWorksInformationPresentationModel extends PresentationModel
 			parameters.put("egoPosition", distanceToRoadWorksStart);
 			parameters.put("timeRemaining",  remainingSeconds);
 		}
-		
-		// send parameters to HMI bundle
-		// TODO controller.update(presentationID, parameters);
 	}
 
 	
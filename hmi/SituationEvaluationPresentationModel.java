@@ -20,6 +20,7 @@
 package eu.opends.hmi;
 
 import java.util.HashMap;
+import java.util.Map;
 
 import com.jme3.math.Vector3f;
 
@@ -78,7 +79,7 @@ public class SituationEvaluationPresentationModel extends PresentationModel
 
 
 	@Override
-	public void updatePresentation(long presentationID) 
+	public void updatePresentation(long presentationID, Map<String, Object> parameters) 
 	{
 		// send question only once --> no update at all
 		/*		
@@ -86,13 +87,8 @@ public class SituationEvaluationPresentationModel extends PresentationModel
 
 			end = now + 3000;
 			
-			HashMap<String, Object> parameters = new HashMap<String, Object>();
-	
 			// parameters according to "presentationModel.xml" 
 			parameters.put("timeEnd", end);
-
-			// send parameters to HMI bundle
-			// TODO controller.update(presentationID, parameters);
 		*/
 	}
 	
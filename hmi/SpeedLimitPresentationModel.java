@@ -18,7 +18,7 @@
 
 package eu.opends.hmi;
 
-import java.util.HashMap;
+import java.util.Map;
 
 import com.jme3.math.Vector3f;
 
@@ -80,18 +80,13 @@ public class SpeedLimitPresentationModel extends PresentationModel
 	 * speed limit sign has changed or if the distance to it has changed.
 	 */
 	@Override
-	public void updatePresentation(long presentationID) 
+	public void updatePresentation(long presentationID, Map<String, Object> parameters) 
 	{
-		HashMap<String, Object> parameters = new HashMap<String, Object>();
-
 		// parameters according to "presentationModel.xml"
 		parameters.put("timeEnd", System.currentTimeMillis() + (long) getTimeToTarget(targetPosition));
 		
 		// parameters according to "..."
 		//parameters.put("distanceToEvent", getRoundedDistanceToTarget());
-		
-		// send parameters to HMI bundle
-		// TODO controller.update(presentationID, parameters);
 	}
 
 	
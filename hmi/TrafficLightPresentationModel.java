@@ -339,12 +339,10 @@ public class TrafficLightPresentationModel extends PresentationModel
 	 * of any traffic light has changed.
 	 */
 	@Override
-	public void updatePresentation(long presentationID) 
+	public void updatePresentation(long presentationID, Map<String, Object> parameters) 
 	{
 		if(presentationID >= 0)
 		{
-			HashMap<String, Object> parameters = new HashMap<String, Object>();
-	
 			// parameters according to "presentationModel.xml"
 			parameters.put("timeEnd", System.currentTimeMillis() + (long) getTimeToTarget(targetPosition));
 			
@@ -352,12 +350,6 @@ public class TrafficLightPresentationModel extends PresentationModel
 			parameters.put("infoTrafficLight0", currentInfoTrafficLight0);
 			parameters.put("infoTrafficLight1", currentInfoTrafficLight1);
 			parameters.put("infoTrafficLight2", currentInfoTrafficLight2);
-			
-			// send parameters to HMI bundle
-			// TODO controller.update(presentationID, parameters);
-			System.out.println("\nUpdate presentation task 'TRAFFIC_LIGHT_PHASE_ASSISTANT'");
-			for(Map.Entry<String, Object> parameter : parameters.entrySet())
-				System.out.println(parameter.getKey() + ": " + parameter.getValue());
 		}
 	}
 
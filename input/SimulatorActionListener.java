@@ -484,6 +484,12 @@ public class SimulatorActionListener implements ActionListener
 				sim.toggleStats();
 		}
 		
+		else if (binding.equals(KeyMapping.TOGGLE_PROFILER.getID()))
+		{
+			if (value)
+				sim.getFrameProfiler().toggleOverlay();
+		}
+		
 		else if (binding.equals(KeyMapping.TOGGLE_CINEMATIC.getID()))
 		{
 			if (value)
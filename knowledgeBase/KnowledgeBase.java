@@ -42,7 +42,6 @@ final public class KnowledgeBase extends Thread
 	private boolean connect = false;
 	private boolean fallback = true;
 	private int outgoingUpdateIntervalMsec = 100;
-	private long lastOutgoingUpdate = 0;
 	private String culture = CULTURE_GERMAN;
 	private NetClient client = null;
 	private Root root = null;
@@ -52,6 +51,22 @@ final public class KnowledgeBase extends Thread
 	
 	private SimulationBasics sim;
 	
+	// property writes are submitted by this thread once per update interval
+	private static final int DEFAULT_WRITE_INTERVAL_MSEC = 100;
+	private PropertyWriter propertyWriter = new PropertyWriter();
+	private PropertyWriter.Target clientTarget = new PropertyWriter.Target()
+	{
+		public void createFolder(String parent, String folder, String propertyType) throws Exception
+		{
+			client.sendGetInstanceByShortID(parent, folder, true, propertyType);
+		}
+		
+		public void setProperty(String path, String propertyName, PropertyValue value) throws Exception
+		{
+			client.sendSetProperty(path, propertyName, value, true);
+		}
+	};
+	
 	public KnowledgeBase(boolean connect, boolean fallback)
 	{
 		this.connect = connect;
@@ -163,6 +178,12 @@ final public class KnowledgeBase extends Thread
 	}
 	
 	
+	/**
+	 * Sets the given property (folders of the path will be created if not 
+	 * existing). The value will be submitted by the knowledge base thread 
+	 * within the next update interval; if the same property is set several 
+	 * times within one interval, only the last value will be sent.
+	 */
 	public void sendSetProperty(String path, String propertyName, String propertyValue, String propertyType)
 	{	
 		if (!KB.isConnected()) 
@@ -191,19 +212,8 @@ final public class KnowledgeBase extends Thread
 				// for char, String and all others types different from types above
 				valueObject = new PropertyValue(propertyValue);
 			
-			// create path with sub folders (if not existing)
-			String parent = "";
-			for(String folder : path.split("/"))
-			{
-				if(!folder.isEmpty())
-				{
-					KB.getClient().sendGetInstanceByShortID(parent, folder, true, propertyType);
-					parent += "/" + folder;
-				}			
-			}
-			
-			// write value to property of given path
-			KB.getClient().sendSetProperty(path, propertyName, valueObject, true);
+			// sub folders will be created when submitting (if not existing)
+			propertyWriter.add(path, propertyName, valueObject, propertyType);
 
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -212,18 +222,24 @@ final public class KnowledgeBase extends Thread
 	
 	
 	/**
-	 * Sends information about the current vehicle status to KAPcom for use by other applications.
-	 * This may be called many times a second (update rate is limited internally).
+	 * Sends information about the current vehicle status to KAPcom for use by other applications
+	 * and submits pending property writes once per update interval.
 	 */
 	//public synchronized void sendCarData(Car car)
 	@Override
     public void run()
 	{
+		if (!isConnected()) return;
+		
+		long nextCarUpdate = 0;
+		long nextUpdate = System.currentTimeMillis();
+		
 		while(isRunning)
 		{
-			if (outgoingUpdateIntervalMsec <= 0 || !isConnected()) return;
-			if (System.currentTimeMillis() - lastOutgoingUpdate > outgoingUpdateIntervalMsec) {
-				lastOutgoingUpdate = System.currentTimeMillis();
+			long time = System.currentTimeMillis();
+			
+			if (outgoingUpdateIntervalMsec > 0 && time >= nextCarUpdate) {
+				nextCarUpdate = time + outgoingUpdateIntervalMsec;
 				try{
 					if(sim instanceof Simulator)
 						getVehicle().sendCarData(((Simulator)sim).getCar());
@@ -232,11 +248,25 @@ final public class KnowledgeBase extends Thread
 				} catch (Exception ex) {
 					ex.printStackTrace();
 					System.err.println("Failed to send update to KAPcom. Will stop sending updates for 60 seconds.");
-					lastOutgoingUpdate += (1000 * 60);
-					return;
+					nextCarUpdate += (1000 * 60);
 				}
 			}
+			
+			// submit property writes collected during the last interval
+			propertyWriter.flush(clientTarget);
+			
+			int interval = (outgoingUpdateIntervalMsec > 0) ? outgoingUpdateIntervalMsec : DEFAULT_WRITE_INTERVAL_MSEC;
+			nextUpdate = Math.max(nextUpdate + interval, System.currentTimeMillis());
+			try {
+				Thread.sleep(Math.max(1, nextUpdate - System.currentTimeMillis()));
+			} catch (InterruptedException e) {
+				break;
+			}
 		}
+		
+		propertyWriter.flush(clientTarget);
+		System.out.println("KAPcom: " + propertyWriter.getStatistics());
+		
 		if(KB.isConnected())
 		{
 			KB.getClient().disconnect();
@@ -0,0 +1,138 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package eu.opends.knowledgeBase;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import de.dfki.automotive.kapcom.knowledgebase.PropertyValue;
+
+/**
+ * Minimal in-memory stand-in for the KAPcom knowledge base, e.g. for testing 
+ * property writes without a KAPcom server. Each request may be delayed by a 
+ * fixed round trip time in order to simulate network access. Running main() 
+ * compares writing a burst of values (as done by trigger actions) request by 
+ * request with writing them through a PropertyWriter.
+ * 
+ * Usage: LocalKnowledgeStore [properties] [writesPerProperty] [roundTripMillis]
+ * 
+ * @author Rafael Math
+ */
+public class LocalKnowledgeStore implements PropertyWriter.Target
+{
+	private Set<String> folders = new HashSet<String>();
+	private Map<String, PropertyValue> properties = new HashMap<String, PropertyValue>();
+	private long roundTripMillis;
+	private int nrOfRequests = 0;
+	
+	
+	public static void main(String[] args) throws Exception
+	{
+		int nrOfProperties = (args.length > 0) ? Integer.parseInt(args[0]) : 10;
+		int writesPerProperty = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+		long roundTripMillis = (args.length > 2) ? Long.parseLong(args[2]) : 1;
+		
+		// direct: folders and property per write (previous behavior)
+		LocalKnowledgeStore store = new LocalKnowledgeStore(roundTripMillis);
+		long start = System.currentTimeMillis();
+		for(int i=0; i<writesPerProperty; i++)
+			for(int j=0; j<nrOfProperties; j++)
+			{
+				String path = "/root/thisVehicle/task" + j;
+				String parent = "";
+				for(String folder : path.split("/"))
+				{
+					if(!folder.isEmpty())
+					{
+						store.createFolder(parent, folder, "int");
+						parent += "/" + folder;
+					}
+				}
+				store.setProperty(path, "value", new PropertyValue(Integer.valueOf(i)));
+			}
+		System.out.println("Direct: " + store.getRequestCount() + " requests, " + 
+				(System.currentTimeMillis() - start) + " ms");
+		
+		// property writer: all writes within one update interval
+		store = new LocalKnowledgeStore(roundTripMillis);
+		PropertyWriter writer = new PropertyWriter();
+		start = System.currentTimeMillis();
+		for(int i=0; i<writesPerProperty; i++)
+			for(int j=0; j<nrOfProperties; j++)
+				writer.add("/root/thisVehicle/task" + j, "value", new PropertyValue(Integer.valueOf(i)), "int");
+		writer.flush(store);
+		System.out.println("PropertyWriter: " + store.getRequestCount() + " requests, " + 
+				(System.currentTimeMillis() - start) + " ms (" + writer.getStatistics() + ")");
+	}
+	
+	
+	/**
+	 * @param roundTripMillis
+	 * 			Delay of each request (in milliseconds).
+	 */
+	public LocalKnowledgeStore(long roundTripMillis)
+	{
+		this.roundTripMillis = roundTripMillis;
+	}
+	
+	
+	@Override
+	public synchronized void createFolder(String parent, String folder, String propertyType) throws Exception
+	{
+		request();
+		folders.add(parent + "/" + folder);
+	}
+	
+	
+	@Override
+	public synchronized void setProperty(String path, String propertyName, PropertyValue value) throws Exception
+	{
+		request();
+		properties.put(path + "::" + propertyName, value);
+	}
+	
+	
+	public synchronized PropertyValue getProperty(String path, String propertyName)
+	{
+		return properties.get(path + "::" + propertyName);
+	}
+	
+	
+	public synchronized boolean hasFolder(String path)
+	{
+		return folders.contains(path);
+	}
+	
+	
+	public synchronized int getRequestCount()
+	{
+		return nrOfRequests;
+	}
+	
+	
+	private void request() throws InterruptedException
+	{
+		nrOfRequests++;
+		if(roundTripMillis > 0)
+			Thread.sleep(roundTripMillis);
+	}
+}
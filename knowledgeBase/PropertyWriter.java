@@ -0,0 +1,186 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package eu.opends.knowledgeBase;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import de.dfki.automotive.kapcom.knowledgebase.PropertyValue;
+
+/**
+ * Buffers property writes to the knowledge base. Writes are collected on the 
+ * calling thread (e.g. by trigger actions) and submitted in one batch per 
+ * update interval by the knowledge base thread. Repeated writes to the same 
+ * property within an interval are coalesced (last value wins). Folders of 
+ * paths that have been created before are cached, so a write to a known path 
+ * needs a single request.
+ * 
+ * @author Rafael Math
+ */
+public class PropertyWriter
+{
+	/**
+	 * Receiver of the submitted requests (e.g. the KAPcom client or a local 
+	 * stand-in).
+	 */
+	public interface Target
+	{
+		/**
+		 * Makes sure the given folder exists below the given parent path.
+		 */
+		public void createFolder(String parent, String folder, String propertyType) throws Exception;
+		
+		public void setProperty(String path, String propertyName, PropertyValue value) throws Exception;
+	}
+	
+	
+	private static class Write
+	{
+		String path;
+		String propertyName;
+		PropertyValue value;
+		String propertyType;
+	}
+	
+	
+	// pending writes by path and property name (guarded by this)
+	private Map<String, Write> pendingWrites = new LinkedHashMap<String, Write>();
+	private Map<String, Write> submittedWrites = new LinkedHashMap<String, Write>();
+	
+	// paths (and parent paths) known to exist (submitting thread only)
+	private Set<String> resolvedPaths = new HashSet<String>();
+	
+	private int nrOfWrites = 0;
+	private int nrOfCoalescedWrites = 0;
+	private int nrOfFolderRequests = 0;
+	private int nrOfPropertyRequests = 0;
+	private int nrOfFailedRequests = 0;
+	
+	
+	/**
+	 * Adds a write to the current batch. A pending write to the same 
+	 * property will be replaced.
+	 */
+	public synchronized void add(String path, String propertyName, PropertyValue value, String propertyType)
+	{
+		String key = path + "::" + propertyName;
+		
+		Write write = pendingWrites.get(key);
+		if(write == null)
+		{
+			write = new Write();
+			write.path = path;
+			write.propertyName = propertyName;
+			pendingWrites.put(key, write);
+		}
+		else
+			nrOfCoalescedWrites++;
+		
+		write.value = value;
+		write.propertyType = propertyType;
+		nrOfWrites++;
+	}
+	
+	
+	/**
+	 * Submits all pending writes to the given target. Must be called by one 
+	 * thread only.
+	 * 
+	 * @param target
+	 * 			Receiver of the requests.
+	 * 
+	 * @return
+	 * 			Number of properties written.
+	 */
+	public int flush(Target target)
+	{
+		synchronized(this)
+		{
+			if(pendingWrites.isEmpty())
+				return 0;
+			
+			// swap maps, so new writes can be added while submitting
+			Map<String, Write> batch = pendingWrites;
+			pendingWrites = submittedWrites;
+			submittedWrites = batch;
+		}
+		
+		int count = 0;
+		for(Write write : submittedWrites.values())
+		{
+			try {
+				
+				resolvePath(target, write.path, write.propertyType);
+				
+				nrOfPropertyRequests++;
+				target.setProperty(write.path, write.propertyName, write.value);
+				count++;
+				
+			} catch (Exception e) {
+				
+				// folders might have been removed on the server
+				resolvedPaths.clear();
+				nrOfFailedRequests++;
+				System.err.println("Could not set " + write.path + "::" + write.propertyName);
+				e.printStackTrace();
+			}
+		}
+		submittedWrites.clear();
+		
+		return count;
+	}
+	
+	
+	/**
+	 * Creates all folders of the given path not known to exist.
+	 */
+	private void resolvePath(Target target, String path, String propertyType) throws Exception
+	{
+		if(resolvedPaths.contains(path))
+			return;
+		
+		String parent = "";
+		for(String folder : path.split("/"))
+		{
+			if(!folder.isEmpty())
+			{
+				String folderPath = parent + "/" + folder;
+				if(!resolvedPaths.contains(folderPath))
+				{
+					nrOfFolderRequests++;
+					target.createFolder(parent, folder, propertyType);
+					resolvedPaths.add(folderPath);
+				}
+				parent = folderPath;
+			}
+		}
+		
+		resolvedPaths.add(path);
+	}
+	
+	
+	public synchronized String getStatistics()
+	{
+		return nrOfWrites + " writes (" + nrOfCoalescedWrites + " coalesced), " + nrOfPropertyRequests + 
+				" property requests, " + nrOfFolderRequests + " folder requests, " + nrOfFailedRequests + " failed";
+	}
+}
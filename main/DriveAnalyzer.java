@@ -23,7 +23,11 @@ import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,6 +42,7 @@ import com.jme3.asset.plugins.FileLocator;
 import com.jme3.font.BitmapText;
 import com.jme3.scene.Mesh.Mode;
 import com.jme3.scene.Spatial.CullHint;
+import com.jme3.scene.shape.Box;
 import com.jme3.scene.shape.Curve;
 import com.jme3.scene.shape.Cylinder;
 import com.jme3.system.AppSettings;
@@ -48,6 +53,7 @@ import eu.opends.analyzer.DeviationComputer;
 import eu.opends.analyzer.DataReader;
 import eu.opends.analyzer.IdealLine;
 import eu.opends.analyzer.IdealLine.IdealLineStatus;
+import eu.opends.analyzer.TrafficCarState;
 import eu.opends.basics.InternalMapProcessing;
 import eu.opends.basics.SimulationBasics;
 import eu.opends.camera.AnalyzerCam;
@@ -56,6 +62,8 @@ import eu.opends.input.KeyBindingCenter;
 import eu.opends.knowledgeBase.KnowledgeBase;
 import eu.opends.niftyGui.AnalyzerFileSelectionGUIController;
 import eu.opends.tools.PanelCenter;
+import eu.opends.traffic.PhysicalTraffic;
+import eu.opends.traffic.TrafficCarData;
 
 /**
  * 
@@ -88,6 +96,9 @@ public class DriveAnalyzer extends SimulationBasics
 	private Node target = new Node();
 	private int targetIndex = 0;
 	
+	private Node trafficNode = new Node("trafficNode");
+	private HashMap<String, Spatial> trafficCarMap = new HashMap<String, Spatial>();
+	
 	private double totalDistance = 0;
 
 	private BitmapText markerText, speedText, timeText;
@@ -172,6 +183,9 @@ public class DriveAnalyzer extends SimulationBasics
 
 		loadMap();
 		
+		// recorded traffic cars (if available)
+		sceneNode.attachChild(trafficNode);
+		
 		// setup key binding
 		keyBindingCenter = new KeyBindingCenter(this);
      
@@ -527,10 +541,92 @@ public class DriveAnalyzer extends SimulationBasics
 		if(nextCone != null)
 			nextCone.setCullHint(CullHint.Always);
 		
+		updateTrafficCars(currentDataUnit.getTrafficCarStateList());
+		
 		updateMessageBox();
 	}
 
 
+	/**
+	 * Places the recorded traffic cars at their positions of the current data unit.
+	 * Traffic cars not contained in the current data unit (e.g. despawned) will be
+	 * hidden.
+	 * 
+	 * @param stateList
+	 * 			Recorded states of the traffic cars.
+	 */
+	private void updateTrafficCars(List<TrafficCarState> stateList) 
+	{
+		Set<String> visibleCars = new HashSet<String>();
+		
+		if(stateList != null)
+		{
+			for(TrafficCarState state : stateList)
+			{
+				Spatial trafficCar = trafficCarMap.get(state.getName());
+				if(trafficCar == null)
+				{
+					trafficCar = createTrafficCar(state.getName());
+					trafficCarMap.put(state.getName(), trafficCar);
+					trafficNode.attachChild(trafficCar);
+				}
+				
+				trafficCar.setLocalTranslation(state.getPosition());
+				trafficCar.setLocalRotation(state.getRotation());
+				trafficCar.setCullHint(CullHint.Dynamic);
+				visibleCars.add(state.getName());
+			}
+		}
+		
+		for(Spatial trafficCar : trafficCarMap.values())
+			if(!visibleCars.contains(trafficCar.getName()))
+				trafficCar.setCullHint(CullHint.Always);
+	}
+	
+	
+	private Spatial createTrafficCar(String name) 
+	{
+		// look up model of traffic car (pooled traffic cars are named "<template>_<index>")
+		String modelPath = null;
+		for(TrafficCarData vehicleData : PhysicalTraffic.getVehicleDataList())
+		{
+			String templateName = vehicleData.getName();
+			if(name.equals(templateName) || (name.startsWith(templateName + "_") && 
+					name.substring(templateName.length() + 1).matches("\\d+")))
+			{
+				modelPath = vehicleData.getModelPath();
+				break;
+			}
+		}
+		
+		Spatial trafficCar = null;
+		if(modelPath != null)
+		{
+			try {
+				trafficCar = assetManager.loadModel(modelPath);
+			} catch (Exception e) {
+				System.err.println("Could not load model of traffic car '" + name + "': " + modelPath);
+			}
+		}
+		
+		if(trafficCar == null)
+		{
+			// fall back to a simple box
+			Box box = new Box(1f, 0.75f, 2.25f);
+			trafficCar = new Geometry(name, box);
+			trafficCar.setLocalTranslation(0, 0.75f, 0);
+			Material material = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
+			material.setColor("Color", ColorRGBA.Orange);
+			trafficCar.setMaterial(material);
+		}
+		
+		// wrap into node in order to keep local transform of model
+		Node trafficCarNode = new Node(name);
+		trafficCarNode.attachChild(trafficCar);
+		return trafficCarNode;
+	}
+
+
 	private void updateMessageBox() 
 	{
 		DecimalFormat decimalFormat = new DecimalFormat("#0.00");
@@ -31,6 +31,10 @@ public class SimulationDefaults
 	public static String drivingTaskFileName = "assets/DrivingTasks/Projects/Stadtmitte22/stadtmitte22.xml";
 	
 	public static Boolean General_pauseAfterStartup = false;
+	public static Float General_schedulerFrameBudget = 4f;
+	public static Boolean General_profiler_enabled = false;
+	public static Boolean General_profiler_trackAllocations = false;
+	public static String General_profiler_csvFile = "";
 	
 	// currently for Microsoft Windows users only
 	public static boolean startSimTdHmiGui = false;
@@ -50,17 +54,24 @@ public class SimulationDefaults
 	public static Boolean Simphynity_enableConnection = false;
 	public static String Simphynity_ip = "127.0.0.1";
 	public static Integer Simphynity_port = 20777;
+	public static Integer Simphynity_updateRate = 40;
 	
 	public static boolean CANInterface_enableConnection = false;
 	public static String CANInterface_ip = "192.168.0.2";
 	public static int CANInterface_port = 5678;
 	public static int CANInterface_updateRate = 20;
+	public static Boolean CANInterface_sendCarData = false;
+	public static String CANInterface_protocol = "xml";
 	public static float CANInterface_maxSteeringAngle = 270;
 	
 	public static boolean MultiDriver_enableConnection = false;
 	public static String MultiDriver_ip = "127.0.0.1";
 	public static int MultiDriver_port = 1234;
 	public static int MultiDriver_updateRate = 20;
+	public static String MultiDriver_protocol = "xml";
+	public static boolean MultiDriver_interpolation_enabled = true;
+	public static int MultiDriver_interpolation_delay = 0;
+	public static int MultiDriver_interpolation_maxExtrapolation = 250;
 	
 	public static boolean Eyetracker_enableConnection = false;
 	public static int Eyetracker_port = 2010;
@@ -78,12 +89,39 @@ public class SimulationDefaults
 	
 	public static String OculusRift_isAttached = "auto";
 	
+	public static boolean TrafficPopulation_enable = false;
+	public static int TrafficPopulation_targetVehicles = 20;
+	public static int TrafficPopulation_poolSize = 30;
+	public static float TrafficPopulation_minSpawnDistance = 100f;
+	public static float TrafficPopulation_maxSpawnDistance = 300f;
+	public static float TrafficPopulation_despawnDistance = 400f;
+	public static int TrafficPopulation_maxSpawnsPerUpdate = 2;
+	
+	public static boolean TrafficSimulation_fixedStep = false;
+	public static int TrafficSimulation_seed = 0;
+	public static float TrafficSimulation_timeStep = 0.008f;
+	public static boolean TrafficSimulation_recordTraffic = false;
+	
+	public static boolean CoSimulation_enableConnection = false;
+	public static String CoSimulation_ip = "127.0.0.1";
+	public static int CoSimulation_port = 2012;
+	public static int CoSimulation_localPort = 2011;
+	public static int CoSimulation_feedbackRate = 20;
+	public static boolean CoSimulation_adjustHeight = true;
+	
 	public static boolean vsimrtiServer_startServer = false;
 	public static int vsimrtiServer_port = 1234;
 	
 	public static boolean SettingsControllerServer_startServer = false;
 	public static int SettingsControllerServer_port = 1000;
 	
+	public static String StateBroadcast_mode = "off";
+	public static String StateBroadcast_group = "239.255.42.99";
+	public static int StateBroadcast_port = 20800;
+	public static int StateBroadcast_timeToLive = 1;
+	public static boolean StateBroadcast_slaveCamera = true;
+	public static float StateBroadcast_cameraAngleOffset = 0;
+	
 	public static boolean Analyzer_suppressPDFPopup = false;
 	
 	public static float gravity = 9.81f;
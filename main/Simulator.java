@@ -20,6 +20,7 @@
 package eu.opends.main;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
 import org.apache.log4j.Logger;
@@ -41,6 +42,7 @@ import eu.opends.basics.SimulationBasics;
 import eu.opends.camera.SimulatorCam;
 import eu.opends.cameraFlight.CameraFlight;
 import eu.opends.cameraFlight.NotEnoughWaypointsException;
+import eu.opends.coSimulation.CoSimulationClient;
 import eu.opends.canbus.CANClient;
 import eu.opends.car.ResetPosition;
 import eu.opends.car.SteeringCar;
@@ -60,6 +62,8 @@ import eu.opends.settingsController.SettingsControllerServer;
 import eu.opends.taskDescription.contreTask.SteeringTask;
 import eu.opends.taskDescription.tvpTask.ThreeVehiclePlatoonTask;
 import eu.opends.tools.CollisionListener;
+import eu.opends.tools.FrameProfiler;
+import eu.opends.tools.FrameProfiler.Section;
 import eu.opends.tools.ObjectManipulationCenter;
 import eu.opends.tools.PanelCenter;
 import eu.opends.tools.SpeedControlCenter;
@@ -67,6 +71,8 @@ import eu.opends.tools.Util;
 import eu.opends.traffic.PhysicalTraffic;
 import eu.opends.trigger.TriggerCenter;
 import eu.opends.visualization.LightningClient;
+import eu.opends.visualization.StateBroadcastReceiver;
+import eu.opends.visualization.StateBroadcaster;
 
 /**
  * 
@@ -130,6 +136,12 @@ public class Simulator extends SimulationBasics
 		return multiDriverClient;
 	}
 	
+	private CoSimulationClient coSimulationClient;
+	public CoSimulationClient getCoSimulationClient() 
+	{
+		return coSimulationClient;
+	}
+	
 	private TriggerCenter triggerCenter = new TriggerCenter(this);
 	public TriggerCenter getTriggerCenter()
 	{
@@ -180,6 +192,12 @@ public class Simulator extends SimulationBasics
 		return reactionCenter;
 	}
 	
+	private FrameProfiler frameProfiler;
+	public FrameProfiler getFrameProfiler()
+	{
+		return frameProfiler;
+	}
+	
 	private EffectCenter effectCenter;
 	public EffectCenter getEffectCenter()
 	{
@@ -204,6 +222,9 @@ public class Simulator extends SimulationBasics
 		return settingsControllerServer;
 	}	
 	
+	private StateBroadcaster stateBroadcaster;
+	private StateBroadcastReceiver stateBroadcastReceiver;
+	
 	private EyetrackerCenter eyetrackerCenter;
 	public EyetrackerCenter getEyetrackerCenter()
 	{
@@ -275,6 +296,17 @@ public class Simulator extends SimulationBasics
     	// show stats if set in driving task
     	showStats(settingsLoader.getSetting(Setting.General_showStats, false));  	
     	
+    	// time (in ms) per frame available for scheduled tasks
+    	scheduler.setFrameBudget(settingsLoader.getSetting(Setting.General_schedulerFrameBudget, 
+    			SimulationDefaults.General_schedulerFrameBudget));
+    	
+    	// measures time spent in the subsystems updated per frame (overlay: F3)
+    	frameProfiler = new FrameProfiler(
+    			settingsLoader.getSetting(Setting.General_profiler_enabled, SimulationDefaults.General_profiler_enabled),
+    			settingsLoader.getSetting(Setting.General_profiler_trackAllocations, SimulationDefaults.General_profiler_trackAllocations),
+    			settingsLoader.getSetting(Setting.General_profiler_csvFile, SimulationDefaults.General_profiler_csvFile));
+    	frameProfiler.initOverlay(guiNode, guiFont, settings.getHeight());
+    	
     	// check Oculus Rift mode: auto, enabled, disabled
     	String oculusAttachedString = settingsLoader.getSetting(Setting.OculusRift_isAttached, 
     			SimulationDefaults.OculusRift_isAttached);
@@ -352,20 +384,25 @@ public class Simulator extends SimulationBasics
 		// open TCP connection to Lightning
 		if(settingsLoader.getSetting(Setting.ExternalVisualization_enableConnection, SimulationDefaults.Lightning_enableConnection))
 		{
-			lightningClient = new LightningClient();
+			lightningClient = new LightningClient(cam);
 		}
 		
 		// open TCP connection to CAN-bus
 		if(settingsLoader.getSetting(Setting.CANInterface_enableConnection, SimulationDefaults.CANInterface_enableConnection))
 		{
 			canClient = new CANClient(this);
-			canClient.start();
 		}
 		
 		if(settingsLoader.getSetting(Setting.MultiDriver_enableConnection, SimulationDefaults.MultiDriver_enableConnection))
 		{
 			multiDriverClient = new MultiDriverClient(this, driverName);
-			multiDriverClient.start();
+		}
+		
+		// open UDP connection to external traffic simulation
+		if(settingsLoader.getSetting(Setting.CoSimulation_enableConnection, SimulationDefaults.CoSimulation_enableConnection))
+		{
+			coSimulationClient = new CoSimulationClient(this);
+			coSimulationClient.start();
 		}
 		
 		drivingTaskLogger = new DrivingTaskLogger(outputFolder, driverName, drivingTask.getFileName());
@@ -400,6 +437,8 @@ public class Simulator extends SimulationBasics
 			settingsControllerServer.start();
 		}
 		
+		initStateBroadcast();
+		
 		StatsAppState statsAppState = stateManager.getState(StatsAppState.class);
     	if (statsAppState != null && statsAppState.getFpsText() != null && statsAppState.getStatsView() != null) 
     	{
@@ -429,6 +468,44 @@ public class Simulator extends SimulationBasics
     }
     
     
+	private void initStateBroadcast()
+	{
+		String mode = settingsLoader.getSetting(Setting.StateBroadcast_mode, SimulationDefaults.StateBroadcast_mode);
+		if(mode.equalsIgnoreCase("off"))
+			return;
+		
+		String group = settingsLoader.getSetting(Setting.StateBroadcast_group, SimulationDefaults.StateBroadcast_group);
+		int port = settingsLoader.getSetting(Setting.StateBroadcast_port, SimulationDefaults.StateBroadcast_port);
+		
+		try {
+			
+			if(mode.equalsIgnoreCase("send"))
+			{
+				int timeToLive = settingsLoader.getSetting(Setting.StateBroadcast_timeToLive, 
+						SimulationDefaults.StateBroadcast_timeToLive);
+				stateBroadcaster = new StateBroadcaster(this, cam, group, port, timeToLive);
+				telemetryPublisher.addSink(stateBroadcaster);
+			}
+			else if(mode.equalsIgnoreCase("receive"))
+			{
+				boolean slaveCamera = settingsLoader.getSetting(Setting.StateBroadcast_slaveCamera, 
+						SimulationDefaults.StateBroadcast_slaveCamera);
+				float cameraAngleOffset = settingsLoader.getSetting(Setting.StateBroadcast_cameraAngleOffset, 
+						SimulationDefaults.StateBroadcast_cameraAngleOffset);
+				stateBroadcastReceiver = new StateBroadcastReceiver(this, cam, group, port, slaveCamera, cameraAngleOffset);
+				stateBroadcastReceiver.start();
+			}
+			else
+				System.err.println("Invalid state broadcast mode '" + mode + "' (valid: off, send, receive)");
+			
+		} catch (IOException e) {
+			
+			System.err.println("Could not start state broadcast (" + mode + ") on " + group + ":" + port);
+			e.printStackTrace();
+		}
+	}
+	
+	
 	private void initDrivingTaskLayers()
 	{
 		String drivingTaskFileName = SimulationDefaults.drivingTaskFileName;
@@ -460,57 +537,106 @@ public class Simulator extends SimulationBasics
     {
     	if(initializationFinished)
     	{
+			// time stamp presentation of previous frame (stimulus onset of reaction timers)
+			reactionCenter.beginFrame();
+			
+			frameProfiler.beginFrame();
+			
 			super.simpleUpdate(tpf);
+			frameProfiler.lap(Section.BASICS);
 			
 			// updates camera
 			cameraFactory.updateCamera();
+			frameProfiler.lap(Section.CAMERA);
+			
+			// receiver mode: apply latest state broadcast by another simulator
+			if(stateBroadcastReceiver != null)
+				stateBroadcastReceiver.update();
+			frameProfiler.lap(Section.STATE_BROADCAST);
 		
 			if(!isPause())
 				car.getTransmission().updateRPM(tpf);
+			frameProfiler.lap(Section.TRANSMISSION);
 		
 			PanelCenter.update();
+			frameProfiler.lap(Section.PANELS);
 		
-			triggerCenter.doTriggerChecks();
+			triggerCenter.doTriggerChecks(tpf);
+			frameProfiler.lap(Section.TRIGGERS);
+			
+			// evaluate data-driven trigger conditions
+			if(!isPause())
+				ruleEngine.update(this);
+			frameProfiler.lap(Section.RULES);
+			
+			// execute due scheduled tasks, e.g. trigger actions and updates passed from 
+			// other threads (simulation time stands still while paused)
+			scheduler.update(tpf, isPause());
+			frameProfiler.lap(Section.SCHEDULER);
 		
 			updateDataWriter();
+			frameProfiler.lap(Section.DATA_WRITER);
 			
-			// send camera data via TCP to Lightning
-			if(lightningClient != null)
-				lightningClient.sendCameraData(cam);
+			// capture outbound telemetry (e.g. camera data for Lightning, motion data 
+			// for Simphynity), which will be sent by the telemetry publisher thread
+			telemetryPublisher.update();
+			frameProfiler.lap(Section.TELEMETRY);
 			
-			// send car data via TCP to CAN-bus
+			// apply steering angle received from CAN-bus
 			if(canClient != null)
-				canClient.sendCarData();
+				canClient.update();
+			frameProfiler.lap(Section.CAN_BUS);
 				
 			if(multiDriverClient != null)
 				multiDriverClient.update();
+			frameProfiler.lap(Section.MULTI_DRIVER);
 			
-			if(!isPause())
+			// in receiver mode, cars are moved by the received states only
+			if(!isPause() && stateBroadcastReceiver == null)
 				car.update(tpf);
+			frameProfiler.lap(Section.CAR);
+			
+			// publish car state for settings controller clients
+			if(settingsControllerServer != null)
+				settingsControllerServer.update();
+			frameProfiler.lap(Section.SETTINGS_CONTROLLER);
 			
 			// TODO start thread in init-method to update traffic
-			physicalTraffic.update(); 
+			if(stateBroadcastReceiver == null)
+				physicalTraffic.update(tpf);
+			frameProfiler.lap(Section.TRAFFIC);
+			
+			if(coSimulationClient != null)
+				coSimulationClient.update(tpf);
+			frameProfiler.lap(Section.CO_SIMULATION);
 			
 			SpeedControlCenter.update();
+			frameProfiler.lap(Section.SPEED_CONTROL);
 			
 			// update necessary even in pause
 			AudioCenter.update(tpf, cam);
+			frameProfiler.lap(Section.AUDIO);
 			
 			if(!isPause())
 				steeringTask.update(tpf);
+			frameProfiler.lap(Section.STEERING_TASK);
 			
 			//if(!isPause())
 				//getCameraFlight().play();
 			
 			threeVehiclePlatoonTask.update(tpf);
+			frameProfiler.lap(Section.PLATOON_TASK);
 			
 			if(cameraFlight != null)
 				cameraFlight.update();
+			frameProfiler.lap(Section.CAMERA_FLIGHT);
 			
 			reactionCenter.update();
+			frameProfiler.lap(Section.REACTION);
 			
 			// update effects
 			effectCenter.update(tpf);
+			frameProfiler.lap(Section.EFFECTS);
 			
 			// forward instruction screen if available
 			if(instructionScreenID != null)
@@ -518,9 +644,13 @@ public class Simulator extends SimulationBasics
 				instructionScreenGUI.showDialog(instructionScreenID);
 				instructionScreenID = null;
 			}
+			frameProfiler.lap(Section.INSTRUCTIONS);
 			
 			if(eyetrackerCenter != null)
 				eyetrackerCenter.update();
+			frameProfiler.lap(Section.EYE_TRACKER);
+			
+			frameProfiler.endFrame(tpf);
 			
     		if(frameCounter == 5)
     		{
@@ -591,6 +721,9 @@ public class Simulator extends SimulationBasics
 			if(multiDriverClient != null)
 				multiDriverClient.close();
 			
+			if(coSimulationClient != null)
+				coSimulationClient.close();
+			
 			trafficLightCenter.close();
 			
 			steeringTask.close();
@@ -610,9 +743,24 @@ public class Simulator extends SimulationBasics
 			if(settingsControllerServer != null)
 				settingsControllerServer.close();
 			
+			// state broadcaster will be closed by the telemetry publisher
+			if(stateBroadcastReceiver != null)
+				stateBroadcastReceiver.close();
+			
 			if(eyetrackerCenter != null)
 				eyetrackerCenter.close();
 			
+			logger.info("Scheduler: " + scheduler.getStatistics());
+			
+			logger.info("Telemetry: " + telemetryPublisher.getStatistics());
+			telemetryPublisher.close();
+			
+			// writes pending messages and closes all remaining connections
+			logger.info("Network: " + networkTransport.getStatistics());
+			networkTransport.close();
+			
+			frameProfiler.close();
+			
 			//initDrivingTaskSelectionGUI();
 		}
 
@@ -68,6 +68,7 @@ public class AddUpdate implements Update
 			
 			sim.getPhysicsSpace().add(carControl);		
 			sim.getSceneNode().attachChild(carNode);
+			sim.getSceneRegistry().register(carNode);
 			
 			sim.getMultiDriverClient().addRegisteredVehicle(vehicleID);
 			
@@ -0,0 +1,466 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.multiDriver;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+
+/**
+ * Compact binary encoding of multi-driver messages, used instead of XML if 
+ * requested by the client (&lt;register protocol="binary"&gt;) and confirmed by 
+ * the server (&lt;registered id="..." protocol="binary"/&gt;). Registration 
+ * is always done in XML; after confirming, the server must not send any binary
+ * frame before it has received the first binary frame of the client.
+ * 
+ * Frame (big endian):
+ * 
+ * length (int: number of bytes following) | type (byte) | sequence number (int) | body
+ * 
+ * STATE (client to server): state record of the client's car
+ * UPDATE (server to client): number of records (short), records: 
+ *     ADD handle (short), id, model path, driver name (strings: short length + UTF-8)
+ *     CHANGE handle (short), state record
+ *     REMOVE handle (short)
+ * UNREGISTER (client to server) and UNREGISTERED (server to client): empty body
+ * 
+ * State record: field mask (byte) followed by the fields set in the mask:
+ * 
+ * POSITION: 3 x int (millimeters)
+ * POSITION_DELTA: 3 x short (millimeters relative to previous position)
+ * ROTATION: 4 x short (quaternion components w, x, y, z * 32767)
+ * HEADING: short (degrees * 100 - 18000)
+ * WHEEL: 2 x short (steering angle and rotation of wheel in radians * 5000)
+ * 
+ * Fields not changed (after quantisation) since the previous record of the 
+ * same vehicle are omitted; every KEYFRAME_INTERVAL records all fields will 
+ * be sent with absolute values.
+ * 
+ * @author Rafael Math
+ */
+public class BinaryProtocol
+{
+	public static final String NAME = "binary";
+	
+	public static final byte STATE = 1;
+	public static final byte UPDATE = 2;
+	public static final byte UNREGISTER = 3;
+	public static final byte UNREGISTERED = 4;
+	
+	public static final byte ADD = 1;
+	public static final byte CHANGE = 2;
+	public static final byte REMOVE = 3;
+	
+	public static final int POSITION = 0x01;
+	public static final int POSITION_DELTA = 0x02;
+	public static final int ROTATION = 0x04;
+	public static final int HEADING = 0x08;
+	public static final int WHEEL = 0x10;
+	
+	// size of length field, type and sequence number
+	public static final int HEADER_SIZE = 9;
+	public static final int MAX_FRAME_SIZE = 65536;
+	public static final int MAX_STATE_SIZE = 1 + 12 + 8 + 2 + 4;
+	
+	private static final int KEYFRAME_INTERVAL = 50;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	
+	/**
+	 * Writes the header of a frame. The length field will be set by endFrame().
+	 * 
+	 * @param buffer
+	 * 			Buffer to write to (will be cleared).
+	 * 
+	 * @param type
+	 * 			Frame type (e.g. STATE).
+	 * 
+	 * @param sequenceNumber
+	 * 			Sequence number of the frame.
+	 */
+	public static void beginFrame(ByteBuffer buffer, byte type, int sequenceNumber)
+	{
+		buffer.clear();
+		buffer.putInt(0);
+		buffer.put(type);
+		buffer.putInt(sequenceNumber);
+	}
+	
+	
+	/**
+	 * Sets the length field of a frame and prepares the buffer for reading.
+	 */
+	public static void endFrame(ByteBuffer buffer)
+	{
+		buffer.putInt(0, buffer.position() - 4);
+		buffer.flip();
+	}
+	
+	
+	public static void putString(ByteBuffer buffer, String string)
+	{
+		byte[] bytes = string.getBytes(UTF8);
+		buffer.putShort((short) bytes.length);
+		buffer.put(bytes);
+	}
+	
+	
+	public static String getString(ByteBuffer buffer)
+	{
+		int length = buffer.getShort() & 0xFFFF;
+		
+		if(buffer.hasArray())
+		{
+			String string = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF8);
+			buffer.position(buffer.position() + length);
+			return string;
+		}
+		
+		// direct buffer (e.g. network transport)
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+	
+	
+	private static short quantise(float value, float factor)
+	{
+		return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value * factor)));
+	}
+	
+	
+	/**
+	 * Vehicle state shared by encoder and decoder; values are kept quantised, 
+	 * so both sides refer to exactly the same previous state.
+	 */
+	private static class QuantisedState
+	{
+		protected int[] position = new int[3];
+		protected short[] rotation = new short[4];
+		protected short heading;
+		protected short[] wheel = new short[2];
+		protected int mask = 0;
+	}
+	
+	
+	/**
+	 * Encodes the state of one vehicle as delta to the previously encoded state.
+	 */
+	public static class StateEncoder extends QuantisedState
+	{
+		private int recordCount = 0;
+		
+		
+		/**
+		 * Forces the next record to be a keyframe, e.g. if a previous record 
+		 * could not be sent and the receiver's state is outdated.
+		 */
+		public void requestKeyframe()
+		{
+			recordCount = 0;
+		}
+		
+		
+		/**
+		 * Writes a state record to the given buffer.
+		 * 
+		 * @param buffer
+		 * 			Buffer to write to (needs MAX_STATE_SIZE bytes).
+		 * 
+		 * @param pos
+		 * 			Position of the vehicle.
+		 * 
+		 * @param rot
+		 * 			Rotation of the vehicle.
+		 * 
+		 * @param headingDegree
+		 * 			Heading (in degrees, 0 to 360) or NaN if not available.
+		 * 
+		 * @param steering
+		 * 			Steering angle of the front wheels (radians).
+		 * 
+		 * @param wheelPosition
+		 * 			Rotation of the wheels (radians).
+		 */
+		public void encode(ByteBuffer buffer, Vector3f pos, Quaternion rot, float headingDegree, 
+				float steering, float wheelPosition)
+		{
+			boolean isKeyframe = (recordCount % KEYFRAME_INTERVAL == 0);
+			recordCount++;
+			
+			int maskPosition = buffer.position();
+			buffer.put((byte) 0);
+			int newMask = 0;
+			
+			// position
+			int x = Math.round(pos.getX() * 1000);
+			int y = Math.round(pos.getY() * 1000);
+			int z = Math.round(pos.getZ() * 1000);
+			int dx = x - position[0];
+			int dy = y - position[1];
+			int dz = z - position[2];
+			if(isKeyframe || (mask & POSITION) == 0 || !fitsShort(dx) || !fitsShort(dy) || !fitsShort(dz))
+			{
+				buffer.putInt(x).putInt(y).putInt(z);
+				newMask |= POSITION;
+			}
+			else if(dx != 0 || dy != 0 || dz != 0)
+			{
+				buffer.putShort((short) dx).putShort((short) dy).putShort((short) dz);
+				newMask |= POSITION_DELTA;
+			}
+			position[0] = x;
+			position[1] = y;
+			position[2] = z;
+			
+			// rotation
+			short w = quantise(rot.getW(), 32767);
+			short rx = quantise(rot.getX(), 32767);
+			short ry = quantise(rot.getY(), 32767);
+			short rz = quantise(rot.getZ(), 32767);
+			if(isKeyframe || w != rotation[0] || rx != rotation[1] || ry != rotation[2] || rz != rotation[3])
+			{
+				buffer.putShort(w).putShort(rx).putShort(ry).putShort(rz);
+				rotation[0] = w;
+				rotation[1] = rx;
+				rotation[2] = ry;
+				rotation[3] = rz;
+				newMask |= ROTATION;
+			}
+			
+			// heading
+			if(!Float.isNaN(headingDegree))
+			{
+				short h = quantise(headingDegree - 180, 100);
+				if(isKeyframe || (mask & HEADING) == 0 || h != heading)
+				{
+					buffer.putShort(h);
+					heading = h;
+					newMask |= HEADING;
+				}
+			}
+			
+			// wheels
+			short s = quantise(steering, 5000);
+			short p = quantise(wheelPosition, 5000);
+			if(isKeyframe || s != wheel[0] || p != wheel[1])
+			{
+				buffer.putShort(s).putShort(p);
+				wheel[0] = s;
+				wheel[1] = p;
+				newMask |= WHEEL;
+			}
+			
+			buffer.put(maskPosition, (byte) newMask);
+			mask |= newMask;
+		}
+		
+		
+		private static boolean fitsShort(int value)
+		{
+			return value >= Short.MIN_VALUE && value <= Short.MAX_VALUE;
+		}
+	}
+	
+	
+	/**
+	 * Decodes state records of one vehicle and keeps its full current state.
+	 */
+	public static class StateDecoder extends QuantisedState
+	{
+		/**
+		 * Reads a state record from the given buffer.
+		 * 
+		 * @throws BufferUnderflowException
+		 * 			If the record is incomplete.
+		 */
+		public void decode(ByteBuffer buffer)
+		{
+			int recordMask = buffer.get();
+			
+			if((recordMask & POSITION) != 0)
+			{
+				position[0] = buffer.getInt();
+				position[1] = buffer.getInt();
+				position[2] = buffer.getInt();
+			}
+			else if((recordMask & POSITION_DELTA) != 0)
+			{
+				position[0] += buffer.getShort();
+				position[1] += buffer.getShort();
+				position[2] += buffer.getShort();
+			}
+			
+			if((recordMask & ROTATION) != 0)
+			{
+				for(int i=0; i<4; i++)
+					rotation[i] = buffer.getShort();
+			}
+			
+			if((recordMask & HEADING) != 0)
+				heading = buffer.getShort();
+			
+			if((recordMask & WHEEL) != 0)
+			{
+				wheel[0] = buffer.getShort();
+				wheel[1] = buffer.getShort();
+			}
+			
+			mask |= (recordMask & ~POSITION_DELTA);
+		}
+		
+		
+		public boolean hasPosition()
+		{
+			return (mask & POSITION) != 0;
+		}
+		
+		
+		public Vector3f getPosition(Vector3f store)
+		{
+			return store.set(position[0] / 1000f, position[1] / 1000f, position[2] / 1000f);
+		}
+		
+		
+		public boolean hasRotation()
+		{
+			return (mask & ROTATION) != 0;
+		}
+		
+		
+		public Quaternion getRotation(Quaternion store)
+		{
+			store.set(rotation[1] / 32767f, rotation[2] / 32767f, rotation[3] / 32767f, rotation[0] / 32767f);
+			return store.normalizeLocal();
+		}
+		
+		
+		/**
+		 * @return
+		 * 			Heading in degrees or NaN if not available.
+		 */
+		public float getHeading()
+		{
+			if((mask & HEADING) == 0)
+				return Float.NaN;
+			
+			return heading / 100f + 180;
+		}
+		
+		
+		public boolean hasWheel()
+		{
+			return (mask & WHEEL) != 0;
+		}
+		
+		
+		public float getSteering()
+		{
+			return wheel[0] / 5000f;
+		}
+		
+		
+		public float getWheelPosition()
+		{
+			return wheel[1] / 5000f;
+		}
+	}
+	
+	
+	/**
+	 * Splits a byte stream into frames. Received bytes are appended to an 
+	 * internal buffer; complete frames can be taken one after another.
+	 */
+	public static class FrameReader
+	{
+		private ByteBuffer buffer = ByteBuffer.allocate(2 * MAX_FRAME_SIZE);
+		private ByteBuffer frame = buffer.duplicate();
+		private int frameEnd = 0;
+		
+		
+		/**
+		 * @return
+		 * 			Array to read received bytes into (starting at getWriteOffset()).
+		 */
+		public byte[] getArray()
+		{
+			return buffer.array();
+		}
+		
+		
+		public int getWriteOffset()
+		{
+			return buffer.position();
+		}
+		
+		
+		public int getRemainingCapacity()
+		{
+			return buffer.remaining();
+		}
+		
+		
+		/**
+		 * Marks the given number of bytes (written to the array) as received.
+		 */
+		public void received(int length)
+		{
+			buffer.position(buffer.position() + length);
+		}
+		
+		
+		/**
+		 * Returns the next complete frame (positioned after the length field, 
+		 * limited to the end of the frame) or null if no complete frame has 
+		 * been received yet. The returned buffer is valid until the next call.
+		 * 
+		 * @throws IllegalStateException
+		 * 			If the stream contains an invalid frame length.
+		 */
+		public ByteBuffer nextFrame()
+		{
+			// drop previously returned frame
+			if(frameEnd > 0)
+			{
+				buffer.flip();
+				buffer.position(frameEnd);
+				buffer.compact();
+				frameEnd = 0;
+			}
+			
+			if(buffer.position() < 4)
+				return null;
+			
+			int length = buffer.getInt(0);
+			if(length < HEADER_SIZE - 4 || length > MAX_FRAME_SIZE)
+				throw new IllegalStateException("Invalid frame length: " + length);
+			
+			if(buffer.position() < 4 + length)
+				return null;
+			
+			frameEnd = 4 + length;
+			frame.limit(frameEnd);
+			frame.position(4);
+			return frame;
+		}
+	}
+}
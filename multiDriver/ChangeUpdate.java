@@ -33,6 +33,7 @@ import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
 
 import eu.opends.main.Simulator;
+import eu.opends.multiDriver.BinaryProtocol.StateDecoder;
 import eu.opends.tools.Util;
 import eu.opends.tools.Vector3d;
 
@@ -45,8 +46,20 @@ public class ChangeUpdate implements Update
 	private String headingString;
 	private String wheelString;
 	
+	// parsed (XML) or decoded (binary protocol) values; null/NaN/false if not available
+	private Vector3f position = null;
+	private Quaternion rotation = null;
+	private float heading = Float.NaN;
+	private boolean hasWheel = false;
+	private float steering;
+	private float wheelPosition;
 	
-	public ChangeUpdate(Simulator sim, String vehicleID, String positionString, String rotationString, String headingString, String wheelString) 
+	// arrival time (System.nanoTime()) used for interpolation
+	private long receiveTime;
+	
+	
+	public ChangeUpdate(Simulator sim, String vehicleID, String positionString, String rotationString, 
+			String headingString, String wheelString, long receiveTime) 
 	{
 		this.sim = sim;
 		this.vehicleID = vehicleID;
@@ -54,13 +67,79 @@ public class ChangeUpdate implements Update
 		this.rotationString = rotationString;
 		this.headingString = headingString;
 		this.wheelString = wheelString;
+		this.receiveTime = receiveTime;
 	}
+	
+	
+	/**
+	 * Creates an update from the current state of a vehicle received via 
+	 * the binary protocol (values will be copied).
+	 */
+	public ChangeUpdate(Simulator sim, String vehicleID, StateDecoder state, long receiveTime) 
+	{
+		this.sim = sim;
+		this.vehicleID = vehicleID;
+		this.receiveTime = receiveTime;
+		
+		if(state.hasPosition())
+			position = state.getPosition(new Vector3f());
+		
+		if(state.hasRotation())
+			rotation = state.getRotation(new Quaternion());
+		
+		heading = state.getHeading();
+		
+		if(state.hasWheel())
+		{
+			hasWheel = true;
+			steering = state.getSteering();
+			wheelPosition = state.getWheelPosition();
+		}
+	}
+	
 
 	public void performUpdate()
 	{
 		//System.err.println("changeVehicle() --> vehicleID: " + vehicleID + ", positionString: " + positionString + " , rotationString: " + rotationString + " , wheelString: " + wheelString);
-		Vector3f position = new Vector3f(0,0,0);
+		if(positionString != null)
+			parseStrings();
 		
+		if(!Float.isNaN(heading))
+		{
+			// adjust height
+			Vector3f pos = (position != null) ? position : new Vector3f(0,0,0);
+			Vector3f centerContactPoint = castPerpendicularRay(pos);
+			if(centerContactPoint != null)
+			{
+				pos.setY(centerContactPoint.getY() + 0.075f);
+				position = pos;
+			}
+			
+			rotation = adjustRotation(-heading * FastMath.DEG_TO_RAD);
+		}
+		
+		MultiDriverClient client = sim.getMultiDriverClient();
+		if(client != null && client.isInterpolationEnabled())
+		{
+			// pose will be interpolated and applied by the client in every frame
+			client.addSnapshot(vehicleID, receiveTime, position, rotation);
+		}
+		else
+		{
+			if(position != null)
+				setPosition(vehicleID, position);
+			
+			if(rotation != null)
+				setRotation(vehicleID, rotation);
+		}
+		
+		if(hasWheel)
+			setWheels(vehicleID, steering, wheelPosition);
+	}
+	
+	
+	private void parseStrings()
+	{
 		String[] arrayPos = positionString.split(";");
 		if(arrayPos.length == 3)
 		{
@@ -69,7 +148,6 @@ public class ChangeUpdate implements Update
 			double zPos = Double.parseDouble(arrayPos[2]);
 			//position = GeoPosition.geoToModel(new Vector3d(xPos, yPos, zPos));
 			position = (new Vector3d(xPos, yPos, zPos)).toVector3f();
-			setPosition(vehicleID, position);
 		}
 		
 		String[] arrayRot = rotationString.split(";");
@@ -79,38 +157,25 @@ public class ChangeUpdate implements Update
 			float xRot = Float.parseFloat(arrayRot[1]);
 			float yRot = Float.parseFloat(arrayRot[2]);
 			float zRot = Float.parseFloat(arrayRot[3]);
-			Quaternion rotation = new Quaternion(xRot, yRot, zRot, wRot);
-			setRotation(vehicleID, rotation);
+			rotation = new Quaternion(xRot, yRot, zRot, wRot);
 		}
 		
 		if(!headingString.isEmpty())
-		{
-			float heading = -Float.parseFloat(headingString) * FastMath.DEG_TO_RAD;
-			Quaternion rotation = adjustRotation(position, heading);
-			setRotation(vehicleID, rotation);
-		}
+			heading = Float.parseFloat(headingString);
 		
 		String[] arrayWheel = wheelString.split(";");
 		if(arrayWheel.length == 2)
 		{
-			float steering = Float.parseFloat(arrayWheel[0]);
-			float wheelPosition = Float.parseFloat(arrayWheel[1]);
-			setWheels(vehicleID, steering, wheelPosition);
-		}		
+			steering = Float.parseFloat(arrayWheel[0]);
+			wheelPosition = Float.parseFloat(arrayWheel[1]);
+			hasWheel = true;
+		}
 	}
 
 	
-	private Quaternion adjustRotation(Vector3f position, float yaw) 
+	private Quaternion adjustRotation(float yaw) 
 	{
 		Node carNode = (Node) sim.getSceneNode().getChild(vehicleID);
-				
-		// adjust height
-		Vector3f centerContactPoint = castPerpendicularRay(position);
-		if(centerContactPoint != null)
-		{
-			position.setY(centerContactPoint.getY() + 0.075f);
-			setPosition(vehicleID, position);
-		}
 		
 		// adjust pitch angle
 		float pitch = 0;
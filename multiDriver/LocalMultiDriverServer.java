@@ -0,0 +1,543 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.multiDriver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+
+import eu.opends.multiDriver.BinaryProtocol.FrameReader;
+import eu.opends.multiDriver.BinaryProtocol.StateDecoder;
+import eu.opends.multiDriver.BinaryProtocol.StateEncoder;
+
+/**
+ * Minimal stand-in for the multi driver server, e.g. for testing multi driver 
+ * sessions on a single computer and for protocol benchmarks. Supports XML and 
+ * binary clients in the same session; the state of each client is relayed to 
+ * all other clients in the protocol of the receiver.
+ * 
+ * All relaying is done while holding the server lock, hence a slow client 
+ * delays all others. Not intended for production use.
+ * 
+ * Usage: LocalMultiDriverServer [port]
+ * 
+ * @author Rafael Math
+ */
+public class LocalMultiDriverServer extends Thread
+{
+	private ServerSocket serverSocket;
+	private volatile boolean stopRequested = false;
+	private List<ClientHandler> clientList = new ArrayList<ClientHandler>();
+	private int nextHandle = 1;
+	
+	
+	public static void main(String[] args) throws IOException
+	{
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : 1234;
+		
+		LocalMultiDriverServer server = new LocalMultiDriverServer(port);
+		server.start();
+		
+		System.out.println("Multi driver server listening on port " + server.getPort());
+	}
+	
+	
+	/**
+	 * Creates a new server.
+	 * 
+	 * @param port
+	 * 			Port to listen on (0: any free port).
+	 * 
+	 * @throws IOException
+	 */
+	public LocalMultiDriverServer(int port) throws IOException
+	{
+		super("LocalMultiDriverServer");
+		serverSocket = new ServerSocket(port);
+	}
+	
+	
+	public int getPort()
+	{
+		return serverSocket.getLocalPort();
+	}
+	
+	
+	@Override
+	public void run()
+	{
+		while(!stopRequested)
+		{
+			try {
+				
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				new ClientHandler(socket).start();
+				
+			} catch (IOException e) {
+				
+				if(!stopRequested)
+					e.printStackTrace();
+			}
+		}
+	}
+	
+	
+	public void requestStop()
+	{
+		stopRequested = true;
+		
+		try {
+			
+			serverSocket.close();
+			
+			synchronized(this)
+			{
+				for(ClientHandler client : clientList)
+					client.socket.close();
+			}
+			
+		} catch (IOException e) {
+			
+			e.printStackTrace();
+		}
+	}
+	
+	
+	/**
+	 * Returns the value of an attribute of the first element with the given 
+	 * name in the given XML string (simple string search, no XML parsing).
+	 * 
+	 * @return
+	 * 			Attribute value or empty string if not available.
+	 */
+	private static String getAttribute(String xml, String element, String attribute)
+	{
+		int elementStart = xml.indexOf("<" + element + " ");
+		if(elementStart < 0)
+			return "";
+		
+		int elementEnd = xml.indexOf(">", elementStart);
+		int valueStart = xml.indexOf(" " + attribute + "=\"", elementStart);
+		if(valueStart < 0 || valueStart > elementEnd)
+			return "";
+		
+		valueStart += attribute.length() + 3;
+		return xml.substring(valueStart, xml.indexOf("\"", valueStart));
+	}
+	
+	
+	private static String getElementText(String xml, String element)
+	{
+		int start = xml.indexOf("<" + element + ">");
+		int end = xml.indexOf("</" + element + ">");
+		if(start < 0 || end < start)
+			return "";
+		
+		return xml.substring(start + element.length() + 2, end);
+	}
+	
+	
+	private static float parseFloat(String string)
+	{
+		try {
+			
+			return Float.parseFloat(string);
+			
+		} catch (NumberFormatException e) {
+			
+			return 0;
+		}
+	}
+	
+	
+	/**
+	 * Connection to a single client.
+	 */
+	private class ClientHandler extends Thread
+	{
+		private Socket socket;
+		private InputStream inputStream;
+		private OutputStream outputStream;
+		private int handle;
+		private String modelPath;
+		private String driverName;
+		private boolean isBinary = false;
+		private boolean isStarted = false;
+		private boolean isClosed = false;
+		
+		// latest state of this client
+		private boolean hasState = false;
+		private Vector3f position = new Vector3f();
+		private Quaternion rotation = new Quaternion();
+		private float steering = 0;
+		private float wheelPosition = 0;
+		
+		// binary protocol only
+		private StateDecoder stateDecoder = new StateDecoder();
+		private Map<Integer, StateEncoder> stateEncoderMap = new HashMap<Integer, StateEncoder>();
+		private ByteBuffer sendBuffer = ByteBuffer.allocate(BinaryProtocol.MAX_FRAME_SIZE);
+		private int sendSequenceNumber = 0;
+		
+		
+		public ClientHandler(Socket socket) throws IOException
+		{
+			super("LocalMultiDriverServer-Client");
+			this.socket = socket;
+			this.inputStream = socket.getInputStream();
+			this.outputStream = socket.getOutputStream();
+		}
+		
+		
+		@Override
+		public void run()
+		{
+			try {
+				
+				register();
+				
+				if(isBinary)
+					receiveBinary();
+				else
+					receiveXML();
+				
+			} catch (SocketException e) {
+				
+				// connection closed
+				
+			} catch (Exception e) {
+				
+				e.printStackTrace();
+			}
+			
+			synchronized(LocalMultiDriverServer.this)
+			{
+				clientList.remove(this);
+				for(ClientHandler client : clientList)
+					client.sendRemove(this);
+			}
+			
+			try {
+				
+				socket.close();
+				
+			} catch (IOException e) {
+			}
+		}
+		
+		
+		private void register() throws IOException
+		{
+			// read until register message is complete (client waits for reply)
+			StringBuilder message = new StringBuilder();
+			byte[] buffer = new byte[1024];
+			while(message.indexOf("</register>") < 0)
+			{
+				int nrOfBytes = inputStream.read(buffer);
+				if(nrOfBytes < 0)
+					throw new SocketException("Connection closed");
+				message.append(new String(buffer, 0, nrOfBytes, "UTF-8"));
+			}
+			
+			String registerString = message.toString();
+			isBinary = getAttribute(registerString, "register", "protocol").equalsIgnoreCase(BinaryProtocol.NAME);
+			modelPath = getElementText(registerString, "modelPath");
+			driverName = getElementText(registerString, "driverName");
+			
+			synchronized(LocalMultiDriverServer.this)
+			{
+				handle = nextHandle++;
+				
+				String protocolAttribute = isBinary ? " protocol=\"" + BinaryProtocol.NAME + "\"" : "";
+				sendXML("<registered id=\"" + handle + "\"" + protocolAttribute + " />");
+				
+				if(!isBinary)
+				{
+					// XML clients receive all other vehicles immediately
+					isStarted = true;
+					for(ClientHandler client : clientList)
+						sendAdd(client);
+				}
+				
+				for(ClientHandler client : clientList)
+					client.sendAdd(this);
+				
+				clientList.add(this);
+			}
+			
+			System.out.println("Multi driver server: registered '" + driverName + "' as " + handle + 
+					(isBinary ? " (binary)" : " (XML)"));
+		}
+		
+		
+		private void receiveXML() throws IOException
+		{
+			StringBuilder message = new StringBuilder();
+			byte[] buffer = new byte[10000];
+			
+			while(!isClosed)
+			{
+				int nrOfBytes = inputStream.read(buffer);
+				if(nrOfBytes < 0)
+					return;
+				message.append(new String(buffer, 0, nrOfBytes, "UTF-8"));
+				
+				int end;
+				while((end = message.indexOf("</update>")) >= 0)
+				{
+					String update = message.substring(0, end);
+					message.delete(0, end + 9);
+					
+					synchronized(LocalMultiDriverServer.this)
+					{
+						position.set(parseFloat(getAttribute(update, "position", "x")), 
+								parseFloat(getAttribute(update, "position", "y")), 
+								parseFloat(getAttribute(update, "position", "z")));
+						rotation.set(parseFloat(getAttribute(update, "rotation", "x")), 
+								parseFloat(getAttribute(update, "rotation", "y")), 
+								parseFloat(getAttribute(update, "rotation", "z")), 
+								parseFloat(getAttribute(update, "rotation", "w")));
+						steering = parseFloat(getAttribute(update, "wheel", "steering"));
+						wheelPosition = parseFloat(getAttribute(update, "wheel", "position"));
+						hasState = true;
+						
+						for(ClientHandler client : clientList)
+							if(client != this)
+								client.sendChange(this);
+					}
+				}
+				
+				if(message.indexOf("</unregister>") >= 0)
+				{
+					synchronized(LocalMultiDriverServer.this)
+					{
+						sendXML("<unregistered id=\"" + handle + "\" />");
+					}
+					return;
+				}
+			}
+		}
+		
+		
+		private void receiveBinary() throws IOException
+		{
+			FrameReader frameReader = new FrameReader();
+			
+			while(!isClosed)
+			{
+				int nrOfBytes = inputStream.read(frameReader.getArray(), frameReader.getWriteOffset(), 
+						frameReader.getRemainingCapacity());
+				if(nrOfBytes < 0)
+					return;
+				frameReader.received(nrOfBytes);
+				
+				ByteBuffer frame;
+				while((frame = frameReader.nextFrame()) != null)
+				{
+					byte type = frame.get();
+					frame.getInt();
+					
+					synchronized(LocalMultiDriverServer.this)
+					{
+						if(!isStarted)
+						{
+							// first binary frame of client: send all other vehicles
+							isStarted = true;
+							for(ClientHandler client : clientList)
+								if(client != this)
+									sendAdd(client);
+						}
+						
+						if(type == BinaryProtocol.STATE)
+						{
+							stateDecoder.decode(frame);
+							stateDecoder.getPosition(position);
+							stateDecoder.getRotation(rotation);
+							steering = stateDecoder.getSteering();
+							wheelPosition = stateDecoder.getWheelPosition();
+							hasState = true;
+							
+							for(ClientHandler client : clientList)
+								if(client != this)
+									client.sendChange(this);
+						}
+						else if(type == BinaryProtocol.UNREGISTER)
+						{
+							BinaryProtocol.beginFrame(sendBuffer, BinaryProtocol.UNREGISTERED, sendSequenceNumber++);
+							BinaryProtocol.endFrame(sendBuffer);
+							sendFrame();
+							return;
+						}
+					}
+				}
+			}
+		}
+		
+		
+		/**
+		 * Sends the given vehicle (and its current state) to this client.
+		 */
+		private void sendAdd(ClientHandler client)
+		{
+			if(!isStarted)
+				return;
+			
+			if(isBinary)
+			{
+				StateEncoder stateEncoder = new StateEncoder();
+				stateEncoderMap.put(client.handle, stateEncoder);
+				
+				BinaryProtocol.beginFrame(sendBuffer, BinaryProtocol.UPDATE, sendSequenceNumber++);
+				sendBuffer.putShort((short) (client.hasState ? 2 : 1));
+				sendBuffer.put(BinaryProtocol.ADD);
+				sendBuffer.putShort((short) client.handle);
+				BinaryProtocol.putString(sendBuffer, String.valueOf(client.handle));
+				BinaryProtocol.putString(sendBuffer, client.modelPath);
+				BinaryProtocol.putString(sendBuffer, client.driverName);
+				if(client.hasState)
+					putChange(client, stateEncoder);
+				BinaryProtocol.endFrame(sendBuffer);
+				sendFrame();
+			}
+			else
+			{
+				String update = "<update><add id=\"" + client.handle + "\" modelPath=\"" + client.modelPath + 
+						"\" driverName=\"" + client.driverName + "\" />";
+				if(client.hasState)
+					update += getChangeElement(client);
+				sendXML(update + "</update>");
+			}
+		}
+		
+		
+		private void sendChange(ClientHandler client)
+		{
+			if(!isStarted)
+				return;
+			
+			if(isBinary)
+			{
+				StateEncoder stateEncoder = stateEncoderMap.get(client.handle);
+				if(stateEncoder == null)
+					return;
+				
+				BinaryProtocol.beginFrame(sendBuffer, BinaryProtocol.UPDATE, sendSequenceNumber++);
+				sendBuffer.putShort((short) 1);
+				putChange(client, stateEncoder);
+				BinaryProtocol.endFrame(sendBuffer);
+				sendFrame();
+			}
+			else
+				sendXML("<update>" + getChangeElement(client) + "</update>");
+		}
+		
+		
+		private void sendRemove(ClientHandler client)
+		{
+			if(!isStarted)
+				return;
+			
+			if(isBinary)
+			{
+				if(stateEncoderMap.remove(client.handle) == null)
+					return;
+				
+				BinaryProtocol.beginFrame(sendBuffer, BinaryProtocol.UPDATE, sendSequenceNumber++);
+				sendBuffer.putShort((short) 1);
+				sendBuffer.put(BinaryProtocol.REMOVE);
+				sendBuffer.putShort((short) client.handle);
+				BinaryProtocol.endFrame(sendBuffer);
+				sendFrame();
+			}
+			else
+				sendXML("<update><remove id=\"" + client.handle + "\" /></update>");
+		}
+		
+		
+		private void putChange(ClientHandler client, StateEncoder stateEncoder)
+		{
+			sendBuffer.put(BinaryProtocol.CHANGE);
+			sendBuffer.putShort((short) client.handle);
+			stateEncoder.encode(sendBuffer, client.position, client.rotation, Float.NaN, 
+					client.steering, client.wheelPosition);
+		}
+		
+		
+		private String getChangeElement(ClientHandler client)
+		{
+			Vector3f pos = client.position;
+			Quaternion rot = client.rotation;
+			return "<change id=\"" + client.handle + "\" pos=\"" + pos.getX() + ";" + pos.getY() + ";" + 
+					pos.getZ() + "\" rot=\"" + rot.getW() + ";" + rot.getX() + ";" + rot.getY() + ";" + 
+					rot.getZ() + "\" heading=\"\" wheel=\"" + client.steering + ";" + client.wheelPosition + "\" />";
+		}
+		
+		
+		private void sendXML(String message)
+		{
+			try {
+				
+				outputStream.write(message.getBytes("UTF-8"));
+				outputStream.flush();
+				
+			} catch (IOException e) {
+				
+				close();
+			}
+		}
+		
+		
+		private void sendFrame()
+		{
+			try {
+				
+				outputStream.write(sendBuffer.array(), 0, sendBuffer.limit());
+				outputStream.flush();
+				
+			} catch (IOException e) {
+				
+				close();
+			}
+		}
+		
+		
+		private void close()
+		{
+			isClosed = true;
+			
+			try {
+				
+				socket.close();
+				
+			} catch (IOException e) {
+			}
+		}
+	}
+}
@@ -0,0 +1,476 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.multiDriver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+
+import eu.opends.multiDriver.BinaryProtocol.FrameReader;
+import eu.opends.multiDriver.BinaryProtocol.StateDecoder;
+import eu.opends.multiDriver.BinaryProtocol.StateEncoder;
+
+/**
+ * Compares the XML and the binary multi driver protocol. 
+ * 
+ * 1. Codec: encodes and decodes server updates containing the state of all 
+ * vehicles (driving on circles) and reports bytes and processing time per 
+ * update (XML decoding as done by the client: DOM parsing, string splitting).
+ * 
+ * 2. Session: starts a LocalMultiDriverServer and connects simulated drivers 
+ * sending their state at the given rate; reports the received vehicle 
+ * updates and bytes per second and driver for each protocol.
+ * 
+ * Usage: MultiDriverBenchmark [vehicles] [updateRate] [seconds]
+ * 
+ * @author Rafael Math
+ */
+public class MultiDriverBenchmark
+{
+	private static final int CODEC_UPDATES = 5000;
+	
+	
+	public static void main(String[] args) throws Exception
+	{
+		int vehicles = (args.length > 0) ? Integer.parseInt(args[0]) : 10;
+		int updateRate = (args.length > 1) ? Integer.parseInt(args[1]) : 60;
+		int seconds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+		
+		System.out.println("Codec (" + vehicles + " vehicles per update, " + CODEC_UPDATES + " updates):");
+		benchmarkXMLCodec(vehicles);
+		benchmarkBinaryCodec(vehicles);
+		
+		System.out.println("Session (" + vehicles + " drivers, " + updateRate + " Hz, " + seconds + " s):");
+		benchmarkSession(false, vehicles, updateRate, seconds);
+		benchmarkSession(true, vehicles, updateRate, seconds);
+	}
+	
+	
+	/**
+	 * Computes the state of a simulated vehicle driving on a circle at 50 km/h.
+	 */
+	private static void getVehicleState(int vehicle, float time, Vector3f position, Quaternion rotation, float[] wheel)
+	{
+		float radius = 50 + 10 * vehicle;
+		float angle = time * 14f / radius;
+		position.set(radius * FastMath.cos(angle), 0.5f, radius * FastMath.sin(angle));
+		rotation.fromAngles(0, -angle, 0);
+		wheel[0] = 0.1f * FastMath.sin(time);
+		wheel[1] = (time * 14f / 0.3f) % FastMath.TWO_PI - FastMath.PI;
+	}
+	
+	
+	private static void benchmarkXMLCodec(int vehicles) throws Exception
+	{
+		Vector3f position = new Vector3f();
+		Quaternion rotation = new Quaternion();
+		float[] wheel = new float[2];
+		DocumentBuilder documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		
+		long bytes = 0;
+		float checksum = 0;
+		long start = System.nanoTime();
+		for(int i=0; i<CODEC_UPDATES; i++)
+		{
+			float time = i / 60f;
+			
+			// encode (as sent by server)
+			StringBuilder builder = new StringBuilder("<update>");
+			for(int v=0; v<vehicles; v++)
+			{
+				getVehicleState(v, time, position, rotation, wheel);
+				builder.append("<change id=\"" + v + "\" pos=\"" + position.getX() + ";" + position.getY() + ";" + 
+						position.getZ() + "\" rot=\"" + rotation.getW() + ";" + rotation.getX() + ";" + 
+						rotation.getY() + ";" + rotation.getZ() + "\" heading=\"\" wheel=\"" + wheel[0] + ";" + 
+						wheel[1] + "\" />");
+			}
+			builder.append("</update>");
+			String message = builder.toString();
+			bytes += message.getBytes("UTF-8").length;
+			
+			// decode (as done by XMLParser and ChangeUpdate)
+			InputSource source = new InputSource(new StringReader("<multiDriver>" + message + "</multiDriver>"));
+			Document document = documentBuilder.parse(source);
+			NodeList changeList = document.getElementsByTagName("change");
+			for(int k=0; k<changeList.getLength(); k++)
+			{
+				Element change = (Element) changeList.item(k);
+				change.getAttribute("id");
+				String[] pos = change.getAttribute("pos").split(";");
+				String[] rot = change.getAttribute("rot").split(";");
+				change.getAttribute("heading").isEmpty();
+				String[] wheelArray = change.getAttribute("wheel").split(";");
+				checksum += Float.parseFloat(pos[0]) + Float.parseFloat(pos[1]) + Float.parseFloat(pos[2]) + 
+						Float.parseFloat(rot[0]) + Float.parseFloat(rot[1]) + Float.parseFloat(rot[2]) + 
+						Float.parseFloat(rot[3]) + Float.parseFloat(wheelArray[0]) + Float.parseFloat(wheelArray[1]);
+			}
+		}
+		long duration = System.nanoTime() - start;
+		
+		printCodecResult("XML", bytes, duration, checksum);
+	}
+	
+	
+	private static void benchmarkBinaryCodec(int vehicles)
+	{
+		Vector3f position = new Vector3f();
+		Quaternion rotation = new Quaternion();
+		float[] wheel = new float[2];
+		ByteBuffer buffer = ByteBuffer.allocate(BinaryProtocol.MAX_FRAME_SIZE);
+		
+		StateEncoder[] encoders = new StateEncoder[vehicles];
+		StateDecoder[] decoders = new StateDecoder[vehicles];
+		for(int v=0; v<vehicles; v++)
+		{
+			encoders[v] = new StateEncoder();
+			decoders[v] = new StateDecoder();
+		}
+		
+		long bytes = 0;
+		float checksum = 0;
+		long start = System.nanoTime();
+		for(int i=0; i<CODEC_UPDATES; i++)
+		{
+			float time = i / 60f;
+			
+			// encode
+			BinaryProtocol.beginFrame(buffer, BinaryProtocol.UPDATE, i);
+			buffer.putShort((short) vehicles);
+			for(int v=0; v<vehicles; v++)
+			{
+				getVehicleState(v, time, position, rotation, wheel);
+				buffer.put(BinaryProtocol.CHANGE);
+				buffer.putShort((short) v);
+				encoders[v].encode(buffer, position, rotation, Float.NaN, wheel[0], wheel[1]);
+			}
+			BinaryProtocol.endFrame(buffer);
+			bytes += buffer.limit();
+			
+			// decode
+			buffer.position(BinaryProtocol.HEADER_SIZE);
+			int nrOfRecords = buffer.getShort();
+			for(int k=0; k<nrOfRecords; k++)
+			{
+				buffer.get();
+				StateDecoder decoder = decoders[buffer.getShort()];
+				decoder.decode(buffer);
+				decoder.getPosition(position);
+				decoder.getRotation(rotation);
+				checksum += position.getX() + position.getY() + position.getZ() + rotation.getW() + 
+						rotation.getX() + rotation.getY() + rotation.getZ() + decoder.getSteering() + 
+						decoder.getWheelPosition();
+			}
+		}
+		long duration = System.nanoTime() - start;
+		
+		printCodecResult("binary", bytes, duration, checksum);
+	}
+	
+	
+	private static void printCodecResult(String protocol, long bytes, long duration, float checksum)
+	{
+		System.out.println(String.format("  %-6s: %7.1f bytes/update, %8.2f us/update (checksum %.1f)", 
+				protocol, bytes / (float) CODEC_UPDATES, duration / 1000f / CODEC_UPDATES, checksum));
+	}
+	
+	
+	private static void benchmarkSession(boolean binary, int drivers, int updateRate, int seconds) 
+			throws Exception
+	{
+		LocalMultiDriverServer server = new LocalMultiDriverServer(0);
+		server.start();
+		
+		SimulatedDriver[] driverArray = new SimulatedDriver[drivers];
+		for(int i=0; i<drivers; i++)
+		{
+			driverArray[i] = new SimulatedDriver(server.getPort(), i, binary, updateRate);
+			driverArray[i].start();
+		}
+		
+		Thread.sleep(seconds * 1000L);
+		
+		long changes = 0;
+		long bytes = 0;
+		for(SimulatedDriver driver : driverArray)
+		{
+			driver.requestStop();
+			changes += driver.changesReceived;
+			bytes += driver.bytesReceived;
+		}
+		server.requestStop();
+		
+		float perDriverAndSecond = drivers * (float) seconds;
+		System.out.println(String.format("  %-6s: %8.1f vehicle updates/s, %9.1f bytes/s received per driver " +
+				"(expected %d vehicle updates/s)", binary ? "binary" : "XML", changes / perDriverAndSecond, 
+				bytes / perDriverAndSecond, (drivers - 1) * updateRate));
+	}
+	
+	
+	/**
+	 * Client sending the state of a simulated vehicle and counting received updates.
+	 */
+	private static class SimulatedDriver extends Thread
+	{
+		private Socket socket;
+		private int vehicle;
+		private boolean binary;
+		private int updateRate;
+		private volatile boolean stopRequested = false;
+		private volatile long changesReceived = 0;
+		private volatile long bytesReceived = 0;
+		
+		
+		public SimulatedDriver(int port, int vehicle, boolean binary, int updateRate) throws IOException
+		{
+			this.socket = new Socket("127.0.0.1", port);
+			this.socket.setTcpNoDelay(true);
+			this.vehicle = vehicle;
+			this.binary = binary;
+			this.updateRate = updateRate;
+		}
+		
+		
+		@Override
+		public void run()
+		{
+			try {
+				
+				OutputStream outputStream = socket.getOutputStream();
+				InputStream inputStream = socket.getInputStream();
+				
+				String protocolAttribute = binary ? " protocol=\"binary\"" : "";
+				outputStream.write(("<register" + protocolAttribute + "><modelPath>model.scene</modelPath>" +
+						"<driverName>driver" + vehicle + "</driverName></register>").getBytes("UTF-8"));
+				outputStream.flush();
+				
+				// wait for registration (XML updates may follow in the same read)
+				byte[] buffer = new byte[256];
+				StringBuilder reply = new StringBuilder();
+				while(reply.indexOf("/>") < 0)
+				{
+					int nrOfBytes = inputStream.read(buffer);
+					if(nrOfBytes < 0)
+						return;
+					reply.append(new String(buffer, 0, nrOfBytes, "UTF-8"));
+				}
+				reply.delete(0, reply.indexOf("/>") + 2);
+				
+				Thread receiver = binary ? new BinaryReceiver(inputStream) : new XMLReceiver(inputStream, reply);
+				receiver.start();
+				send(outputStream);
+				
+			} catch (IOException e) {
+				
+				if(!stopRequested)
+					e.printStackTrace();
+			}
+		}
+		
+		
+		private void send(OutputStream outputStream) throws IOException
+		{
+			Vector3f position = new Vector3f();
+			Quaternion rotation = new Quaternion();
+			float[] wheel = new float[2];
+			StateEncoder encoder = new StateEncoder();
+			ByteBuffer buffer = ByteBuffer.allocate(BinaryProtocol.HEADER_SIZE + BinaryProtocol.MAX_STATE_SIZE);
+			
+			long interval = 1000000000L / updateRate;
+			long start = System.nanoTime();
+			for(int i=0; !stopRequested; i++)
+			{
+				getVehicleState(vehicle, i / (float) updateRate, position, rotation, wheel);
+				
+				if(binary)
+				{
+					BinaryProtocol.beginFrame(buffer, BinaryProtocol.STATE, i);
+					encoder.encode(buffer, position, rotation, Float.NaN, wheel[0], wheel[1]);
+					BinaryProtocol.endFrame(buffer);
+					outputStream.write(buffer.array(), 0, buffer.limit());
+				}
+				else
+				{
+					String update = "<update id=\"" + vehicle + "\">" +
+							"<position x=\"" + position.getX() + "\" y=\"" + position.getY() + "\" z=\"" + 
+							position.getZ() + "\" />" + "<rotation w=\"" + rotation.getW() + "\" x=\"" + 
+							rotation.getX() + "\" y=\"" + rotation.getY() + "\" z=\"" + rotation.getZ() + "\"/>" +
+							"<wheel steering=\"" + wheel[0] + "\" position=\"" + wheel[1] + "\"/>" + "</update>";
+					outputStream.write(update.getBytes("UTF-8"));
+				}
+				outputStream.flush();
+				
+				long sleep = start + (i + 1) * interval - System.nanoTime();
+				if(sleep > 0)
+				{
+					try {
+						
+						Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
+						
+					} catch (InterruptedException e) {
+						
+						return;
+					}
+				}
+			}
+		}
+		
+		
+		public void requestStop() throws IOException
+		{
+			stopRequested = true;
+			socket.close();
+		}
+		
+		
+		private class XMLReceiver extends Thread
+		{
+			private InputStream inputStream;
+			private StringBuilder message;
+			
+			
+			public XMLReceiver(InputStream inputStream, StringBuilder message)
+			{
+				this.inputStream = inputStream;
+				this.message = message;
+			}
+			
+			
+			@Override
+			public void run()
+			{
+				byte[] buffer = new byte[10000];
+				DocumentBuilder documentBuilder;
+				
+				try {
+					
+					documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+					
+					while(!stopRequested)
+					{
+						int nrOfBytes = inputStream.read(buffer);
+						if(nrOfBytes < 0)
+							return;
+						bytesReceived += nrOfBytes;
+						message.append(new String(buffer, 0, nrOfBytes, "UTF-8"));
+						
+						// parse complete updates only
+						int end = message.lastIndexOf("</update>");
+						if(end < 0)
+							continue;
+						String updates = message.substring(0, end + 9);
+						message.delete(0, end + 9);
+						
+						Document document = documentBuilder.parse(
+								new InputSource(new StringReader("<multiDriver>" + updates + "</multiDriver>")));
+						changesReceived += document.getElementsByTagName("change").getLength();
+					}
+					
+				} catch (Exception e) {
+					
+					if(!stopRequested)
+						e.printStackTrace();
+				}
+			}
+		}
+		
+		
+		private class BinaryReceiver extends Thread
+		{
+			private InputStream inputStream;
+			
+			
+			public BinaryReceiver(InputStream inputStream)
+			{
+				this.inputStream = inputStream;
+			}
+			
+			
+			@Override
+			public void run()
+			{
+				FrameReader frameReader = new FrameReader();
+				Map<Integer, StateDecoder> decoderMap = new HashMap<Integer, StateDecoder>();
+				
+				try {
+					
+					while(!stopRequested)
+					{
+						int nrOfBytes = inputStream.read(frameReader.getArray(), frameReader.getWriteOffset(), 
+								frameReader.getRemainingCapacity());
+						if(nrOfBytes < 0)
+							return;
+						bytesReceived += nrOfBytes;
+						frameReader.received(nrOfBytes);
+						
+						ByteBuffer frame;
+						while((frame = frameReader.nextFrame()) != null)
+						{
+							if(frame.get() != BinaryProtocol.UPDATE)
+								continue;
+							frame.getInt();
+							
+							int nrOfRecords = frame.getShort();
+							for(int i=0; i<nrOfRecords; i++)
+							{
+								byte recordType = frame.get();
+								int handle = frame.getShort();
+								if(recordType == BinaryProtocol.ADD)
+								{
+									BinaryProtocol.getString(frame);
+									BinaryProtocol.getString(frame);
+									BinaryProtocol.getString(frame);
+									decoderMap.put(handle, new StateDecoder());
+								}
+								else if(recordType == BinaryProtocol.CHANGE)
+								{
+									decoderMap.get(handle).decode(frame);
+									changesReceived++;
+								}
+								else
+									decoderMap.remove(handle);
+							}
+						}
+					}
+					
+				} catch (Exception e) {
+					
+					if(!stopRequested)
+						e.printStackTrace();
+				}
+			}
+		}
+	}
+}
@@ -18,18 +18,21 @@
 
 package eu.opends.multiDriver;
 
-
-import java.net.Socket;
-import java.net.SocketException;
-import java.net.SocketTimeoutException;
+
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
-import java.io.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import com.jme3.bullet.control.VehicleControl;
 import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
+import com.jme3.scene.Node;
 
+import eu.opends.basics.SimulationBasics;
 import eu.opends.car.Car;
 import eu.opends.drivingTask.scenario.ScenarioLoader;
 import eu.opends.drivingTask.settings.SettingsLoader;
@@ -37,6 +40,13 @@ import eu.opends.drivingTask.settings.SettingsLoader.Setting;
 import eu.opends.environment.XMLParser;
 import eu.opends.main.SimulationDefaults;
 import eu.opends.main.Simulator;
+import eu.opends.multiDriver.BinaryProtocol.StateDecoder;
+import eu.opends.multiDriver.BinaryProtocol.StateEncoder;
+import eu.opends.network.Connection;
+import eu.opends.network.ConnectionListener;
+import eu.opends.network.LengthPrefixFramer;
+import eu.opends.network.MessageWorker;
+import eu.opends.network.XMLFragmentFramer;
 
 /**
  * This class represents the connector to the CAN-Interface. Steering, gas, brake and 
@@ -47,19 +57,83 @@ import eu.opends.main.Simulator;
  * 
  * @author Rafael Math
  */
-public class MultiDriverClient extends Thread
+public class MultiDriverClient implements ConnectionListener
 {
 	private Simulator sim;
-	private ArrayList<Update> updateList = new ArrayList<Update>();
 	private Car car;
 	private int framerate;
 	private boolean stoprequested;
 	private boolean errorOccurred;
 	private Calendar timeOfLastFire;
-	private PrintWriter printWriter;
-	private Socket socket;
+	private Connection connection;
+	private String shutDownMessage = "Connection to multi driver server closed";
 	private String id;
 	private ArrayList<String> registeredVehiclesList;
+	private float[] wheelAngles = new float[3];
+	
+	// binary protocol (if requested in settings and accepted by server)
+	private boolean binaryRequested;
+	private volatile boolean binaryMode = false;
+	private ByteBuffer sendBuffer = ByteBuffer.allocate(BinaryProtocol.HEADER_SIZE + BinaryProtocol.MAX_STATE_SIZE);
+	private StateEncoder stateEncoder = new StateEncoder();
+	private Map<Integer, RemoteVehicle> remoteVehicleMap = new HashMap<Integer, RemoteVehicle>();
+	private int sendSequenceNumber = 0;
+	private int receiveSequenceNumber = -1;
+	
+	// read time of the message currently evaluated (network thread for binary 
+	// frames, worker thread for XML); all updates of one socket read share the 
+	// same time
+	private long messageReceiveTime;
+	
+	// parses XML instructions, so the network thread only frames messages
+	private MessageWorker worker = new MessageWorker("MultiDriverClientWorker");
+	
+	// interpolation of remote vehicles (render thread only)
+	private boolean interpolationEnabled;
+	private long interpolationDelay;
+	private long maxExtrapolation;
+	private Map<String, InterpolatedVehicle> interpolatedVehicleMap = new HashMap<String, InterpolatedVehicle>();
+	private Vector3f interpolatedPosition = new Vector3f();
+	private Quaternion interpolatedRotation = new Quaternion();
+	
+	// statistics
+	private long messagesSent = 0;
+	private long bytesSent = 0;
+	private long messagesReceived = 0;
+	private long bytesReceived = 0;
+	private long sequenceGaps = 0;
+	
+	
+	/**
+	 * Remote vehicle whose pose is interpolated between received snapshots.
+	 */
+	private static class InterpolatedVehicle
+	{
+		private SnapshotInterpolator interpolator;
+		private VehicleControl control = null;
+		
+		
+		public InterpolatedVehicle(SnapshotInterpolator interpolator)
+		{
+			this.interpolator = interpolator;
+		}
+	}
+	
+	
+	/**
+	 * Current state of a vehicle received via the binary protocol.
+	 */
+	private static class RemoteVehicle
+	{
+		private String vehicleID;
+		private StateDecoder state = new StateDecoder();
+		
+		
+		public RemoteVehicle(String vehicleID)
+		{
+			this.vehicleID = vehicleID;
+		}
+	}
 	
 	
 	/**
@@ -70,8 +144,6 @@ public class MultiDriverClient extends Thread
 	 */
 	public MultiDriverClient(Simulator sim, String driverName)
     {
-		super();
-		
 		this.sim = sim;
 		this.car = sim.getCar();
 		stoprequested = false;
@@ -86,26 +158,34 @@ public class MultiDriverClient extends Thread
 		String ip = settingsLoader.getSetting(Setting.MultiDriver_ip, SimulationDefaults.MultiDriver_ip);
 		int port = settingsLoader.getSetting(Setting.MultiDriver_port, SimulationDefaults.MultiDriver_port);
 		framerate = settingsLoader.getSetting(Setting.MultiDriver_updateRate, SimulationDefaults.MultiDriver_updateRate);
+		String protocol = settingsLoader.getSetting(Setting.MultiDriver_protocol, SimulationDefaults.MultiDriver_protocol);
+		binaryRequested = protocol.equalsIgnoreCase(BinaryProtocol.NAME);
+		
+		interpolationEnabled = settingsLoader.getSetting(Setting.MultiDriver_interpolation_enabled, 
+				SimulationDefaults.MultiDriver_interpolation_enabled);
+		interpolationDelay = 1000000L * settingsLoader.getSetting(Setting.MultiDriver_interpolation_delay, 
+				SimulationDefaults.MultiDriver_interpolation_delay);
+		maxExtrapolation = 1000000L * settingsLoader.getSetting(Setting.MultiDriver_interpolation_maxExtrapolation, 
+				SimulationDefaults.MultiDriver_interpolation_maxExtrapolation);
 		
 		try {
 
-			// connect to Server
-			socket = new Socket(ip,port);
-			socket.setSoTimeout(10);
+			// connect to Server (XML messages will be passed to messageReceived())
+			connection = SimulationBasics.getNetworkTransport().connect(ip, port, 
+					new XMLFragmentFramer(BinaryProtocol.MAX_FRAME_SIZE), this);
 			
 		 	// send car data (model path and driver name) to multi driver server and flush
-			
-			String registerString = "<register><modelPath>" + carModelPath + "</modelPath><driverName>"
-										+ driverName + "</driverName></register>";
+			// (binary protocol will be used if confirmed by server)
+			String protocolAttribute = binaryRequested ? " protocol=\"" + BinaryProtocol.NAME + "\"" : "";
+			String registerString = "<register" + protocolAttribute + "><modelPath>" + carModelPath + 
+										"</modelPath><driverName>" + driverName + "</driverName></register>";
 			
 			// FIXME
 			/*
 			String registerString = "<multiDriver> <register id=\"salut\"> <modelPath>" + carModelPath + 
 										"</modelPath> <driverName>"	+ driverName + "</driverName> </register> </multiDriver>";
 			*/
-			printWriter = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()));
-		 	printWriter.print(registerString);
-		 	printWriter.flush();
+			connection.send(registerString);
 		 	
 		 	//System.out.print(registerString);
 
@@ -113,71 +193,104 @@ public class MultiDriverClient extends Thread
 			//e.printStackTrace();
 			System.err.println("No TCP connection possible to multi driver server at " + ip + ":" + port);
 			errorOccurred = true;
+			worker.close();
 		}
     }
 	
     
 	/**
-	 * Listens for incoming MD instructions (as XML), such as position and orientation updates, 
-	 * which will be forwarded to the XML-parser
+	 * Evaluates incoming MD instructions (as XML), such as position and orientation 
+	 * updates, or binary frames. Called on the network thread; XML instructions 
+	 * will be parsed by the worker.
 	 */
 	@Override
-	public void run() 
+	public void messageReceived(Connection connection, ByteBuffer message) 
 	{
-		String shutDownMessage = "Connection to multi driver server closed";
+		bytesReceived += message.remaining();
 		
-		// when loop is left, connection will be closed
-		// loop will be left when requested or error occurred
-		while(!stoprequested && !errorOccurred)
+		if(binaryMode)
 		{
+			messageReceiveTime = connection.getReadTime();
+			
 			try {
-
-				// delete "NUL" at the end of each line
-				String message = readMessage(socket).replace("\0", "");
 				
-				// print XML instruction
-				//System.out.println(message);
+				List<Update> updateList = new ArrayList<Update>();
+				evalFrame(message, updateList);
 				
-				// parse and evaluate XML instruction
-				// on "registered" --> call method setID();
-				// on "update" --> perform changes
-				// on "unregistered" --> call method requestStop()
-				XMLParser parser = new XMLParser("<multiDriver>" + message + "</multiDriver>");
-				parser.evalMultiDriverInstruction(sim, this);
-
-			} catch (SocketException e) {
+				if(!updateList.isEmpty())
+					enqueueUpdates(updateList);
 				
-				// will be thrown if e.g. server was shut down
-				shutDownMessage = "Multi driver server: connection closed by server";
-				errorOccurred = true;
+			} catch (IllegalStateException e) {
 				
-			} catch (StringIndexOutOfBoundsException e) {
+				// will be thrown if binary stream is corrupted
+				shutDownMessage = "Multi driver server: " + e.getMessage();
+				connection.close();
 				
-				// will be thrown if e.g. "stop server" button has been clicked
-				shutDownMessage = "Multi driver server: connection closed by server";
-				errorOccurred = true;
+			} catch (RuntimeException e) {
 				
-			} catch (SocketTimeoutException e) {
-				
-			} catch (Exception e) {
-				e.printStackTrace();
+				System.err.println("Multi driver server: malformed frame (" + e + ")");
 			}
-
 		}
+		else
+		{
+			// delete "NUL" at the end of each line
+			final String instruction = connection.getString(message).replace("\0", "");
+			final long readTime = connection.getReadTime();
+			messagesReceived++;
+			
+			Runnable task = new Runnable()
+			{
+				public void run()
+				{
+					evalInstruction(instruction, readTime);
+				}
+			};
+			
+			// the registration may switch to the binary protocol, hence the 
+			// following bytes must not be framed before it has been evaluated
+			if(binaryRequested && id == null)
+				worker.submitAndWait(task);
+			else
+				worker.submit(task);
+		}
+	}
+	
+	
+	/**
+	 * Parses and evaluates the given XML instruction (worker thread).
+	 */
+	private void evalInstruction(String instruction, long readTime)
+	{
+		messageReceiveTime = readTime;
 		
-		// close TCP connection to multi driver server if connected at all
-		try {
-			if ((socket != null) && (printWriter != null))
-			{			
-				// close socket connection
-				printWriter.close();
-				socket.close();
-					
-				System.out.println(shutDownMessage);
-			}
-		} catch (Exception ex) {
-			System.err.println("Could not close connection to multi driver server");
+		// print XML instruction
+		//System.out.println(instruction);
+		
+		// parse and evaluate XML instruction
+		// on "registered" --> call method setID();
+		// on "update" --> perform changes
+		// on "unregistered" --> call method requestStop()
+		XMLParser parser = new XMLParser("<multiDriver>" + instruction + "</multiDriver>");
+		parser.evalMultiDriverInstruction(sim, this);
+	}
+	
+	
+	@Override
+	public void connectionClosed(Connection connection)
+	{
+		synchronized(this)
+		{
+			if(!stoprequested)
+				shutDownMessage = "Multi driver server: connection closed by server";
+			
+			errorOccurred = true;
 		}
+		
+		// pending XML instructions are outdated
+		worker.close();
+		
+		System.out.println(shutDownMessage);
+		System.out.println("Multi driver protocol: " + getStatistics());
 	}
 
 	
@@ -187,7 +300,7 @@ public class MultiDriverClient extends Thread
 	public synchronized void sendCarData()
 	{
 		// break, if no connection established
-		if(socket == null || id == null || errorOccurred)
+		if(connection == null || id == null || errorOccurred)
 			return;
 		
 		// generate time stamp
@@ -201,10 +314,18 @@ public class MultiDriverClient extends Thread
 			Quaternion rot = car.getRotation();
 			//float heading = car.getHeadingDegree();
 			Quaternion wheelRot = car.getCarControl().getWheel(0).getWheelSpatial().getLocalRotation();
-			float array[] = new float[3];
-			wheelRot.toAngles(array);
-			float wheelSteering = array[1];
-			float wheelPositon = array[0];
+			wheelRot.toAngles(wheelAngles);
+			float wheelSteering = wheelAngles[1];
+			float wheelPositon = wheelAngles[0];
+			
+			if(binaryMode)
+			{
+				BinaryProtocol.beginFrame(sendBuffer, BinaryProtocol.STATE, sendSequenceNumber++);
+				stateEncoder.encode(sendBuffer, pos, rot, Float.NaN, wheelSteering, wheelPositon);
+				BinaryProtocol.endFrame(sendBuffer);
+				writeFrame();
+				return;
+			}
 
 		 	// send car data (ID, position and rotation) to multi driver server and flush
 			String positionString = "<update id=\"" + id + "\">" +
@@ -214,8 +335,11 @@ public class MultiDriverClient extends Thread
 										"<wheel steering=\"" + wheelSteering + "\" position=\"" + wheelPositon + "\"/>" +
 									"</update>";
 	
-		 	printWriter.print(positionString);
-		 	printWriter.flush();
+		 	if(connection.send(positionString))
+		 	{
+		 		messagesSent++;
+		 		bytesSent += positionString.length();
+		 	}
 		}
 	}
 	
@@ -229,29 +353,74 @@ public class MultiDriverClient extends Thread
 	
 	
 	/**
-	 * Requests the connection to close after the current loop
+	 * Sets the ID assigned by the server and switches to the binary protocol 
+	 * if requested and confirmed by the server.
+	 * 
+	 * @param id
+	 * 			ID of this client.
+	 * 
+	 * @param protocol
+	 * 			Protocol confirmed by the server (empty string if not specified).
+	 */
+	public synchronized void setID(String id, String protocol) 
+	{
+		if(binaryRequested)
+		{
+			if(BinaryProtocol.NAME.equalsIgnoreCase(protocol))
+			{
+				// all following bytes are length-prefixed frames
+				connection.setFramer(new LengthPrefixFramer(BinaryProtocol.MAX_FRAME_SIZE));
+				binaryMode = true;
+				System.out.println("Multi driver server: using binary protocol");
+			}
+			else
+				System.out.println("Multi driver server does not support binary protocol; using XML");
+		}
+		
+		setID(id);
+	}
+	
+	
+	/**
+	 * Closes the connection (after pending messages have been sent)
 	 */
 	public synchronized void requestStop(String id) 
 	{
 		if(id.equals(this.id))
+		{
 			stoprequested = true;
+			connection.close();
+		}
 	}
 	
 	
 	public synchronized void close() 
 	{
+		for(Map.Entry<String, InterpolatedVehicle> entry : interpolatedVehicleMap.entrySet())
+			System.out.println("Multi driver vehicle '" + entry.getKey() + "': " + 
+					entry.getValue().interpolator.getStatistics());
+		
 		// break, if no connection established
-		if(socket == null || id == null || errorOccurred)	
+		if(connection == null || id == null || errorOccurred)	
 		{
 			stoprequested = true;
+			if(connection != null)
+				connection.close();
+			return;
+		}
+
+		if(binaryMode)
+		{
+			BinaryProtocol.beginFrame(sendBuffer, BinaryProtocol.UNREGISTER, sendSequenceNumber++);
+			BinaryProtocol.endFrame(sendBuffer);
+			writeFrame();
 			return;
 		}
 
 	 	// send unregister string to multi driver server and flush
 		String outputString = "<unregister>" + id + "</unregister>";
 
-	 	printWriter.print(outputString);
-	 	printWriter.flush();
+	 	connection.send(outputString);
 	}
     
 	
@@ -270,27 +439,147 @@ public class MultiDriverClient extends Thread
 	public synchronized void removeRegisteredVehicle(String vehicleID)
 	{
 		registeredVehiclesList.remove(vehicleID);
+		interpolatedVehicleMap.remove(vehicleID);
+	}
+	
+	
+	public boolean isInterpolationEnabled()
+	{
+		return interpolationEnabled;
+	}
+	
+	
+	/**
+	 * Adds a received pose of a remote vehicle, which will be interpolated 
+	 * in the following frames. Must be called from the render thread.
+	 * 
+	 * @param vehicleID
+	 * 			ID of the remote vehicle.
+	 * 
+	 * @param time
+	 * 			Arrival time (System.nanoTime()).
+	 * 
+	 * @param position
+	 * 			Position or null if not changed.
+	 * 
+	 * @param rotation
+	 * 			Rotation or null if not changed.
+	 */
+	public void addSnapshot(String vehicleID, long time, Vector3f position, Quaternion rotation)
+	{
+		InterpolatedVehicle vehicle = interpolatedVehicleMap.get(vehicleID);
+		if(vehicle == null)
+		{
+			vehicle = new InterpolatedVehicle(new SnapshotInterpolator(interpolationDelay, maxExtrapolation));
+			interpolatedVehicleMap.put(vehicleID, vehicle);
+		}
+		
+		vehicle.interpolator.addSnapshot(time, position, rotation);
 	}
 	
 	
 	/**
-	 * Reads an incoming message from the socket connection.
+	 * Returns the interpolator of the given remote vehicle, e.g. to query 
+	 * update interval, jitter and interpolation delay.
 	 * 
-	 * @param socket
-	 * 			Socket connection
+	 * @param vehicleID
+	 * 			ID of the remote vehicle.
 	 * 
 	 * @return
-	 * 			Message string of up to 10,000 characters
+	 * 			Interpolator or null if no pose has been received yet.
+	 */
+	public SnapshotInterpolator getSnapshotInterpolator(String vehicleID)
+	{
+		InterpolatedVehicle vehicle = interpolatedVehicleMap.get(vehicleID);
+		return (vehicle != null) ? vehicle.interpolator : null;
+	}
+	
+	
+	/**
+	 * Returns the number of messages and bytes sent and received (binary 
+	 * protocol: frames; XML: reads) and the number of missing frames.
 	 * 
-	 * @throws IOException
+	 * @return
+	 * 			Statistics string.
 	 */
-	private String readMessage(Socket socket) throws IOException 
+	public synchronized String getStatistics()
 	{
-		BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-		char[] buffer = new char[10000];
-		int nrOfChars = bufferedReader.read(buffer, 0, buffer.length);
+		return (binaryMode ? "binary" : "XML") + ", sent " + messagesSent + " messages (" + bytesSent + 
+				" bytes), received " + messagesReceived + " messages (" + bytesReceived + " bytes), " + 
+				sequenceGaps + " sequence gaps";
+	}
+	
+	
+	private void writeFrame()
+	{
+		if(connection.send(sendBuffer))
+		{
+			messagesSent++;
+			bytesSent += sendBuffer.limit();
+		}
+		else
+		{
+			// server would receive a delta to a state it does not know
+			stateEncoder.requestKeyframe();
+		}
+	}
+	
+	
+	private void evalFrame(ByteBuffer frame, List<Update> updateList)
+	{
+		byte type = frame.get();
+		int sequenceNumber = frame.getInt();
 		
-		return new String(buffer, 0, nrOfChars);
+		if(receiveSequenceNumber >= 0 && sequenceNumber != receiveSequenceNumber + 1)
+			sequenceGaps++;
+		receiveSequenceNumber = sequenceNumber;
+		messagesReceived++;
+		
+		if(type == BinaryProtocol.UPDATE)
+		{
+			int nrOfRecords = frame.getShort() & 0xFFFF;
+			for(int i=0; i<nrOfRecords; i++)
+			{
+				byte recordType = frame.get();
+				int handle = frame.getShort() & 0xFFFF;
+				
+				if(recordType == BinaryProtocol.ADD)
+				{
+					String vehicleID = BinaryProtocol.getString(frame);
+					String modelPath = BinaryProtocol.getString(frame);
+					String driverName = BinaryProtocol.getString(frame);
+					remoteVehicleMap.put(handle, new RemoteVehicle(vehicleID));
+					updateList.add(new AddUpdate(sim, vehicleID, modelPath, driverName));
+				}
+				else if(recordType == BinaryProtocol.CHANGE)
+				{
+					RemoteVehicle vehicle = remoteVehicleMap.get(handle);
+					if(vehicle != null)
+					{
+						vehicle.state.decode(frame);
+						updateList.add(new ChangeUpdate(sim, vehicle.vehicleID, vehicle.state, messageReceiveTime));
+					}
+					else
+					{
+						// skip record of unknown vehicle
+						new StateDecoder().decode(frame);
+						System.err.println("Multi driver server: change of unknown vehicle " + handle);
+					}
+				}
+				else if(recordType == BinaryProtocol.REMOVE)
+				{
+					RemoteVehicle vehicle = remoteVehicleMap.remove(handle);
+					if(vehicle != null)
+						updateList.add(new RemoveUpdate(sim, vehicle.vehicleID));
+				}
+				else
+					throw new IllegalStateException("Unknown record type " + recordType);
+			}
+		}
+		else if(type == BinaryProtocol.UNREGISTERED)
+		{
+			requestStop(id);
+		}
 	}
 	
 	
@@ -345,38 +634,98 @@ public class MultiDriverClient extends Thread
 
 	public void addVehicle(String vehicleID, String modelPath, String driverName)
 	{
-		updateList.add(new AddUpdate(sim, vehicleID, modelPath, driverName));
+		enqueueUpdate(new AddUpdate(sim, vehicleID, modelPath, driverName));
 	}
 	
 
 	public void changeVehicle(String vehicleID, String positionString, String rotationString, String headingString, 
 			String wheelString)
 	{
-		updateList.add(new ChangeUpdate(sim, vehicleID, positionString, rotationString, headingString, wheelString));
+		enqueueUpdate(new ChangeUpdate(sim, vehicleID, positionString, rotationString, headingString, 
+				wheelString, messageReceiveTime));
 	}
 	
 	
 	public void removeVehicle(String vehicleID)
 	{
-		updateList.add(new RemoveUpdate(sim, vehicleID));
+		enqueueUpdate(new RemoveUpdate(sim, vehicleID));
 	}
 	
 
 	public void update() 
 	{
-		updateSceneGraph();
-		sendCarData();		
+		sendCarData();
+		
+		if(interpolationEnabled)
+			updateRemoteVehicles();
 	}
 	
 	
-	public void updateSceneGraph()
-	{		
-		while(updateList.size() > 0)	
+	/**
+	 * Applies the interpolated poses of all remote vehicles.
+	 */
+	private void updateRemoteVehicles()
+	{
+		long now = System.nanoTime();
+		
+		for(Map.Entry<String, InterpolatedVehicle> entry : interpolatedVehicleMap.entrySet())
 		{
-			Update update = updateList.get(0);
-			update.performUpdate();
-			updateList.remove(0);
+			InterpolatedVehicle vehicle = entry.getValue();
+			
+			if(vehicle.control == null)
+			{
+				Node carNode = sim.getSceneRegistry().getNode(entry.getKey());
+				if(carNode == null)
+					continue;
+				vehicle.control = carNode.getControl(VehicleControl.class);
+			}
+			
+			if(vehicle.control != null && 
+					vehicle.interpolator.getPose(now, interpolatedPosition, interpolatedRotation))
+			{
+				vehicle.control.setPhysicsLocation(interpolatedPosition);
+				vehicle.control.setPhysicsRotation(interpolatedRotation);
+			}
 		}
 	}
+	
+	
+	/**
+	 * Passes the given updates from the receiving thread to the render thread, 
+	 * where they will be applied to the scene graph (in order of arrival).
+	 * 
+	 * @param updateList
+	 * 			Scene graph updates
+	 */
+	private void enqueueUpdates(final List<Update> updateList)
+	{
+		SimulationBasics.getScheduler().enqueue(new Runnable()
+		{
+			public void run()
+			{
+				for(Update update : updateList)
+					update.performUpdate();
+			}
+		});
+	}
+	
+	
+	/**
+	 * Passes the given update from the receiving thread to the render thread, 
+	 * where it will be applied to the scene graph (in order of arrival).
+	 * 
+	 * @param update
+	 * 			Scene graph update
+	 */
+	private void enqueueUpdate(final Update update)
+	{
+		SimulationBasics.getScheduler().enqueue(new Runnable()
+		{
+			public void run()
+			{
+				update.performUpdate();
+			}
+		});
+	}
 
 }
@@ -46,6 +46,7 @@ public class RemoveUpdate implements Update
 			Spatial object = sim.getSceneNode().getChild(vehicleID);
 			VehicleControl control = (VehicleControl) object.getControl(0);
 			sim.getPhysicsSpace().remove(control);
+			sim.getSceneRegistry().unregister(object);
 			sim.getSceneNode().detachChild(object);
 			
 			sim.getMultiDriverClient().removeRegisteredVehicle(vehicleID);
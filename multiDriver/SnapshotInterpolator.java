@@ -0,0 +1,278 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.multiDriver;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+
+/**
+ * Buffer of time stamped position/rotation snapshots of a remote vehicle. 
+ * The vehicle is rendered with a delay (interpolation delay) behind the 
+ * arrival of the latest snapshot, so the pose can be interpolated between 
+ * the two snapshots enclosing the render time even if snapshots arrive at a 
+ * lower rate than frames are rendered. If the next snapshot is late, the pose 
+ * will be extrapolated from the last velocity (dead reckoning) for up to 
+ * maxExtrapolation and held afterwards.
+ * 
+ * The interpolation delay adapts to the measured update interval and arrival 
+ * jitter unless a fixed delay is given.
+ * 
+ * @author Rafael Math
+ */
+public class SnapshotInterpolator
+{
+	private static final int BUFFER_SIZE = 32;
+	
+	// weight of new samples in the moving averages of interval and jitter
+	private static final float SMOOTHING = 1f / 16f;
+	
+	// snapshots arriving closer together (nanoseconds) are considered to be 
+	// received in the same read; velocities are never derived from shorter intervals
+	private static final long MIN_INTERVAL = 1000000;
+	
+	private long[] timeArray = new long[BUFFER_SIZE];
+	private Vector3f[] positionArray = new Vector3f[BUFFER_SIZE];
+	private Quaternion[] rotationArray = new Quaternion[BUFFER_SIZE];
+	private int newest = -1;
+	private int count = 0;
+	
+	private long fixedDelay;
+	private long maxExtrapolation;
+	
+	// statistics (nanoseconds)
+	private float meanInterval = 0;
+	private float jitter = 0;
+	private long interpolatedFrames = 0;
+	private long extrapolatedFrames = 0;
+	private long heldFrames = 0;
+	private long droppedSnapshots = 0;
+	
+	private Vector3f velocity = new Vector3f();
+	
+	
+	/**
+	 * Creates a new interpolator.
+	 * 
+	 * @param fixedDelay
+	 * 			Interpolation delay in nanoseconds (0: adaptive).
+	 * 
+	 * @param maxExtrapolation
+	 * 			Maximum time (in nanoseconds) to extrapolate beyond the latest snapshot.
+	 */
+	public SnapshotInterpolator(long fixedDelay, long maxExtrapolation)
+	{
+		this.fixedDelay = fixedDelay;
+		this.maxExtrapolation = maxExtrapolation;
+		
+		for(int i=0; i<BUFFER_SIZE; i++)
+		{
+			positionArray[i] = new Vector3f();
+			rotationArray[i] = new Quaternion();
+		}
+	}
+	
+	
+	/**
+	 * Adds a snapshot. Missing values will be taken from the previous snapshot. 
+	 * A snapshot arriving less than MIN_INTERVAL after the previous one (i.e. 
+	 * received with the same read) replaces the previous one.
+	 * 
+	 * @param time
+	 * 			Arrival time (System.nanoTime()).
+	 * 
+	 * @param position
+	 * 			Position of the vehicle or null if not changed.
+	 * 
+	 * @param rotation
+	 * 			Rotation of the vehicle or null if not changed.
+	 */
+	public void addSnapshot(long time, Vector3f position, Quaternion rotation)
+	{
+		if(count > 0)
+		{
+			long interval = time - timeArray[newest];
+			if(interval < MIN_INTERVAL)
+			{
+				// arrived in the same read: replace previous snapshot
+				droppedSnapshots++;
+				set(newest, position, rotation);
+				return;
+			}
+			
+			// moving averages of interval and deviation (cf. RTP jitter estimation)
+			if(count == 1)
+				meanInterval = interval;
+			else
+			{
+				jitter += (Math.abs(interval - meanInterval) - jitter) * SMOOTHING;
+				meanInterval += (interval - meanInterval) * SMOOTHING;
+			}
+		}
+		
+		int previous = newest;
+		newest = (newest + 1) % BUFFER_SIZE;
+		count = Math.min(count + 1, BUFFER_SIZE);
+		timeArray[newest] = time;
+		
+		if(previous >= 0)
+		{
+			positionArray[newest].set(positionArray[previous]);
+			rotationArray[newest].set(rotationArray[previous]);
+		}
+		set(newest, position, rotation);
+	}
+	
+	
+	private void set(int index, Vector3f position, Quaternion rotation)
+	{
+		if(position != null)
+			positionArray[index].set(position);
+		
+		if(rotation != null)
+			rotationArray[index].set(rotation);
+	}
+	
+	
+	/**
+	 * Computes the pose of the vehicle to render at the given time.
+	 * 
+	 * @param renderTime
+	 * 			Current time (System.nanoTime()).
+	 * 
+	 * @param storePosition
+	 * 			Vector the position will be written to.
+	 * 
+	 * @param storeRotation
+	 * 			Quaternion the rotation will be written to.
+	 * 
+	 * @return
+	 * 			False, if no snapshot is available.
+	 */
+	public boolean getPose(long renderTime, Vector3f storePosition, Quaternion storeRotation)
+	{
+		if(count == 0)
+			return false;
+		
+		long targetTime = renderTime - getDelay();
+		
+		// target time after latest snapshot: extrapolate
+		if(targetTime >= timeArray[newest] || count == 1)
+		{
+			long extrapolation = Math.min(targetTime - timeArray[newest], maxExtrapolation);
+			storePosition.set(positionArray[newest]);
+			storeRotation.set(rotationArray[newest]);
+			
+			if(count > 1 && extrapolation > 0)
+			{
+				int previous = (newest + BUFFER_SIZE - 1) % BUFFER_SIZE;
+				float interval = Math.max(timeArray[newest] - timeArray[previous], MIN_INTERVAL) / 1E9f;
+				positionArray[newest].subtract(positionArray[previous], velocity).divideLocal(interval);
+				storePosition.addLocal(velocity.multLocal(extrapolation / 1E9f));
+				
+				if(extrapolation < maxExtrapolation)
+					extrapolatedFrames++;
+				else
+					heldFrames++;
+			}
+			else if(count > 1)
+				interpolatedFrames++;
+			
+			return true;
+		}
+		
+		// find snapshots enclosing target time (newest first)
+		int later = newest;
+		for(int i=1; i<count; i++)
+		{
+			int earlier = (newest + BUFFER_SIZE - i) % BUFFER_SIZE;
+			if(timeArray[earlier] <= targetTime)
+			{
+				float fraction = (targetTime - timeArray[earlier]) / (float) (timeArray[later] - timeArray[earlier]);
+				positionArray[later].subtract(positionArray[earlier], storePosition).multLocal(fraction).addLocal(positionArray[earlier]);
+				storeRotation.slerp(rotationArray[earlier], rotationArray[later], fraction);
+				interpolatedFrames++;
+				return true;
+			}
+			later = earlier;
+		}
+		
+		// target time before oldest snapshot (e.g. delay increased)
+		storePosition.set(positionArray[later]);
+		storeRotation.set(rotationArray[later]);
+		heldFrames++;
+		return true;
+	}
+	
+	
+	/**
+	 * @return
+	 * 			Current interpolation delay in nanoseconds: fixed or mean update 
+	 * 			interval plus twice the jitter (covers late snapshots).
+	 */
+	public long getDelay()
+	{
+		if(fixedDelay > 0)
+			return fixedDelay;
+		
+		return (long) (meanInterval + 2 * jitter);
+	}
+	
+	
+	/**
+	 * @return
+	 * 			Mean time between two snapshots in milliseconds.
+	 */
+	public float getMeanInterval()
+	{
+		return meanInterval / 1E6f;
+	}
+	
+	
+	/**
+	 * @return
+	 * 			Mean deviation of the time between two snapshots from the mean 
+	 * 			interval in milliseconds.
+	 */
+	public float getJitter()
+	{
+		return jitter / 1E6f;
+	}
+	
+	
+	/**
+	 * @return
+	 * 			Time since arrival of the latest snapshot in milliseconds.
+	 */
+	public float getSnapshotAge(long now)
+	{
+		if(count == 0)
+			return Float.NaN;
+		
+		return (now - timeArray[newest]) / 1E6f;
+	}
+	
+	
+	public String getStatistics()
+	{
+		long frames = interpolatedFrames + extrapolatedFrames + heldFrames;
+		return String.format("interval %.1f ms, jitter %.1f ms, delay %.1f ms, frames: %d interpolated, " +
+				"%d extrapolated, %d held (of %d), %d snapshots replaced", getMeanInterval(), getJitter(), 
+				getDelay() / 1E6f, interpolatedFrames, extrapolatedFrames, heldFrames, frames, droppedSnapshots);
+	}
+}
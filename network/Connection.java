@@ -0,0 +1,420 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+
+/**
+ * TCP connection managed by a NetworkTransport. Incoming bytes are read into 
+ * a reusable direct buffer and split into messages by the given framer.
+ * 
+ * Messages may be sent from any thread without blocking: they are appended 
+ * to a direct output buffer and written immediately if nothing is pending. 
+ * If the peer cannot keep up, subsequent messages are coalesced and written 
+ * as soon as the socket becomes writable; messages not fitting into the 
+ * output buffer will be dropped (and counted).
+ * 
+ * @author Rafael Math
+ */
+public class Connection
+{
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private NetworkTransport transport;
+	private String name;
+	private SocketChannel channel;
+	private SelectionKey key = null;
+	private volatile MessageFramer framer;
+	private volatile ConnectionListener listener;
+	
+	// I/O thread only
+	private ByteBuffer readBuffer;
+	private ByteBuffer messageView;
+	private byte[] stringBuffer = new byte[1024];
+	private long readTime = 0;
+	
+	// guarded by writeBuffer
+	private ByteBuffer writeBuffer;
+	private boolean writeInterest = false;
+	private boolean closeRequested = false;
+	
+	private volatile boolean isOpen = true;
+	
+	// statistics
+	private volatile long messagesReceived = 0;
+	private volatile long bytesReceived = 0;
+	private volatile long messagesSent = 0;
+	private volatile long bytesSent = 0;
+	private volatile long socketWrites = 0;
+	private volatile long droppedMessages = 0;
+	private volatile int maxPendingBytes = 0;
+	
+	
+	Connection(NetworkTransport transport, String name, SocketChannel channel, MessageFramer framer, 
+			ConnectionListener listener, int bufferSize)
+	{
+		this.transport = transport;
+		this.name = name;
+		this.channel = channel;
+		this.framer = framer;
+		this.listener = listener;
+		
+		readBuffer = ByteBuffer.allocateDirect(bufferSize);
+		messageView = readBuffer.duplicate();
+		writeBuffer = ByteBuffer.allocateDirect(bufferSize);
+	}
+	
+	
+	public String getName()
+	{
+		return name;
+	}
+	
+	
+	public boolean isOpen()
+	{
+		return isOpen;
+	}
+	
+	
+	/**
+	 * Changes the message format, e.g. after a protocol has been negotiated. 
+	 * If called by the listener (or by a MessageWorker the listener waits for), 
+	 * the new framer applies to all bytes following the current message.
+	 * 
+	 * @param framer
+	 * 			New framer (null: incoming bytes will be discarded).
+	 */
+	public void setFramer(MessageFramer framer)
+	{
+		this.framer = framer;
+	}
+	
+	
+	public void setListener(ConnectionListener listener)
+	{
+		this.listener = listener;
+	}
+	
+	
+	/**
+	 * Sends the given bytes.
+	 * 
+	 * @return
+	 * 			False, if the connection is closed or the message has been dropped
+	 * 			because too many bytes are pending.
+	 */
+	public boolean send(byte[] data, int offset, int length)
+	{
+		synchronized(writeBuffer)
+		{
+			if(!isOpen || closeRequested)
+				return false;
+			
+			if(writeBuffer.remaining() < length)
+			{
+				droppedMessages++;
+				return false;
+			}
+			
+			boolean isIdle = (writeBuffer.position() == 0);
+			writeBuffer.put(data, offset, length);
+			messagesSent++;
+			maxPendingBytes = Math.max(maxPendingBytes, writeBuffer.position());
+			
+			// otherwise data will be written when socket becomes writable
+			if(isIdle)
+				flush();
+			
+			return true;
+		}
+	}
+	
+	
+	/**
+	 * Sends the bytes between position and limit of the given buffer (the 
+	 * position of the buffer will not be changed).
+	 */
+	public boolean send(ByteBuffer data)
+	{
+		synchronized(writeBuffer)
+		{
+			if(!isOpen || closeRequested)
+				return false;
+			
+			if(writeBuffer.remaining() < data.remaining())
+			{
+				droppedMessages++;
+				return false;
+			}
+			
+			boolean isIdle = (writeBuffer.position() == 0);
+			writeBuffer.put(data.duplicate());
+			messagesSent++;
+			maxPendingBytes = Math.max(maxPendingBytes, writeBuffer.position());
+			
+			if(isIdle)
+				flush();
+			
+			return true;
+		}
+	}
+	
+	
+	/**
+	 * Sends the given string (UTF-8 encoded).
+	 */
+	public boolean send(String message)
+	{
+		byte[] data = message.getBytes(UTF8);
+		return send(data, 0, data.length);
+	}
+	
+	
+	/**
+	 * Decodes the given message (UTF-8). Must only be called by the listener.
+	 * 
+	 * @param message
+	 * 			Message passed to the listener (will be consumed).
+	 * 
+	 * @return
+	 * 			Message string.
+	 */
+	public String getString(ByteBuffer message)
+	{
+		int length = message.remaining();
+		if(stringBuffer.length < length)
+			stringBuffer = new byte[Math.max(length, 2 * stringBuffer.length)];
+		
+		message.get(stringBuffer, 0, length);
+		return new String(stringBuffer, 0, length, UTF8);
+	}
+	
+	
+	/**
+	 * Closes the connection after all pending bytes have been written.
+	 */
+	public void close()
+	{
+		synchronized(writeBuffer)
+		{
+			if(!isOpen || closeRequested)
+				return;
+			
+			closeRequested = true;
+			
+			if(writeBuffer.position() == 0)
+				transport.closeConnection(this, null);
+		}
+	}
+	
+	
+	public String getStatistics()
+	{
+		return name + ": received " + messagesReceived + " messages (" + bytesReceived + " bytes), sent " + 
+				messagesSent + " messages (" + bytesSent + " bytes in " + socketWrites + " writes), " + 
+				droppedMessages + " dropped, max. " + maxPendingBytes + " bytes pending";
+	}
+	
+	
+	SocketChannel getChannel()
+	{
+		return channel;
+	}
+	
+	
+	/**
+	 * Called on the I/O thread after the channel has been registered.
+	 */
+	void setKey(SelectionKey key)
+	{
+		synchronized(writeBuffer)
+		{
+			this.key = key;
+			updateInterest();
+		}
+	}
+	
+	
+	/**
+	 * Writes pending bytes. Caller must hold the write lock.
+	 */
+	private void flush()
+	{
+		writeBuffer.flip();
+		
+		try {
+			
+			int nrOfBytes = channel.write(writeBuffer);
+			bytesSent += nrOfBytes;
+			socketWrites++;
+			
+		} catch (IOException e) {
+			
+			writeBuffer.clear();
+			transport.closeConnection(this, e);
+			return;
+		}
+		
+		boolean isPending = writeBuffer.hasRemaining();
+		writeBuffer.compact();
+		
+		if(isPending != writeInterest)
+		{
+			writeInterest = isPending;
+			transport.execute(new Runnable()
+			{
+				public void run()
+				{
+					synchronized(writeBuffer)
+					{
+						updateInterest();
+					}
+				}
+			});
+		}
+		
+		if(!isPending && closeRequested)
+			transport.closeConnection(this, null);
+	}
+	
+	
+	private void updateInterest()
+	{
+		if(key != null && key.isValid())
+			key.interestOps(SelectionKey.OP_READ | (writeInterest ? SelectionKey.OP_WRITE : 0));
+	}
+	
+	
+	/**
+	 * Called on the I/O thread if the socket is writable.
+	 */
+	void onWritable()
+	{
+		synchronized(writeBuffer)
+		{
+			if(writeBuffer.position() > 0)
+				flush();
+		}
+	}
+	
+	
+	/**
+	 * Returns the time of the socket read the message currently passed to the 
+	 * listener has been received with. All messages of one read share the same 
+	 * time. Must be called from the listener (I/O thread).
+	 * 
+	 * @return
+	 * 			Read time (System.nanoTime()).
+	 */
+	public long getReadTime()
+	{
+		return readTime;
+	}
+	
+	
+	/**
+	 * Called on the I/O thread if bytes are available. Passes all complete 
+	 * messages to the listener.
+	 */
+	void onReadable() throws IOException
+	{
+		int nrOfBytes = channel.read(readBuffer);
+		if(nrOfBytes < 0)
+		{
+			transport.closeConnection(this, null);
+			return;
+		}
+		bytesReceived += nrOfBytes;
+		readTime = System.nanoTime();
+		
+		readBuffer.flip();
+		
+		MessageFramer currentFramer;
+		while((currentFramer = framer) != null && readBuffer.hasRemaining())
+		{
+			int length = currentFramer.getMessageLength(readBuffer);
+			if(length <= 0)
+				break;
+			
+			int start = readBuffer.position();
+			messageView.clear();
+			messageView.limit(start + length - currentFramer.getTrailerLength());
+			messageView.position(start + currentFramer.getHeaderLength());
+			readBuffer.position(start + length);
+			messagesReceived++;
+			
+			ConnectionListener currentListener = listener;
+			if(currentListener != null)
+			{
+				try {
+					
+					currentListener.messageReceived(this, messageView);
+					
+				} catch (RuntimeException e) {
+					
+					e.printStackTrace();
+				}
+			}
+		}
+		
+		if(framer == null)
+			readBuffer.position(readBuffer.limit());
+		
+		readBuffer.compact();
+		
+		if(!readBuffer.hasRemaining())
+			throw new IOException("Message exceeds buffer size of " + readBuffer.capacity() + " bytes");
+	}
+	
+	
+	/**
+	 * Called on the I/O thread when the connection has been closed.
+	 */
+	void onClosed()
+	{
+		synchronized(writeBuffer)
+		{
+			if(!isOpen)
+				return;
+			
+			isOpen = false;
+		}
+		
+		try {
+			
+			if(key != null)
+				key.cancel();
+			
+			channel.close();
+			
+		} catch (IOException e) {
+			
+			e.printStackTrace();
+		}
+		
+		ConnectionListener currentListener = listener;
+		if(currentListener != null)
+			currentListener.connectionClosed(this);
+	}
+}
@@ -0,0 +1,52 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.network;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives messages and the close event of a connection. All methods will be 
+ * called on the I/O thread of the NetworkTransport and must not block.
+ * 
+ * @author Rafael Math
+ */
+public interface ConnectionListener
+{
+	/**
+	 * Will be called for each complete message.
+	 * 
+	 * @param connection
+	 * 			Connection the message has been received from.
+	 * 
+	 * @param message
+	 * 			Content of the message (between position and limit). The buffer
+	 * 			is only valid during this call and must not be kept.
+	 */
+	public void messageReceived(Connection connection, ByteBuffer message);
+	
+	
+	/**
+	 * Will be called once after the connection has been closed (by either side 
+	 * or due to an error).
+	 * 
+	 * @param connection
+	 * 			Closed connection.
+	 */
+	public void connectionClosed(Connection connection);
+}
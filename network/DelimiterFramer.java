@@ -0,0 +1,89 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.network;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Messages ending with a given delimiter (e.g. "\n" or "&lt;/Message&gt;").
+ * 
+ * @author Rafael Math
+ */
+public class DelimiterFramer implements MessageFramer
+{
+	private byte[] delimiter;
+	private boolean includeDelimiter;
+	
+	// bytes already searched without finding the delimiter
+	private int searched = 0;
+	
+	
+	/**
+	 * @param delimiter
+	 * 			Delimiter (UTF-8 encoded).
+	 * 
+	 * @param includeDelimiter
+	 * 			If true, the delimiter will be passed to the listener as part of 
+	 * 			the message (e.g. closing XML tag).
+	 */
+	public DelimiterFramer(String delimiter, boolean includeDelimiter)
+	{
+		this.delimiter = delimiter.getBytes(Charset.forName("UTF-8"));
+		this.includeDelimiter = includeDelimiter;
+	}
+	
+	
+	@Override
+	public int getMessageLength(ByteBuffer buffer)
+	{
+		int start = buffer.position();
+		int end = buffer.limit() - delimiter.length;
+		
+		for(int i = start + Math.max(0, searched - delimiter.length + 1); i <= end; i++)
+		{
+			int j = 0;
+			while(j < delimiter.length && buffer.get(i + j) == delimiter[j])
+				j++;
+			
+			if(j == delimiter.length)
+			{
+				searched = 0;
+				return i - start + delimiter.length;
+			}
+		}
+		
+		searched = buffer.remaining();
+		return 0;
+	}
+	
+	
+	@Override
+	public int getHeaderLength()
+	{
+		return 0;
+	}
+	
+	
+	@Override
+	public int getTrailerLength()
+	{
+		return includeDelimiter ? 0 : delimiter.length;
+	}
+}
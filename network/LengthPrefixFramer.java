@@ -0,0 +1,74 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Messages starting with a 4 byte length field (big endian, number of bytes 
+ * following the length field).
+ * 
+ * @author Rafael Math
+ */
+public class LengthPrefixFramer implements MessageFramer
+{
+	private int maxLength;
+	
+	
+	/**
+	 * @param maxLength
+	 * 			Maximum number of bytes following the length field.
+	 */
+	public LengthPrefixFramer(int maxLength)
+	{
+		this.maxLength = maxLength;
+	}
+	
+	
+	@Override
+	public int getMessageLength(ByteBuffer buffer) throws IOException
+	{
+		if(buffer.remaining() < 4)
+			return 0;
+		
+		int length = buffer.getInt(buffer.position());
+		if(length < 0 || length > maxLength)
+			throw new IOException("Invalid message length: " + length);
+		
+		if(buffer.remaining() < 4 + length)
+			return 0;
+		
+		return 4 + length;
+	}
+	
+	
+	@Override
+	public int getHeaderLength()
+	{
+		return 4;
+	}
+	
+	
+	@Override
+	public int getTrailerLength()
+	{
+		return 0;
+	}
+}
@@ -0,0 +1,61 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Splits the byte stream of a connection into messages.
+ * 
+ * @author Rafael Math
+ */
+public interface MessageFramer
+{
+	/**
+	 * Determines the length of the next message in the given buffer.
+	 * 
+	 * @param buffer
+	 * 			Received bytes (from position to limit); must not be modified.
+	 * 
+	 * @return
+	 * 			Number of bytes of the next message (including header and 
+	 * 			trailer) or 0 if the message is not complete yet.
+	 * 
+	 * @throws IOException
+	 * 			If the stream does not comply with the message format.
+	 */
+	public int getMessageLength(ByteBuffer buffer) throws IOException;
+	
+	
+	/**
+	 * @return
+	 * 			Number of bytes at the beginning of each message not to be 
+	 * 			passed to the listener (e.g. length field).
+	 */
+	public int getHeaderLength();
+	
+	
+	/**
+	 * @return
+	 * 			Number of bytes at the end of each message not to be passed to 
+	 * 			the listener (e.g. delimiter).
+	 */
+	public int getTrailerLength();
+}
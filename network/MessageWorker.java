@@ -0,0 +1,146 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package eu.opends.network;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processes received messages (e.g. parses XML) on a separate thread, so the 
+ * I/O thread of the network transport only frames messages and enqueues them. 
+ * Tasks are executed one after the other in order of submission, i.e. the 
+ * messages of a connection are processed in order of arrival.
+ * 
+ * @author Rafael Math
+ */
+public class MessageWorker implements Runnable
+{
+	private LinkedBlockingQueue<Runnable> taskQueue = new LinkedBlockingQueue<Runnable>();
+	private Thread thread;
+	private volatile boolean stopRequested = false;
+	
+	// statistics
+	private volatile long processedTasks = 0;
+	private volatile int maxQueueLength = 0;
+	
+	
+	/**
+	 * @param name
+	 * 			Name of the worker thread.
+	 */
+	public MessageWorker(String name)
+	{
+		thread = new Thread(this, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	
+	/**
+	 * Enqueues the given task (any thread).
+	 * 
+	 * @param task
+	 * 			Task to execute on the worker thread.
+	 */
+	public void submit(Runnable task)
+	{
+		if(stopRequested)
+			return;
+		
+		taskQueue.add(task);
+		maxQueueLength = Math.max(maxQueueLength, taskQueue.size());
+	}
+	
+	
+	/**
+	 * Enqueues the given task and waits until it has been executed. Needed for 
+	 * messages that change the framing of the following bytes (e.g. encoding 
+	 * negotiation), as the I/O thread must not frame these bytes before. All 
+	 * tasks submitted previously will have been executed, too.
+	 * 
+	 * @param task
+	 * 			Task to execute on the worker thread.
+	 */
+	public void submitAndWait(final Runnable task)
+	{
+		if(Thread.currentThread() == thread)
+		{
+			task.run();
+			return;
+		}
+		
+		final CountDownLatch latch = new CountDownLatch(1);
+		submit(new Runnable()
+		{
+			public void run()
+			{
+				try {
+					task.run();
+				} finally {
+					latch.countDown();
+				}
+			}
+		});
+		
+		try {
+			while(!stopRequested && !latch.await(100, TimeUnit.MILLISECONDS));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	
+	@Override
+	public void run()
+	{
+		while(!stopRequested)
+		{
+			try {
+				
+				Runnable task = taskQueue.take();
+				task.run();
+				processedTasks++;
+				
+			} catch (InterruptedException e) {
+				break;
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	
+	/**
+	 * Stops the worker thread. Pending tasks will be discarded.
+	 */
+	public void close()
+	{
+		stopRequested = true;
+		taskQueue.clear();
+		thread.interrupt();
+	}
+	
+	
+	public String getStatistics()
+	{
+		return "processed tasks: " + processedTasks + ", max. queue length: " + maxQueueLength;
+	}
+}
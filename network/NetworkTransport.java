@@ -0,0 +1,494 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Non-blocking TCP transport shared by all external interfaces (e.g. multi 
+ * driver server, CAN-Interface, Lightning, settings controller). A single I/O
+ * thread waits on a selector for all connections, reads incoming bytes into 
+ * reusable buffers and passes complete messages to the listener of each 
+ * connection. Sending never blocks the calling thread (see Connection).
+ * 
+ * The I/O thread will be started on first use. Listeners are called on the 
+ * I/O thread and must hand over expensive work (e.g. scene graph changes or 
+ * XML parsing) to other threads, e.g. via the SimulationScheduler or a 
+ * MessageWorker.
+ * 
+ * @author Rafael Math
+ */
+public class NetworkTransport implements Runnable
+{
+	// time (in ms) to wait for a connection to be established
+	private static final int CONNECT_TIMEOUT = 3000;
+	
+	// default size (in bytes) of the input and output buffer of each connection
+	public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+	
+	
+	/**
+	 * Creates the listener of connections accepted by a server.
+	 */
+	public interface Acceptor
+	{
+		/**
+		 * Will be called on the I/O thread for each accepted connection.
+		 * 
+		 * @param connection
+		 * 			New connection.
+		 * 
+		 * @return
+		 * 			Listener of the connection or null to close the connection.
+		 */
+		public ConnectionListener connectionAccepted(Connection connection);
+	}
+	
+	
+	/**
+	 * Server socket accepting connections.
+	 */
+	public class Server
+	{
+		private ServerSocketChannel channel;
+		private MessageFramer framer;
+		private Acceptor acceptor;
+		private int bufferSize;
+		
+		
+		private Server(ServerSocketChannel channel, MessageFramer framer, Acceptor acceptor, int bufferSize)
+		{
+			this.channel = channel;
+			this.framer = framer;
+			this.acceptor = acceptor;
+			this.bufferSize = bufferSize;
+		}
+		
+		
+		public int getPort()
+		{
+			return channel.socket().getLocalPort();
+		}
+		
+		
+		/**
+		 * Stops accepting connections (accepted connections stay open).
+		 */
+		public void close()
+		{
+			execute(new Runnable()
+			{
+				public void run()
+				{
+					closeServer(Server.this);
+				}
+			});
+		}
+	}
+	
+	
+	private Selector selector = null;
+	private Thread thread = null;
+	private volatile boolean stopRequested = false;
+	private ConcurrentLinkedQueue<Runnable> taskQueue = new ConcurrentLinkedQueue<Runnable>();
+	
+	// I/O thread only (copy for statistics)
+	private List<Connection> connectionList = new ArrayList<Connection>();
+	private List<Server> serverList = new ArrayList<Server>();
+	private volatile Connection[] connectionArray = new Connection[0];
+	
+	// statistics
+	private volatile long selectCount = 0;
+	private volatile long taskCount = 0;
+	private volatile long closedConnections = 0;
+	
+	
+	/**
+	 * Opens a connection to the given host (blocks until the connection has 
+	 * been established).
+	 * 
+	 * @param host
+	 * 			IP or host name.
+	 * 
+	 * @param port
+	 * 			Port.
+	 * 
+	 * @param framer
+	 * 			Format of incoming messages (null: discard incoming bytes).
+	 * 
+	 * @param listener
+	 * 			Listener of incoming messages (may be null).
+	 * 
+	 * @return
+	 * 			The connection.
+	 * 
+	 * @throws IOException
+	 * 			If no connection could be established.
+	 */
+	public Connection connect(String host, int port, MessageFramer framer, ConnectionListener listener) 
+			throws IOException
+	{
+		return connect(host, port, framer, listener, DEFAULT_BUFFER_SIZE);
+	}
+	
+	
+	public Connection connect(String host, int port, MessageFramer framer, ConnectionListener listener, 
+			int bufferSize) throws IOException
+	{
+		ensureStarted();
+		
+		SocketChannel channel = SocketChannel.open();
+		try {
+			
+			channel.socket().setTcpNoDelay(true);
+			channel.socket().connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+			channel.configureBlocking(false);
+			
+		} catch (IOException e) {
+			
+			channel.close();
+			throw e;
+		}
+		
+		final Connection connection = new Connection(this, host + ":" + port, channel, framer, listener, bufferSize);
+		execute(new Runnable()
+		{
+			public void run()
+			{
+				register(connection);
+			}
+		});
+		
+		return connection;
+	}
+	
+	
+	/**
+	 * Accepts connections at the given port.
+	 * 
+	 * @param port
+	 * 			Port to listen on (0: any free port).
+	 * 
+	 * @param framer
+	 * 			Format of incoming messages. Must be stateless or will be 
+	 * 			shared by all connections (use setFramer() in the acceptor to 
+	 * 			assign a separate instance).
+	 * 
+	 * @param acceptor
+	 * 			Creates the listener of each accepted connection.
+	 * 
+	 * @return
+	 * 			The server.
+	 * 
+	 * @throws IOException
+	 * 			If the port is not available.
+	 */
+	public Server listen(int port, MessageFramer framer, Acceptor acceptor) throws IOException
+	{
+		ensureStarted();
+		
+		ServerSocketChannel channel = ServerSocketChannel.open();
+		try {
+			
+			channel.socket().setReuseAddress(true);
+			channel.socket().bind(new InetSocketAddress(port));
+			channel.configureBlocking(false);
+			
+		} catch (IOException e) {
+			
+			channel.close();
+			throw e;
+		}
+		
+		final Server server = new Server(channel, framer, acceptor, DEFAULT_BUFFER_SIZE);
+		execute(new Runnable()
+		{
+			public void run()
+			{
+				try {
+					
+					channel(server).register(selector, SelectionKey.OP_ACCEPT, server);
+					serverList.add(server);
+					
+				} catch (ClosedChannelException e) {
+				}
+			}
+		});
+		
+		return server;
+	}
+	
+	
+	private static ServerSocketChannel channel(Server server)
+	{
+		return server.channel;
+	}
+	
+	
+	/**
+	 * Executes the given task on the I/O thread.
+	 */
+	void execute(Runnable task)
+	{
+		taskQueue.add(task);
+		
+		Selector currentSelector = selector;
+		if(currentSelector != null)
+			currentSelector.wakeup();
+	}
+	
+	
+	/**
+	 * Closes the given connection on the I/O thread.
+	 * 
+	 * @param cause
+	 * 			Exception causing the connection to be closed or null.
+	 */
+	void closeConnection(final Connection connection, final IOException cause)
+	{
+		execute(new Runnable()
+		{
+			public void run()
+			{
+				if(cause != null && connection.isOpen())
+					System.err.println("Connection " + connection.getName() + " closed: " + cause.getMessage());
+				
+				if(connectionList.remove(connection))
+				{
+					closedConnections++;
+					updateConnectionArray();
+				}
+				
+				connection.onClosed();
+			}
+		});
+	}
+	
+	
+	private synchronized void ensureStarted() throws IOException
+	{
+		if(thread != null)
+			return;
+		
+		selector = Selector.open();
+		thread = new Thread(this, "NetworkTransport");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	
+	private void register(Connection connection)
+	{
+		try {
+			
+			SelectionKey key = connection.getChannel().register(selector, SelectionKey.OP_READ, connection);
+			connection.setKey(key);
+			connectionList.add(connection);
+			updateConnectionArray();
+			
+		} catch (ClosedChannelException e) {
+			
+			connection.onClosed();
+		}
+	}
+	
+	
+	private void updateConnectionArray()
+	{
+		connectionArray = connectionList.toArray(new Connection[connectionList.size()]);
+	}
+	
+	
+	@Override
+	public void run()
+	{
+		while(!stopRequested)
+		{
+			try {
+				
+				selector.select();
+				selectCount++;
+				
+				Runnable task;
+				while((task = taskQueue.poll()) != null)
+				{
+					task.run();
+					taskCount++;
+				}
+				
+				Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+				while(iterator.hasNext())
+				{
+					SelectionKey key = iterator.next();
+					iterator.remove();
+					
+					if(!key.isValid())
+						continue;
+					
+					if(key.isAcceptable())
+						accept((Server) key.attachment());
+					else
+						handle(key, (Connection) key.attachment());
+				}
+				
+			} catch (Exception e) {
+				
+				e.printStackTrace();
+			}
+		}
+		
+		// close all connections and servers
+		Runnable task;
+		while((task = taskQueue.poll()) != null)
+			task.run();
+		
+		for(Connection connection : new ArrayList<Connection>(connectionList))
+		{
+			connection.onWritable();
+			connection.onClosed();
+		}
+		connectionList.clear();
+		updateConnectionArray();
+		
+		for(Server server : new ArrayList<Server>(serverList))
+			closeServer(server);
+		
+		try {
+			
+			selector.close();
+			
+		} catch (IOException e) {
+			
+			e.printStackTrace();
+		}
+	}
+	
+	
+	private void handle(SelectionKey key, Connection connection)
+	{
+		try {
+			
+			if(key.isReadable())
+				connection.onReadable();
+			
+			if(key.isValid() && key.isWritable())
+				connection.onWritable();
+			
+		} catch (IOException e) {
+			
+			closeConnection(connection, e);
+		}
+	}
+	
+	
+	private void accept(Server server)
+	{
+		try {
+			
+			SocketChannel channel = server.channel.accept();
+			if(channel == null)
+				return;
+			
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			
+			String name = channel.socket().getInetAddress().getHostAddress() + ":" + channel.socket().getPort();
+			Connection connection = new Connection(this, name, channel, server.framer, null, server.bufferSize);
+			
+			ConnectionListener listener = server.acceptor.connectionAccepted(connection);
+			if(listener == null)
+			{
+				channel.close();
+				return;
+			}
+			
+			connection.setListener(listener);
+			register(connection);
+			
+		} catch (IOException e) {
+			
+			e.printStackTrace();
+		}
+	}
+	
+	
+	private void closeServer(Server server)
+	{
+		serverList.remove(server);
+		
+		try {
+			
+			server.channel.close();
+			
+		} catch (IOException e) {
+			
+			e.printStackTrace();
+		}
+	}
+	
+	
+	/**
+	 * Writes pending bytes, closes all connections and servers and stops the 
+	 * I/O thread.
+	 */
+	public void close()
+	{
+		Thread currentThread;
+		synchronized(this)
+		{
+			currentThread = thread;
+		}
+		
+		if(currentThread == null)
+			return;
+		
+		stopRequested = true;
+		selector.wakeup();
+		
+		try {
+			
+			currentThread.join(1000);
+			
+		} catch (InterruptedException e) {
+		}
+	}
+	
+	
+	public String getStatistics()
+	{
+		StringBuilder builder = new StringBuilder();
+		builder.append(connectionArray.length + " open connections, " + closedConnections + " closed, " + 
+				selectCount + " selects, " + taskCount + " tasks");
+		
+		for(Connection connection : connectionArray)
+			builder.append("\n  " + connection.getStatistics());
+		
+		return builder.toString();
+	}
+}
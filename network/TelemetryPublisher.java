@@ -0,0 +1,170 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.network;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Sends outbound telemetry off the render thread. Once per frame, update() 
+ * lets each registered sink capture a snapshot of the simulation state if 
+ * due at its configured rate; a single sender thread encodes and transmits 
+ * the snapshots. Blocking writes and string formatting therefore do not 
+ * delay rendering.
+ * 
+ * @author Rafael Math
+ */
+public class TelemetryPublisher implements Runnable
+{
+	private CopyOnWriteArrayList<TelemetrySink<?>> sinkList = new CopyOnWriteArrayList<TelemetrySink<?>>();
+	private Thread thread = null;
+	private volatile boolean stopRequested = false;
+	private boolean isPending = false;
+	
+	
+	/**
+	 * Registers the given sink. The sender thread will be started on first use.
+	 * 
+	 * @param sink
+	 * 			Sink to add.
+	 */
+	public synchronized void addSink(TelemetrySink<?> sink)
+	{
+		sinkList.add(sink);
+		
+		if(thread == null)
+		{
+			thread = new Thread(this, "TelemetryPublisher");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+	
+	
+	public void removeSink(TelemetrySink<?> sink)
+	{
+		sinkList.remove(sink);
+	}
+	
+	
+	/**
+	 * Captures snapshots of all sinks that are due. Called on the render thread.
+	 */
+	public void update()
+	{
+		if(sinkList.isEmpty())
+			return;
+		
+		long now = System.nanoTime();
+		
+		boolean hasSnapshot = false;
+		for(TelemetrySink<?> sink : sinkList)
+			hasSnapshot |= sink.update(now);
+		
+		if(hasSnapshot)
+		{
+			synchronized(this)
+			{
+				isPending = true;
+				notify();
+			}
+		}
+	}
+	
+	
+	@Override
+	public void run()
+	{
+		while(!stopRequested)
+		{
+			synchronized(this)
+			{
+				while(!isPending && !stopRequested)
+				{
+					try {
+						wait();
+					} catch (InterruptedException e) {
+					}
+				}
+				
+				isPending = false;
+			}
+			
+			sendQueued();
+		}
+		
+		// send remaining snapshots
+		sendQueued();
+		for(TelemetrySink<?> sink : sinkList)
+			sink.close();
+	}
+	
+	
+	/**
+	 * Sends one snapshot of each sink in turn until all queues are empty, so 
+	 * a slow sink cannot delay the others indefinitely.
+	 */
+	private void sendQueued()
+	{
+		boolean hasSent = true;
+		while(hasSent)
+		{
+			hasSent = false;
+			for(TelemetrySink<?> sink : sinkList)
+				hasSent |= sink.sendNext();
+		}
+	}
+	
+	
+	/**
+	 * Sends all queued snapshots, closes all sinks and stops the sender thread.
+	 */
+	public void close()
+	{
+		Thread currentThread;
+		synchronized(this)
+		{
+			currentThread = thread;
+			stopRequested = true;
+			notify();
+		}
+		
+		if(currentThread == null)
+			return;
+		
+		try {
+			
+			currentThread.join(1000);
+			
+		} catch (InterruptedException e) {
+		}
+	}
+	
+	
+	public String getStatistics()
+	{
+		if(sinkList.isEmpty())
+			return "no sinks";
+		
+		StringBuilder builder = new StringBuilder();
+		for(TelemetrySink<?> sink : sinkList)
+			builder.append("\n  " + sink.getStatistics());
+		
+		return builder.toString();
+	}
+}
@@ -0,0 +1,243 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.network;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * Receiver of periodic outbound telemetry (e.g. camera pose for Lightning, 
+ * motion data for Simphynity). The render thread captures the current state 
+ * into a preallocated snapshot at the configured rate; the sender thread of 
+ * the TelemetryPublisher encodes and transmits the snapshots in order. If the 
+ * sender cannot keep up, the oldest queued snapshot will be dropped.
+ * 
+ * @author Rafael Math
+ */
+public abstract class TelemetrySink<T>
+{
+	// default number of snapshots waiting to be sent
+	public static final int DEFAULT_QUEUE_DEPTH = 4;
+	
+	private String name;
+	private long interval;
+	private long nextCaptureTime = 0;
+	
+	// guarded by this
+	private ArrayDeque<T> freeSnapshots;
+	private ArrayDeque<T> queuedSnapshots;
+	
+	// statistics
+	private volatile long captured = 0;
+	private volatile long sent = 0;
+	private volatile long dropped = 0;
+	private volatile long errors = 0;
+	private volatile int maxQueueDepth = 0;
+	private volatile long sendTime = 0;
+	
+	
+	/**
+	 * Creates a new sink.
+	 * 
+	 * @param name
+	 * 			Name of the sink (used for statistics).
+	 * 
+	 * @param rate
+	 * 			Number of snapshots per second (0: capture every frame).
+	 * 
+	 * @param queueDepth
+	 * 			Maximum number of snapshots waiting to be sent.
+	 */
+	public TelemetrySink(String name, float rate, int queueDepth)
+	{
+		this.name = name;
+		this.interval = (rate > 0) ? (long) (1000000000L / rate) : 0;
+		
+		// one additional snapshot may be in transmission
+		int nrOfSnapshots = Math.max(1, queueDepth) + 1;
+		freeSnapshots = new ArrayDeque<T>(nrOfSnapshots);
+		queuedSnapshots = new ArrayDeque<T>(nrOfSnapshots);
+		for(int i=0; i<nrOfSnapshots; i++)
+			freeSnapshots.add(createSnapshot());
+	}
+	
+	
+	public TelemetrySink(String name, float rate)
+	{
+		this(name, rate, DEFAULT_QUEUE_DEPTH);
+	}
+	
+	
+	/**
+	 * @return
+	 * 			New (empty) snapshot. Called by the constructor of this class, 
+	 * 			i.e. before fields of the subclass have been initialized.
+	 */
+	protected abstract T createSnapshot();
+	
+	
+	/**
+	 * Copies the current state into the given snapshot. Called on the render 
+	 * thread; must not block.
+	 * 
+	 * @param snapshot
+	 * 			Snapshot to overwrite.
+	 * 
+	 * @return
+	 * 			False, if nothing is to be sent.
+	 */
+	protected abstract boolean capture(T snapshot);
+	
+	
+	/**
+	 * Encodes and transmits the given snapshot. Called on the sender thread.
+	 * 
+	 * @param snapshot
+	 * 			Snapshot to send.
+	 * 
+	 * @throws IOException
+	 * 			If the snapshot could not be sent.
+	 */
+	protected abstract void send(T snapshot) throws IOException;
+	
+	
+	/**
+	 * Releases resources (e.g. sockets). Called on the sender thread after 
+	 * all queued snapshots have been sent.
+	 */
+	protected void close()
+	{
+	}
+	
+	
+	public String getName()
+	{
+		return name;
+	}
+	
+	
+	/**
+	 * Captures a snapshot if due. Called on the render thread.
+	 * 
+	 * @param now
+	 * 			Current time (System.nanoTime()).
+	 * 
+	 * @return
+	 * 			True, if a snapshot has been queued.
+	 */
+	boolean update(long now)
+	{
+		if(now < nextCaptureTime)
+			return false;
+		
+		// keep rate stable, but do not catch up after a long frame
+		nextCaptureTime = Math.max(nextCaptureTime + interval, now);
+		
+		T snapshot;
+		synchronized(this)
+		{
+			snapshot = freeSnapshots.poll();
+			if(snapshot == null)
+			{
+				// sender cannot keep up --> overwrite oldest snapshot
+				snapshot = queuedSnapshots.poll();
+				dropped++;
+			}
+		}
+		
+		boolean isValid = capture(snapshot);
+		
+		synchronized(this)
+		{
+			if(isValid)
+			{
+				queuedSnapshots.add(snapshot);
+				captured++;
+				maxQueueDepth = Math.max(maxQueueDepth, queuedSnapshots.size());
+			}
+			else
+				freeSnapshots.add(snapshot);
+		}
+		
+		return isValid;
+	}
+	
+	
+	/**
+	 * Sends the oldest queued snapshot. Called on the sender thread.
+	 * 
+	 * @return
+	 * 			False, if no snapshot was queued.
+	 */
+	boolean sendNext()
+	{
+		T snapshot;
+		synchronized(this)
+		{
+			snapshot = queuedSnapshots.poll();
+		}
+		
+		if(snapshot == null)
+			return false;
+		
+		long start = System.nanoTime();
+		
+		try {
+			
+			send(snapshot);
+			sent++;
+			
+		} catch (Exception e) {
+			
+			// report first error only
+			if(errors++ == 0)
+				System.err.println("Telemetry sink '" + name + "': " + e);
+		}
+		
+		sendTime += System.nanoTime() - start;
+		
+		synchronized(this)
+		{
+			freeSnapshots.add(snapshot);
+		}
+		
+		return true;
+	}
+	
+	
+	public synchronized int getQueueDepth()
+	{
+		return queuedSnapshots.size();
+	}
+	
+	
+	public long getDroppedSnapshots()
+	{
+		return dropped;
+	}
+	
+	
+	public String getStatistics()
+	{
+		float meanSendTime = (sent > 0) ? (sendTime / 1000000f / sent) : 0;
+		return name + ": captured " + captured + ", sent " + sent + ", dropped " + dropped + ", errors " + 
+				errors + ", queue depth " + getQueueDepth() + " (max. " + maxQueueDepth + "), mean send time " + 
+				String.format("%.3f", meanSendTime) + " ms";
+	}
+}
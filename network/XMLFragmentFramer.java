@@ -0,0 +1,121 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Messages consisting of one top level XML element each (e.g. 
+ * "&lt;update&gt;...&lt;/update&gt;" or "&lt;registered id="1" /&gt;"), sent
+ * without any delimiter. Characters between elements (whitespace, NUL) as 
+ * well as processing instructions and comments are passed to the listener 
+ * as part of the following message.
+ * 
+ * @author Rafael Math
+ */
+public class XMLFragmentFramer implements MessageFramer
+{
+	private int maxLength;
+	
+	
+	/**
+	 * @param maxLength
+	 * 			Maximum length of a message in bytes.
+	 */
+	public XMLFragmentFramer(int maxLength)
+	{
+		this.maxLength = maxLength;
+	}
+	
+	
+	@Override
+	public int getMessageLength(ByteBuffer buffer) throws IOException
+	{
+		int start = buffer.position();
+		int limit = buffer.limit();
+		int depth = 0;
+		
+		int i = start;
+		while(i < limit)
+		{
+			if(buffer.get(i) != '<')
+			{
+				i++;
+				continue;
+			}
+			
+			// find end of tag (ignoring '>' within attribute values)
+			int tagEnd = -1;
+			byte quote = 0;
+			for(int j = i + 1; j < limit; j++)
+			{
+				byte b = buffer.get(j);
+				if(quote != 0)
+				{
+					if(b == quote)
+						quote = 0;
+				}
+				else if(b == '"' || b == '\'')
+					quote = b;
+				else if(b == '>')
+				{
+					tagEnd = j;
+					break;
+				}
+			}
+			
+			if(tagEnd < 0)
+				break;
+			
+			byte first = buffer.get(i + 1);
+			if(first == '/')
+				depth--;
+			else if(first != '?' && first != '!' && buffer.get(tagEnd - 1) != '/')
+				depth++;
+			
+			i = tagEnd + 1;
+			
+			if(depth == 0 && first != '?' && first != '!')
+				return i - start;
+			
+			if(depth < 0)
+				throw new IOException("Unexpected closing tag");
+		}
+		
+		if(limit - start > maxLength)
+			throw new IOException("Message exceeds " + maxLength + " bytes");
+		
+		return 0;
+	}
+	
+	
+	@Override
+	public int getHeaderLength()
+	{
+		return 0;
+	}
+	
+	
+	@Override
+	public int getTrailerLength()
+	{
+		return 0;
+	}
+}
@@ -18,14 +18,10 @@
 
 package eu.opends.reactionCenter;
 
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Map.Entry;
-
 import com.jme3.math.Vector3f;
 
 import eu.opends.audio.AudioCenter;
-import eu.opends.environment.LaneLimit;
+import eu.opends.environment.LaneIndex;
 import eu.opends.jasperReport.ReactionLogger;
 import eu.opends.main.Simulator;
 
@@ -35,11 +31,13 @@ import eu.opends.main.Simulator;
  */
 public class BrakeReactionTimer extends ReactionTimer 
 {
+	// time (ns) the target state has been reached
 	private long timer;
 	private boolean timerSet = false;
 	private float targetSpeed; 
 	private boolean mustPressBrakePedal;
 	private boolean hasPressedBrakepedal;
+	// time (ns) of setup (task completion time limit)
 	private long startTime;
 	private float taskCompletionTime;
 	private Vector3f startPosition;
@@ -71,7 +69,7 @@ public class BrakeReactionTimer extends ReactionTimer
 			
 			this.targetSpeed = targetSpeed;
 			this.mustPressBrakePedal = mustPressBrakePedal;
-			this.startTime = System.currentTimeMillis();
+			this.startTime = System.nanoTime();
 			this.taskCompletionTime = taskCompletionTime;
 			this.startPosition = sim.getCar().getPosition();
 			this.taskCompletionDistance = taskCompletionDistance;
@@ -92,7 +90,7 @@ public class BrakeReactionTimer extends ReactionTimer
 			System.err.println("Not above start speed " + startSpeed + "! Currently: " + sim.getCar().getCurrentSpeedKmh());
 			
 			// play sound when time/distance has been passed
-			this.startTime = System.currentTimeMillis();
+			this.startTime = System.nanoTime();
 			this.taskCompletionTime = taskCompletionTime;
 			this.startPosition = sim.getCar().getPosition();
 			this.taskCompletionDistance = taskCompletionDistance;
@@ -122,19 +120,20 @@ public class BrakeReactionTimer extends ReactionTimer
 			// monitor whether brake pedal has been pressed
 			hasPressedBrakepedal = (hasPressedBrakepedal || (sim.getCar().getBrakePedalPressIntensity() > 0));
 			
-			long currentTime = System.currentTimeMillis();
+			// arrival time of input changing the car controls in this frame
+			long currentTime = sim.getReactionCenter().getInputTime();
 			
 			if(hasChangedLanes())
 				trialLogger.setAdditional_reaction(1);
 			
 			if(sim.getCar().getGasPedalPressIntensity() == 0)
-				trialLogger.setBrakeRT_noGas((int)(currentTime - startTime));
+				trialLogger.setBrakeRT_noGas((int)getElapsedMillis(currentTime));
 			
 			if(sim.getCar().getBrakePedalPressIntensity() > 0)
-				trialLogger.setBrakeRT_StartBrake((int)(currentTime - startTime));
+				trialLogger.setBrakeRT_StartBrake((int)getElapsedMillis(currentTime));
 			
 			if(sim.getCar().getBrakePedalPressIntensity() >= 0.8f)
-				trialLogger.setBrakeRT_80pcBrake((int)(currentTime - startTime));
+				trialLogger.setBrakeRT_80pcBrake((int)getElapsedMillis(currentTime));
 			
 			if(timeExceeded() || distanceExceeded())
 			{
@@ -148,12 +147,12 @@ public class BrakeReactionTimer extends ReactionTimer
 			{
 				if(!timerSet)
 				{
-					timer = System.currentTimeMillis();
+					timer = currentTime;
 					timerSet = true;
 				}
 				
-				//System.err.println("-----------------------hold speed: " + (currentTime-timer));
-				if((currentTime-timer >= holdSpeedFor))
+				//System.err.println("-----------------------hold speed: " + (currentTime-timer)/1000000);
+				if(((currentTime-timer)/1000000f >= holdSpeedFor))
 				{
 					if(mustPressBrakePedal)
 					{
@@ -170,12 +169,10 @@ public class BrakeReactionTimer extends ReactionTimer
 			}
 			
 			
-			long relativeStartTime = startTime - experimentStartTime;
+			long relativeStartTime = reactionStartTime - experimentStartTime;
 			
-			long holdSpeedOffset = 0l;
-			if(timerSet)
-				holdSpeedOffset = currentTime-timer;
-			long reactionTime = currentTime - startTime - holdSpeedOffset;
+			// reaction is complete when target state has been reached (not counting hold time)
+			long reactionTime = getElapsedMillis(timerSet ? timer : currentTime);
 			
 			if(correctReactionReported)
 			{
@@ -183,9 +180,8 @@ public class BrakeReactionTimer extends ReactionTimer
 				
 				trialLogger.setBrakeRT_success((int)reactionTime);
 				
-				reactionLogger.add(reactionGroupID, 1, reactionTime, startTime, relativeStartTime, comment);
+				reactionLogger.add(reactionGroupID, 1, reactionTime, reactionStartTime, relativeStartTime, comment);
 				
-				reactionTimer = null;
 				comment = "";
 				
 				trialLogger.setReaction(1);
@@ -200,9 +196,8 @@ public class BrakeReactionTimer extends ReactionTimer
 			{
 				//System.err.println("FAILED");
 				
-				reactionLogger.add(reactionGroupID, -1, reactionTime, startTime, relativeStartTime, comment);
+				reactionLogger.add(reactionGroupID, -1, reactionTime, reactionStartTime, relativeStartTime, comment);
 
-				reactionTimer = null;
 				comment = "";
 				
 				trialLogger.setReaction(0);
@@ -265,30 +260,17 @@ public class BrakeReactionTimer extends ReactionTimer
 			return false;
 		else
 		{
-			long currentTime = System.currentTimeMillis();
-			//System.err.println("Time: " + (currentTime-startTime));
-			return (currentTime-startTime > taskCompletionTime);
+			long currentTime = System.nanoTime();
+			//System.err.println("Time: " + (currentTime-startTime)/1000000);
+			return ((currentTime-startTime)/1000000f > taskCompletionTime);
 		}
 	}
 
 
 	private String getCurrentLane()
 	{
-		float currentX = sim.getCar().getPosition().getX();
-				
-		Map<String, LaneLimit> laneList = Simulator.getDrivingTask().getScenarioLoader().getLaneList();
-		Iterator<Entry<String, LaneLimit>> it = laneList.entrySet().iterator();
-	    while(it.hasNext()) 
-	    {
-	        Entry<String, LaneLimit> pairs = (Entry<String, LaneLimit>)it.next();
-	        String laneID = pairs.getKey();
-	        LaneLimit laneLimit = pairs.getValue();
-	     
-	        if(currentX >= laneLimit.getXMin() && currentX <= laneLimit.getXMax())
-	        	return laneID;
-	    }
-	    
-		return null;
+		LaneIndex laneIndex = Simulator.getDrivingTask().getScenarioLoader().getLaneIndex();
+		return laneIndex.getLane(sim.getCar().getPosition(), 0);
 	}
 
 }
@@ -0,0 +1,265 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.reactionCenter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jme3.input.RawInputListener;
+import com.jme3.input.controls.JoyButtonTrigger;
+import com.jme3.input.controls.KeyTrigger;
+import com.jme3.input.controls.Trigger;
+import com.jme3.input.event.JoyAxisEvent;
+import com.jme3.input.event.JoyButtonEvent;
+import com.jme3.input.event.KeyInputEvent;
+import com.jme3.input.event.MouseButtonEvent;
+import com.jme3.input.event.MouseMotionEvent;
+import com.jme3.input.event.TouchEvent;
+
+/**
+ * Records the arrival time (System.nanoTime() time base) of keyboard and 
+ * joystick events. Input is dispatched by jME once per frame, so the time 
+ * of dispatch is quantised to the frame interval. The time stamps of the 
+ * input devices are used instead: their (unknown) offset to System.nanoTime()
+ * is estimated as the minimum difference between dispatch time and event 
+ * time stamp observed so far, which converges to the true offset as soon 
+ * as an event is dispatched shortly after it has arrived. The keyboard and 
+ * every joystick have their own time base, hence an offset is estimated per
+ * input device. As device clocks drift, an estimate may rise by MAX_DRIFT 
+ * of the time elapsed since the last event of the device. Events without 
+ * time stamp are stamped with their dispatch time.
+ * 
+ * @author Rafael Math
+ */
+public class InputTimestamps implements RawInputListener
+{
+	// input device of keyboard events (joystick events: index of the joystick)
+	static final int KEYBOARD = -1;
+	
+	// maximum relative drift between the clock of an input device and System.nanoTime()
+	private static final double MAX_DRIFT = 0.0001;
+	
+	private Map<Integer, Long> keyPressTimeMap = new HashMap<Integer, Long>();
+	private Map<Long, Long> joyButtonPressTimeMap = new HashMap<Long, Long>();
+	private Map<Integer, DeviceClock> deviceClockMap = new HashMap<Integer, DeviceClock>();
+	
+	private long dispatchTime;
+	private long firstInputTime = -1;
+	
+	// dispatch latency (dispatch time - arrival time) statistics
+	private long events = 0;
+	private long latencySum = 0;
+	private long maxLatency = 0;
+	
+	
+	/**
+	 * Estimated offset between the time base of one input device and System.nanoTime().
+	 */
+	private static class DeviceClock
+	{
+		private long offset;
+		private long updateTime;
+		
+		
+		private DeviceClock(long offset, long updateTime)
+		{
+			this.offset = offset;
+			this.updateTime = updateTime;
+		}
+	}
+	
+	
+	public void beginInput() 
+	{
+		beginInput(System.nanoTime());
+	}
+	
+	
+	/**
+	 * Begins the dispatch of input events at the given time.
+	 * 
+	 * @param time
+	 * 			Dispatch time (System.nanoTime()).
+	 */
+	void beginInput(long time)
+	{
+		dispatchTime = time;
+		firstInputTime = -1;
+	}
+
+
+	public void endInput() 
+	{
+	}
+
+
+	public void onJoyAxisEvent(JoyAxisEvent event) 
+	{
+		stamp(event.getJoyIndex(), event.getTime());
+	}
+
+
+	public void onJoyButtonEvent(JoyButtonEvent event) 
+	{
+		long time = stamp(event.getJoyIndex(), event.getTime());
+		if(event.isPressed())
+			joyButtonPressTimeMap.put(getJoyButtonKey(event.getJoyIndex(), 
+					event.getButtonIndex()), time);
+	}
+
+
+	public void onKeyEvent(KeyInputEvent event) 
+	{
+		long time = stamp(KEYBOARD, event.getTime());
+		if(event.isPressed() && !event.isRepeating())
+			keyPressTimeMap.put(event.getKeyCode(), time);
+	}
+
+
+	public void onMouseMotionEvent(MouseMotionEvent event) 
+	{
+	}
+
+
+	public void onMouseButtonEvent(MouseButtonEvent event) 
+	{
+	}
+
+
+	public void onTouchEvent(TouchEvent event) 
+	{
+	}
+	
+	
+	/**
+	 * Returns the latest arrival time of a press of one of the given keys
+	 * or joystick buttons.
+	 * 
+	 * @param triggerList
+	 * 			List of key and joystick button triggers.
+	 * 
+	 * @return
+	 * 			Arrival time (nanoseconds) or -1 if none of the given
+	 * 			triggers has been pressed yet.
+	 */
+	public long getLatestPressTime(List<Trigger> triggerList)
+	{
+		long latestTime = -1;
+		
+		for(Trigger trigger : triggerList)
+		{
+			Long time = null;
+			
+			if(trigger instanceof KeyTrigger)
+				time = keyPressTimeMap.get(((KeyTrigger) trigger).getKeyCode());
+			else if(trigger instanceof JoyButtonTrigger)
+			{
+				JoyButtonTrigger joyTrigger = (JoyButtonTrigger) trigger;
+				time = joyButtonPressTimeMap.get(getJoyButtonKey(joyTrigger.getJoyId(), 
+						joyTrigger.getAxisId()));
+			}
+			
+			if(time != null && time > latestTime)
+				latestTime = time;
+		}
+		
+		return latestTime;
+	}
+	
+	
+	/**
+	 * Returns the arrival time of the earliest keyboard or joystick event 
+	 * dispatched in the current frame. Car controls (e.g. pedals) polled 
+	 * during the frame have been changed by these events at the earliest.
+	 * 
+	 * @return
+	 * 			Arrival time (nanoseconds) or -1 if no event has been 
+	 * 			dispatched in the current frame.
+	 */
+	public long getFirstInputTime()
+	{
+		return firstInputTime;
+	}
+	
+	
+	public String getStatistics()
+	{
+		if(events == 0)
+			return "no input events";
+		
+		return "input events: " + events + " (" + deviceClockMap.size() + " time-stamping devices), avg. dispatch latency: " + 
+			(latencySum / events / 1000) + " us, max. dispatch latency: " + (maxLatency / 1000) + " us";
+	}
+	
+	
+	/**
+	 * Returns the arrival time of an event dispatched at the current dispatch time.
+	 * 
+	 * @param device
+	 * 			KEYBOARD or index of the joystick.
+	 * 
+	 * @param eventTime
+	 * 			Time stamp of the event (time base of the device; 0 if not available).
+	 * 
+	 * @return
+	 * 			Arrival time (System.nanoTime()).
+	 */
+	long stamp(int device, long eventTime)
+	{
+		long arrivalTime = dispatchTime;
+		
+		if(eventTime > 0)
+		{
+			// estimate offset between time base of input device and System.nanoTime()
+			long offset = dispatchTime - eventTime;
+			DeviceClock clock = deviceClockMap.get(device);
+			if(clock == null)
+			{
+				clock = new DeviceClock(offset, dispatchTime);
+				deviceClockMap.put(device, clock);
+			}
+			else
+			{
+				// the true offset may have grown by the drift since the last event
+				long maxOffset = clock.offset + (long) ((dispatchTime - clock.updateTime) * MAX_DRIFT);
+				clock.offset = Math.min(offset, maxOffset);
+				clock.updateTime = dispatchTime;
+			}
+			
+			arrivalTime = Math.min(eventTime + clock.offset, dispatchTime);
+		}
+		
+		long latency = dispatchTime - arrivalTime;
+		events++;
+		latencySum += latency;
+		maxLatency = Math.max(maxLatency, latency);
+		
+		if(firstInputTime < 0 || arrivalTime < firstInputTime)
+			firstInputTime = arrivalTime;
+		
+		return arrivalTime;
+	}
+	
+	
+	private static long getJoyButtonKey(int joyIndex, int buttonIndex)
+	{
+		return (((long) joyIndex) << 32) | (buttonIndex & 0xffffffffL);
+	}
+}
@@ -19,6 +19,8 @@
 package eu.opends.reactionCenter;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.jme3.input.InputManager;
 import com.jme3.input.KeyInput;
@@ -37,15 +39,20 @@ public class KeyReactionTimer extends ReactionTimer
 {
 	private InputManager inputManager;
 	private ReactionListener reactionListener;
+	private InputTimestamps inputTimestamps;
+	private List<Trigger> correctTriggerList = new ArrayList<Trigger>();
+	private List<Trigger> failureTriggerList = new ArrayList<Trigger>();
 	
 	
 	public KeyReactionTimer(Simulator sim, InputManager inputManager, ReactionListener reactionListener, 
-			ReactionLogger reactionlogger, long experimentStartTime, String timerID, int index)
+			InputTimestamps inputTimestamps, ReactionLogger reactionlogger, long experimentStartTime, 
+			String timerID, int index)
 	{
 		super(sim, reactionlogger, experimentStartTime, timerID, index);
 		
 		this.inputManager = inputManager;
 		this.reactionListener = reactionListener;
+		this.inputTimestamps = inputTimestamps;
 	}
 
 	
@@ -54,8 +61,10 @@ public class KeyReactionTimer extends ReactionTimer
 	{
 		super.setup(newReactionGroupID, newComment);
 		
-		addMapping("reaction_group_" + index, correctReaction);
-		addMapping("failure_group_" + index, failureReaction);			
+		correctTriggerList.clear();
+		failureTriggerList.clear();
+		addMapping("reaction_group_" + index, correctReaction, correctTriggerList);
+		addMapping("failure_group_" + index, failureReaction, failureTriggerList);			
 		inputManager.addListener(reactionListener, "reaction_group_" + index, "failure_group_" + index);
 		
 		timerIsActive = true;
@@ -71,6 +80,33 @@ public class KeyReactionTimer extends ReactionTimer
 	}
 	
 
+	/**
+	 * Reports a correct reaction at the time the key has been pressed.
+	 */
+	public void reportCorrectReaction()
+	{
+		reportCorrectReaction(getPressTime(correctTriggerList));
+	}
+	
+	
+	/**
+	 * Reports a failure reaction at the time the key has been pressed.
+	 */
+	public void reportFailureReaction()
+	{
+		reportFailureReaction(getPressTime(failureTriggerList));
+	}
+	
+	
+	private long getPressTime(List<Trigger> triggerList)
+	{
+		long pressTime = inputTimestamps.getLatestPressTime(triggerList);
+		if(pressTime < 0)
+			return System.nanoTime();
+		return pressTime;
+	}
+	
+
 	public void update()
 	{		
 		super.update();
@@ -83,7 +119,7 @@ public class KeyReactionTimer extends ReactionTimer
 	}
 	
 	
-	private void addMapping(String mappingID, String buttonString) 
+	private void addMapping(String mappingID, String buttonString, List<Trigger> triggerList) 
 	{
 		String[] buttonArray = buttonString.split(",");
 		for(String button : buttonArray)
@@ -91,7 +127,10 @@ public class KeyReactionTimer extends ReactionTimer
 			button = button.toUpperCase().trim();
 			Trigger trigger = getTrigger(button);
 			if(trigger != null)
+			{
 				inputManager.addMapping(mappingID, trigger);
+				triggerList.add(trigger);
+			}
 		}
 	}
 	
@@ -18,15 +18,11 @@
 
 package eu.opends.reactionCenter;
 
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Map.Entry;
-
 import com.jme3.math.FastMath;
 import com.jme3.math.Vector3f;
 
 import eu.opends.audio.AudioCenter;
-import eu.opends.environment.LaneLimit;
+import eu.opends.environment.LaneIndex;
 import eu.opends.jasperReport.ReactionLogger;
 import eu.opends.main.Simulator;
 
@@ -38,11 +34,13 @@ public class LaneChangeReactionTimer extends ReactionTimer
 {
 	private float halfCarWidth = 0.75f;
 	
+	// time (ns) the target state has been reached
 	private long timer;
 	private boolean timerSet = false;
 	private String targetLane; 
 	private float minSteeringAngle;
 	private float steeringAngle;
+	// time (ns) of setup (task completion time limit)
 	private long startTime;
 	private float taskCompletionTime;
 	private Vector3f startPosition;
@@ -73,7 +71,7 @@ public class LaneChangeReactionTimer extends ReactionTimer
 			
 			this.targetLane = targetLane;
 			this.minSteeringAngle = minSteeringAngle;
-			this.startTime = System.currentTimeMillis();
+			this.startTime = System.nanoTime();
 			this.taskCompletionTime = taskCompletionTime;
 			this.startPosition = sim.getCar().getPosition();
 			this.taskCompletionDistance = taskCompletionDistance;
@@ -96,7 +94,7 @@ public class LaneChangeReactionTimer extends ReactionTimer
 			System.err.println("Not in start lane " + startLane + "! Currently: " + getCurrentLane());
 			
 			// play sound when time/distance has been passed
-			this.startTime = System.currentTimeMillis();
+			this.startTime = System.nanoTime();
 			this.taskCompletionTime = taskCompletionTime;
 			this.startPosition = sim.getCar().getPosition();
 			this.taskCompletionDistance = taskCompletionDistance;
@@ -123,7 +121,8 @@ public class LaneChangeReactionTimer extends ReactionTimer
 		
 		if(timerIsActive)
 		{
-			long currentTime = System.currentTimeMillis();
+			// arrival time of input changing the car controls in this frame
+			long currentTime = sim.getReactionCenter().getInputTime();
 			
 			float currentSteeringAngle = FastMath.abs(sim.getCar().getSteeringWheelState());
 			steeringAngle = Math.max(steeringAngle, currentSteeringAngle);
@@ -133,13 +132,13 @@ public class LaneChangeReactionTimer extends ReactionTimer
 				trialLogger.setAdditional_reaction(1);
 			
 			if(currentSteeringAngle >= 0.004444f)
-				trialLogger.setLaneChangeRT_2angle((int)(currentTime - startTime));
+				trialLogger.setLaneChangeRT_2angle((int)getElapsedMillis(currentTime));
 			
 			if(currentSteeringAngle >= 0.006666f)
-				trialLogger.setLaneChangeRT_3angle((int)(currentTime - startTime));
+				trialLogger.setLaneChangeRT_3angle((int)getElapsedMillis(currentTime));
 			
 			if(enteringTargetLane())
-				trialLogger.setLaneChangeRT_enterLane((int)(currentTime - startTime));
+				trialLogger.setLaneChangeRT_enterLane((int)getElapsedMillis(currentTime));
 			
 			if(timeExceeded() || distanceExceeded())
 			{
@@ -153,12 +152,12 @@ public class LaneChangeReactionTimer extends ReactionTimer
 			{
 				if(!timerSet)
 				{
-					timer = System.currentTimeMillis();
+					timer = currentTime;
 					timerSet = true;
 				}
 				
-				//System.err.println("-----------------------hold lane: " + (currentTime-timer));
-				if((currentTime-timer >= holdLaneFor) && (steeringAngle >= minSteeringAngle))
+				//System.err.println("-----------------------hold lane: " + (currentTime-timer)/1000000);
+				if(((currentTime-timer)/1000000f >= holdLaneFor) && (steeringAngle >= minSteeringAngle))
 				{
 					reportCorrectReaction();
 				}
@@ -168,12 +167,10 @@ public class LaneChangeReactionTimer extends ReactionTimer
 				timerSet = false;
 			}
 			
-			long relativeStartTime = startTime - experimentStartTime;
+			long relativeStartTime = reactionStartTime - experimentStartTime;
 			
-			long holdLaneOffset = 0l;
-			if(timerSet)
-				holdLaneOffset = currentTime-timer;
-			long reactionTime = currentTime - startTime - holdLaneOffset;
+			// reaction is complete when target state has been reached (not counting hold time)
+			long reactionTime = getElapsedMillis(timerSet ? timer : currentTime);
 			
 			if(correctReactionReported)
 			{
@@ -181,9 +178,8 @@ public class LaneChangeReactionTimer extends ReactionTimer
 				
 				trialLogger.setLaneChangeRT_success((int)reactionTime);
 				
-				reactionLogger.add(reactionGroupID, 1, reactionTime, startTime, relativeStartTime, comment);
+				reactionLogger.add(reactionGroupID, 1, reactionTime, reactionStartTime, relativeStartTime, comment);
 				
-				reactionTimer = null;
 				comment = "";
 				
 				trialLogger.setReaction(1);
@@ -198,9 +194,8 @@ public class LaneChangeReactionTimer extends ReactionTimer
 			{
 				//System.err.println("FAILED");
 				
-				reactionLogger.add(reactionGroupID, -1, reactionTime, startTime, relativeStartTime, comment);
+				reactionLogger.add(reactionGroupID, -1, reactionTime, reactionStartTime, relativeStartTime, comment);
 
-				reactionTimer = null;
 				comment = "";
 				
 				trialLogger.setReaction(0);
@@ -260,47 +255,25 @@ public class LaneChangeReactionTimer extends ReactionTimer
 			return false;
 		else
 		{
-			long currentTime = System.currentTimeMillis();
-			//System.err.println("Time: " + (currentTime-startTime));
-			return (currentTime-startTime > taskCompletionTime);
+			long currentTime = System.nanoTime();
+			//System.err.println("Time: " + (currentTime-startTime)/1000000);
+			return ((currentTime-startTime)/1000000f > taskCompletionTime);
 		}
 	}
 
 
 	private String getCurrentLane()
 	{
-		float currentX = sim.getCar().getPosition().getX();
-				
-		Map<String, LaneLimit> laneList = Simulator.getDrivingTask().getScenarioLoader().getLaneList();
-		Iterator<Entry<String, LaneLimit>> it = laneList.entrySet().iterator();
-	    while(it.hasNext()) 
-	    {
-	        Entry<String, LaneLimit> pairs = (Entry<String, LaneLimit>)it.next();
-	        String laneID = pairs.getKey();
-	        LaneLimit laneLimit = pairs.getValue();
-	     
-	        float xMinReduced = laneLimit.getXMin() + halfCarWidth;
-			float xMaxReduced = laneLimit.getXMax() - halfCarWidth;
-			
-	        if(xMinReduced <= currentX && currentX <= xMaxReduced)
-	        	return laneID;
-	    }
-	    
-		return null;
+		LaneIndex laneIndex = Simulator.getDrivingTask().getScenarioLoader().getLaneIndex();
+		return laneIndex.getLane(sim.getCar().getPosition(), halfCarWidth);
 	}
 	
 	
 	private boolean enteringTargetLane() 
 	{
-		float currentX = sim.getCar().getPosition().getX();
-		
-		Map<String, LaneLimit> laneList = Simulator.getDrivingTask().getScenarioLoader().getLaneList();
-		LaneLimit target = laneList.get(targetLane);
-		
-		float xMinExtended = target.getXMin() - halfCarWidth;
-		float xMaxExtended = target.getXMax() + halfCarWidth;
-		
-		return (xMinExtended <= currentX && currentX <= xMaxExtended);
+		// target lane extended by half the car width: any part of the car inside
+		LaneIndex laneIndex = Simulator.getDrivingTask().getScenarioLoader().getLaneIndex();
+		return laneIndex.isInLane(targetLane, sim.getCar().getPosition(), -halfCarWidth);
 	}
 	
 }
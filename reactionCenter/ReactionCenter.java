@@ -19,7 +19,6 @@
 package eu.opends.reactionCenter;
 
 import java.util.ArrayList;
-import java.util.GregorianCalendar;
 import java.util.List;
 
 import com.jme3.input.InputManager;
@@ -28,6 +27,10 @@ import eu.opends.jasperReport.ReactionLogger;
 import eu.opends.main.Simulator;
 
 /**
+ * Manages the reaction timers of an experiment. Input events are time stamped 
+ * at arrival (see InputTimestamps), the beginning of each frame is used as 
+ * presentation time of the frame rendered before. Frame interval jitter and 
+ * input dispatch latency are printed when closing.
  * 
  * @author Rafael Math
  */
@@ -42,6 +45,15 @@ public class ReactionCenter
 	private boolean isRunning = false;
 	private List<ReactionTimer> reactionTimerList = new ArrayList<ReactionTimer>();
 	
+	private InputTimestamps inputTimestamps = new InputTimestamps();
+	private long frameTime = System.nanoTime();
+	
+	// frame interval statistics (ns)
+	private long frames = 0;
+	private double intervalSum = 0;
+	private double intervalSquareSum = 0;
+	private long maxInterval = 0;
+	
 	
 	public ReactionCenter(Simulator sim)
 	{
@@ -55,8 +67,9 @@ public class ReactionCenter
 		if(!isRunning)
 		{			
 			reactionListener = new ReactionListener(this);
+			inputManager.addRawInputListener(inputTimestamps);
 			
-			experimentStartTime = new GregorianCalendar().getTimeInMillis();
+			experimentStartTime = System.currentTimeMillis();
 			isRunning = true;
 			
 			System.err.println("Start");
@@ -79,7 +92,7 @@ public class ReactionCenter
 				// create new timer with increased index
 				int index = reactionTimerList.size();
 				reactionTimer = new KeyReactionTimer(sim, inputManager, reactionListener,
-						reactionLogger, experimentStartTime, timerID, index);
+						inputTimestamps, reactionLogger, experimentStartTime, timerID, index);
 
 				// add timer to timer list
 				reactionTimerList.add(reactionTimer);
@@ -96,7 +109,7 @@ public class ReactionCenter
 				
 				//convert to KeyReactionTimer
 				reactionTimer = new KeyReactionTimer(sim, inputManager, reactionListener,
-						reactionLogger, experimentStartTime, timerID, index);
+						inputTimestamps, reactionLogger, experimentStartTime, timerID, index);
 				reactionTimerList.add(reactionTimer);
 			}
 			
@@ -203,6 +216,78 @@ public class ReactionCenter
 	}
 	
 	
+	public boolean isReactionTimerActive(String timerID)
+	{
+		ReactionTimer reactionTimer = getReactionTimer(timerID);
+		return (reactionTimer != null) && reactionTimer.isActive();
+	}
+	
+	
+	/**
+	 * Has to be called at the beginning of each frame (before any other update), 
+	 * when the frame rendered before has been presented.
+	 */
+	public void beginFrame()
+	{
+		long previousFrameTime = frameTime;
+		frameTime = System.nanoTime();
+		
+		if(isRunning)
+		{
+			long interval = frameTime - previousFrameTime;
+			frames++;
+			intervalSum += interval;
+			intervalSquareSum += (double) interval * interval;
+			maxInterval = Math.max(maxInterval, interval);
+			
+			for(ReactionTimer reactionTimer : reactionTimerList)
+				reactionTimer.beginFrame(frameTime);
+		}
+	}
+	
+	
+	/**
+	 * @return
+	 * 			Beginning of the current frame (System.nanoTime()).
+	 */
+	public long getFrameTime()
+	{
+		return frameTime;
+	}
+	
+	
+	/**
+	 * Arrival time of the earliest input event which has been dispatched in the 
+	 * current frame; beginning of the current frame if no input has been dispatched.
+	 * 
+	 * @return
+	 * 			Input time (System.nanoTime()).
+	 */
+	public long getInputTime()
+	{
+		long inputTime = inputTimestamps.getFirstInputTime();
+		if(inputTime < 0)
+			return frameTime;
+		return inputTime;
+	}
+	
+	
+	public String getTimingStatistics()
+	{
+		String inputStatistics = inputTimestamps.getStatistics();
+		
+		if(frames == 0)
+			return "no frames, " + inputStatistics;
+		
+		double mean = intervalSum / frames;
+		double jitter = Math.sqrt(Math.max(0, intervalSquareSum / frames - mean * mean));
+		
+		return "frames: " + frames + ", avg. frame interval: " + Math.round(mean / 1000) + 
+			" us, jitter (std. dev.): " + Math.round(jitter / 1000) + " us, max. frame interval: " + 
+			(maxInterval / 1000) + " us, " + inputStatistics;
+	}
+	
+	
 	public void update()
 	{		
 		if(isRunning)
@@ -247,6 +332,24 @@ public class ReactionCenter
 	}
 	
 	
+	/**
+	 * Sets the stimulus onset of the given timer which has been set up in the 
+	 * current frame (see ReactionTimer.setOnset()).
+	 * 
+	 * @param timerID
+	 * 			ID of the reaction timer.
+	 * 
+	 * @param onsetTime
+	 * 			Stimulus onset (System.nanoTime()).
+	 */
+	public void setOnset(String timerID, long onsetTime)
+	{
+		ReactionTimer reactionTimer = getReactionTimer(timerID);
+		if(reactionTimer != null)
+			reactionTimer.setOnset(onsetTime);
+	}
+	
+	
 	public void reportMissedReaction(String timerID)
 	{
 		ReactionTimer reactionTimer = getReactionTimer(timerID);
@@ -263,6 +366,9 @@ public class ReactionCenter
 		{
 			for(ReactionTimer reactionTimer : reactionTimerList)
 				reactionTimer.close();
+			
+			inputManager.removeRawInputListener(inputTimestamps);
+			System.out.println("Reaction timing: " + getTimingStatistics());
 		}
 		
 		isRunning = false;
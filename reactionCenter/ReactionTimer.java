@@ -18,13 +18,16 @@
 
 package eu.opends.reactionCenter;
 
-import java.util.Calendar;
-import java.util.GregorianCalendar;
-
 import eu.opends.jasperReport.ReactionLogger;
 import eu.opends.main.Simulator;
 
 /**
+ * Base class of reaction timers. Durations are measured with System.nanoTime():
+ * the stimulus onset is the time the first frame rendered after setting up the
+ * timer has been presented (see ReactionCenter.beginFrame()) or - if the timer 
+ * has been set up by a trigger - the time the trigger has been hit (see 
+ * setOnset()), reactions are stamped with the arrival time of the input event. Absolute start times 
+ * written to the log are wall clock times (milliseconds).
  * 
  * @author Rafael Math
  */
@@ -38,7 +41,16 @@ public abstract class ReactionTimer
 	protected String timerID;
 	protected int index;
 	
-	protected Calendar reactionTimer = null;
+	// wall clock time (ms) of setup
+	protected long reactionStartTime;
+	
+	// stimulus onset (ns)
+	protected long onsetTime;
+	protected boolean onsetPending = false;
+	
+	// arrival time of reported reaction (ns)
+	protected long reactionInputTime;
+	
 	protected String comment;
 	protected String reactionGroupID;
 	protected boolean correctReactionReported = false;
@@ -79,14 +91,12 @@ public abstract class ReactionTimer
 		if(timerIsActive)
 		{
 			// report previous reaction as missing
-			long reactionStartTime = reactionTimer.getTimeInMillis();
 			long relativeStartTime = reactionStartTime - experimentStartTime;
 			reactionLogger.add(reactionGroupID, -2, 10000L, reactionStartTime, relativeStartTime, comment);
 			
 			trialLogger.setReaction(0);
 			trialLogger.writeLog();
 			
-			reactionTimer = null;
 			timerIsActive = false;
 		}
 	}
@@ -96,17 +106,14 @@ public abstract class ReactionTimer
 	{
 		if(timerIsActive)
 		{
-			long reactionStartTime = reactionTimer.getTimeInMillis();
 			long relativeStartTime = reactionStartTime - experimentStartTime;
-			long currentTime = new GregorianCalendar().getTimeInMillis();
-			long reactionTime = currentTime - reactionStartTime;
+			long reactionTime = getElapsedMillis(reactionInputTime);
 			
 			if(correctReactionReported)
 			{		
 				// report correct reaction
 				reactionLogger.add(reactionGroupID, 1, reactionTime, reactionStartTime, relativeStartTime, comment);
 
-				reactionTimer = null;
 				comment = "";
 				
 				System.err.println("Correct: " + reactionTime);
@@ -117,7 +124,6 @@ public abstract class ReactionTimer
 				// report failure reaction
 				reactionLogger.add(reactionGroupID, -1, reactionTime, reactionStartTime, relativeStartTime, comment);
 
-				reactionTimer = null;
 				comment = "";
 				
 				System.err.println("Failure: " + reactionTime);
@@ -129,16 +135,97 @@ public abstract class ReactionTimer
 	
 	public void reportCorrectReaction()
 	{
+		reportCorrectReaction(System.nanoTime());
+	}
+	
+	
+	/**
+	 * Reports a correct reaction.
+	 * 
+	 * @param inputTime
+	 * 			Time (System.nanoTime()) the reaction has been performed.
+	 */
+	public void reportCorrectReaction(long inputTime)
+	{
+		if(!correctReactionReported && !failureReactionReported)
+			reactionInputTime = inputTime;
 		correctReactionReported = true;
 	}
 	
 	
 	public void reportFailureReaction()
 	{
+		reportFailureReaction(System.nanoTime());
+	}
+	
+	
+	/**
+	 * Reports a failure reaction.
+	 * 
+	 * @param inputTime
+	 * 			Time (System.nanoTime()) the reaction has been performed.
+	 */
+	public void reportFailureReaction(long inputTime)
+	{
+		if(!correctReactionReported && !failureReactionReported)
+			reactionInputTime = inputTime;
 		failureReactionReported = true;
 	}
 	
 	
+	/**
+	 * Will be called at the beginning of each frame. Sets the stimulus onset to 
+	 * the beginning of the first frame after setup, i.e. when the frame showing 
+	 * the stimulus has been presented.
+	 * 
+	 * @param frameTime
+	 * 			Beginning of the current frame (System.nanoTime()).
+	 */
+	public void beginFrame(long frameTime)
+	{
+		if(onsetPending)
+		{
+			onsetTime = frameTime;
+			onsetPending = false;
+		}
+	}
+	
+	
+	/**
+	 * Sets the stimulus onset of a timer set up in the current frame to the 
+	 * given time (e.g. the time a trigger has been hit, which may be earlier 
+	 * than the current frame). Start time of the log will be adjusted.
+	 * 
+	 * @param time
+	 * 			Stimulus onset (System.nanoTime()).
+	 */
+	public void setOnset(long time)
+	{
+		if(onsetPending)
+		{
+			onsetTime = time;
+			onsetPending = false;
+			reactionStartTime = System.currentTimeMillis() - (System.nanoTime() - time) / 1000000;
+		}
+	}
+	
+	
+	/**
+	 * Time elapsed since the stimulus onset.
+	 * 
+	 * @param time
+	 * 			Time stamp (System.nanoTime()).
+	 * 
+	 * @return
+	 * 			Elapsed time in milliseconds (not negative).
+	 */
+	protected long getElapsedMillis(long time)
+	{
+		// onset is the setup time until presentation has been confirmed; anticipations count 0 ms
+		return Math.max(0, Math.round((time - onsetTime) / 1000000.0));
+	}
+	
+	
 	public void close()
 	{
 		if(timerIsActive)
@@ -146,6 +233,12 @@ public abstract class ReactionTimer
 	}
 
 
+	public boolean isActive() 
+	{
+		return timerIsActive;
+	}
+	
+	
 	public String getTimerID() 
 	{
 		return timerID;
@@ -160,7 +253,9 @@ public abstract class ReactionTimer
 	
 	private void resetTimer()
 	{
-		reactionTimer = new GregorianCalendar();
+		reactionStartTime = System.currentTimeMillis();
+		onsetTime = System.nanoTime();
+		onsetPending = true;
 		correctReactionReported = false;
 		failureReactionReported = false;
 	}
@@ -0,0 +1,274 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.reactionCenter;
+
+import java.util.Random;
+
+/**
+ * Quantifies the timing error of reaction measurements. Measures the 
+ * resolution of System.currentTimeMillis() and System.nanoTime() and 
+ * simulates reaction trials with a given frame rate and frame interval 
+ * jitter, comparing frame-sampled measurements (stimulus onset at setup, 
+ * reaction at the frame the input is processed), measurements with onset 
+ * at frame presentation only (input device without time stamps) and fully
+ * time-stamped measurements (onset at frame presentation, reaction at input 
+ * arrival as estimated by InputTimestamps).
+ * 
+ * Reactions are given on a simulated keyboard (time stamps in microseconds) 
+ * or joystick (time stamps in milliseconds). Each device has its own clock 
+ * with an arbitrary offset and a drift of up to the given rate; events are 
+ * delivered after a dispatch delay of 0.1 to 2 ms and dispatched at the 
+ * beginning of the next frame.
+ * 
+ * Usage: ReactionTimingBenchmark [frameRate] [frameJitterMs] [trials] [driftPpm]
+ * 
+ * @author Rafael Math
+ */
+public class ReactionTimingBenchmark
+{
+	public static void main(String[] args)
+	{
+		float frameRate = (args.length > 0) ? Float.parseFloat(args[0]) : 60f;
+		float frameJitter = (args.length > 1) ? Float.parseFloat(args[1]) : 2f;
+		int trials = (args.length > 2) ? Integer.parseInt(args[2]) : 10000;
+		float drift = (args.length > 3) ? Float.parseFloat(args[3]) : 50f;
+		
+		System.out.println("Clock resolution:");
+		System.out.println("  System.currentTimeMillis(): " + format(getMillisResolution() * 1000) + " us");
+		System.out.println("  System.nanoTime():          " + format(getNanoResolution() / 1000.0) + " us");
+		
+		System.out.println("Simulated trials (" + trials + ", " + frameRate + " fps, frame jitter +/-" + 
+				frameJitter + " ms, device clock drift +/-" + drift + " ppm):");
+		simulate(frameRate, frameJitter, trials, drift / 1000000.0);
+	}
+	
+	
+	private static double getMillisResolution()
+	{
+		// smallest observed step of the wall clock
+		long minStep = Long.MAX_VALUE;
+		long last = System.currentTimeMillis();
+		for(int steps = 0; steps < 20; )
+		{
+			long now = System.currentTimeMillis();
+			if(now != last)
+			{
+				minStep = Math.min(minStep, now - last);
+				last = now;
+				steps++;
+			}
+		}
+		return minStep;
+	}
+	
+	
+	private static long getNanoResolution()
+	{
+		long minStep = Long.MAX_VALUE;
+		for(int i = 0; i < 1000; i++)
+		{
+			long start = System.nanoTime();
+			long now;
+			while((now = System.nanoTime()) == start);
+			minStep = Math.min(minStep, now - start);
+		}
+		return minStep;
+	}
+	
+	
+	private static void simulate(float frameRate, float frameJitter, int trials, double maxDrift)
+	{
+		Random random = new Random(42);
+		double frameInterval = 1000.0 / frameRate;
+		Frames frames = new Frames(frameInterval, frameJitter, random);
+		
+		SimulatedDevice[] devices = new SimulatedDevice[] {
+			new SimulatedDevice(InputTimestamps.KEYBOARD, 1000, maxDrift, random),
+			new SimulatedDevice(0, 1000000, maxDrift, random)
+		};
+		InputTimestamps inputTimestamps = new InputTimestamps();
+		
+		Statistics frameSampled = new Statistics();
+		Statistics onsetStamped = new Statistics();
+		Statistics timeStamped = new Statistics();
+		Statistics[] deviceStamped = new Statistics[] {new Statistics(), new Statistics()};
+		
+		double time = 0;
+		for(int i = 0; i < trials; i++)
+		{
+			// stimulus set up during update of a frame (after input processing) 
+			// and presented at the beginning of the next frame
+			double setupTime = frames.advanceTo(time) + random.nextDouble() * 0.2 * frameInterval;
+			double onsetTime = frames.next();
+			
+			// true reaction time between 200 and 1000 ms after onset
+			double trueReactionTime = 200 + random.nextDouble() * 800;
+			double arrivalTime = onsetTime + trueReactionTime;
+			
+			// press (reaction) and release of a key or joystick button
+			int d = random.nextInt(devices.length);
+			SimulatedDevice device = devices[d];
+			double processingTime = dispatch(frames, random, arrivalTime);
+			inputTimestamps.beginInput(toNanos(processingTime));
+			long stampedTime = inputTimestamps.stamp(device.index, device.getTime(arrivalTime));
+			
+			double releaseTime = arrivalTime + 50 + random.nextDouble() * 100;
+			inputTimestamps.beginInput(toNanos(dispatch(frames, random, releaseTime)));
+			inputTimestamps.stamp(device.index, device.getTime(releaseTime));
+			
+			double stampedError = (stampedTime - toNanos(onsetTime)) / 1000000.0 - trueReactionTime;
+			frameSampled.add((processingTime - setupTime) - trueReactionTime);
+			onsetStamped.add((processingTime - onsetTime) - trueReactionTime);
+			timeStamped.add(stampedError);
+			deviceStamped[d].add(stampedError);
+			
+			// next trial after 1 to 2 seconds
+			time = releaseTime + 1000 + random.nextDouble() * 1000;
+		}
+		
+		System.out.println("  frame-sampled error: " + frameSampled);
+		System.out.println("  onset-stamped error: " + onsetStamped);
+		System.out.println("  time-stamped error:  " + timeStamped);
+		System.out.println("    keyboard:          " + deviceStamped[0]);
+		System.out.println("    joystick:          " + deviceStamped[1]);
+		System.out.println("  " + inputTimestamps.getStatistics());
+	}
+	
+	
+	/**
+	 * Time (in ms) an event arriving at the given time is dispatched: at the 
+	 * beginning of the first frame after the event has been delivered.
+	 */
+	private static double dispatch(Frames frames, Random random, double arrivalTime)
+	{
+		double deliveryTime = arrivalTime + 0.1 + random.nextDouble() * 1.9;
+		return frames.advanceTo(deliveryTime);
+	}
+	
+	
+	private static long toNanos(double millis)
+	{
+		// arbitrary time base of System.nanoTime()
+		return 1000000000000L + Math.round(millis * 1000000);
+	}
+	
+	
+	/**
+	 * Frame boundaries (presentation times in ms) with jittered intervals.
+	 */
+	private static class Frames
+	{
+		private double interval;
+		private float jitter;
+		private Random random;
+		private double time = 0;
+		
+		
+		public Frames(double interval, float jitter, Random random)
+		{
+			this.interval = interval;
+			this.jitter = jitter;
+			this.random = random;
+		}
+		
+		
+		public double next()
+		{
+			time += interval + (random.nextDouble() * 2 - 1) * jitter;
+			return time;
+		}
+		
+		
+		public double advanceTo(double t)
+		{
+			while(time < t)
+				next();
+			return time;
+		}
+	}
+	
+	
+	/**
+	 * Input device stamping events with its own clock.
+	 */
+	private static class SimulatedDevice
+	{
+		private int index;
+		private long resolution;
+		private long offset;
+		private double drift;
+		
+		
+		public SimulatedDevice(int index, long resolution, double maxDrift, Random random)
+		{
+			this.index = index;
+			this.resolution = resolution;
+			offset = 1000000000L + (long) (random.nextDouble() * 1000000000000L);
+			drift = (random.nextDouble() * 2 - 1) * maxDrift;
+		}
+		
+		
+		/**
+		 * @return
+		 * 			Time stamp (in ns, truncated to the resolution of the device) 
+		 * 			of an event at the given time (in ms).
+		 */
+		public long getTime(double millis)
+		{
+			long time = offset + Math.round(millis * 1000000 * (1 + drift));
+			return time - time % resolution;
+		}
+	}
+	
+	
+	private static String format(double value)
+	{
+		return String.valueOf(Math.round(value * 1000) / 1000.0);
+	}
+	
+	
+	private static class Statistics
+	{
+		private int count = 0;
+		private double sum = 0;
+		private double squareSum = 0;
+		private double min = Double.MAX_VALUE;
+		private double max = -Double.MAX_VALUE;
+		
+		
+		public void add(double value)
+		{
+			count++;
+			sum += value;
+			squareSum += value * value;
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+		
+		
+		@Override
+		public String toString()
+		{
+			double mean = sum / count;
+			double deviation = Math.sqrt(Math.max(0, squareSum / count - mean * mean));
+			return "mean " + format(mean) + " ms, std. dev. " + format(deviation) + " ms, min " + 
+				format(min) + " ms, max " + format(max) + " ms";
+		}
+	}
+}
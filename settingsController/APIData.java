@@ -18,324 +18,245 @@
 
 package eu.opends.settingsController;
 
-import java.io.StringWriter;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-
-import com.jme3.math.FastMath;
-
-import eu.opends.car.Car;
-import eu.opends.drivingTask.settings.SettingsLoader.Setting;
-import eu.opends.main.SimulationDefaults;
-import eu.opends.main.Simulator;
-import eu.opends.tools.Vector3d;
+import java.nio.ByteBuffer;
 
 /**
+ * Subscriptions of one settings controller client. Subscribed paths are 
+ * compiled into a list of data fields once; values are read from the vehicle 
+ * state published for the current frame and written as XML by a streaming 
+ * writer or in binary encoding (see BinaryEncoding). The values sent last 
+ * are kept in order to send changed values only.
  * 
- * @author Daniel Braun
+ * @author Daniel Braun, Rafael Math
  */
 public class APIData {
 	
-	private Car car;
-	private String dataSchema;
-	private Map<String, Boolean> dataMap = new HashMap<String, Boolean>();
+	private VehicleStateBuffer stateBuffer;
+	private DataSchema schema;
+	private DataField[] allFields;
 	
+	// compiled subscription
+	private boolean[] subscribed;
+	private DataField[] subscribedFields = new DataField[0];
 	
-	public APIData(Car car){
-		this.car = car;
-		
-		dataSchema =  "<root>"+
-				"<thisVehicle>"+
-				"<interior>"+
-					"<cockpit>"+
-						"<pedals>"+
-							"<gasPedal>"+
-								"<Properties><pressedState></pressedState></Properties>"+
-							"</gasPedal>"+
-							"<brakePedal>"+
-								"<Properties><pressedState></pressedState></Properties>"+ 
-							"</brakePedal>"+ 
-						"</pedals>"+ 
-						"<steeringWheel>"+ 
-							"<Properties><steerAngle></steerAngle></Properties>"+ 
-						"</steeringWheel>"+ 
-					"</cockpit>"+ 
-				"</interior>"+ 
-				"<exterior>"+ 
-					"<lights>"+ 
-						"<Properties><headlights></headlights></Properties>"+ 
-					"</lights>"+ 
-					"<gearUnit>"+ 
-						"<Properties><currentGear></currentGear></Properties>"+ 
-					"</gearUnit>"+ 
-					"<engineCompartment>"+ 
-						"<engine><Properties>"+ 
-							"<running></running>"+ 
-							"<actualRpm></actualRpm>"+ 
-						"</Properties></engine>"+ 
-					"</engineCompartment>"+ 
-					"<fueling>"+ 
-						"<fuelType>"+ 
-							"<Properties><currentConsumption></currentConsumption></Properties>"+
-							"<tank><Properties>"+ 
-								"<maxAmount></maxAmount>"+ 
-								"<actualAmount></actualAmount>"+
-							"</Properties></tank>"+
-						"</fuelType>"+
-					"</fueling>"+
-				"</exterior>"+
-				"<physicalAttributes><Properties>"+
-					"<latitude></latitude>"+
-					"<longitude></longitude>"+
-					"<altitude></altitude>"+
-					"<orientation></orientation>"+
-					"<speed></speed>"+
-					"<rise></rise>"+
-					"<accelerationLateral></accelerationLateral>"+
-					"<rotation></rotation>"+
-					"<accelerationRotation></accelerationRotation>"+
-					"<acceleration></acceleration>"+
-				"</Properties></physicalAttributes>"+
-			"</thisVehicle>"+
-		"</root>";
-		
-		Boolean init = true;
+	// current and last sent values (by field ID)
+	private double[] numbers;
+	private String[] texts;
+	private double[] sentNumbers;
+	private String[] sentTexts;
+	private boolean[] isSent;
+	private DataField[] changedFields;
+	private DataField[] selectedFields;
+	private long frame = -1;
+	private StringBuilder builder = new StringBuilder(1024);
+	
+	
+	public APIData(VehicleStateBuffer stateBuffer, DataSchema schema){
+		this.stateBuffer = stateBuffer;
+		this.schema = schema;
 		
-		//interior
-		dataMap.put("/root/thisVehicle/interior/cockpit/pedals/gasPedal/Properties/pressedState", init);
-		dataMap.put("/root/thisVehicle/interior/cockpit/pedals/brakePedal/Properties/pressedState", init);
-		dataMap.put("/root/thisVehicle/interior/cockpit/steeringWheel/Properties/steerAngle", init);
+		allFields = schema.getFields();
+		int nrOfFields = allFields.length;
 		
-		//exterior
-		dataMap.put("/root/thisVehicle/exterior/lights/Properties/headlights", init);
-		dataMap.put("/root/thisVehicle/exterior/gearUnit/Properties/currentGear", init);
-		dataMap.put("/root/thisVehicle/exterior/engineCompartment/engine/Properties/running", init);
-		dataMap.put("/root/thisVehicle/exterior/engineCompartment/engine/Properties/actualRpm", init);
-		dataMap.put("/root/thisVehicle/exterior/fueling/fuelType/Properties/currentConsumption", init);
-		dataMap.put("/root/thisVehicle/exterior/fueling/fuelType/tank/Properties/maxAmount", init);
-		dataMap.put("/root/thisVehicle/exterior/fueling/fuelType/tank/Properties/actualAmount", init);
+		// all values are subscribed initially
+		subscribed = new boolean[nrOfFields];
+		for (int i = 0; i < nrOfFields; i++)
+			subscribed[i] = true;
+		compile();
 		
-		//physicalAttributes
-		dataMap.put("/root/thisVehicle/physicalAttributes/Properties/latitude", init);
-		dataMap.put("/root/thisVehicle/physicalAttributes/Properties/longitude", init);
-		dataMap.put("/root/thisVehicle/physicalAttributes/Properties/altitude", init);
-		dataMap.put("/root/thisVehicle/physicalAttributes/Properties/orientation", init);
-		dataMap.put("/root/thisVehicle/physicalAttributes/Properties/speed", init);
-		dataMap.put("/root/thisVehicle/physicalAttributes/Properties/rise", init);
-		dataMap.put("/root/thisVehicle/physicalAttributes/Properties/accelerationLateral", init);
-		dataMap.put("/root/thisVehicle/physicalAttributes/Properties/rotation", init);
-		dataMap.put("/root/thisVehicle/physicalAttributes/Properties/accelerationRotation", init);
-		dataMap.put("/root/thisVehicle/physicalAttributes/Properties/acceleration", init);
+		numbers = new double[nrOfFields];
+		texts = new String[nrOfFields];
+		sentNumbers = new double[nrOfFields];
+		sentTexts = new String[nrOfFields];
+		isSent = new boolean[nrOfFields];
+		changedFields = new DataField[nrOfFields];
+		selectedFields = new DataField[nrOfFields];
 	}
 	
-	private String getValue(String var){
-		String value = "";
-		
-		//interior
-		if(var.equals("/root/thisVehicle/interior/cockpit/pedals/gasPedal/Properties/pressedState")){
-			float gasPedalPress = car.getGasPedalPressIntensity(); // in %
-			value = String.valueOf(gasPedalPress);
-		}
-		else if(var.equals("/root/thisVehicle/interior/cockpit/pedals/brakePedal/Properties/pressedState")){
-			float brakePedalPress = car.getBrakePedalPressIntensity(); // in %	
-			value = String.valueOf(brakePedalPress);
-		}
-		else if(var.equals("/root/thisVehicle/interior/cockpit/steeringWheel/Properties/steerAngle")){
-			float maxSteeringAngle = Simulator.getDrivingTask().getSettingsLoader().getSetting(
-					Setting.CANInterface_maxSteeringAngle, SimulationDefaults.CANInterface_maxSteeringAngle);			
-			float steeringAngle = -maxSteeringAngle*car.getSteeringWheelState(); // in degree (+ = right, - = left)
-			
-			value = String.valueOf(steeringAngle);					
-		}
-		
-		//exterior
-		else if(var.equals("/root/thisVehicle/exterior/lights/Properties/headlights")){
-			String lightState = car.getLightState();
-			value = lightState;			
-		}
-		else if(var.equals("/root/thisVehicle/exterior/gearUnit/Properties/currentGear")){
-			int selectedGear = car.getTransmission().getGear();
-			value = String.valueOf(selectedGear);			
-		}
-		else if(var.equals("/root/thisVehicle/exterior/engineCompartment/engine/Properties/running")){
-			int engineOn;
-			if(car.isEngineOn())
-				engineOn = 1;
-			else
-				engineOn = 0;
-			value = String.valueOf(engineOn);			
-		}
-		else if(var.equals("/root/thisVehicle/exterior/engineCompartment/engine/Properties/actualRpm")){
-			int rpm = (int) car.getTransmission().getRPM();
-			value = String.valueOf(rpm);			
-		}
-		else if(var.equals("/root/thisVehicle/exterior/fueling/fuelType/Properties/currentConsumption")){
-			float fuelConsumption = car.getPowerTrain().getLitersPer100Km();  // current fuel consumption
-			value = String.valueOf(fuelConsumption);
-		}
-		else if(var.equals("/root/thisVehicle/exterior/fueling/fuelType/tank/Properties/maxAmount")){
-			float maxFuelCapacity = 60; //TODO set max Capacity
-			value = String.valueOf(maxFuelCapacity);
-		}
-		else if(var.equals("/root/thisVehicle/exterior/fueling/fuelType/tank/Properties/actualAmount")){
-			float fuelLeft = 60 - car.getPowerTrain().getTotalFuelConsumption(); //TODO set max Capacity
-			value = String.valueOf(fuelLeft);			
-		}
+	private void compile(){
+		int count = 0;
+		for (int i = 0; i < subscribed.length; i++)
+			if(subscribed[i])
+				count++;
 		
-		//physicalAttributes
-		else if(var.equals("/root/thisVehicle/physicalAttributes/Properties/latitude")){
-			Vector3d geoPosition = car.getGeoPosition();
-			double latitude = geoPosition.getX();  // N-S position in geo coordinates
-			value = String.valueOf(latitude);
-		}
-		else if(var.equals("/root/thisVehicle/physicalAttributes/Properties/longitude")){
-			Vector3d geoPosition = car.getGeoPosition();
-			double longitude = geoPosition.getY(); // W-E position in geo coordinates
-			value = String.valueOf(longitude);		
-		}
-		else if(var.equals("/root/thisVehicle/physicalAttributes/Properties/altitude")){
-			Vector3d geoPosition = car.getGeoPosition();
-			double altitude = geoPosition.getZ();  // meters above sea level
-			value = String.valueOf(altitude);
-		}
-		else if(var.equals("/root/thisVehicle/physicalAttributes/Properties/orientation")){
-			float orientation = car.getHeadingDegree();  // 0..360 degree
-			value = String.valueOf(orientation);
-		}
-		else if(var.equals("/root/thisVehicle/physicalAttributes/Properties/speed")){
-			float speed = FastMath.abs(car.getCarControl().getCurrentVehicleSpeedKmHour());  // in Km/h
-			value = String.valueOf(speed);
-		}
-		else if(var.equals("/root/thisVehicle/physicalAttributes/Properties/rise")){
-			//TODO how to calc rise?
-		}
-		else if(var.equals("/root/thisVehicle/physicalAttributes/Properties/accelerationLateral")){
-			//TODO how to calc?			
-		}
-		else if(var.equals("/root/thisVehicle/physicalAttributes/Properties/rotation")){
-			//TODO how to calc?
-		}
-		else if(var.equals("/root/thisVehicle/physicalAttributes/Properties/accelerationRotation")){
-			//TODO how to calc?			
-		}
-		else if(var.equals("/root/thisVehicle/physicalAttributes/Properties/acceleration")){
-			//TODO how to calc?			
-		}
+		DataField[] fields = new DataField[count];
+		count = 0;
+		for (int i = 0; i < subscribed.length; i++)
+			if(subscribed[i])
+				fields[count++] = allFields[i];
 		
-		return value;
+		subscribedFields = fields;
 	}
 	
-	public synchronized String getValues(String[] list, boolean nameOnly){
-		String value ="";
-		
-		List <String> arrList = new ArrayList<String>();
+	private void readValue(DataField field, VehicleState state){
+		int id = field.getID();
+		if(field.getType() == DataField.Type.STRING)
+			texts[id] = state.getText(field);
+		else if(field.getType() != DataField.Type.NONE)
+			numbers[id] = state.getNumber(field);
+	}
+	
+	private boolean hasChanged(DataField field){
+		int id = field.getID();
+		if(!isSent[id])
+			return true;
 		
-		for (Map.Entry<String,Boolean> entry: dataMap.entrySet()) {
-			for (int i = 0; i < list.length; i++) {
-				if(entry.getKey().contains(list[i])){
-					arrList.add(entry.getKey());
-					break;
-				}
-			}			
-		}	
+		if(field.getType() == DataField.Type.STRING)
+			return !(texts[id] == null ? sentTexts[id] == null : texts[id].equals(sentTexts[id]));
 		
-		String[] varList = arrList.toArray(new String[arrList.size()]); 
+		return numbers[id] != sentNumbers[id];
+	}
+	
+	private void markSent(DataField field){
+		int id = field.getID();
+		sentNumbers[id] = numbers[id];
+		sentTexts[id] = texts[id];
+		isSent[id] = true;
+	}
+	
+	/**
+	 * Selects all fields whose path contains one of the given strings.
+	 */
+	private int select(String[] list){
+		boolean[] selected = new boolean[allFields.length];
+		for (int i = 0; i < list.length; i++)
+			schema.match(list[i], selected, true);
 		
-		DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder documentBuilder;
+		int count = 0;
+		for (int i = 0; i < allFields.length; i++)
+			if(selected[i])
+				selectedFields[count++] = allFields[i];
 		
-		try {
-			documentBuilder = documentBuilderFactory.newDocumentBuilder();
-			Document document = documentBuilder.newDocument();
-				
-			Element rootElement = document.createElement("root");
-			
-			
-			for (int j = 0; j < varList.length; j++) {				
-					String path = varList[j];
-					String[] nodes = path.split("/");
-					
-					Element e = rootElement;
-					
-					for (int i = 2; i < nodes.length; i++) {
-						NodeList nL = e.getElementsByTagName(nodes[i]);	
-						
-						if(nL.getLength() > 0)
-							e = (Element) nL.item(0);
-						else{
-							Element e2 = document.createElement(nodes[i]);
-							e.appendChild(e2);
-							e = e2;
-						}
-					}
-					
-					if(!nameOnly)
-						e.setTextContent(getValue(path));				
-			}				
+		return count;
+	}
 	
-					
-			
-			document.appendChild(rootElement);		
-			
-			TransformerFactory tf = TransformerFactory.newInstance();
-			Transformer transformer = tf.newTransformer();
-			transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-			StringWriter writer = new StringWriter();
-			transformer.transform(new DOMSource(document), new StreamResult(writer));
-			String output = writer.getBuffer().toString().replaceAll("\n|\r", "");
-			
-			value = output;		
-		} catch (Exception e) {
-			e.printStackTrace();
+	private void readValues(DataField[] fields, int count){
+		// all values of a message are taken from the same frame
+		VehicleState state = stateBuffer.acquire();
+		try {
+			for (int i = 0; i < count; i++)
+				readValue(fields[i], state);
+			frame = state.getFrame();
+		} finally {
+			stateBuffer.release(state);
 		}
+	}
+	
+	/**
+	 * Returns the values of all fields whose path contains one of the given strings.
+	 */
+	public synchronized String getValues(String[] list, boolean nameOnly){
+		return getValues(selectedFields, select(list), nameOnly);
+	}
+	
+	/**
+	 * Writes the values of all fields whose path contains the given string 
+	 * (body of a binary VALUES message).
+	 */
+	public synchronized void getValues(String path, ByteBuffer buffer){
+		int count = select(new String[]{path});
+		readValues(selectedFields, count);
+		BinaryEncoding.putValues(buffer, frame, selectedFields, count, numbers, texts);
+	}
+	
+	private String getValues(DataField[] fields, int count, boolean nameOnly){
+		if(!nameOnly)
+			readValues(fields, count);
 		
-		return value;
+		builder.setLength(0);
+		DataSchema.writeTree(builder, fields, count, nameOnly ? null : numbers, texts, true);
+		return builder.toString();
 	}
 			
 	public String getSchema(){
-		return dataSchema;
+		return schema.getSchemaString();
+	}
+	
+	/**
+	 * Writes ID, type and path of all fields (body of a binary DATA_SCHEMA message).
+	 */
+	public void getSchema(ByteBuffer buffer){
+		BinaryEncoding.putSchema(buffer, allFields);
 	}
 	
 	public synchronized void subscribe(String s){
-		for (Map.Entry<String,Boolean> entry: dataMap.entrySet()) {
-			if(entry.getKey().contains(s))
-				entry.setValue(true);
-		}		
+		schema.match(s, subscribed, true);
+		compile();
 	}
 	
 	public synchronized void unsubscribe(String s){
-		for (Map.Entry<String,Boolean> entry: dataMap.entrySet()) {
-			if(entry.getKey().contains(s))
-				entry.setValue(false);
-		}				
+		schema.match(s, subscribed, false);
+		compile();
 	}
 	
 	public synchronized String getAllSubscribedValues(boolean nameOnly){
-		List<String> subscribedValues = new ArrayList<String>();
+		return getValues(subscribedFields, subscribedFields.length, nameOnly);
+	}
+	
+	/**
+	 * Writes the IDs of all subscribed fields (body of a binary SUBSCRIPTIONS message).
+	 */
+	public synchronized void getSubscriptions(ByteBuffer buffer){
+		BinaryEncoding.putFieldIDs(buffer, subscribedFields, subscribedFields.length);
+	}
+	
+	/**
+	 * Returns the subscribed values that have changed since the last call.
+	 * 
+	 * @param all
+	 * 			If true, all subscribed values will be returned.
+	 * 
+	 * @return
+	 * 			XML tree of the (changed) values or null if no value has changed.
+	 */
+	public synchronized String getChangedValues(boolean all){
+		int count = collectChangedValues(all);
+		if(count == 0 && !all)
+			return null;
 		
-		for (Map.Entry<String,Boolean> entry: dataMap.entrySet()) {
-			if(entry.getValue())
-				subscribedValues.add(entry.getKey());
-		}			
-				
-		String[] arr = new String[subscribedValues.size()];
-		arr = subscribedValues.toArray(arr);
+		builder.setLength(0);
+		DataSchema.writeTree(builder, changedFields, count, numbers, texts, true);
+		return builder.toString();
+	}
+	
+	/**
+	 * Writes the subscribed values that have changed since the last call 
+	 * (body of a binary SUBSCRIBED_VALUES or CHANGED_VALUES message).
+	 * 
+	 * @param all
+	 * 			If true, all subscribed values will be written.
+	 * 
+	 * @param buffer
+	 * 			Buffer to write to.
+	 * 
+	 * @return
+	 * 			False, if no value has changed (nothing written).
+	 */
+	public synchronized boolean getChangedValues(boolean all, ByteBuffer buffer){
+		int count = collectChangedValues(all);
+		if(count == 0 && !all)
+			return false;
 		
-		return getValues(arr, nameOnly);
+		BinaryEncoding.putValues(buffer, frame, changedFields, count, numbers, texts);
+		return true;
+	}
+	
+	private int collectChangedValues(boolean all){
+		int count = 0;
+		VehicleState state = stateBuffer.acquire();
+		try {
+			for (DataField field : subscribedFields) {
+				readValue(field, state);
+				if(all || hasChanged(field)){
+					changedFields[count++] = field;
+					markSent(field);
+				}
+			}
+			frame = state.getFrame();
+		} finally {
+			stateBuffer.release(state);
+		}
+		return count;
 	}
 
 }
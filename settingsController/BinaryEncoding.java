@@ -0,0 +1,256 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package eu.opends.settingsController;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import eu.opends.settingsController.DataField.Type;
+
+/**
+ * Compact binary encoding of the settings controller protocol, used instead 
+ * of XML if requested by the client (&lt;Event Name="SetEncoding"&gt;binary&lt;/Event&gt;). 
+ * The server confirms with &lt;Event Name="Encoding"&gt;binary&lt;/Event&gt; (still 
+ * XML); all following messages in both directions are binary. A binary 
+ * SET_ENCODING request with value XML switches back; it is confirmed by an 
+ * XML message again.
+ * 
+ * Message (big endian):
+ * 
+ * length (int: number of bytes following) | type (byte) | body
+ * 
+ * Requests (client to server) correspond to the XML events:
+ * 
+ * ESTABLISH_CONNECTION: update interval in ms (int, optional)
+ * ABOLISH_CONNECTION, GET_DATA_SCHEMA, GET_SUBSCRIPTIONS, GET_SUBSCRIBED_VALUES,
+ * GET_UPDATE_INTERVAL, GET_UPDATE_MODE: empty body
+ * GET_VALUE, SUBSCRIBE, UNSUBSCRIBE: path or part of path (string)
+ * SET_UPDATE_INTERVAL: update interval in ms (int)
+ * SET_UPDATE_MODE: INTERVAL or ON_CHANGE (byte)
+ * SET_ENCODING: XML or BINARY (byte)
+ * 
+ * Responses (server to client):
+ * 
+ * CONNECTION_ESTABLISHED, CONNECTION_ABOLISHED: empty body
+ * DATA_SCHEMA: number of fields (short), fields: ID (short), type (byte), path (string)
+ * SUBSCRIPTIONS: number of fields (short), field IDs (short)
+ * SUBSCRIBED_VALUES, CHANGED_VALUES, VALUES: frame (long), number of values (short), 
+ *     values: field ID (short), type (byte), value
+ * UPDATE_INTERVAL: update interval in ms (int)
+ * UPDATE_MODE: INTERVAL or ON_CHANGE (byte)
+ * ENCODING: BINARY (byte; switching to XML is confirmed in XML)
+ * ERROR: message (string)
+ * 
+ * Field IDs are the positions of the values in the data schema (GetDataSchema). 
+ * Values are encoded according to their type: INT (int), FLOAT (float), DOUBLE 
+ * (double), STRING (string), NONE (no value). Strings are encoded as short 
+ * length followed by UTF-8 bytes. All values of a message belong to the same 
+ * frame.
+ * 
+ * @author Rafael Math
+ */
+public class BinaryEncoding
+{
+	public static final String NAME = "binary";
+	
+	// requests
+	public static final byte ESTABLISH_CONNECTION = 1;
+	public static final byte ABOLISH_CONNECTION = 2;
+	public static final byte GET_DATA_SCHEMA = 3;
+	public static final byte GET_SUBSCRIPTIONS = 4;
+	public static final byte GET_SUBSCRIBED_VALUES = 5;
+	public static final byte GET_VALUE = 6;
+	public static final byte GET_UPDATE_INTERVAL = 7;
+	public static final byte SET_UPDATE_INTERVAL = 8;
+	public static final byte GET_UPDATE_MODE = 9;
+	public static final byte SET_UPDATE_MODE = 10;
+	public static final byte SUBSCRIBE = 11;
+	public static final byte UNSUBSCRIBE = 12;
+	public static final byte SET_ENCODING = 13;
+	
+	// responses
+	public static final byte CONNECTION_ESTABLISHED = 65;
+	public static final byte CONNECTION_ABOLISHED = 66;
+	public static final byte DATA_SCHEMA = 67;
+	public static final byte SUBSCRIPTIONS = 68;
+	public static final byte SUBSCRIBED_VALUES = 69;
+	public static final byte CHANGED_VALUES = 70;
+	public static final byte VALUES = 71;
+	public static final byte UPDATE_INTERVAL = 72;
+	public static final byte UPDATE_MODE = 73;
+	public static final byte ERROR = 74;
+	public static final byte ENCODING = 75;
+	
+	// update modes and encodings
+	public static final byte INTERVAL = 0;
+	public static final byte ON_CHANGE = 1;
+	public static final byte XML = 0;
+	public static final byte BINARY = 1;
+	
+	// value types
+	public static final byte NONE = 0;
+	public static final byte INT = 1;
+	public static final byte FLOAT = 2;
+	public static final byte DOUBLE = 3;
+	public static final byte STRING = 4;
+	
+	public static final int MAX_MESSAGE_SIZE = 65536;
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	
+	/**
+	 * Writes the header of a message. The length field will be set by endMessage().
+	 * 
+	 * @param buffer
+	 * 			Buffer to write to (will be cleared).
+	 * 
+	 * @param type
+	 * 			Message type (e.g. SUBSCRIBED_VALUES).
+	 */
+	public static void beginMessage(ByteBuffer buffer, byte type)
+	{
+		buffer.clear();
+		buffer.putInt(0);
+		buffer.put(type);
+	}
+	
+	
+	/**
+	 * Sets the length field of a message and prepares the buffer for reading.
+	 */
+	public static void endMessage(ByteBuffer buffer)
+	{
+		buffer.putInt(0, buffer.position() - 4);
+		buffer.flip();
+	}
+	
+	
+	public static byte getTypeCode(Type type)
+	{
+		switch(type)
+		{
+			case INT : return INT;
+			case FLOAT : return FLOAT;
+			case DOUBLE : return DOUBLE;
+			case STRING : return STRING;
+			default : return NONE;
+		}
+	}
+	
+	
+	/**
+	 * Writes the ID, type and path of the given fields (DATA_SCHEMA body).
+	 */
+	public static void putSchema(ByteBuffer buffer, DataField[] fields)
+	{
+		buffer.putShort((short) fields.length);
+		for(DataField field : fields)
+		{
+			buffer.putShort((short) field.getID());
+			buffer.put(getTypeCode(field.getType()));
+			putString(buffer, field.getPath());
+		}
+	}
+	
+	
+	/**
+	 * Writes the IDs of the given fields (SUBSCRIPTIONS body).
+	 */
+	public static void putFieldIDs(ByteBuffer buffer, DataField[] fields, int count)
+	{
+		buffer.putShort((short) count);
+		for(int i=0; i<count; i++)
+			buffer.putShort((short) fields[i].getID());
+	}
+	
+	
+	/**
+	 * Writes the values of the given fields (body of SUBSCRIBED_VALUES, 
+	 * CHANGED_VALUES and VALUES).
+	 * 
+	 * @param buffer
+	 * 			Buffer to write to.
+	 * 
+	 * @param frame
+	 * 			Frame the values have been captured in.
+	 * 
+	 * @param fields
+	 * 			Fields to write.
+	 * 
+	 * @param count
+	 * 			Number of fields to write.
+	 * 
+	 * @param numbers
+	 * 			Numeric values (by field ID).
+	 * 
+	 * @param texts
+	 * 			String values (by field ID).
+	 */
+	public static void putValues(ByteBuffer buffer, long frame, DataField[] fields, int count, 
+			double[] numbers, String[] texts)
+	{
+		buffer.putLong(frame);
+		buffer.putShort((short) count);
+		for(int i=0; i<count; i++)
+		{
+			DataField field = fields[i];
+			int id = field.getID();
+			byte type = getTypeCode(field.getType());
+			
+			buffer.putShort((short) id);
+			buffer.put(type);
+			
+			switch(type)
+			{
+				case INT : buffer.putInt((int) numbers[id]); break;
+				case FLOAT : buffer.putFloat((float) numbers[id]); break;
+				case DOUBLE : buffer.putDouble(numbers[id]); break;
+				case STRING : putString(buffer, texts[id] == null ? "" : texts[id]); break;
+			}
+		}
+	}
+	
+	
+	public static void putString(ByteBuffer buffer, String string)
+	{
+		byte[] bytes = string.getBytes(UTF8);
+		buffer.putShort((short) bytes.length);
+		buffer.put(bytes);
+	}
+	
+	
+	public static String getString(ByteBuffer buffer)
+	{
+		int length = buffer.getShort() & 0xFFFF;
+		
+		if(buffer.hasArray())
+		{
+			String string = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF8);
+			buffer.position(buffer.position() + length);
+			return string;
+		}
+		
+		// direct buffer (e.g. network transport)
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+}
@@ -18,15 +18,13 @@
 
 package eu.opends.settingsController;
 
-import java.io.BufferedReader;
-import java.io.DataInputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.io.StringReader;
-import java.net.SocketException;
-import java.net.SocketTimeoutException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -38,24 +36,48 @@ import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
 
+import com.jme3.math.Vector3f;
+
 import eu.opends.main.Simulator;
+import eu.opends.network.Connection;
+import eu.opends.network.ConnectionListener;
+import eu.opends.network.LengthPrefixFramer;
+import eu.opends.network.MessageWorker;
+import eu.opends.tools.ObjectManipulationCenter;
+import eu.opends.tools.ObjectManipulationCenter.Manipulation;
 
 /**
  * 
  * @author Daniel Braun
  */
-public class ConnectionHandler extends Thread 
+public class ConnectionHandler implements ConnectionListener 
 {	
 	private Simulator sim;
-	private OutputStream out;
-	private DataInputStream in;
+	private Connection connection;
+	private SettingsControllerServer server;
 	private UpdateSender updateSender;	
+	private MessageWorker messageWorker;
 	private APIData data;
 	
 	private int updateInterval = 1000; //in ms
 	
+	// in "onChange" mode, changed values are checked at this interval (in ms)
+	// and sent immediately; all values are still sent every update interval
+	private static final int CHANGE_CHECK_INTERVAL = 10;
+	private volatile boolean onChange = false;
+	private long nextUpdateTime = 0;
+	private long nextCheckTime = 0;
+	
 	private Lock intervalLock = new ReentrantLock();
 	
+	// encoding negotiated by "SetEncoding" (XML by default); responses and 
+	// updates are sent while holding sendLock, so no update in the previous 
+	// encoding can follow the confirmation of a new encoding
+	private volatile boolean binary = false;
+	private final Object sendLock = new Object();
+	private ByteBuffer responseBuffer = null;
+	private ByteBuffer updateBuffer = null;
+	
 	
 	public static int byteArrToInt(byte[] b){
 		int value = 0;
@@ -84,66 +106,101 @@ public class ConnectionHandler extends Thread
         return builder.parse(is);
     }
 	
-	public ConnectionHandler(Simulator s, OutputStream o, DataInputStream i){
+	public ConnectionHandler(Simulator s, Connection c, SettingsControllerServer srv){
 		sim = s;
-		out = o;
-		in = i;	
+		connection = c;
+		server = srv;
 		
-		data = new APIData(sim.getCar());		
-		updateSender = new UpdateSender(data, this);
+		data = new APIData(server.getStateBuffer(), server.getDataSchema());
+		updateSender = server.getUpdateSender();
+		messageWorker = server.getMessageWorker();
 	}
 	
-	public void run(){		
-		while(!isInterrupted()){
-			try{					
-	        	 BufferedReader r = new BufferedReader(new InputStreamReader(in));
-	        	 	        	 
-	        	 String messageValue = "";
-	        	 
-	        	 try{
-	        		 while(!isInterrupted()){
-	        			 
-	        			 try
-	        			 {
-	        				 String line = r.readLine();
-		        		 
-	        				 if(line == null){
-	        					 interrupt();
-	        					 System.out.println("Connection closed by client.");
-	        					 break;
-	        				 }
-	        				 else {
-	        					 messageValue += line;
-		        			 
-	        					 if(line.contains("</Message>"))
-	        						 break;
-	        				 }
-	        		
-	        			 } catch (SocketTimeoutException e) {
-	        			 }
-		        	 }        	
-	        	 }catch(SocketException e){
-	        		 interrupt();
-	        		 System.out.println("Connection closed by client.");
-	        		 break;
-	        	 }	        	 
-	        	 	        		        	 
-	        	 if(!messageValue.equals("")){
-	        		 parseXML(messageValue);
-	        	 }
-	        }catch(Exception e){
-				e.printStackTrace();
-			}			
-		}	
+	/**
+	 * Called on the network thread for each complete message (terminated by "&lt;/Message&gt;"). 
+	 * XML requests will be parsed by the message worker.
+	 */
+	@Override
+	public void messageReceived(Connection c, ByteBuffer message){
+		if(binary){
+			parseBinary(message);
+			return;
+		}
 		
-		try {
-			out.close();
-			updateSender.interrupt();
-			in.close();
-		} catch (IOException e) {
-			e.printStackTrace();
+		final String messageValue = c.getString(message).trim();
+		
+		if(!messageValue.equals("")){
+			Runnable task = new Runnable(){
+				public void run(){
+					try{
+						parseXML(messageValue);
+					}catch(Exception e){
+						e.printStackTrace();
+					}
+				}
+			};
+			
+			// "SetEncoding" changes the framing of the following bytes, hence 
+			// these must not be framed before the request has been evaluated
+			if(messageValue.contains("SetEncoding"))
+				messageWorker.submitAndWait(task);
+			else
+				messageWorker.submit(task);
+		}
+	}
+	
+	@Override
+	public void connectionClosed(Connection c){
+		System.out.println("Connection closed by client.");
+		updateSender.remove(this);
+		server.removeConnection(this);
+	}
+	
+	public void close(){
+		updateSender.remove(this);
+		connection.close();
+	}
+	
+	/**
+	 * Sends subscribed values if due. Called by the update sender thread.
+	 * 
+	 * @param now
+	 * 			Current time (in ms).
+	 * 
+	 * @return
+	 * 			Time (in ms) this method needs to be called again.
+	 */
+	long sendUpdates(long now){
+		synchronized(sendLock){
+			if(now >= nextUpdateTime){
+				if(binary){
+					BinaryEncoding.beginMessage(updateBuffer, BinaryEncoding.SUBSCRIBED_VALUES);
+					data.getChangedValues(true, updateBuffer);
+					sendMessage(updateBuffer);
+				}
+				else{
+					String values = data.getChangedValues(true);
+					sendResponse("<Message><Event Name=\"SubscribedValues\">\n" + values + "\n</Event></Message>\n");
+				}
+				nextUpdateTime = now + Math.max(1, getUpdateInterval());
+				nextCheckTime = now + CHANGE_CHECK_INTERVAL;
+			}
+			else if(onChange && now >= nextCheckTime){
+				if(binary){
+					BinaryEncoding.beginMessage(updateBuffer, BinaryEncoding.CHANGED_VALUES);
+					if(data.getChangedValues(false, updateBuffer))
+						sendMessage(updateBuffer);
+				}
+				else{
+					String values = data.getChangedValues(false);
+					if(values != null)
+						sendResponse("<Message><Event Name=\"ChangedValues\">\n" + values + "\n</Event></Message>\n");
+				}
+				nextCheckTime = now + CHANGE_CHECK_INTERVAL;
+			}
 		}
 		
+		return onChange ? Math.min(nextUpdateTime, nextCheckTime) : nextUpdateTime;
 	}
 	
 	public int getUpdateInterval(){
@@ -177,6 +234,8 @@ public class ConnectionHandler extends Thread
 			String response = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
 			
 			NodeList nodes = doc.getElementsByTagName("Event");		
+			boolean abolish = false;
+			boolean switchToBinary = false;
 			
 			response += "<Message>";
 			
@@ -192,14 +251,13 @@ public class ConnectionHandler extends Thread
 						} catch(Exception e){}
 					}
 					
-					if(!updateSender.isAlive())
-						updateSender.start();
+					updateSender.add(this);
 					
 					response += "<Event Name=\"ConnectionEstablished\"/>\n";
 				}
 				else if(eventName.equals("AbolishConnection")){				
 					response += "<Event Name=\"ConnectionAbolished\"/>\n";
-					this.interrupt();
+					abolish = true;
 				}
 				else if(eventName.equals("GetDataSchema")){				
 					response += "<Event Name=\"DataSchema\">\n" + data.getSchema() + "\n</Event>";
@@ -222,6 +280,20 @@ public class ConnectionHandler extends Thread
 					setUpdateInterval(Integer.valueOf(val));
 					response += "<Event Name=\"UpdateInterval\">\n" + String.valueOf(getUpdateInterval()) + "\n</Event>";
 				}
+				else if(eventName.equals("GetUpdateMode")){
+					response += "<Event Name=\"UpdateMode\">\n" + (onChange ? "onChange" : "interval") + "\n</Event>";
+				}
+				else if(eventName.equals("SetUpdateMode")){
+					// "interval": all values every update interval; "onChange": changed values immediately
+					onChange = nodes.item(i).getTextContent().trim().equalsIgnoreCase("onChange");
+					updateSender.wakeUp();
+					response += "<Event Name=\"UpdateMode\">\n" + (onChange ? "onChange" : "interval") + "\n</Event>";
+				}
+				else if(eventName.equals("SetEncoding")){
+					// "binary": all following messages will be binary encoded (see BinaryEncoding)
+					switchToBinary = nodes.item(i).getTextContent().trim().equalsIgnoreCase(BinaryEncoding.NAME);
+					response += "<Event Name=\"Encoding\">\n" + (switchToBinary ? BinaryEncoding.NAME : "xml") + "\n</Event>";
+				}
 				else if(eventName.equals("Subscribe")){		
 					data.subscribe(nodes.item(i).getTextContent());
 					response += "<Event Name=\"Subscriptions\">\n" + data.getAllSubscribedValues(true) + "\n</Event>";
@@ -230,6 +302,13 @@ public class ConnectionHandler extends Thread
 					data.unsubscribe(nodes.item(i).getTextContent());
 					response += "<Event Name=\"Subscriptions\">\n" + data.getAllSubscribedValues(true) + "\n</Event>";
 				}
+				else if(eventName.equals("ManipulateObjects")){
+					// e.g. <Object id="RoadworksSign1" position="-740,0,-41" rotation="0,90,0" visible="true"/>
+					// all objects of one event will be changed in the same frame
+					List<Manipulation> manipulationList = getManipulations((Element) nodes.item(i));
+					sim.getObjectManipulationCenter().manipulate(manipulationList);
+					response += "<Event Name=\"ObjectsManipulated\">\n" + manipulationList.size() + "\n</Event>";
+				}
 				else{
 					System.err.println("Unknow event received!");
 					return;
@@ -241,8 +320,17 @@ public class ConnectionHandler extends Thread
 			response += "</Message>\n";
 			
 			
+			synchronized(sendLock){
+				sendResponse(response);
+				
+				// following requests will be parsed as binary messages
+				if(switchToBinary)
+					setBinary(true);
+			}
 			
-			sendResponse(response);		
+			// connection will be closed after response has been sent
+			if(abolish)
+				close();
 			
 			
 		} catch (Exception e) {;
@@ -251,13 +339,177 @@ public class ConnectionHandler extends Thread
 		}		
 	}
 	
-	public synchronized void sendResponse(String response){		
+	private static List<Manipulation> getManipulations(Element event){
+		List<Manipulation> manipulationList = new ArrayList<Manipulation>();
+		NodeList objects = event.getElementsByTagName("Object");
+		
+		for (int i = 0; i < objects.getLength(); i++) {
+			Element object = (Element) objects.item(i);
+			
+			String id = object.getAttribute("id");
+			if(id.length() == 0){
+				System.err.println("Object without id ignored!");
+				continue;
+			}
+			
+			Manipulation manipulation = new ObjectManipulationCenter.Manipulation(id);
+			
+			if(object.hasAttribute("position"))
+				manipulation.setPosition(parseVector(object.getAttribute("position")));
+			
+			if(object.hasAttribute("rotation")){
+				Vector3f rotation = parseVector(object.getAttribute("rotation"));
+				manipulation.setRotation(new float[] {rotation.x, rotation.y, rotation.z});
+			}
+			
+			if(object.hasAttribute("scale"))
+				manipulation.setScale(parseVector(object.getAttribute("scale")));
+			
+			if(object.hasAttribute("visible"))
+				manipulation.setVisibility(Boolean.parseBoolean(object.getAttribute("visible")));
+			
+			manipulationList.add(manipulation);
+		}
+		
+		return manipulationList;
+	}
+	
+	private static Vector3f parseVector(String value){
+		String[] components = value.split(",");
+		if(components.length != 3)
+			throw new NumberFormatException("Vector expected: " + value);
+		
+		return new Vector3f(Float.parseFloat(components[0].trim()), 
+				Float.parseFloat(components[1].trim()), Float.parseFloat(components[2].trim()));
+	}
+	
+	public void sendResponse(String response){		
+		connection.send(response);
+	}
+	
+	private void sendMessage(ByteBuffer buffer){
+		BinaryEncoding.endMessage(buffer);
+		connection.send(buffer);
+	}
+	
+	/**
+	 * Switches the encoding of all following messages (network thread or 
+	 * message worker while the network thread waits for it).
+	 */
+	private void setBinary(boolean binary){
+		if(binary){
+			if(responseBuffer == null){
+				responseBuffer = ByteBuffer.allocate(BinaryEncoding.MAX_MESSAGE_SIZE);
+				updateBuffer = ByteBuffer.allocate(BinaryEncoding.MAX_MESSAGE_SIZE);
+			}
+			connection.setFramer(new LengthPrefixFramer(BinaryEncoding.MAX_MESSAGE_SIZE));
+		}
+		else
+			connection.setFramer(SettingsControllerServer.createXMLFramer());
+		
+		this.binary = binary;
+	}
+	
+	/**
+	 * Handles a binary request (see BinaryEncoding) on the network thread.
+	 */
+	private void parseBinary(ByteBuffer message){
+		ByteBuffer out = responseBuffer;
+		boolean abolish = false;
+		
 		try {
-			byte[] msg = (response).getBytes("UTF-8");			
-			out.write(msg);	
-		} catch (Exception e) {
-			e.printStackTrace();
+			byte type = message.get();
+			switch(type){
+				case BinaryEncoding.ESTABLISH_CONNECTION :
+					if(message.remaining() >= 4)
+						setUpdateInterval(message.getInt());
+					updateSender.add(this);
+					BinaryEncoding.beginMessage(out, BinaryEncoding.CONNECTION_ESTABLISHED);
+					break;
+				case BinaryEncoding.ABOLISH_CONNECTION :
+					BinaryEncoding.beginMessage(out, BinaryEncoding.CONNECTION_ABOLISHED);
+					abolish = true;
+					break;
+				case BinaryEncoding.GET_DATA_SCHEMA :
+					BinaryEncoding.beginMessage(out, BinaryEncoding.DATA_SCHEMA);
+					data.getSchema(out);
+					break;
+				case BinaryEncoding.GET_SUBSCRIPTIONS :
+					BinaryEncoding.beginMessage(out, BinaryEncoding.SUBSCRIPTIONS);
+					data.getSubscriptions(out);
+					break;
+				case BinaryEncoding.GET_SUBSCRIBED_VALUES :
+					BinaryEncoding.beginMessage(out, BinaryEncoding.SUBSCRIBED_VALUES);
+					data.getChangedValues(true, out);
+					break;
+				case BinaryEncoding.GET_VALUE :
+					String path = BinaryEncoding.getString(message);
+					BinaryEncoding.beginMessage(out, BinaryEncoding.VALUES);
+					data.getValues(path, out);
+					break;
+				case BinaryEncoding.SET_UPDATE_INTERVAL :
+					setUpdateInterval(message.getInt());
+					// no break: respond with current update interval
+				case BinaryEncoding.GET_UPDATE_INTERVAL :
+					BinaryEncoding.beginMessage(out, BinaryEncoding.UPDATE_INTERVAL);
+					out.putInt(getUpdateInterval());
+					break;
+				case BinaryEncoding.SET_UPDATE_MODE :
+					onChange = (message.get() == BinaryEncoding.ON_CHANGE);
+					updateSender.wakeUp();
+					// no break: respond with current update mode
+				case BinaryEncoding.GET_UPDATE_MODE :
+					BinaryEncoding.beginMessage(out, BinaryEncoding.UPDATE_MODE);
+					out.put(onChange ? BinaryEncoding.ON_CHANGE : BinaryEncoding.INTERVAL);
+					break;
+				case BinaryEncoding.SUBSCRIBE :
+					data.subscribe(BinaryEncoding.getString(message));
+					BinaryEncoding.beginMessage(out, BinaryEncoding.SUBSCRIPTIONS);
+					data.getSubscriptions(out);
+					break;
+				case BinaryEncoding.UNSUBSCRIBE :
+					data.unsubscribe(BinaryEncoding.getString(message));
+					BinaryEncoding.beginMessage(out, BinaryEncoding.SUBSCRIPTIONS);
+					data.getSubscriptions(out);
+					break;
+				case BinaryEncoding.SET_ENCODING :
+					if(message.get() == BinaryEncoding.XML){
+						synchronized(sendLock){
+							sendResponse("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<Message>" +
+									"<Event Name=\"Encoding\">\nxml\n</Event></Message>\n");
+							setBinary(false);
+						}
+						return;
+					}
+					BinaryEncoding.beginMessage(out, BinaryEncoding.ENCODING);
+					out.put(BinaryEncoding.BINARY);
+					break;
+				default :
+					System.err.println("Unknow binary request received: " + type);
+					BinaryEncoding.beginMessage(out, BinaryEncoding.ERROR);
+					BinaryEncoding.putString(out, "Unknown request: " + type);
+			}
+			
+		} catch (BufferUnderflowException e) {
+			
+			System.err.println("Incomplete binary request received!");
+			BinaryEncoding.beginMessage(out, BinaryEncoding.ERROR);
+			BinaryEncoding.putString(out, "Incomplete request");
+			
+		} catch (BufferOverflowException e) {
+			
+			System.err.println("Binary response exceeds " + BinaryEncoding.MAX_MESSAGE_SIZE + " bytes!");
+			BinaryEncoding.beginMessage(out, BinaryEncoding.ERROR);
+			BinaryEncoding.putString(out, "Response too large");
+		}
+		
+		synchronized(sendLock){
+			sendMessage(out);
 		}
+		
+		// connection will be closed after response has been sent
+		if(abolish)
+			close();
 	}
 
 }
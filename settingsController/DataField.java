@@ -0,0 +1,138 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.settingsController;
+
+import eu.opends.car.Car;
+
+/**
+ * Value of the settings controller data schema (e.g. gas pedal state, rpm) 
+ * with direct access to its source. Subscriptions are compiled into lists of 
+ * data fields, so no path matching is needed when values are sent. The 
+ * accessors are called on the render thread only (see VehicleState).
+ * 
+ * @author Rafael Math
+ */
+public abstract class DataField
+{
+	public enum Type
+	{
+		INT, FLOAT, DOUBLE, STRING, NONE;
+	}
+	
+	private int id;
+	private String path;
+	private String[] elements;
+	private Type type;
+	
+	
+	/**
+	 * Creates a data field.
+	 * 
+	 * @param path
+	 * 			Path of the field in the data schema, e.g. 
+	 * 			"/root/thisVehicle/exterior/gearUnit/Properties/currentGear".
+	 * 
+	 * @param type
+	 * 			Type of the value (NONE: value not available).
+	 */
+	public DataField(String path, Type type)
+	{
+		this.path = path;
+		this.type = type;
+		
+		// element names below "root"
+		String[] segments = path.split("/");
+		elements = new String[segments.length-2];
+		System.arraycopy(segments, 2, elements, 0, elements.length);
+	}
+	
+	
+	/**
+	 * @return
+	 * 			Numeric value of INT, FLOAT and DOUBLE fields.
+	 */
+	public double getNumber(Car car)
+	{
+		return 0;
+	}
+	
+	
+	/**
+	 * @return
+	 * 			Value of STRING fields.
+	 */
+	public String getText(Car car)
+	{
+		return "";
+	}
+	
+	
+	/**
+	 * Appends the given value formatted according to the type of this field.
+	 */
+	public void appendValue(StringBuilder builder, double number, String text)
+	{
+		switch(type)
+		{
+			case INT : builder.append((int) number); break;
+			case FLOAT : builder.append((float) number); break;
+			case DOUBLE : builder.append(number); break;
+			case STRING : DataSchema.appendEscaped(builder, text); break;
+			case NONE : break;
+		}
+	}
+	
+	
+	/**
+	 * @return
+	 * 			Index of this field in the data schema.
+	 */
+	public int getID()
+	{
+		return id;
+	}
+	
+	
+	void setID(int id)
+	{
+		this.id = id;
+	}
+	
+	
+	public String getPath()
+	{
+		return path;
+	}
+	
+	
+	/**
+	 * @return
+	 * 			Names of the elements from "root" (excluded) to the field.
+	 */
+	public String[] getElements()
+	{
+		return elements;
+	}
+	
+	
+	public Type getType()
+	{
+		return type;
+	}
+}
@@ -0,0 +1,265 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.settingsController;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.jme3.math.FastMath;
+
+import eu.opends.car.Car;
+import eu.opends.drivingTask.settings.SettingsLoader.Setting;
+import eu.opends.main.SimulationDefaults;
+import eu.opends.main.Simulator;
+import eu.opends.settingsController.DataField.Type;
+
+/**
+ * Data schema of the settings controller API. Contains all data fields in 
+ * schema order and writes (partial) value trees as XML without building a 
+ * DOM.
+ * 
+ * @author Rafael Math
+ */
+public class DataSchema
+{
+	private static final String PREFIX = "/root/thisVehicle/";
+	
+	private DataField[] fields;
+	private String schemaString;
+	
+	
+	public DataSchema()
+	{
+		final float maxSteeringAngle = Simulator.getDrivingTask().getSettingsLoader().getSetting(
+				Setting.CANInterface_maxSteeringAngle, SimulationDefaults.CANInterface_maxSteeringAngle);
+		
+		List<DataField> fieldList = new ArrayList<DataField>();
+		
+		//interior
+		fieldList.add(new DataField(PREFIX + "interior/cockpit/pedals/gasPedal/Properties/pressedState", Type.FLOAT) {
+			public double getNumber(Car car) {return car.getGasPedalPressIntensity();} // in %
+		});
+		fieldList.add(new DataField(PREFIX + "interior/cockpit/pedals/brakePedal/Properties/pressedState", Type.FLOAT) {
+			public double getNumber(Car car) {return car.getBrakePedalPressIntensity();} // in %
+		});
+		fieldList.add(new DataField(PREFIX + "interior/cockpit/steeringWheel/Properties/steerAngle", Type.FLOAT) {
+			// in degree (+ = right, - = left)
+			public double getNumber(Car car) {return -maxSteeringAngle*car.getSteeringWheelState();}
+		});
+		
+		//exterior
+		fieldList.add(new DataField(PREFIX + "exterior/lights/Properties/headlights", Type.STRING) {
+			public String getText(Car car) {return car.getLightState();}
+		});
+		fieldList.add(new DataField(PREFIX + "exterior/gearUnit/Properties/currentGear", Type.INT) {
+			public double getNumber(Car car) {return car.getTransmission().getGear();}
+		});
+		fieldList.add(new DataField(PREFIX + "exterior/engineCompartment/engine/Properties/running", Type.INT) {
+			public double getNumber(Car car) {return car.isEngineOn() ? 1 : 0;}
+		});
+		fieldList.add(new DataField(PREFIX + "exterior/engineCompartment/engine/Properties/actualRpm", Type.INT) {
+			public double getNumber(Car car) {return (int) car.getTransmission().getRPM();}
+		});
+		fieldList.add(new DataField(PREFIX + "exterior/fueling/fuelType/Properties/currentConsumption", Type.FLOAT) {
+			// current fuel consumption
+			public double getNumber(Car car) {return car.getPowerTrain().getLitersPer100Km();}
+		});
+		fieldList.add(new DataField(PREFIX + "exterior/fueling/fuelType/tank/Properties/maxAmount", Type.FLOAT) {
+			public double getNumber(Car car) {return 60;} //TODO set max Capacity
+		});
+		fieldList.add(new DataField(PREFIX + "exterior/fueling/fuelType/tank/Properties/actualAmount", Type.FLOAT) {
+			//TODO set max Capacity
+			public double getNumber(Car car) {return 60 - car.getPowerTrain().getTotalFuelConsumption();}
+		});
+		
+		//physicalAttributes
+		fieldList.add(new DataField(PREFIX + "physicalAttributes/Properties/latitude", Type.DOUBLE) {
+			// N-S position in geo coordinates
+			public double getNumber(Car car) {return car.getGeoPosition().getX();}
+		});
+		fieldList.add(new DataField(PREFIX + "physicalAttributes/Properties/longitude", Type.DOUBLE) {
+			// W-E position in geo coordinates
+			public double getNumber(Car car) {return car.getGeoPosition().getY();}
+		});
+		fieldList.add(new DataField(PREFIX + "physicalAttributes/Properties/altitude", Type.DOUBLE) {
+			// meters above sea level
+			public double getNumber(Car car) {return car.getGeoPosition().getZ();}
+		});
+		fieldList.add(new DataField(PREFIX + "physicalAttributes/Properties/orientation", Type.FLOAT) {
+			public double getNumber(Car car) {return car.getHeadingDegree();} // 0..360 degree
+		});
+		fieldList.add(new DataField(PREFIX + "physicalAttributes/Properties/speed", Type.FLOAT) {
+			// in Km/h
+			public double getNumber(Car car) {return FastMath.abs(car.getCarControl().getCurrentVehicleSpeedKmHour());}
+		});
+		
+		//TODO how to calc?
+		fieldList.add(new DataField(PREFIX + "physicalAttributes/Properties/rise", Type.NONE) {});
+		fieldList.add(new DataField(PREFIX + "physicalAttributes/Properties/accelerationLateral", Type.NONE) {});
+		fieldList.add(new DataField(PREFIX + "physicalAttributes/Properties/rotation", Type.NONE) {});
+		fieldList.add(new DataField(PREFIX + "physicalAttributes/Properties/accelerationRotation", Type.NONE) {});
+		fieldList.add(new DataField(PREFIX + "physicalAttributes/Properties/acceleration", Type.NONE) {});
+		
+		fields = fieldList.toArray(new DataField[fieldList.size()]);
+		for(int i=0; i<fields.length; i++)
+			fields[i].setID(i);
+		
+		StringBuilder builder = new StringBuilder();
+		writeTree(builder, fields, fields.length, null, null, false);
+		schemaString = builder.toString();
+	}
+	
+	
+	/**
+	 * @return
+	 * 			All data fields in schema order (index = ID).
+	 */
+	public DataField[] getFields()
+	{
+		return fields;
+	}
+	
+	
+	/**
+	 * @return
+	 * 			XML representation of the schema (element tree without values).
+	 */
+	public String getSchemaString()
+	{
+		return schemaString;
+	}
+	
+	
+	/**
+	 * Marks all fields whose path contains the given string.
+	 * 
+	 * @param pattern
+	 * 			Part of a path, e.g. "pedals" or "/root/thisVehicle/exterior".
+	 * 
+	 * @param store
+	 * 			Flags (by field ID) to set to the given value.
+	 * 
+	 * @param value
+	 * 			Value to set.
+	 */
+	public void match(String pattern, boolean[] store, boolean value)
+	{
+		for(DataField field : fields)
+			if(field.getPath().contains(pattern))
+				store[field.getID()] = value;
+	}
+	
+	
+	/**
+	 * Writes the given fields (in schema order) as XML element tree below a 
+	 * "root" element. Elements shared by several fields will be written once.
+	 * 
+	 * @param builder
+	 * 			Builder the XML will be appended to.
+	 * 
+	 * @param fieldArray
+	 * 			Fields to write (in schema order).
+	 * 
+	 * @param count
+	 * 			Number of fields to write.
+	 * 
+	 * @param numbers
+	 * 			Numeric values by field ID (null: write names only).
+	 * 
+	 * @param texts
+	 * 			String values by field ID.
+	 * 
+	 * @param collapseEmpty
+	 * 			If true, elements without value will be written as "&lt;name/&gt;".
+	 */
+	public static void writeTree(StringBuilder builder, DataField[] fieldArray, int count, double[] numbers, 
+			String[] texts, boolean collapseEmpty)
+	{
+		if(count == 0)
+		{
+			builder.append(collapseEmpty ? "<root/>" : "<root></root>");
+			return;
+		}
+		
+		builder.append("<root>");
+		
+		String[] previous = null;
+		for(int j=0; j<count; j++)
+		{
+			DataField field = fieldArray[j];
+			String[] elements = field.getElements();
+			int leaf = elements.length - 1;
+			
+			// number of parent elements shared with the previous field
+			int common = 0;
+			if(previous != null)
+			{
+				while(common < previous.length-1 && common < leaf && previous[common].equals(elements[common]))
+					common++;
+				
+				for(int i=previous.length-2; i>=common; i--)
+					builder.append("</").append(previous[i]).append('>');
+			}
+			
+			for(int i=common; i<leaf; i++)
+				builder.append('<').append(elements[i]).append('>');
+			
+			boolean hasValue = (numbers != null && field.getType() != Type.NONE);
+			if(!hasValue && collapseEmpty)
+				builder.append('<').append(elements[leaf]).append("/>");
+			else
+			{
+				builder.append('<').append(elements[leaf]).append('>');
+				if(hasValue)
+				{
+					int id = field.getID();
+					field.appendValue(builder, numbers[id], texts[id]);
+				}
+				builder.append("</").append(elements[leaf]).append('>');
+			}
+			
+			previous = elements;
+		}
+		
+		for(int i=previous.length-2; i>=0; i--)
+			builder.append("</").append(previous[i]).append('>');
+		
+		builder.append("</root>");
+	}
+	
+	
+	static void appendEscaped(StringBuilder builder, String text)
+	{
+		if(text == null)
+			return;
+		
+		for(int i=0; i<text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if(c == '<')
+				builder.append("&lt;");
+			else if(c == '>')
+				builder.append("&gt;");
+			else if(c == '&')
+				builder.append("&amp;");
+			else
+				builder.append(c);
+		}
+	}
+}
@@ -18,33 +18,40 @@
 
 package eu.opends.settingsController;
 
-import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import eu.opends.basics.SimulationBasics;
 import eu.opends.drivingTask.settings.SettingsLoader.Setting;
 import eu.opends.main.SimulationDefaults;
 import eu.opends.main.Simulator;
+import eu.opends.network.Connection;
+import eu.opends.network.ConnectionListener;
+import eu.opends.network.DelimiterFramer;
+import eu.opends.network.MessageWorker;
+import eu.opends.network.NetworkTransport;
+import eu.opends.network.NetworkTransport.Server;
 
 /**
  * 
  * @author Daniel Braun, Rafael Math
  */
-public class SettingsControllerServer extends Thread
+public class SettingsControllerServer implements NetworkTransport.Acceptor
 {
-	ServerSocket serverSocket = null;
-	Socket clientSocket = null;
-	OutputStream out = null;
-	DataInputStream in = null;
+	// each request of a client is terminated by this tag
+	private static final String MESSAGE_END = "</Message>";
+	
+	private Server server = null;
+	private DataSchema dataSchema;
+	private VehicleStateBuffer stateBuffer;
+	private UpdateSender updateSender;
+	private MessageWorker messageWorker;
 	
 	private Simulator sim;
 	private int port = 0;
-	private boolean connected = false;
 	
-	private List<ConnectionHandler> connections = new ArrayList<ConnectionHandler>();
+	private List<ConnectionHandler> connections = new CopyOnWriteArrayList<ConnectionHandler>();
 	
 	public SettingsControllerServer(Simulator sim)
 	{
@@ -54,84 +61,109 @@ public class SettingsControllerServer extends Thread
 	}
 	
 	
-	public void run(){		
+	public void start(){
+		dataSchema = new DataSchema();
+		stateBuffer = new VehicleStateBuffer(dataSchema);
+		updateSender = new UpdateSender();
+		updateSender.start();
+		
+		// XML requests of all clients are parsed by this worker (one thread 
+		// for all clients), so the network thread only frames messages
+		messageWorker = new MessageWorker("SettingsControllerMessageWorker");
+		
 		try {
-            serverSocket = new ServerSocket(port);
+            server = SimulationBasics.getNetworkTransport().listen(port, new DelimiterFramer(MESSAGE_END, true), this);
         } catch (IOException e) {
             System.err.println("SettingsControllerServer: could not listen on port:"+port);
             return;
         }
           
         System.out.println("SettingsControllerServer started at port "+port);
-             
-        while(!isInterrupted()){        	
-			try {
-					clientSocket = serverSocket.accept();	//blocking		
-					clientSocket.setSoTimeout(100);
-	    	      	out = clientSocket.getOutputStream();
-	    		  	in = new DataInputStream(clientSocket.getInputStream());
-	    		  	ConnectionHandler con = new ConnectionHandler(sim, out, in);
-	    		  	connections.add(con);
-	    		  	con.start();
-			} catch (Exception e) {				
-				//e.printStackTrace();
-			}
-	    }
-        
-        System.out.println("SettingsControllerServer closed.");		
-	}	
+	}
+	
+	
+	/**
+	 * Creates a handler for each accepted client (called on the network thread).
+	 */
+	@Override
+	public ConnectionListener connectionAccepted(Connection connection)
+	{
+		// framer keeps search state per connection
+		connection.setFramer(createXMLFramer());
+		
+		ConnectionHandler con = new ConnectionHandler(sim, connection, this);
+		connections.add(con);
+		return con;
+	}
+	
+	
+	/**
+	 * Publishes the state of the car for the current frame (render thread). 
+	 * All connections read from this state instead of accessing the car, so 
+	 * the state is captured once per frame regardless of the number of clients.
+	 */
+	public void update()
+	{
+		if(stateBuffer != null && !connections.isEmpty())
+			stateBuffer.publish(sim.getCar());
+	}
+	
+	
+	/**
+	 * @return
+	 * 			New framer for XML requests (terminated by "&lt;/Message&gt;").
+	 */
+	static DelimiterFramer createXMLFramer()
+	{
+		return new DelimiterFramer(MESSAGE_END, true);
+	}
+	
+	
+	VehicleStateBuffer getStateBuffer()
+	{
+		return stateBuffer;
+	}
+	
+	
+	DataSchema getDataSchema()
+	{
+		return dataSchema;
+	}
+	
+	
+	UpdateSender getUpdateSender()
+	{
+		return updateSender;
+	}
+	
+	
+	MessageWorker getMessageWorker()
+	{
+		return messageWorker;
+	}
+	
+	
+	void removeConnection(ConnectionHandler con)
+	{
+		connections.remove(con);
+	}
+	
 	
-/*
-	public void close()
-	{	
-		if(connected && clientSocket != null)
-		{
-			  try {
-			    clientSocket.close();
-			  } catch (IOException e) {
-			    e.printStackTrace();
-			  }
-		}
-
-		if(serverSocket != null)
-		{
-			  try {
-			    serverSocket.close();
-			  } catch (IOException e) { 
-			    e.printStackTrace();
-			  }
-		}
-
-		interrupt();
-	}	
-*/
 	public void close()
 	{
-		interrupt();
+		if(server == null)
+			return;
+		
+		server.close();
+		server = null;
 
 		for(ConnectionHandler con : connections)
-		{
-			con.interrupt();
-		}
-
-		if(connected)
-		{
-			try {
-				if(clientSocket != null)
-					clientSocket.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		}
-
-		try {
-			if(serverSocket != null)
-				serverSocket.close();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-
-
+			con.close();
+		
+		updateSender.interrupt();
+		messageWorker.close();
+		
+		System.out.println("SettingsControllerServer closed.");
 	}
         
 }
\ No newline at end of file
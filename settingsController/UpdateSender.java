@@ -18,31 +18,61 @@
 
 package eu.opends.settingsController;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 /**
+ * Pushes subscribed values to all established settings controller 
+ * connections (one thread for all clients).
  * 
- * @author Daniel Braun
+ * @author Daniel Braun, Rafael Math
  */
 public class UpdateSender extends Thread 
 {
+	private List<ConnectionHandler> connectionList = new CopyOnWriteArrayList<ConnectionHandler>();
+	private boolean wakeUpRequested = false;
+	
+	public UpdateSender(){
+		super("SettingsControllerUpdateSender");
+		setDaemon(true);
+	}
+	
+	public void add(ConnectionHandler connectionHandler){
+		connectionList.remove(connectionHandler);
+		connectionList.add(connectionHandler);
+		wakeUp();
+	}
 	
-	private APIData  data;
-	ConnectionHandler connectionHandler;
+	public void remove(ConnectionHandler connectionHandler){
+		connectionList.remove(connectionHandler);
+	}
 	
-	public UpdateSender(APIData data, ConnectionHandler connectionHandler){
-		this.data = data;
-		this.connectionHandler = connectionHandler;
+	/**
+	 * Re-computes the next update time, e.g. after the update mode has changed.
+	 */
+	public synchronized void wakeUp(){
+		wakeUpRequested = true;
+		notify();
 	}
 	
 	public void run(){
 		while(!isInterrupted()){
 			
-			String response = "<Message><Event Name=\"SubscribedValues\">\n" + data.getAllSubscribedValues(false) + "\n</Event></Message>\n";
-			connectionHandler.sendResponse(response);
-						
+			long now = System.currentTimeMillis();
+			long nextUpdateTime = now + 1000;
+			
+			for(ConnectionHandler connectionHandler : connectionList)
+				nextUpdateTime = Math.min(nextUpdateTime, connectionHandler.sendUpdates(now));
+			
 			try {
-				Thread.sleep(connectionHandler.getUpdateInterval());
+				synchronized(this){
+					long waitTime = nextUpdateTime - System.currentTimeMillis();
+					if(!wakeUpRequested && waitTime > 0)
+						wait(waitTime);
+					wakeUpRequested = false;
+				}
 			} catch (InterruptedException e) {
-				this.interrupt();//e.printStackTrace();
+				this.interrupt();
 			}
 		}
 	}
@@ -0,0 +1,92 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package eu.opends.settingsController;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import eu.opends.car.Car;
+
+/**
+ * Values of all data fields captured on the render thread within one frame. 
+ * Once published by the VehicleStateBuffer, a state will not be modified 
+ * until all readers have released it, so all values of a message sent to a 
+ * client belong to the same frame.
+ * 
+ * @author Rafael Math
+ */
+public class VehicleState
+{
+	private long frame = -1;
+	private double[] numbers;
+	private String[] texts;
+	
+	// number of readers currently holding this state
+	final AtomicInteger references = new AtomicInteger(0);
+	
+	
+	VehicleState(int nrOfFields)
+	{
+		numbers = new double[nrOfFields];
+		texts = new String[nrOfFields];
+		for(int i=0; i<nrOfFields; i++)
+			texts[i] = "";
+	}
+	
+	
+	/**
+	 * Reads the values of all fields from the car (render thread only).
+	 */
+	void capture(DataField[] fields, Car car, long frame)
+	{
+		for(DataField field : fields)
+		{
+			int id = field.getID();
+			if(field.getType() == DataField.Type.STRING)
+				texts[id] = field.getText(car);
+			else if(field.getType() != DataField.Type.NONE)
+				numbers[id] = field.getNumber(car);
+		}
+		
+		this.frame = frame;
+	}
+	
+	
+	/**
+	 * @return
+	 * 			Number of the frame this state was captured in (-1 if no 
+	 * 			state has been captured yet).
+	 */
+	public long getFrame()
+	{
+		return frame;
+	}
+	
+	
+	public double getNumber(DataField field)
+	{
+		return numbers[field.getID()];
+	}
+	
+	
+	public String getText(DataField field)
+	{
+		return texts[field.getID()];
+	}
+}
@@ -0,0 +1,117 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package eu.opends.settingsController;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import eu.opends.car.Car;
+
+/**
+ * Publishes the vehicle state once per frame for all settings controller 
+ * clients. The render thread captures the car into a back buffer and swaps 
+ * it in as the latest state; readers on other threads acquire the latest 
+ * state without locking and release it when their message has been written. 
+ * A buffer still held by a reader will not be overwritten; in this case an 
+ * additional buffer is allocated (usually two buffers are sufficient).
+ * 
+ * @author Rafael Math
+ */
+public class VehicleStateBuffer
+{
+	private DataField[] fields;
+	
+	// accessed by the render thread only
+	private List<VehicleState> bufferList = new ArrayList<VehicleState>();
+	private long frame = 0;
+	
+	private volatile VehicleState latest;
+	
+	
+	public VehicleStateBuffer(DataSchema schema)
+	{
+		fields = schema.getFields();
+		
+		bufferList.add(new VehicleState(fields.length));
+		bufferList.add(new VehicleState(fields.length));
+		latest = bufferList.get(0);
+	}
+	
+	
+	/**
+	 * Captures the current state of the given car and makes it available 
+	 * to all readers (render thread only).
+	 * 
+	 * @param car
+	 * 			Car to capture.
+	 */
+	public void publish(Car car)
+	{
+		VehicleState back = null;
+		for(int i=0; i<bufferList.size(); i++)
+		{
+			VehicleState state = bufferList.get(i);
+			if(state != latest && state.references.get() == 0)
+			{
+				back = state;
+				break;
+			}
+		}
+		
+		if(back == null)
+		{
+			back = new VehicleState(fields.length);
+			bufferList.add(back);
+		}
+		
+		back.capture(fields, car, frame++);
+		latest = back;
+	}
+	
+	
+	/**
+	 * Returns the latest published state. The state must be released after 
+	 * reading by calling release().
+	 * 
+	 * @return
+	 * 			Latest state (will not change until released).
+	 */
+	public VehicleState acquire()
+	{
+		while(true)
+		{
+			VehicleState state = latest;
+			state.references.incrementAndGet();
+			
+			// if the state has been replaced meanwhile, it might be re-used 
+			// as back buffer already --> try again
+			if(state == latest)
+				return state;
+			
+			state.references.decrementAndGet();
+		}
+	}
+	
+	
+	public void release(VehicleState state)
+	{
+		state.references.decrementAndGet();
+	}
+}
@@ -0,0 +1,465 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.tools;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import com.jme3.font.BitmapFont;
+import com.jme3.font.BitmapText;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial.CullHint;
+
+/**
+ * Measures the time spent in the subsystems updated by the simulator in each 
+ * frame. The simulator calls beginFrame() at the beginning of simpleUpdate(),
+ * lap() after each subsystem and endFrame() at the end; each lap costs one 
+ * System.nanoTime() call (plus one allocation counter query if allocation 
+ * tracking is enabled), a disabled profiler costs one branch per call.
+ * 
+ * Percentiles are computed over the last WINDOW_SIZE frames. Results can be 
+ * shown in an on-screen overlay (refreshed twice a second), written to a CSV 
+ * file (one row per frame) and will be printed as summary when closing.
+ * 
+ * Must only be accessed from the render thread.
+ * 
+ * @author Rafael Math
+ */
+public class FrameProfiler
+{
+	// number of frames percentiles are computed of
+	private static final int WINDOW_SIZE = 600;
+	
+	// time (in seconds) between two refreshes of the overlay
+	private static final float OVERLAY_REFRESH_INTERVAL = 0.5f;
+	
+	
+	/**
+	 * Subsystems updated in Simulator.simpleUpdate() (in the order of updating).
+	 */
+	public enum Section
+	{
+		BASICS, CAMERA, STATE_BROADCAST, TRANSMISSION, PANELS, TRIGGERS, RULES, SCHEDULER, DATA_WRITER, TELEMETRY, 
+		CAN_BUS, MULTI_DRIVER, CAR, SETTINGS_CONTROLLER, TRAFFIC, CO_SIMULATION, SPEED_CONTROL, AUDIO, 
+		STEERING_TASK, PLATOON_TASK, CAMERA_FLIGHT, REACTION, EFFECTS, INSTRUCTIONS, EYE_TRACKER;
+	}
+	
+	
+	private static final Section[] sections = Section.values();
+	
+	private boolean isEnabled = false;
+	private boolean isEnabledPermanently = false;
+	
+	// durations (ns) and allocated bytes per section and frame (ring buffers)
+	private long[][] durations = new long[sections.length][WINDOW_SIZE];
+	private long[][] allocations = null;
+	private long[] frameDurations = new long[WINDOW_SIZE];
+	private int frameIndex = 0;
+	private int frameCount = 0;
+	private long totalFrames = 0;
+	
+	private long frameStartTime;
+	private long lapTime;
+	private long lapAllocation;
+	
+	private AllocationCounter allocationCounter = null;
+	private BufferedWriter csvWriter = null;
+	
+	private BitmapText overlayText = null;
+	private boolean isOverlayVisible = false;
+	private float timeSinceRefresh = 0;
+	private long[] sortBuffer = new long[WINDOW_SIZE];
+	
+	
+	/**
+	 * Creates a new profiler.
+	 * 
+	 * @param isEnabled
+	 * 			If false, the profiler will only measure while the overlay is visible.
+	 * 
+	 * @param trackAllocations
+	 * 			If true, bytes allocated by the render thread will be counted per 
+	 * 			section (if supported by the virtual machine).
+	 * 
+	 * @param csvFileName
+	 * 			File to write per frame measurements to (empty or null: no export).
+	 */
+	public FrameProfiler(boolean isEnabled, boolean trackAllocations, String csvFileName)
+	{
+		if(trackAllocations)
+		{
+			try {
+				
+				allocationCounter = new AllocationCounter();
+				allocations = new long[sections.length][WINDOW_SIZE];
+				
+			} catch (Throwable e) {
+				
+				System.err.println("Allocation tracking not supported by this virtual machine");
+				allocationCounter = null;
+			}
+		}
+		
+		if(csvFileName != null && !csvFileName.isEmpty())
+		{
+			try {
+				
+				csvWriter = new BufferedWriter(new FileWriter(csvFileName));
+				writeCSVHeader();
+				isEnabled = true;
+				
+			} catch (IOException e) {
+				
+				System.err.println("Could not create profiler file '" + csvFileName + "'");
+				csvWriter = null;
+			}
+		}
+		
+		this.isEnabledPermanently = isEnabled || (csvWriter != null);
+		this.isEnabled = isEnabledPermanently;
+	}
+	
+	
+	/**
+	 * Creates the (hidden) overlay showing the percentiles of all sections.
+	 * 
+	 * @param guiNode
+	 * 			Node to attach the overlay to.
+	 * 
+	 * @param font
+	 * 			Font of the overlay.
+	 * 
+	 * @param screenHeight
+	 * 			Height of the screen (in pixels).
+	 */
+	public void initOverlay(Node guiNode, BitmapFont font, int screenHeight)
+	{
+		overlayText = new BitmapText(font, false);
+		overlayText.setSize(font.getCharSet().getRenderedSize());
+		overlayText.setLocalTranslation(10, screenHeight - 10, 0);
+		overlayText.setCullHint(CullHint.Always);
+		guiNode.attachChild(overlayText);
+	}
+	
+	
+	/**
+	 * Shows or hides the overlay. While the overlay is visible, the profiler
+	 * measures even if it has not been enabled permanently.
+	 */
+	public void toggleOverlay()
+	{
+		if(overlayText == null)
+			return;
+		
+		isOverlayVisible = !isOverlayVisible;
+		isEnabled = isEnabledPermanently || isOverlayVisible;
+		
+		if(isOverlayVisible)
+		{
+			refreshOverlay();
+			overlayText.setCullHint(CullHint.Never);
+		}
+		else
+			overlayText.setCullHint(CullHint.Always);
+	}
+	
+	
+	public void beginFrame()
+	{
+		if(!isEnabled)
+			return;
+		
+		frameStartTime = System.nanoTime();
+		lapTime = frameStartTime;
+		
+		if(allocationCounter != null)
+			lapAllocation = allocationCounter.getAllocatedBytes();
+	}
+	
+	
+	/**
+	 * Assigns the time elapsed since the previous lap (or the beginning of the 
+	 * frame) to the given section.
+	 * 
+	 * @param section
+	 * 			Subsystem that has just been updated.
+	 */
+	public void lap(Section section)
+	{
+		if(!isEnabled)
+			return;
+		
+		long now = System.nanoTime();
+		durations[section.ordinal()][frameIndex] = now - lapTime;
+		lapTime = now;
+		
+		if(allocationCounter != null)
+		{
+			long allocation = allocationCounter.getAllocatedBytes();
+			allocations[section.ordinal()][frameIndex] = allocation - lapAllocation;
+			lapAllocation = allocation;
+		}
+	}
+	
+	
+	/**
+	 * Completes the measurements of the current frame.
+	 * 
+	 * @param tpf
+	 * 			Time per frame (in seconds).
+	 */
+	public void endFrame(float tpf)
+	{
+		if(!isEnabled)
+			return;
+		
+		frameDurations[frameIndex] = System.nanoTime() - frameStartTime;
+		
+		if(csvWriter != null)
+			writeCSVRow(tpf);
+		
+		frameIndex = (frameIndex + 1) % WINDOW_SIZE;
+		frameCount = Math.min(frameCount + 1, WINDOW_SIZE);
+		totalFrames++;
+		
+		if(isOverlayVisible)
+		{
+			timeSinceRefresh += tpf;
+			if(timeSinceRefresh >= OVERLAY_REFRESH_INTERVAL)
+			{
+				refreshOverlay();
+				timeSinceRefresh = 0;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Returns the given percentile of the durations of a section measured in 
+	 * the last frames.
+	 * 
+	 * @param section
+	 * 			Section to evaluate (null: whole update).
+	 * 
+	 * @param percentile
+	 * 			Percentile (0 to 100).
+	 * 
+	 * @return
+	 * 			Duration in nanoseconds.
+	 */
+	public long getPercentile(Section section, float percentile)
+	{
+		if(frameCount == 0)
+			return 0;
+		
+		sortWindow(section);
+		return getSortedPercentile(percentile);
+	}
+	
+	
+	/**
+	 * Copies the durations of the given section (null: whole update) measured 
+	 * in the last frames to the sort buffer and sorts them.
+	 */
+	private void sortWindow(Section section)
+	{
+		long[] values = (section == null) ? frameDurations : durations[section.ordinal()];
+		System.arraycopy(values, 0, sortBuffer, 0, frameCount);
+		Arrays.sort(sortBuffer, 0, frameCount);
+	}
+	
+	
+	/**
+	 * Returns the given percentile of the sort buffer (see sortWindow()).
+	 */
+	private long getSortedPercentile(float percentile)
+	{
+		int index = (int) Math.ceil(percentile / 100f * frameCount) - 1;
+		return sortBuffer[Math.max(0, Math.min(frameCount - 1, index))];
+	}
+	
+	
+	/**
+	 * Average number of bytes allocated per frame by the given section.
+	 * 
+	 * @return
+	 * 			Bytes per frame or -1 if allocations are not tracked.
+	 */
+	public long getAverageAllocation(Section section)
+	{
+		if(allocationCounter == null)
+			return -1;
+		
+		if(frameCount == 0)
+			return 0;
+		
+		long sum = 0;
+		long[] values = allocations[section.ordinal()];
+		for(int i=0; i<frameCount; i++)
+			sum += values[i];
+		
+		return sum / frameCount;
+	}
+	
+	
+	/**
+	 * Generates a table of median, 95th, 99th percentile and maximum duration 
+	 * (milliseconds) of all sections over the last frames.
+	 * 
+	 * @return
+	 * 			Table (one line per section).
+	 */
+	public String getSummary()
+	{
+		StringBuilder builder = new StringBuilder();
+		builder.append(String.format("%-18s %7s %7s %7s %7s", "section (ms)", "p50", "p95", "p99", "max"));
+		if(allocationCounter != null)
+			builder.append(String.format(" %9s", "KB/frame"));
+		builder.append("\n");
+		
+		appendLine(builder, "total", null);
+		for(Section section : sections)
+			appendLine(builder, section.name().toLowerCase(), section);
+		
+		return builder.toString();
+	}
+	
+	
+	public void close()
+	{
+		if(totalFrames > 0)
+			System.out.println("Profiler (last " + frameCount + " of " + totalFrames + " frames):\n" + getSummary());
+		
+		if(csvWriter != null)
+		{
+			try {
+				
+				csvWriter.close();
+				
+			} catch (IOException e) {
+				
+				e.printStackTrace();
+			}
+			
+			csvWriter = null;
+		}
+	}
+	
+	
+	private void appendLine(StringBuilder builder, String name, Section section)
+	{
+		// sort once, read all percentiles
+		if(frameCount > 0)
+			sortWindow(section);
+		else
+			sortBuffer[0] = 0;
+		
+		builder.append(String.format("%-18s %7.2f %7.2f %7.2f %7.2f", name, 
+				getSortedPercentile(50) / 1000000f, getSortedPercentile(95) / 1000000f, 
+				getSortedPercentile(99) / 1000000f, getSortedPercentile(100) / 1000000f));
+		
+		if(allocationCounter != null)
+		{
+			if(section != null)
+				builder.append(String.format(" %9.1f", getAverageAllocation(section) / 1024f));
+			else
+				builder.append(String.format(" %9s", ""));
+		}
+		
+		builder.append("\n");
+	}
+	
+	
+	private void refreshOverlay()
+	{
+		overlayText.setText(getSummary());
+	}
+	
+	
+	private void writeCSVHeader()
+	{
+		try {
+			
+			csvWriter.write("frame;tpf;total");
+			for(Section section : sections)
+				csvWriter.write(";" + section.name().toLowerCase());
+			csvWriter.newLine();
+			
+		} catch (IOException e) {
+			
+			e.printStackTrace();
+		}
+	}
+	
+	
+	private void writeCSVRow(float tpf)
+	{
+		try {
+			
+			// durations in microseconds
+			csvWriter.write(Long.toString(totalFrames));
+			csvWriter.write(';');
+			csvWriter.write(Float.toString(tpf));
+			csvWriter.write(';');
+			csvWriter.write(Long.toString(frameDurations[frameIndex] / 1000));
+			for(int i=0; i<sections.length; i++)
+			{
+				csvWriter.write(';');
+				csvWriter.write(Long.toString(durations[i][frameIndex] / 1000));
+			}
+			csvWriter.newLine();
+			
+		} catch (IOException e) {
+			
+			e.printStackTrace();
+			csvWriter = null;
+		}
+	}
+	
+	
+	/**
+	 * Bytes allocated by the current thread. Separate class, so the profiler
+	 * can be loaded by virtual machines not providing com.sun.management.
+	 */
+	private static class AllocationCounter
+	{
+		private com.sun.management.ThreadMXBean threadBean;
+		private long threadID;
+		
+		
+		public AllocationCounter()
+		{
+			threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+			if(!threadBean.isThreadAllocatedMemorySupported())
+				throw new UnsupportedOperationException();
+			
+			threadBean.setThreadAllocatedMemoryEnabled(true);
+			threadID = Thread.currentThread().getId();
+		}
+		
+		
+		public long getAllocatedBytes()
+		{
+			return threadBean.getThreadAllocatedBytes(threadID);
+		}
+	}
+}
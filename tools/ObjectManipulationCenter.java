@@ -18,6 +18,9 @@
 
 package eu.opends.tools;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.jme3.bullet.control.RigidBodyControl;
 import com.jme3.math.FastMath;
 import com.jme3.math.Quaternion;
@@ -27,14 +30,64 @@ import com.jme3.scene.Spatial.CullHint;
 
 import eu.opends.basics.SimulationBasics;
 import eu.opends.environment.GeoPosition;
+import eu.opends.main.Simulator;
 
 /**
+ * Sets position, rotation, scale and visibility of scene objects. Objects 
+ * are looked up by the scene registry of the simulator. The single-object 
+ * methods must be called from the render thread; a batch of manipulations
+ * may be submitted from any thread and will be applied in one render thread 
+ * callback.
  * 
  * @author Rafael Math
  */
 public class ObjectManipulationCenter 
 {
 	private SimulationBasics sim;
+	
+	
+	/**
+	 * Manipulation of a single object as part of a batch. Only the given 
+	 * properties (not null) will be changed.
+	 */
+	public static class Manipulation
+	{
+		private String objectID;
+		private Vector3f position = null;
+		private float[] rotation = null;
+		private Vector3f scale = null;
+		private Boolean isVisible = null;
+		
+		
+		public Manipulation(String objectID)
+		{
+			this.objectID = objectID;
+		}
+		
+		
+		public void setPosition(Vector3f position)
+		{
+			this.position = position.clone();
+		}
+		
+		
+		public void setRotation(float[] rotation)
+		{
+			this.rotation = rotation.clone();
+		}
+		
+		
+		public void setScale(Vector3f scale)
+		{
+			this.scale = scale.clone();
+		}
+		
+		
+		public void setVisibility(boolean isVisible)
+		{
+			this.isVisible = isVisible;
+		}
+	}
 
 	
 	public ObjectManipulationCenter(SimulationBasics sim)
@@ -50,11 +103,53 @@ public class ObjectManipulationCenter
 	}
 	
 	
+	/**
+	 * Applies the given manipulations in one render thread callback (in the 
+	 * given order). May be called from any thread.
+	 * 
+	 * @param manipulationList
+	 * 			List of manipulations to apply.
+	 */
+	public void manipulate(List<Manipulation> manipulationList)
+	{
+		final List<Manipulation> batch = new ArrayList<Manipulation>(manipulationList);
+		
+		SimulationBasics.getScheduler().enqueue(new Runnable() {
+			public void run()
+			{
+				for(Manipulation manipulation : batch)
+					apply(manipulation);
+			}
+		});
+	}
+	
+	
+	private void apply(Manipulation manipulation)
+	{
+		String objectID = manipulation.objectID;
+		
+		if(manipulation.position != null)
+			setPosition(objectID, manipulation.position);
+		
+		if(manipulation.rotation != null)
+			setRotation(objectID, manipulation.rotation);
+		
+		if(manipulation.scale != null)
+			setScale(objectID, manipulation.scale);
+		
+		if(manipulation.isVisible != null)
+			setVisibility(objectID, manipulation.isVisible);
+	}
+	
+	
 	public void setPosition(String objectID, Vector3f position)
 	{		
 		// get "visual" or "physical" spatial
-		// search in all sub-nodes of root node (scene node, trigger node, ...)
-		Spatial object = Util.findNode(sim.getRootNode(), objectID);
+		// registry covers all sub-nodes of root node (scene node, trigger node, ...)
+		Spatial object = getObject(objectID);
+		if(object == null)
+			return;
+		
 		RigidBodyControl control = null;
 		
 		try {
@@ -70,6 +165,8 @@ public class ObjectManipulationCenter
 			control.setPhysicsLocation(position);
 		else
 			object.setLocalTranslation(position);
+		
+		updateTriggerPosition(objectID);
 	}
 	
 	
@@ -82,8 +179,11 @@ public class ObjectManipulationCenter
 	public void setRotation(String objectID, float[] rotation)
 	{
 		// get "visual" or "physical" spatial
-		// search in all sub-nodes of root node (scene node, trigger node, ...)
-		Spatial object = Util.findNode(sim.getRootNode(), objectID);
+		// registry covers all sub-nodes of root node (scene node, trigger node, ...)
+		Spatial object = getObject(objectID);
+		if(object == null)
+			return;
+		
 		RigidBodyControl control = null;
 		
 		try {
@@ -104,26 +204,50 @@ public class ObjectManipulationCenter
 			Quaternion rot = new Quaternion().fromAngles(degToRad(rotation));
 			object.setLocalRotation(rot);
 		}
+		
+		updateTriggerPosition(objectID);
 	}
 			
 	
 	public void setScale(String objectID, Vector3f scale)
 	{
-		Spatial object = Util.findNode(sim.getRootNode(), objectID);
+		Spatial object = getObject(objectID);
+		if(object == null)
+			return;
+		
 		object.setLocalScale(scale);
-
+		updateTriggerPosition(objectID);
 	}
 		
 	
 	public void setVisibility(String objectID, boolean isVisible)
 	{
-		Spatial object = Util.findNode(sim.getRootNode(), objectID);
+		Spatial object = getObject(objectID);
+		if(object == null)
+			return;
 		
 		if(isVisible)
 			object.setCullHint(CullHint.Dynamic);
 		else
 			object.setCullHint(CullHint.Always);
 	}	
+	
+	
+	private Spatial getObject(String objectID)
+	{
+		Spatial object = sim.getSceneRegistry().getNode(objectID);
+		if(object == null)
+			System.err.println("Could not manipulate object '" + objectID + "'! Maybe it does not exist.");
+		return object;
+	}
+	
+	
+	private void updateTriggerPosition(String objectID)
+	{
+		// keep spatial index of trigger center up to date (if object is a trigger)
+		if(sim instanceof Simulator)
+			((Simulator) sim).getTriggerCenter().updateTriggerPosition(objectID);
+	}
 				
 	
 	/**
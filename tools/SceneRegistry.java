@@ -0,0 +1,242 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.tools;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.jme3.scene.Node;
+import com.jme3.scene.SceneGraphVisitor;
+import com.jme3.scene.Spatial;
+
+/**
+ * Name lookup of scene nodes (e.g. for object manipulation). Replaces the
+ * recursive search of the whole scene graph by a map which is filled when
+ * sub trees are registered after attaching (scene node, trigger node, map
+ * objects, vehicles) and cleaned up when sub trees are unregistered before
+ * detaching. 
+ * 
+ * Lookups follow the semantics of Util.findNode() (a node whose name starts 
+ * with the given ID is returned), but a node with exactly the given name takes
+ * precedence. Exact names are resolved from the map; other IDs (prefixes, nodes 
+ * attached without registration) fall back to a search of the scene graph once 
+ * and will be cached. Cached entries are checked
+ * to be still attached to the root node, so a stale entry never gets manipulated.
+ * IDs which could not be found are cached as well (until the next registration),
+ * so repeated requests for a missing object do not search the scene graph again.
+ * 
+ * Must only be accessed from the render thread.
+ * 
+ * @author Rafael Math
+ */
+public class SceneRegistry
+{
+	private Node rootNode;
+	private Map<String, Node> nodeMap = new HashMap<String, Node>();
+	
+	// reverse map: all IDs pointing to a node (for unregistering)
+	private Map<Node, List<String>> idMap = new IdentityHashMap<Node, List<String>>();
+	
+	// IDs not found in the scene graph since the last registration
+	private Set<String> missingIDs = new HashSet<String>();
+	
+	private long hits = 0;
+	private long misses = 0;
+	
+	
+	public SceneRegistry(Node rootNode)
+	{
+		this.rootNode = rootNode;
+	}
+	
+	
+	/**
+	 * Adds the given spatial and all its sub nodes to the registry. If a name 
+	 * occurs more than once, the first registered node will be kept.
+	 * 
+	 * @param spatial
+	 * 			Root of the sub tree to register.
+	 */
+	public void register(Spatial spatial)
+	{
+		if(spatial == null)
+			return;
+		
+		// new nodes may match IDs which have not been found before
+		missingIDs.clear();
+		
+		spatial.depthFirstTraversal(new SceneGraphVisitor() {
+			public void visit(Spatial child)
+			{
+				String name = child.getName();
+				if(child instanceof Node && name != null)
+				{
+					Node previousNode = nodeMap.get(name);
+					if(previousNode == null || !isAttached(previousNode))
+						put(name, (Node) child);
+				}
+			}
+		});
+	}
+	
+	
+	/**
+	 * Removes all entries pointing to the given spatial or one of its sub nodes.
+	 * 
+	 * @param spatial
+	 * 			Root of the sub tree to unregister.
+	 */
+	public void unregister(Spatial spatial)
+	{
+		if(spatial == null)
+			return;
+		
+		spatial.depthFirstTraversal(new SceneGraphVisitor() {
+			public void visit(Spatial child)
+			{
+				if(child instanceof Node)
+				{
+					List<String> idList = idMap.remove(child);
+					if(idList != null)
+					{
+						for(String id : idList)
+						{
+							// entry may have been replaced by another node meanwhile
+							if(nodeMap.get(id) == child)
+								nodeMap.remove(id);
+						}
+					}
+				}
+			}
+		});
+	}
+	
+	
+	/**
+	 * Looks up the node with the given ID.
+	 * 
+	 * @param objectID
+	 * 			Name (or beginning of the name) of the requested node.
+	 * 
+	 * @return
+	 * 			Node attached to the root node or null if not available.
+	 */
+	public Node getNode(String objectID)
+	{
+		if(objectID == null)
+			return null;
+		
+		Node node = nodeMap.get(objectID);
+		if(node != null && node.getName() != null && node.getName().startsWith(objectID) 
+				&& isAttached(node))
+		{
+			hits++;
+			return node;
+		}
+		
+		misses++;
+		
+		if(missingIDs.contains(objectID))
+			return null;
+		
+		node = Util.findNode(rootNode, objectID);
+		
+		if(node != null)
+			put(objectID, node);
+		else
+		{
+			remove(objectID);
+			missingIDs.add(objectID);
+		}
+		
+		return node;
+	}
+	
+	
+	public void clear()
+	{
+		nodeMap.clear();
+		idMap.clear();
+		missingIDs.clear();
+	}
+	
+	
+	public int size()
+	{
+		return nodeMap.size();
+	}
+	
+	
+	public String getStatistics()
+	{
+		return "entries: " + nodeMap.size() + ", hits: " + hits + ", misses: " + misses 
+				+ ", missing IDs: " + missingIDs.size();
+	}
+	
+	
+	private void put(String id, Node node)
+	{
+		if(nodeMap.get(id) == node)
+			return;
+		
+		remove(id);
+		nodeMap.put(id, node);
+		
+		List<String> idList = idMap.get(node);
+		if(idList == null)
+		{
+			idList = new ArrayList<String>(1);
+			idMap.put(node, idList);
+		}
+		idList.add(id);
+	}
+	
+	
+	private void remove(String id)
+	{
+		Node node = nodeMap.remove(id);
+		if(node != null)
+		{
+			List<String> idList = idMap.get(node);
+			if(idList != null)
+			{
+				idList.remove(id);
+				if(idList.isEmpty())
+					idMap.remove(node);
+			}
+		}
+	}
+	
+	
+	private boolean isAttached(Spatial spatial)
+	{
+		while(spatial != null)
+		{
+			if(spatial == rootNode)
+				return true;
+			spatial = spatial.getParent();
+		}
+		return false;
+	}
+}
@@ -0,0 +1,460 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.tools;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes tasks (e.g. trigger actions, scene graph updates received from
+ * the network, blinking lights) on the render thread. The scheduler is
+ * advanced once per frame by the simulator and keeps two clocks: the
+ * simulation clock stands still while the simulation is paused, the real
+ * time clock keeps running (e.g. needed to end a pause after a given time).
+ *
+ * Tasks may be submitted from any thread. Submission is lock-free: new tasks
+ * are added to a concurrent queue which is drained by the render thread into
+ * the (render thread only) due time queues. Executing due tasks stops as soon
+ * as the time budget of the current frame has been used up; remaining tasks
+ * will be executed in the next frame.
+ *
+ * @author Rafael Math
+ */
+public class SimulationScheduler
+{
+	// tasks executed later than this amount of time (in seconds) after their due time count as late
+	private static final double LATE_THRESHOLD = 0.1;
+
+	public enum Clock
+	{
+		SIMULATION, REAL;
+	}
+
+
+	/**
+	 * Task executed repeatedly by the scheduler.
+	 */
+	public interface PeriodicTask
+	{
+		/**
+		 * Will be called on the render thread once per period.
+		 *
+		 * @return
+		 * 			False, if the task should not be executed any more.
+		 */
+		public boolean update();
+	}
+
+
+	private ConcurrentLinkedQueue<ScheduledTask> submissionQueue = new ConcurrentLinkedQueue<ScheduledTask>();
+	private PriorityQueue<ScheduledTask> simulationQueue = new PriorityQueue<ScheduledTask>();
+	private PriorityQueue<ScheduledTask> realTimeQueue = new PriorityQueue<ScheduledTask>();
+	private volatile double simulationTime = 0;
+	private volatile double realTime = 0;
+	private long updateNanoTime = System.nanoTime();
+	private AtomicLong sequenceNumber = new AtomicLong(0);
+	private volatile long frameBudget = 4000000;
+
+	private AtomicLong scheduledTasks = new AtomicLong(0);
+	private volatile long executedTasks = 0;
+	private volatile long lateTasks = 0;
+	private volatile long cancelledTasks = 0;
+	private volatile long exceededFrames = 0;
+	private volatile int pendingTasks = 0;
+	private volatile double maxLateness = 0;
+
+
+	/**
+	 * Handle of a scheduled task. Can be used to cancel the task before it
+	 * has been executed (or to stop a periodic task).
+	 */
+	public static class ScheduledTask implements Comparable<ScheduledTask>
+	{
+		private Runnable runnable;
+		private PeriodicTask periodicTask;
+		private Clock clock;
+		private double dueTime;
+		private float period;
+		private long sequenceNumber;
+		private volatile boolean isCancelled = false;
+
+
+		private ScheduledTask(Runnable runnable, PeriodicTask periodicTask, Clock clock, double dueTime,
+				float period, long sequenceNumber)
+		{
+			this.runnable = runnable;
+			this.periodicTask = periodicTask;
+			this.clock = clock;
+			this.dueTime = dueTime;
+			this.period = period;
+			this.sequenceNumber = sequenceNumber;
+		}
+
+
+		public void cancel()
+		{
+			isCancelled = true;
+		}
+
+
+		public boolean isCancelled()
+		{
+			return isCancelled;
+		}
+
+
+		@Override
+		public int compareTo(ScheduledTask other)
+		{
+			// tasks with equal due time will be executed in order of submission
+			if(dueTime != other.dueTime)
+				return (dueTime < other.dueTime) ? -1 : 1;
+
+			return (sequenceNumber < other.sequenceNumber) ? -1 : ((sequenceNumber == other.sequenceNumber) ? 0 : 1);
+		}
+	}
+
+
+	/**
+	 * Sets the maximum amount of time per frame used to execute due tasks.
+	 * At least one due task will be executed per frame.
+	 *
+	 * @param milliSeconds
+	 * 			Time budget per frame (in milliseconds).
+	 */
+	public void setFrameBudget(float milliSeconds)
+	{
+		frameBudget = (long) (milliSeconds * 1000000);
+	}
+
+
+	/**
+	 * Executes the given task on the render thread as soon as possible (even
+	 * while the simulation is paused). Tasks will be executed in order of
+	 * submission.
+	 *
+	 * @param runnable
+	 * 			Task to execute.
+	 *
+	 * @return
+	 * 			Handle of the scheduled task.
+	 */
+	public ScheduledTask enqueue(Runnable runnable)
+	{
+		return schedule(runnable, 0, Clock.REAL);
+	}
+
+
+	/**
+	 * Schedules the given task to be executed on the render thread after the
+	 * given amount of simulation time.
+	 *
+	 * @param runnable
+	 * 			Task to execute.
+	 *
+	 * @param delay
+	 * 			Delay (in seconds) of simulation time. Time while the simulation
+	 * 			is paused will not be counted.
+	 *
+	 * @return
+	 * 			Handle of the scheduled task.
+	 */
+	public ScheduledTask schedule(Runnable runnable, float delay)
+	{
+		return schedule(runnable, delay, Clock.SIMULATION);
+	}
+
+
+	/**
+	 * Schedules the given task to be executed on the render thread after the
+	 * given amount of time of the given clock.
+	 *
+	 * @param runnable
+	 * 			Task to execute.
+	 *
+	 * @param delay
+	 * 			Delay (in seconds).
+	 *
+	 * @param clock
+	 * 			SIMULATION: delay will not advance while paused; REAL: delay
+	 * 			will advance while paused.
+	 *
+	 * @return
+	 * 			Handle of the scheduled task.
+	 */
+	public ScheduledTask schedule(Runnable runnable, float delay, Clock clock)
+	{
+		return submit(new ScheduledTask(runnable, null, clock, getTime(clock) + Math.max(0, delay), 0,
+				sequenceNumber.getAndIncrement()));
+	}
+
+
+	/**
+	 * Schedules the given task to be executed on the render thread every
+	 * period until the task returns false or the returned handle has been
+	 * cancelled. If execution has been delayed by more than one period,
+	 * missed executions will be skipped.
+	 *
+	 * @param periodicTask
+	 * 			Task to execute.
+	 *
+	 * @param initialDelay
+	 * 			Delay (in seconds) of the first execution.
+	 *
+	 * @param period
+	 * 			Time (in seconds) between two executions.
+	 *
+	 * @param clock
+	 * 			SIMULATION: task will not be executed while paused; REAL: task
+	 * 			will be executed while paused.
+	 *
+	 * @return
+	 * 			Handle of the scheduled task.
+	 */
+	public ScheduledTask schedulePeriodic(PeriodicTask periodicTask, float initialDelay, float period, Clock clock)
+	{
+		if(period <= 0)
+			throw new IllegalArgumentException("Period must be positive: " + period);
+
+		return submit(new ScheduledTask(null, periodicTask, clock, getTime(clock) + Math.max(0, initialDelay),
+				period, sequenceNumber.getAndIncrement()));
+	}
+
+
+	private ScheduledTask submit(ScheduledTask task)
+	{
+		submissionQueue.add(task);
+		scheduledTasks.incrementAndGet();
+		return task;
+	}
+
+
+	/**
+	 * Advances the clocks by the given frame time and executes due tasks
+	 * until the frame budget has been used up. Must be called from the
+	 * render thread. Tasks submitted by an executed task with no delay will
+	 * be executed in the next frame.
+	 *
+	 * @param tpf
+	 * 			Time per frame (in seconds).
+	 *
+	 * @param isPaused
+	 * 			If true, the simulation clock will not be advanced.
+	 */
+	public void update(float tpf, boolean isPaused)
+	{
+		updateNanoTime = System.nanoTime();
+		realTime += tpf;
+		if(!isPaused)
+			simulationTime += tpf;
+
+		// move newly submitted tasks to the due time queues
+		ScheduledTask submittedTask;
+		while((submittedTask = submissionQueue.poll()) != null)
+		{
+			if(submittedTask.clock == Clock.REAL)
+				realTimeQueue.add(submittedTask);
+			else
+				simulationQueue.add(submittedTask);
+		}
+
+		long deadline = System.nanoTime() + frameBudget;
+
+		ScheduledTask task;
+		while((task = pollDueTask()) != null)
+		{
+			double currentTime = getTime(task.clock);
+			double lateness = currentTime - task.dueTime;
+			if(lateness > LATE_THRESHOLD)
+				lateTasks++;
+			maxLateness = Math.max(maxLateness, lateness);
+			executedTasks++;
+
+			boolean repeat = false;
+
+			try {
+
+				if(task.periodicTask != null)
+					repeat = task.periodicTask.update();
+				else
+					task.runnable.run();
+
+			} catch (Exception e) {
+
+				e.printStackTrace();
+			}
+
+			if(repeat && !task.isCancelled())
+			{
+				// re-insert periodic task (skip missed periods)
+				do {
+					task.dueTime += task.period;
+				} while(task.dueTime <= currentTime);
+
+				task.sequenceNumber = sequenceNumber.getAndIncrement();
+				getQueue(task.clock).add(task);
+			}
+
+			if(System.nanoTime() >= deadline)
+			{
+				if(hasDueTask())
+					exceededFrames++;
+				break;
+			}
+		}
+
+		pendingTasks = simulationQueue.size() + realTimeQueue.size();
+	}
+
+
+	private ScheduledTask pollDueTask()
+	{
+		while(true)
+		{
+			ScheduledTask nextSimulationTask = simulationQueue.peek();
+			ScheduledTask nextRealTimeTask = realTimeQueue.peek();
+
+			boolean simulationTaskDue = nextSimulationTask != null && nextSimulationTask.dueTime <= simulationTime;
+			boolean realTimeTaskDue = nextRealTimeTask != null && nextRealTimeTask.dueTime <= realTime;
+
+			ScheduledTask task;
+			if(simulationTaskDue && realTimeTaskDue)
+			{
+				// both due: execute the one submitted first
+				if(nextSimulationTask.sequenceNumber < nextRealTimeTask.sequenceNumber)
+					task = simulationQueue.poll();
+				else
+					task = realTimeQueue.poll();
+			}
+			else if(simulationTaskDue)
+				task = simulationQueue.poll();
+			else if(realTimeTaskDue)
+				task = realTimeQueue.poll();
+			else
+				return null;
+
+			if(!task.isCancelled())
+				return task;
+
+			cancelledTasks++;
+		}
+	}
+
+
+	private boolean hasDueTask()
+	{
+		ScheduledTask nextSimulationTask = simulationQueue.peek();
+		ScheduledTask nextRealTimeTask = realTimeQueue.peek();
+
+		return (nextSimulationTask != null && nextSimulationTask.dueTime <= simulationTime) ||
+				(nextRealTimeTask != null && nextRealTimeTask.dueTime <= realTime);
+	}
+
+
+	private PriorityQueue<ScheduledTask> getQueue(Clock clock)
+	{
+		if(clock == Clock.REAL)
+			return realTimeQueue;
+		else
+			return simulationQueue;
+	}
+
+
+	private double getTime(Clock clock)
+	{
+		if(clock == Clock.REAL)
+			return realTime;
+		else
+			return simulationTime;
+	}
+
+
+	public double getSimulationTime()
+	{
+		return simulationTime;
+	}
+
+
+	public double getRealTime()
+	{
+		return realTime;
+	}
+
+
+	/**
+	 * Converts the given simulation time into System.nanoTime(), assuming the
+	 * current simulation time has been reached when the scheduler was updated
+	 * last. Must be called from the render thread; not valid across pauses.
+	 *
+	 * @param time
+	 * 			Simulation time (in seconds).
+	 *
+	 * @return
+	 * 			Corresponding value of System.nanoTime().
+	 */
+	public long toNanoTime(double time)
+	{
+		return updateNanoTime - Math.round((simulationTime - time) * 1e9);
+	}
+
+
+	public int getNumberOfPendingTasks()
+	{
+		return pendingTasks + submissionQueue.size();
+	}
+
+
+	public long getNumberOfScheduledTasks()
+	{
+		return scheduledTasks.get();
+	}
+
+
+	public long getNumberOfExecutedTasks()
+	{
+		return executedTasks;
+	}
+
+
+	public long getNumberOfLateTasks()
+	{
+		return lateTasks;
+	}
+
+
+	public long getNumberOfCancelledTasks()
+	{
+		return cancelledTasks;
+	}
+
+
+	public long getNumberOfExceededFrames()
+	{
+		return exceededFrames;
+	}
+
+
+	public String getStatistics()
+	{
+		return "scheduled: " + scheduledTasks.get() + ", executed: " + executedTasks + ", late: " + lateTasks +
+				", cancelled: " + cancelledTasks + ", pending: " + getNumberOfPendingTasks() +
+				", frames over budget: " + exceededFrames + ", max. lateness: " + Math.round(maxLateness*1000) + " ms";
+	}
+}
@@ -55,6 +55,8 @@ public class FollowBox
 	private int targetWayPointIndex = 0;
 	private boolean isTargetWayPointAvailable = false;
 	private boolean waitForNextUpdate = true;
+	private boolean isRouted = false;
+	private boolean manualTiming = false;
 
 	
 	public FollowBox(Simulator sim, final TrafficCar vehicle, FollowBoxSettings settings)
@@ -133,6 +135,45 @@ public class FollowBox
         motionControl.play(); // already contained in update method
 	}
 
+	/**
+	 * Advances the follow box by the given time step instead of the render 
+	 * frame time. Only effective if manual timing has been enabled.
+	 * 
+	 * @param vehiclePos
+	 * 			Current position of the vehicle.
+	 * 
+	 * @param timeStep
+	 * 			Simulation time (in seconds) to advance the follow box.
+	 */
+	public void update(Vector3f vehiclePos, float timeStep)
+	{
+		update(vehiclePos);
+		
+		if(manualTiming)
+			motionControl.update(timeStep);
+	}
+	
+	
+	/**
+	 * Enables or disables manual timing. With manual timing, the motion of the 
+	 * follow box will no longer be driven by the render loop, but only by calls
+	 * of update(vehiclePos, timeStep). Therefore, the follow box spatial will be 
+	 * kept out of the scene graph.
+	 * 
+	 * @param manualTiming
+	 * 			true, to advance the follow box with a fixed simulation time step.
+	 */
+	public void setManualTiming(boolean manualTiming)
+	{
+		this.manualTiming = manualTiming;
+		
+		if(manualTiming)
+			followBox.removeFromParent();
+		else
+			sim.getSceneNode().attachChild(followBox);
+	}
+	
+	
 	int counter = 0;
 	public void update(Vector3f vehiclePos)
 	{
@@ -192,8 +233,13 @@ public class FollowBox
         	setSpeed(speed);
         	
         	// if last WP reached and path not cyclic --> reset vehicle to first WP
+        	// (routed vehicles continue with a new route starting at the last WP instead)
             if (currentWayPointIndex == 0 && !motionPath.isCycle())
-            	performWayPointChange(0);
+            {
+            	Waypoint lastWayPoint = waypointList.get(waypointList.size()-1);
+            	if(!isRouted || !vehicle.onRouteFinished(lastWayPoint))
+            		performWayPointChange(0);
+            }
             
             previousWayPointIndex = currentWayPointIndex;
             
@@ -236,6 +282,79 @@ public class FollowBox
 	}
 	
 	
+	/**
+	 * Replaces the path of the follow box by the given route (e.g. computed 
+	 * by the road network). The route will not be cyclic and the follow box 
+	 * continues from the first way point of the route without resetting 
+	 * the vehicle's position.
+	 * 
+	 * @param route
+	 * 			List of at least two way points.
+	 * 
+	 * @return
+	 * 			true, if the route has been applied.
+	 */
+	public boolean setRoute(List<Waypoint> route)
+	{
+		if(route == null || route.size() < 2)
+			return false;
+		
+		waypointList = route;
+		isRouted = true;
+		
+		if(settings.isPathVisible())
+			motionPath.disableDebugShape();
+		
+		motionPath.clearWayPoints();
+		motionPath.setCycle(false);
+		for(Waypoint wayPoint : waypointList)
+			motionPath.addWayPoint(wayPoint.getPosition());
+		
+		if(settings.isPathVisible())
+			motionPath.enableDebugShape(sim.getAssetManager(), sim.getSceneNode());
+		
+		// restart follow box at first way point of route
+		motionControl.setTime(0);
+		previousWayPointIndex = 0;
+		isTargetWayPointAvailable = false;
+		
+		// path length has changed --> adjust follow box speed to speed at first way point
+		carSpeed = waypointList.get(0).getSpeed();
+		setFollowBoxSpeed(carSpeed + 10);
+		
+		return true;
+	}
+	
+	
+	/**
+	 * Pauses or resumes the movement of the follow box. A disabled follow 
+	 * box will be removed from the scene graph.
+	 * 
+	 * @param enabled
+	 * 			true, to resume movement.
+	 */
+	public void setEnabled(boolean enabled)
+	{
+		if(enabled)
+		{
+			if(!manualTiming)
+				sim.getSceneNode().attachChild(followBox);
+			motionControl.play();
+		}
+		else
+		{
+			motionControl.pause();
+			followBox.removeFromParent();
+		}
+	}
+	
+	
+	public boolean isRouted()
+	{
+		return isRouted;
+	}
+	
+	
 	public int getIndexOfWP(String wayPointID) 
 	{
 		for(int i=0; i<waypointList.size(); i++)
@@ -19,28 +19,90 @@
 package eu.opends.traffic;
 
 import java.util.ArrayList;
+import java.util.Random;
 
+import org.apache.log4j.Logger;
+
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.PhysicsTickListener;
+
+import eu.opends.drivingTask.settings.SettingsLoader.Setting;
+import eu.opends.main.SimulationDefaults;
 import eu.opends.main.Simulator;
 
 /**
  * 
  * @author Rafael Math
  */
-public class PhysicalTraffic extends Thread
+public class PhysicalTraffic extends Thread implements PhysicsTickListener
 {
+	private final static Logger logger = Logger.getLogger(PhysicalTraffic.class);
 	private static ArrayList<TrafficCarData> vehicleDataList = new ArrayList<TrafficCarData>();
     private static ArrayList<TrafficCar> vehicleList = new ArrayList<TrafficCar>();
 	private boolean isRunning = true;
 	private int updateIntervalMsec = 20;
 	private long lastUpdate = 0;
+	private RoadNetwork roadNetwork;
+	private Random random = new Random();
+	private TrafficPopulationManager populationManager = null;
+	private Simulator sim;
+	
+	// fixed-step mode: the physics accuracy is set to the traffic time step and 
+	// traffic logic is advanced on each physics tick, reading the vehicle poses 
+	// from the physics space; all random decisions (spawn points, destinations) 
+	// are drawn from the seeded generator. Hence, a run will be reproduced as 
+	// long as the inputs of the traffic (driving car, traffic lights, triggers) 
+	// are the same
+	private static final int MAX_STEPS_PER_UPDATE = 10;
+	private boolean isFixedStep;
+	private float timeStep;
+	private boolean isTickListenerAdded = false;
+	private boolean isInPhysicsTick = false;
+	private double simulationTime = 0;
+	
+	// frame time not covered by physics ticks (render thread only); time 
+	// exceeding MAX_STEPS_PER_UPDATE ticks per frame is dropped by Bullet
+	private float untickedTime = 0;
+	private double droppedTime = 0;
 
        
 	public PhysicalTraffic(Simulator sim)
 	{
-		for(TrafficCarData vehicleData : vehicleDataList)
+		this.sim = sim;
+		
+		isFixedStep = Simulator.getSettingsLoader().getSetting(Setting.TrafficSimulation_fixedStep, 
+				SimulationDefaults.TrafficSimulation_fixedStep);
+		timeStep = Simulator.getSettingsLoader().getSetting(Setting.TrafficSimulation_timeStep, 
+				SimulationDefaults.TrafficSimulation_timeStep);
+		
+		if(isFixedStep)
 		{
-			// build and add traffic car
-			vehicleList.add(new TrafficCar(sim, vehicleData));
+			int seed = Simulator.getSettingsLoader().getSetting(Setting.TrafficSimulation_seed, 
+					SimulationDefaults.TrafficSimulation_seed);
+			random = new Random(seed);
+			logger.info("Fixed-step traffic simulation (seed: " + seed + ", time step: " + timeStep + " s)");
+		}
+		
+		// build lane-level road graph from all traffic way points
+		roadNetwork = new RoadNetwork(vehicleDataList, Simulator.getDrivingTask().getScenarioLoader().getIntersections());
+		
+		boolean enablePopulation = Simulator.getSettingsLoader().getSetting(Setting.TrafficPopulation_enable, 
+				SimulationDefaults.TrafficPopulation_enable);
+		
+		if(enablePopulation && !vehicleDataList.isEmpty())
+		{
+			// scenario vehicles serve as templates for pooled cars spawned around the driving car
+			populationManager = new TrafficPopulationManager(sim, this, vehicleDataList);
+		}
+		else
+		{
+			for(TrafficCarData vehicleData : vehicleDataList)
+			{
+				// build and add traffic car
+				TrafficCar vehicle = new TrafficCar(sim, vehicleData);
+				vehicle.setManualTiming(isFixedStep);
+				vehicleList.add(vehicle);
+			}
 		}
 	}
 	
@@ -57,6 +119,62 @@ public class PhysicalTraffic extends Thread
 	}
 
 	
+	public RoadNetwork getRoadNetwork()
+	{
+		return roadNetwork;
+	}
+	
+	
+	/**
+	 * Returns the traffic population manager (if enabled in the settings)
+	 * 
+	 * @return
+	 * 			traffic population manager or null
+	 */
+	public TrafficPopulationManager getPopulationManager()
+	{
+		return populationManager;
+	}
+	
+	
+	public boolean isFixedStep()
+	{
+		return isFixedStep;
+	}
+	
+	
+	/**
+	 * Returns true while the traffic logic is stepped by a physics tick. The 
+	 * scene graph must not be changed meanwhile, as it has already been updated 
+	 * for rendering the current frame.
+	 * 
+	 * @return
+	 * 			true, if called during a physics tick
+	 */
+	public boolean isInPhysicsTick()
+	{
+		return isInPhysicsTick;
+	}
+	
+	
+	/**
+	 * Returns the simulation time of the traffic (only advanced in fixed-step mode)
+	 * 
+	 * @return
+	 * 			elapsed traffic simulation time in seconds
+	 */
+	public double getSimulationTime()
+	{
+		return simulationTime;
+	}
+	
+	
+	public Random getRandom()
+	{
+		return random;
+	}
+	
+	
 	public TrafficCar getTrafficCar(String trafficCarName) 
 	{
 		for(TrafficCar vehicle : vehicleList)
@@ -88,7 +206,7 @@ public class PhysicalTraffic extends Thread
 					
 					// update every vehicle
 					for(TrafficCar vehicle : vehicleList)
-						vehicle.update(vehicleList);
+						vehicle.update(vehicleList, updateIntervalMsec/1000f);
 				}
 				else
 				{
@@ -106,10 +224,77 @@ public class PhysicalTraffic extends Thread
 	
 	
 	// TODO use thread instead
-	public void update()
+	public void update(float tpf)
+	{
+		if(isFixedStep)
+		{
+			// traffic logic will be advanced by the physics ticks of this frame 
+			// (not registered before, as traffic is not simulated in receiver mode)
+			if(!isTickListenerAdded)
+			{
+				PhysicsSpace physicsSpace = sim.getPhysicsSpace();
+				physicsSpace.setAccuracy(timeStep);
+				physicsSpace.setMaxSubSteps(MAX_STEPS_PER_UPDATE);
+				physicsSpace.addTickListener(this);
+				isTickListenerAdded = true;
+			}
+			
+			// ticks missing from the previous frame have been dropped by Bullet
+			if(untickedTime >= timeStep)
+			{
+				float dropped = untickedTime - (untickedTime % timeStep);
+				untickedTime -= dropped;
+				droppedTime += dropped;
+				logger.warn("Traffic simulation behind schedule: dropped " + dropped + " s (" + 
+						MAX_STEPS_PER_UPDATE + " steps per frame exceeded)");
+			}
+			
+			if(!sim.isPause())
+				untickedTime += tpf * sim.getPhysicsSpeed();
+			
+			for(TrafficCar vehicle : vehicleList)
+				vehicle.updateVisuals();
+		}
+		else
+		{
+			if(populationManager != null && !sim.isPause())
+				populationManager.update(tpf);
+			
+			for(TrafficCar vehicle : vehicleList)
+				vehicle.update(vehicleList, tpf);
+		}
+	}
+	
+	
+	/**
+	 * Advances the traffic logic by one time step (fixed-step mode only). Called 
+	 * by Bullet before each physics tick (render thread).
+	 */
+	@Override
+	public void prePhysicsTick(PhysicsSpace space, float tpf)
+	{
+		isInPhysicsTick = true;
+		
+		try {
+			
+			if(populationManager != null)
+				populationManager.update(tpf);
+			
+			for(TrafficCar vehicle : vehicleList)
+				vehicle.step(vehicleList, tpf);
+			
+		} finally {
+			isInPhysicsTick = false;
+		}
+		
+		untickedTime -= tpf;
+		simulationTime += tpf;
+	}
+	
+	
+	@Override
+	public void physicsTick(PhysicsSpace space, float tpf)
 	{
-		for(TrafficCar vehicle : vehicleList)
-			vehicle.update(vehicleList);	
 	}
 
 
@@ -117,9 +302,19 @@ public class PhysicalTraffic extends Thread
 	{
 		isRunning = false;
 		
+		if(isTickListenerAdded)
+		{
+			sim.getPhysicsSpace().removeTickListener(this);
+			logger.info("Fixed-step traffic simulation: " + simulationTime + " s simulated, " + 
+					droppedTime + " s dropped");
+		}
+		
 		// close all traffic cars
-		for(TrafficCar vehicle : vehicleList)
-			vehicle.close();
+		if(populationManager != null)
+			populationManager.close();
+		else
+			for(TrafficCar vehicle : vehicleList)
+				vehicle.close();
 	}
 
 
@@ -0,0 +1,101 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.traffic;
+
+/**
+ * This class represents a directed connection between two nodes of the 
+ * road network. An edge either follows a lane, connects two lanes at a 
+ * shared way point (connector) or allows a lateral lane change.
+ * 
+ * @author Rafael Math
+ */
+public class RoadEdge 
+{
+	public enum EdgeType
+	{
+		LANE, CONNECTOR, LANE_CHANGE;
+	}
+	
+	
+	private RoadNode fromNode;
+	private RoadNode toNode;
+	private EdgeType type;
+	private float length;
+	private float cost;
+	
+	
+	public RoadEdge(RoadNode fromNode, RoadNode toNode, EdgeType type, float costFactor) 
+	{
+		this.fromNode = fromNode;
+		this.toNode = toNode;
+		this.type = type;
+		this.length = fromNode.getPosition().distance(toNode.getPosition());
+		this.cost = length * costFactor;
+	}
+
+
+	public RoadNode getFromNode() 
+	{
+		return fromNode;
+	}
+
+
+	public RoadNode getToNode() 
+	{
+		return toNode;
+	}
+
+
+	public EdgeType getType() 
+	{
+		return type;
+	}
+
+
+	/**
+	 * Getter method for the geometric length of the edge
+	 * 
+	 * @return
+	 * 			Distance (in meters) between both nodes
+	 */
+	public float getLength() 
+	{
+		return length;
+	}
+
+
+	/**
+	 * Getter method for the routing cost of the edge. The cost is never 
+	 * lower than the length, which keeps the A* heuristic admissible.
+	 * 
+	 * @return
+	 * 			Routing cost of the edge
+	 */
+	public float getCost() 
+	{
+		return cost;
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return fromNode.getName() + " -> " + toNode.getName() + " (" + type + ")";
+	}
+}
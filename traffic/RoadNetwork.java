@@ -0,0 +1,497 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.traffic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+
+import eu.opends.drivingTask.scenario.Intersection;
+import eu.opends.environment.TrafficLight;
+import eu.opends.traffic.RoadEdge.EdgeType;
+
+/**
+ * This class represents a lane-level road graph built from the way point lists
+ * of all traffic vehicles. Every way point list is considered a lane; way points
+ * with the same name are merged into a single node (connector between lanes).
+ * Nodes of parallel lanes close to each other are linked by lane change edges.
+ * Routes are computed by an A* search and kept in a bounded cache, so repeated
+ * route queries of traffic vehicles are answered without searching again.
+ *
+ * @author Rafael Math
+ */
+public class RoadNetwork
+{
+	// maximum lateral distance (in meters) between nodes of two parallel lanes
+	private static final float MAX_LANE_CHANGE_DISTANCE = 5.0f;
+
+	// maximum angle (in radians) between the headings of two parallel lanes
+	private static final float MAX_LANE_CHANGE_ANGLE = 20 * FastMath.DEG_TO_RAD;
+
+	// additional cost of a lane change compared to following the lane
+	private static final float LANE_CHANGE_COST_FACTOR = 1.5f;
+
+	// edge length (in meters) of a cell of the node grid used for range queries
+	private static final float GRID_CELL_SIZE = 50.0f;
+
+	// maximum number of routes kept in the route cache
+	private static final int MAX_CACHED_ROUTES = 1024;
+
+	private Map<String, RoadNode> nodeMap = new HashMap<String, RoadNode>();
+	private List<RoadNode> nodeList = new ArrayList<RoadNode>();
+	private List<String> laneList = new ArrayList<String>();
+	private int numberOfEdges = 0;
+	private Map<Long, List<RoadNode>> nodeGrid = new HashMap<Long, List<RoadNode>>();
+
+	private Map<String, List<Waypoint>> routeCache = new LinkedHashMap<String, List<Waypoint>>(16, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, List<Waypoint>> eldest)
+		{
+			return size() > MAX_CACHED_ROUTES;
+		}
+	};
+
+
+	/**
+	 * Creates the road network from the given traffic vehicles and intersections.
+	 *
+	 * @param vehicleDataList
+	 * 			Traffic vehicles whose way point lists define the lanes.
+	 *
+	 * @param intersectionList
+	 * 			Intersections (may be empty) used to tag nodes with an intersection ID.
+	 */
+	public RoadNetwork(List<TrafficCarData> vehicleDataList, List<Intersection> intersectionList)
+	{
+		for(TrafficCarData vehicleData : vehicleDataList)
+		{
+			FollowBoxSettings settings = vehicleData.getFollowBoxSettings();
+			addLane(vehicleData.getName(), settings.getWayPoints(), settings.isPathCyclic());
+		}
+
+		computeHeadings();
+		buildNodeGrid();
+		addLaneChangeEdges();
+		assignIntersections(intersectionList);
+	}
+
+
+	private void addLane(String laneID, List<Waypoint> wayPoints, boolean isCyclic)
+	{
+		if(wayPoints == null || wayPoints.isEmpty())
+			return;
+
+		laneList.add(laneID);
+
+		RoadNode previousNode = null;
+		for(Waypoint wayPoint : wayPoints)
+		{
+			RoadNode node = getOrCreateNode(wayPoint, laneID);
+
+			if(previousNode != null)
+				addEdge(previousNode, node);
+
+			previousNode = node;
+		}
+
+		// close the loop of a cyclic lane
+		if(isCyclic && wayPoints.size() > 1)
+			addEdge(previousNode, nodeMap.get(wayPoints.get(0).getName()));
+	}
+
+
+	private RoadNode getOrCreateNode(Waypoint wayPoint, String laneID)
+	{
+		RoadNode node = nodeMap.get(wayPoint.getName());
+		if(node == null)
+		{
+			node = new RoadNode(wayPoint, laneID, nodeList.size());
+			nodeMap.put(wayPoint.getName(), node);
+			nodeList.add(node);
+		}
+		return node;
+	}
+
+
+	private void addEdge(RoadNode fromNode, RoadNode toNode)
+	{
+		if(fromNode == toNode)
+			return;
+
+		// edges between nodes of different lanes (shared way points) are connectors
+		EdgeType type = EdgeType.LANE;
+		if(!fromNode.getLaneID().equals(toNode.getLaneID()))
+			type = EdgeType.CONNECTOR;
+
+		if(fromNode.addOutgoingEdge(new RoadEdge(fromNode, toNode, type, 1.0f)))
+			numberOfEdges++;
+	}
+
+
+	private void computeHeadings()
+	{
+		for(RoadNode node : nodeList)
+		{
+			for(RoadEdge edge : node.getOutgoingEdges())
+			{
+				if(edge.getType() == EdgeType.LANE)
+				{
+					Vector3f direction = edge.getToNode().getPosition().subtract(node.getPosition());
+					direction.setY(0);
+					node.setHeading(direction.normalizeLocal());
+					break;
+				}
+			}
+		}
+	}
+
+
+	private void buildNodeGrid()
+	{
+		for(RoadNode node : nodeList)
+		{
+			long cell = getCellKey(getCellCoordinate(node.getPosition().getX()),
+					getCellCoordinate(node.getPosition().getZ()));
+			List<RoadNode> cellList = nodeGrid.get(cell);
+			if(cellList == null)
+			{
+				cellList = new ArrayList<RoadNode>();
+				nodeGrid.put(cell, cellList);
+			}
+			cellList.add(node);
+		}
+	}
+
+
+	/**
+	 * Links each node to the successor of a node on a parallel lane, if both
+	 * nodes are close to each other and the lanes have a similar heading.
+	 * Candidates are looked up in the node grid to avoid comparing all pairs.
+	 */
+	private void addLaneChangeEdges()
+	{
+		List<RoadNode> candidateList = new ArrayList<RoadNode>();
+		for(RoadNode node : nodeList)
+		{
+			if(node.getHeading().lengthSquared() == 0)
+				continue;
+
+			candidateList.clear();
+			getNodesInRange(node.getPosition(), 0, MAX_LANE_CHANGE_DISTANCE, candidateList);
+
+			for(RoadNode neighbor : candidateList)
+				if(isParallelNeighbor(node, neighbor))
+					addLaneChangeEdge(node, neighbor);
+		}
+	}
+
+
+	/**
+	 * Collects all nodes whose distance (on the xz-plane) to the given position 
+	 * lies between the given minimum and maximum distance. Only grid cells 
+	 * overlapping the maximum distance are visited.
+	 *
+	 * @param center
+	 * 			Position to measure the distance from.
+	 *
+	 * @param minDistance
+	 * 			Minimum distance (in meters).
+	 *
+	 * @param maxDistance
+	 * 			Maximum distance (in meters).
+	 *
+	 * @param resultList
+	 * 			List the matching nodes will be added to.
+	 */
+	public void getNodesInRange(Vector3f center, float minDistance, float maxDistance, List<RoadNode> resultList)
+	{
+		int minCellX = getCellCoordinate(center.getX() - maxDistance);
+		int maxCellX = getCellCoordinate(center.getX() + maxDistance);
+		int minCellZ = getCellCoordinate(center.getZ() - maxDistance);
+		int maxCellZ = getCellCoordinate(center.getZ() + maxDistance);
+
+		float minDistanceSquared = minDistance * minDistance;
+		float maxDistanceSquared = maxDistance * maxDistance;
+
+		for(int x = minCellX; x <= maxCellX; x++)
+		{
+			for(int z = minCellZ; z <= maxCellZ; z++)
+			{
+				List<RoadNode> cellList = nodeGrid.get(getCellKey(x, z));
+				if(cellList == null)
+					continue;
+
+				for(RoadNode node : cellList)
+				{
+					float dx = node.getPosition().getX() - center.getX();
+					float dz = node.getPosition().getZ() - center.getZ();
+					float distanceSquared = dx*dx + dz*dz;
+					if(minDistanceSquared <= distanceSquared && distanceSquared <= maxDistanceSquared)
+						resultList.add(node);
+				}
+			}
+		}
+	}
+
+
+	private boolean isParallelNeighbor(RoadNode node, RoadNode neighbor)
+	{
+		if(neighbor == node || neighbor.getLaneID().equals(node.getLaneID()))
+			return false;
+
+		if(neighbor.getHeading().lengthSquared() == 0)
+			return false;
+
+		if(node.getPosition().distance(neighbor.getPosition()) > MAX_LANE_CHANGE_DISTANCE)
+			return false;
+
+		return node.getHeading().angleBetween(neighbor.getHeading()) < MAX_LANE_CHANGE_ANGLE;
+	}
+
+
+	private void addLaneChangeEdge(RoadNode node, RoadNode neighbor)
+	{
+		// change lane towards the successor of the neighbor in order to change lanes while moving
+		for(RoadEdge edge : neighbor.getOutgoingEdges())
+		{
+			if(edge.getType() == EdgeType.LANE)
+			{
+				if(node.addOutgoingEdge(new RoadEdge(node, edge.getToNode(), EdgeType.LANE_CHANGE,
+						LANE_CHANGE_COST_FACTOR)))
+					numberOfEdges++;
+				return;
+			}
+		}
+	}
+
+
+	private int getCellCoordinate(float value)
+	{
+		return (int) FastMath.floor(value / GRID_CELL_SIZE);
+	}
+
+
+	private long getCellKey(int x, int z)
+	{
+		return (((long) x) << 32) | (z & 0xffffffffL);
+	}
+
+
+	private void assignIntersections(List<Intersection> intersectionList)
+	{
+		if(intersectionList == null)
+			return;
+
+		Map<String, String> trafficLightToIntersectionMap = new HashMap<String, String>();
+		for(Intersection intersection : intersectionList)
+			for(TrafficLight trafficLight : intersection.getTrafficLightList())
+				trafficLightToIntersectionMap.put(trafficLight.getName(), intersection.getIntersectionID());
+
+		for(RoadNode node : nodeList)
+		{
+			String trafficLightID = node.getWayPoint().getTrafficLightID();
+			if(trafficLightID != null && trafficLightToIntersectionMap.containsKey(trafficLightID))
+				node.setIntersectionID(trafficLightToIntersectionMap.get(trafficLightID));
+		}
+	}
+
+
+	public RoadNode getNode(String wayPointID)
+	{
+		return nodeMap.get(wayPointID);
+	}
+
+
+	public List<RoadNode> getNodeList()
+	{
+		return Collections.unmodifiableList(nodeList);
+	}
+
+
+	public List<String> getLaneList()
+	{
+		return Collections.unmodifiableList(laneList);
+	}
+
+
+	public int getNumberOfEdges()
+	{
+		return numberOfEdges;
+	}
+
+
+	/**
+	 * Returns a randomly chosen node of the network, e.g. as destination of
+	 * a spawned traffic vehicle.
+	 *
+	 * @param random
+	 * 			Random number generator to use.
+	 *
+	 * @return
+	 * 			Random node or null if the network is empty.
+	 */
+	public RoadNode getRandomNode(Random random)
+	{
+		if(nodeList.isEmpty())
+			return null;
+
+		return nodeList.get(random.nextInt(nodeList.size()));
+	}
+
+
+	/**
+	 * Returns the route (list of way points including start and destination)
+	 * between the given way points. Routes are cached, so the returned list
+	 * must not be modified.
+	 *
+	 * @param startWayPointID
+	 * 			ID of the way point to start from.
+	 *
+	 * @param targetWayPointID
+	 * 			ID of the destination way point.
+	 *
+	 * @return
+	 * 			List of way points or null if no route exists.
+	 */
+	public synchronized List<Waypoint> getRoute(String startWayPointID, String targetWayPointID)
+	{
+		String key = startWayPointID + "->" + targetWayPointID;
+		if(routeCache.containsKey(key))
+			return routeCache.get(key);
+
+		List<Waypoint> route = null;
+		RoadNode startNode = nodeMap.get(startWayPointID);
+		RoadNode targetNode = nodeMap.get(targetWayPointID);
+		if(startNode != null && targetNode != null)
+			route = computeRoute(startNode, targetNode);
+
+		if(route != null)
+			route = Collections.unmodifiableList(route);
+
+		routeCache.put(key, route);
+		return route;
+	}
+
+
+	public synchronized void clearRouteCache()
+	{
+		routeCache.clear();
+	}
+
+
+	private List<Waypoint> computeRoute(RoadNode startNode, final RoadNode targetNode)
+	{
+		int size = nodeList.size();
+		final float[] costSoFar = new float[size];
+		final float[] estimatedCost = new float[size];
+		RoadNode[] predecessor = new RoadNode[size];
+		boolean[] closed = new boolean[size];
+		Arrays.fill(costSoFar, Float.POSITIVE_INFINITY);
+
+		PriorityQueue<RoadNode> openQueue = new PriorityQueue<RoadNode>(16, new Comparator<RoadNode>()
+		{
+			@Override
+			public int compare(RoadNode a, RoadNode b)
+			{
+				return Float.compare(estimatedCost[a.getIndex()], estimatedCost[b.getIndex()]);
+			}
+		});
+
+		costSoFar[startNode.getIndex()] = 0;
+		estimatedCost[startNode.getIndex()] = heuristic(startNode, targetNode);
+		openQueue.add(startNode);
+
+		while(!openQueue.isEmpty())
+		{
+			RoadNode node = openQueue.poll();
+			if(closed[node.getIndex()])
+				continue;
+
+			if(node == targetNode)
+				return buildRoute(predecessor, startNode, targetNode);
+
+			closed[node.getIndex()] = true;
+
+			for(RoadEdge edge : node.getOutgoingEdges())
+			{
+				RoadNode nextNode = edge.getToNode();
+				int nextIndex = nextNode.getIndex();
+				if(closed[nextIndex])
+					continue;
+
+				float cost = costSoFar[node.getIndex()] + edge.getCost();
+				if(cost < costSoFar[nextIndex])
+				{
+					costSoFar[nextIndex] = cost;
+					estimatedCost[nextIndex] = cost + heuristic(nextNode, targetNode);
+					predecessor[nextIndex] = node;
+
+					// re-insert instead of decrease-key; outdated entries are skipped when polled
+					openQueue.add(nextNode);
+				}
+			}
+		}
+
+		return null;
+	}
+
+
+	private float heuristic(RoadNode node, RoadNode targetNode)
+	{
+		// straight line distance never overestimates, since edge costs are >= edge lengths
+		return node.getPosition().distance(targetNode.getPosition());
+	}
+
+
+	private List<Waypoint> buildRoute(RoadNode[] predecessor, RoadNode startNode, RoadNode targetNode)
+	{
+		ArrayList<Waypoint> route = new ArrayList<Waypoint>();
+		RoadNode node = targetNode;
+		while(node != null)
+		{
+			route.add(node.getWayPoint());
+			if(node == startNode)
+				break;
+			node = predecessor[node.getIndex()];
+		}
+		Collections.reverse(route);
+		return route;
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return "RoadNetwork: " + laneList.size() + " lanes, " + nodeList.size() + " nodes, " +
+				numberOfEdges + " edges";
+	}
+}
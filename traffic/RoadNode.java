@@ -0,0 +1,144 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.traffic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.jme3.math.Vector3f;
+
+/**
+ * This class represents a node of the road network. Each node wraps a 
+ * way point and knows the lane it belongs to, the intersection it is 
+ * located at (if any) and all outgoing edges.
+ * 
+ * @author Rafael Math
+ */
+public class RoadNode 
+{
+	private Waypoint wayPoint;
+	private String laneID;
+	private String intersectionID = null;
+	private Vector3f heading = new Vector3f(0,0,0);
+	private List<RoadEdge> outgoingEdges = new ArrayList<RoadEdge>();
+	
+	// index of the node inside the network (used by the router for array based bookkeeping)
+	private int index;
+	
+	
+	public RoadNode(Waypoint wayPoint, String laneID, int index) 
+	{
+		this.wayPoint = wayPoint;
+		this.laneID = laneID;
+		this.index = index;
+	}
+
+
+	public String getName() 
+	{
+		return wayPoint.getName();
+	}
+	
+	
+	public Waypoint getWayPoint() 
+	{
+		return wayPoint;
+	}
+	
+	
+	public Vector3f getPosition() 
+	{
+		return wayPoint.getPosition();
+	}
+
+
+	public String getLaneID() 
+	{
+		return laneID;
+	}
+
+
+	public String getIntersectionID() 
+	{
+		return intersectionID;
+	}
+	
+	
+	public void setIntersectionID(String intersectionID) 
+	{
+		this.intersectionID = intersectionID;
+	}
+
+	
+	/**
+	 * Getter method for the normalized driving direction at this node 
+	 * (projection to xz-plane). Zero vector if the node has no successor.
+	 * 
+	 * @return
+	 * 			Driving direction at this node
+	 */
+	public Vector3f getHeading() 
+	{
+		return heading;
+	}
+	
+	
+	public void setHeading(Vector3f heading) 
+	{
+		this.heading = heading;
+	}
+
+
+	public List<RoadEdge> getOutgoingEdges() 
+	{
+		return outgoingEdges;
+	}
+	
+	
+	/**
+	 * Adds the given edge unless the node is already connected to the edge's target node.
+	 * 
+	 * @param edge
+	 * 			Edge to add.
+	 * 
+	 * @return
+	 * 			true, if the edge has been added.
+	 */
+	public boolean addOutgoingEdge(RoadEdge edge)
+	{
+		for(RoadEdge existingEdge : outgoingEdges)
+			if(existingEdge.getToNode() == edge.getToNode())
+				return false;
+		
+		return outgoingEdges.add(edge);
+	}
+	
+	
+	public int getIndex() 
+	{
+		return index;
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return getName() + " [" + laneID + "]";
+	}
+}
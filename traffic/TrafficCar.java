@@ -21,6 +21,8 @@ package eu.opends.traffic;
 import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 import com.jme3.asset.TextureKey;
 import com.jme3.bullet.control.RigidBodyControl;
@@ -37,10 +39,10 @@ import com.jme3.scene.shape.Box;
 import com.jme3.scene.shape.Sphere;
 import com.jme3.texture.Texture;
 
+import eu.opends.basics.SimulationBasics;
 import eu.opends.car.Car;
 import eu.opends.car.LightTexturesContainer.TurnSignalState;
 import eu.opends.environment.TrafficLight;
-import eu.opends.environment.TrafficLightCenter;
 import eu.opends.environment.TrafficLight.TrafficLightState;
 import eu.opends.main.Simulator;
 import eu.opends.tools.Util;
@@ -59,6 +61,16 @@ public class TrafficCar extends Car
 	private float overwriteSpeed = -1;
 	private Material brickMaterial;
 	private boolean loseCargo = false;
+	private static final int MAX_DESTINATION_ATTEMPTS = 10;
+	private boolean isActive = true;
+	private boolean isAttached = true;
+	
+	// attaches or detaches the car according to its activation state
+	private final Runnable updateSceneGraph = new Runnable() {
+		public void run() {
+			attachToSceneGraph(isActive);
+		}
+	};
 
 	
 	public TrafficCar(Simulator sim, TrafficCarData trafficCarData)
@@ -159,13 +171,193 @@ public class TrafficCar extends Car
 	}
 
 
+	/**
+	 * Lets the traffic car drive along the shortest route of the road network 
+	 * from its current way point to the given destination. When the destination 
+	 * has been reached, a new random destination will be chosen.
+	 * 
+	 * @param wayPointID
+	 * 			ID of the destination way point.
+	 * 
+	 * @return
+	 * 			true, if a route to the destination exists.
+	 */
+	public boolean setDestination(String wayPointID)
+	{
+		return setRoute(followBox.getCurrentWayPoint().getName(), wayPointID);
+	}
+	
+	
+	private boolean setRoute(String startWayPointID, String targetWayPointID)
+	{
+		RoadNetwork roadNetwork = sim.getPhysicalTraffic().getRoadNetwork();
+		List<Waypoint> route = roadNetwork.getRoute(startWayPointID, targetWayPointID);
+		
+		if(route == null || !followBox.setRoute(route))
+		{
+			System.err.println("No route from '" + startWayPointID + "' to '" + targetWayPointID + "' (" + name + ")");
+			return false;
+		}
+		
+		return true;
+	}
+	
+	
+	/**
+	 * Will be called by the follow box when the end of the current route has 
+	 * been reached. Continues with a route to a randomly chosen destination.
+	 * 
+	 * @param lastWayPoint
+	 * 			Last way point of the finished route.
+	 * 
+	 * @return
+	 * 			true, if a new route could be found.
+	 */
+	boolean onRouteFinished(Waypoint lastWayPoint)
+	{
+		RoadNetwork roadNetwork = sim.getPhysicalTraffic().getRoadNetwork();
+		Random random = sim.getPhysicalTraffic().getRandom();
+		
+		// destination might not be reachable from every way point --> try some candidates
+		for(int i=0; i<MAX_DESTINATION_ATTEMPTS; i++)
+		{
+			RoadNode destination = roadNetwork.getRandomNode(random);
+			if(destination == null)
+				return false;
+			
+			List<Waypoint> route = roadNetwork.getRoute(lastWayPoint.getName(), destination.getName());
+			if(route != null && followBox.setRoute(route))
+				return true;
+		}
+		
+		return false;
+	}
+
+
+	/**
+	 * Places the traffic car at the first way point of the given route and 
+	 * activates it. Used when a pooled traffic car is (re-)spawned.
+	 * 
+	 * @param route
+	 * 			Route to follow (at least two way points).
+	 * 
+	 * @return
+	 * 			true, if the traffic car has been spawned.
+	 */
+	public boolean spawn(List<Waypoint> route)
+	{
+		if(!followBox.setRoute(route))
+			return false;
+		
+		overwriteSpeed = -1;
+		loseCargo = false;
+		
+		// move car immediately to avoid popping up at its previous location
+		setPosition(route.get(0).getPosition());
+		setRotation(new Quaternion().fromAngles(0, followBox.getHeadingAtWP(0), 0));
+		followBox.setToWayPoint(0);
+		
+		setActive(true);
+		return true;
+	}
+	
+	
+	/**
+	 * Activates or deactivates the traffic car. An inactive car is removed 
+	 * from scene graph and physics space, but keeps all its resources in 
+	 * order to be re-used by the traffic population manager.
+	 * 
+	 * @param active
+	 * 			true, to add the car to the simulation.
+	 */
+	public void setActive(boolean active)
+	{
+		if(isActive == active)
+			return;
+		
+		isActive = active;
+		
+		if(active)
+			sim.getPhysicsSpace().add(carControl);
+		else
+		{
+			if(getTurnSignal() != TurnSignalState.OFF)
+				setTurnSignal(TurnSignalState.OFF);
+			resetPedals();
+			sim.getPhysicsSpace().remove(carControl);
+		}
+		
+		// during a physics tick, the scene graph has already been updated for 
+		// rendering the current frame --> change it at the beginning of next frame
+		PhysicalTraffic physicalTraffic = sim.getPhysicalTraffic();
+		if(physicalTraffic != null && physicalTraffic.isInPhysicsTick())
+			SimulationBasics.getScheduler().enqueue(updateSceneGraph);
+		else
+			updateSceneGraph.run();
+		
+		followBox.setEnabled(active);
+	}
+	
+	
+	private void attachToSceneGraph(boolean attach)
+	{
+		if(isAttached == attach)
+			return;
+		
+		isAttached = attach;
+		
+		if(attach)
+		{
+			sim.getSceneNode().attachChild(carNode);
+			sim.getSceneNode().addLight(leftHeadLight);
+			sim.getSceneNode().addLight(rightHeadLight);
+		}
+		else
+		{
+			carNode.removeFromParent();
+			sim.getSceneNode().removeLight(leftHeadLight);
+			sim.getSceneNode().removeLight(rightHeadLight);
+		}
+	}
+	
+	
+	public boolean isActive()
+	{
+		return isActive;
+	}
+
+
 	public void loseCargo()
 	{
 		loseCargo = true;
 	}
 	
 	
-	public void update(ArrayList<TrafficCar> vehicleList) 
+	public void setManualTiming(boolean manualTiming)
+	{
+		followBox.setManualTiming(manualTiming);
+	}
+	
+	
+	public void update(ArrayList<TrafficCar> vehicleList, float timeStep) 
+	{
+		step(vehicleList, timeStep);
+		updateVisuals();
+	}
+	
+	
+	/**
+	 * Updates steering, speed and follow box. Vehicle poses are read from the 
+	 * physics space (not from the scene graph), hence this method may be called 
+	 * on each physics tick.
+	 * 
+	 * @param vehicleList
+	 * 			All active traffic cars (obstacles).
+	 * 
+	 * @param timeStep
+	 * 			Time (in seconds) to advance the follow box.
+	 */
+	public void step(ArrayList<TrafficCar> vehicleList, float timeStep) 
 	{
 		if(!sim.isPause())
 		{
@@ -175,14 +367,22 @@ public class TrafficCar extends Car
 			
 			// update speed
 			updateSpeed(vehicleList);
-			
-			// update lights
-			updateLightState();
 		}
 		
 		// update movement of follow box according to vehicle's position
-		Vector3f vehicleCenterPos = centerGeometry.getWorldTranslation();
-		followBox.update(vehicleCenterPos);
+		followBox.update(getCenterPosition(), timeStep);
+	}
+	
+	
+	/**
+	 * Updates lights and lost cargo. Must be called once per frame before the 
+	 * scene graph is rendered.
+	 */
+	public void updateVisuals()
+	{
+		// update lights
+		if(!sim.isPause())
+			updateLightState();
 		
 		if(loseCargo)
 			dropObjects();
@@ -191,6 +391,25 @@ public class TrafficCar extends Car
 	}
 	
 	
+	/**
+	 * Position of the front reference point as given by the physics space 
+	 * (the scene graph will only be synchronized once per frame).
+	 */
+	private Vector3f getFrontPosition()
+	{
+		return getRotation().mult(frontGeometry.getLocalTranslation()).addLocal(getPosition());
+	}
+	
+	
+	/**
+	 * Position of the center reference point as given by the physics space.
+	 */
+	private Vector3f getCenterPosition()
+	{
+		return getRotation().mult(centerGeometry.getLocalTranslation()).addLocal(getPosition());
+	}
+	
+	
 	private int brickCounter = 0;
 	private Vector3f previousBrickPos = new Vector3f(0,0,0);
 	private void dropObjects() 
@@ -243,8 +462,8 @@ public class TrafficCar extends Car
 		
 		// get angle between driving direction and way point direction --> steering intensity
 		// only consider 2D space (projection of WPs to xz-plane)
-		Vector3f carFrontPos = frontGeometry.getWorldTranslation();
-		Vector3f carCenterPos = centerGeometry.getWorldTranslation();
+		Vector3f carFrontPos = getFrontPosition();
+		Vector3f carCenterPos = getCenterPosition();
 		float steeringAngle = Util.getAngleBetweenPoints(carFrontPos, carCenterPos, wayPoint, true);
 		
 		// compute steering intensity in percent
@@ -264,8 +483,8 @@ public class TrafficCar extends Car
 	private int getRelativePosition(Vector3f wayPoint)
 	{
 		// get vehicles center point and point in driving direction
-		Vector3f frontPosition = frontGeometry.getWorldTranslation();
-		Vector3f centerPosition = centerGeometry.getWorldTranslation();
+		Vector3f frontPosition = getFrontPosition();
+		Vector3f centerPosition = getCenterPosition();
 		
 		// convert Vector3f to Point2D.Float, as needed for Line2D.Float
 		Point2D.Float centerPoint = new Point2D.Float(centerPosition.getX(),centerPosition.getZ());
@@ -431,8 +650,8 @@ public class TrafficCar extends Car
 		
 		// angle between driving direction of traffic car and direction towards obstacle
 		// (consider 3D space, because obstacle could be located on a bridge above traffic car)
-		Vector3f carFrontPos = frontGeometry.getWorldTranslation();
-		Vector3f carCenterPos = centerGeometry.getWorldTranslation();
+		Vector3f carFrontPos = getFrontPosition();
+		Vector3f carCenterPos = getCenterPosition();
 		float angle = Util.getAngleBetweenPoints(carFrontPos, carCenterPos, obstaclePos, false);
 		if(belowSafetyDistance(angle, distanceToObstacle))
 			return true;
@@ -478,9 +697,8 @@ public class TrafficCar extends Car
 	{
 		if(wayPoint != null)
 		{
-			String trafficLightID = wayPoint.getTrafficLightID();
-			
-			TrafficLight trafficLight = TrafficLightCenter.getTrafficLightByName(trafficLightID);
+			// traffic light has been resolved at load time
+			TrafficLight trafficLight = wayPoint.getTrafficLight();
 
 			if(trafficLight != null &&
 				 (
@@ -0,0 +1,311 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.traffic;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+import com.jme3.math.Vector3f;
+
+import eu.opends.drivingTask.settings.SettingsLoader;
+import eu.opends.drivingTask.settings.SettingsLoader.Setting;
+import eu.opends.main.SimulationDefaults;
+import eu.opends.main.Simulator;
+
+/**
+ * This class keeps a target number of traffic cars in a ring around the
+ * driving car. Traffic cars are created once (using the traffic vehicles of
+ * the scenario as templates) and kept in a pool. Cars leaving the despawn
+ * distance are deactivated and returned to the pool, pooled cars are spawned
+ * at way points of the road network between minimum and maximum spawn distance.
+ *
+ * @author Rafael Math
+ */
+public class TrafficPopulationManager
+{
+	private final static Logger logger = Logger.getLogger(TrafficPopulationManager.class);
+
+	// minimum distance (in meters) between a spawn point and any active traffic car
+	private static final float MIN_SPAWN_SEPARATION = 15f;
+
+	// maximum number of candidate spawn points checked per spawned car
+	private static final int MAX_SPAWN_ATTEMPTS = 10;
+
+	// interval (in seconds) spawn/despawn rates are computed for
+	private static final float STATISTICS_INTERVAL = 10f;
+
+	private Simulator sim;
+	private RoadNetwork roadNetwork;
+	private Random random;
+	private List<TrafficCar> activeVehicleList;
+	private LinkedList<TrafficCar> pool = new LinkedList<TrafficCar>();
+	private List<TrafficCar> pooledVehicleList = new ArrayList<TrafficCar>();
+	private List<RoadNode> candidateList = new ArrayList<RoadNode>();
+
+	private int targetVehicles;
+	private int poolSize;
+	private float minSpawnDistance;
+	private float maxSpawnDistance;
+	private float despawnDistance;
+	private int maxSpawnsPerUpdate;
+
+	private long totalSpawns = 0;
+	private long totalDespawns = 0;
+	private int intervalSpawns = 0;
+	private int intervalDespawns = 0;
+	private float intervalTime = 0;
+	private float spawnRate = 0;
+	private float despawnRate = 0;
+
+
+	public TrafficPopulationManager(Simulator sim, PhysicalTraffic physicalTraffic,
+			List<TrafficCarData> templateList)
+	{
+		this.sim = sim;
+		this.roadNetwork = physicalTraffic.getRoadNetwork();
+		this.random = physicalTraffic.getRandom();
+		this.activeVehicleList = PhysicalTraffic.getVehicleList();
+
+		SettingsLoader settingsLoader = Simulator.getSettingsLoader();
+		targetVehicles = settingsLoader.getSetting(Setting.TrafficPopulation_targetVehicles,
+				SimulationDefaults.TrafficPopulation_targetVehicles);
+		poolSize = settingsLoader.getSetting(Setting.TrafficPopulation_poolSize,
+				SimulationDefaults.TrafficPopulation_poolSize);
+		minSpawnDistance = settingsLoader.getSetting(Setting.TrafficPopulation_minSpawnDistance,
+				SimulationDefaults.TrafficPopulation_minSpawnDistance);
+		maxSpawnDistance = settingsLoader.getSetting(Setting.TrafficPopulation_maxSpawnDistance,
+				SimulationDefaults.TrafficPopulation_maxSpawnDistance);
+		despawnDistance = settingsLoader.getSetting(Setting.TrafficPopulation_despawnDistance,
+				SimulationDefaults.TrafficPopulation_despawnDistance);
+		maxSpawnsPerUpdate = settingsLoader.getSetting(Setting.TrafficPopulation_maxSpawnsPerUpdate,
+				SimulationDefaults.TrafficPopulation_maxSpawnsPerUpdate);
+
+		// despawning inside the spawn ring would cause cars to flicker
+		despawnDistance = Math.max(despawnDistance, maxSpawnDistance);
+
+		// create all pooled cars up front, so spawning does not load any models
+		for(int i=0; i<poolSize; i++)
+		{
+			TrafficCarData template = templateList.get(i % templateList.size());
+			
+			// the first car of each template keeps the name of the scenario vehicle,
+			// so it can still be looked up by name (e.g. by trigger actions)
+			TrafficCarData vehicleData = template;
+			if(i >= templateList.size())
+				vehicleData = createPooledCarData(template, i);
+			
+			TrafficCar vehicle = new TrafficCar(sim, vehicleData);
+			vehicle.setManualTiming(physicalTraffic.isFixedStep());
+			vehicle.setActive(false);
+			pooledVehicleList.add(vehicle);
+			pool.add(vehicle);
+		}
+	}
+
+
+	private TrafficCarData createPooledCarData(TrafficCarData template, int index)
+	{
+		String name = template.getName() + "_" + index;
+		return new TrafficCarData(name, template.getMass(), template.getAcceleration(),
+				template.getDecelerationBrake(), template.getDecelerationFreeWheel(),
+				template.isEngineOn(), template.getModelPath(), template.getFollowBoxSettings());
+	}
+
+
+	public void update(float tpf)
+	{
+		Vector3f egoPosition = sim.getCar().getPosition();
+
+		despawnDistantVehicles(egoPosition);
+		spawnVehicles(egoPosition);
+		updateStatistics(tpf);
+	}
+
+
+	private void despawnDistantVehicles(Vector3f egoPosition)
+	{
+		float despawnDistanceSquared = despawnDistance * despawnDistance;
+
+		Iterator<TrafficCar> iterator = activeVehicleList.iterator();
+		while(iterator.hasNext())
+		{
+			TrafficCar vehicle = iterator.next();
+			if(vehicle.getPosition().distanceSquared(egoPosition) > despawnDistanceSquared)
+			{
+				iterator.remove();
+				vehicle.setActive(false);
+				pool.add(vehicle);
+
+				totalDespawns++;
+				intervalDespawns++;
+			}
+		}
+	}
+
+
+	private void spawnVehicles(Vector3f egoPosition)
+	{
+		int spawns = 0;
+		while(activeVehicleList.size() < targetVehicles && spawns < maxSpawnsPerUpdate && !pool.isEmpty())
+		{
+			// collect spawn candidates only once per update
+			if(spawns == 0)
+			{
+				candidateList.clear();
+				roadNetwork.getNodesInRange(egoPosition, minSpawnDistance, maxSpawnDistance, candidateList);
+			}
+
+			if(candidateList.isEmpty() || !spawnVehicle())
+				break;
+
+			spawns++;
+			totalSpawns++;
+			intervalSpawns++;
+		}
+	}
+
+
+	private boolean spawnVehicle()
+	{
+		for(int i=0; i<MAX_SPAWN_ATTEMPTS; i++)
+		{
+			RoadNode spawnNode = candidateList.get(random.nextInt(candidateList.size()));
+			if(isOccupied(spawnNode.getPosition()))
+				continue;
+
+			RoadNode destination = roadNetwork.getRandomNode(random);
+			if(destination == null)
+				return false;
+			
+			List<Waypoint> route = roadNetwork.getRoute(spawnNode.getName(), destination.getName());
+			if(route == null || route.size() < 2)
+				continue;
+
+			TrafficCar vehicle = pool.poll();
+			if(vehicle.spawn(route))
+			{
+				activeVehicleList.add(vehicle);
+				return true;
+			}
+
+			pool.add(vehicle);
+		}
+
+		return false;
+	}
+
+
+	private boolean isOccupied(Vector3f position)
+	{
+		float minSeparationSquared = MIN_SPAWN_SEPARATION * MIN_SPAWN_SEPARATION;
+
+		for(TrafficCar vehicle : activeVehicleList)
+			if(vehicle.getPosition().distanceSquared(position) < minSeparationSquared)
+				return true;
+
+		return false;
+	}
+
+
+	private void updateStatistics(float tpf)
+	{
+		intervalTime += tpf;
+		if(intervalTime >= STATISTICS_INTERVAL)
+		{
+			spawnRate = intervalSpawns / intervalTime;
+			despawnRate = intervalDespawns / intervalTime;
+			intervalSpawns = 0;
+			intervalDespawns = 0;
+			intervalTime = 0;
+
+			logger.debug(getStatistics());
+		}
+	}
+
+
+	/**
+	 * Number of spawned vehicles per second (averaged over the last statistics interval)
+	 *
+	 * @return
+	 * 			spawn rate in vehicles per second
+	 */
+	public float getSpawnRate()
+	{
+		return spawnRate;
+	}
+
+
+	/**
+	 * Number of despawned vehicles per second (averaged over the last statistics interval)
+	 *
+	 * @return
+	 * 			despawn rate in vehicles per second
+	 */
+	public float getDespawnRate()
+	{
+		return despawnRate;
+	}
+
+
+	/**
+	 * Share of pooled vehicles currently in use
+	 *
+	 * @return
+	 * 			pool occupancy between 0 and 1
+	 */
+	public float getPoolOccupancy()
+	{
+		if(poolSize == 0)
+			return 0;
+
+		return (poolSize - pool.size()) / (float) poolSize;
+	}
+
+
+	public long getTotalSpawns()
+	{
+		return totalSpawns;
+	}
+
+
+	public long getTotalDespawns()
+	{
+		return totalDespawns;
+	}
+
+
+	public String getStatistics()
+	{
+		return "Traffic population: " + activeVehicleList.size() + "/" + targetVehicles + " active, pool " +
+				(poolSize - pool.size()) + "/" + poolSize + " in use, spawn rate " + spawnRate +
+				"/s, despawn rate " + despawnRate + "/s";
+	}
+
+
+	public void close()
+	{
+		for(TrafficCar vehicle : pooledVehicleList)
+			vehicle.close();
+	}
+}
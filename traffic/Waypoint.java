@@ -20,6 +20,9 @@ package eu.opends.traffic;
 
 import com.jme3.math.Vector3f;
 
+import eu.opends.environment.TrafficLight;
+import eu.opends.environment.TrafficLightCenter;
+
 /**
  * This class represents a way point for traffic participants. Each
  * way point consists of a name, a speed value that the traffic object 
@@ -34,6 +37,8 @@ public class Waypoint
 	private float speed;
 	private Vector3f position;
 	private String trafficLightID;
+	private TrafficLight trafficLight = null;
+	private boolean trafficLightResolved = false;
 	private Float headLightIntensity;
 	private String turnSignal;
 	
@@ -119,6 +124,40 @@ public class Waypoint
 	}
 	
 	
+	/**
+	 * Getter method for the related traffic light. The traffic light will be
+	 * looked up only once (by the traffic light center or on first access).
+	 * 
+	 * @return
+	 * 			Related traffic light (null, if not available)
+	 */
+	public TrafficLight getTrafficLight() 
+	{
+		if(!trafficLightResolved)
+			resolveTrafficLight();
+		
+		return trafficLight;
+	}
+	
+	
+	/**
+	 * Looks up the traffic light referred to by the traffic light ID of this
+	 * way point. Way points without traffic light ID are resolved immediately;
+	 * others remain unresolved until the traffic light has been registered.
+	 */
+	public void resolveTrafficLight() 
+	{
+		if(trafficLightID == null)
+		{
+			trafficLightResolved = true;
+			return;
+		}
+		
+		trafficLight = TrafficLightCenter.getTrafficLightByName(trafficLightID);
+		trafficLightResolved = (trafficLight != null);
+	}
+	
+	
 	/**
 	 * Getter method for the intensity of head light
 	 * 
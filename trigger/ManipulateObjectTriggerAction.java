@@ -26,7 +26,7 @@ import com.jme3.scene.Spatial;
 import com.jme3.scene.Spatial.CullHint;
 
 import eu.opends.basics.SimulationBasics;
-import eu.opends.tools.Util;
+import eu.opends.main.Simulator;
 
 
 /**
@@ -142,8 +142,8 @@ public class ManipulateObjectTriggerAction extends TriggerAction
 			try {
 				
 				// get "visual" or "physical" spatial
-				// search in all sub-nodes of root node (scene node, trigger node, ...)
-				Spatial object = Util.findNode(sim.getRootNode(), objectID);
+				// registry covers all sub-nodes of root node (scene node, trigger node, ...)
+				Spatial object = sim.getSceneRegistry().getNode(objectID);
 				RigidBodyControl control = null;
 				
 				try {
@@ -231,6 +231,10 @@ public class ManipulateObjectTriggerAction extends TriggerAction
 				
 				if(updateVisibility)
 					object.setCullHint(visibility);
+				
+				// keep spatial index of trigger center up to date (if object is a trigger)
+				if((updateLocation || updateRotation || updateScale) && sim instanceof Simulator)
+					((Simulator) sim).getTriggerCenter().updateTriggerPosition(objectID);
 		
 				
 			} catch (Exception e){
@@ -84,7 +84,15 @@ public class ManipulatePictureTriggerAction extends TriggerAction
 			}
 			
 			// set only given picture to ...
-			Spatial spatial = sim.getGuiNode().getChild(pictureID);
+			Spatial spatial = null;
+			TreeMap<String, Picture> pictureMap = PanelCenter.getPictureMap();
+			if(pictureMap != null)
+				spatial = pictureMap.get(pictureID);
+			
+			// picture not loaded from scene description --> search GUI node
+			if(spatial == null)
+				spatial = sim.getGuiNode().getChild(pictureID);
+			
 			if(spatial instanceof Picture)
 			{
 				Picture picture = (Picture) spatial;
@@ -19,6 +19,7 @@
 package eu.opends.trigger;
 
 import eu.opends.basics.SimulationBasics;
+import eu.opends.tools.SimulationScheduler.Clock;
 
 /**
  * 
@@ -53,10 +54,16 @@ public class PauseTriggerAction extends TriggerAction
 			{
 				sim.setPause(true);
 				
+				// simulation time stands still while paused --> end pause in real time
 				if(duration > 0)
 				{
-					StopPauseThread st = new StopPauseThread(duration);
-					st.start();
+					SimulationBasics.getScheduler().schedule(new Runnable()
+					{
+						public void run()
+						{
+							sim.setPause(false);
+						}
+					}, duration, Clock.REAL);
 				}
 				
 				updateCounter();
@@ -65,23 +72,4 @@ public class PauseTriggerAction extends TriggerAction
 	}
 	
 	
-	class StopPauseThread extends Thread 
-	{
-        int duration;
-        
-        StopPauseThread(int duration) 
-        {
-            this.duration = duration;
-        }
-
-        public void run() 
-        {
-        	try {Thread.sleep(1000*duration);} 
-        	catch (InterruptedException e){}
-
-    		sim.setPause(false);
-        }
-    }
-
-	
 }
@@ -53,10 +53,10 @@ public class ReportSpeedTriggerAction extends TriggerAction
 			
 			if(type.equalsIgnoreCase("greaterThan") && (currentSpeed > targetSpeed))
 				Simulator.getDrivingTaskLogger().reportText("Car exceeded maximum speed of " + 
-						targetSpeed + "km/h (Driven speed: " + currentSpeed + " km/h)");
+						targetSpeed + "km/h (Driven speed: " + currentSpeed + " km/h)", getActionDate());
 			else if (type.equalsIgnoreCase("lessThan") && (currentSpeed < targetSpeed))
 				Simulator.getDrivingTaskLogger().reportText("Car undershot minimum speed of " + 
-						targetSpeed + "km/h (Driven speed: " + currentSpeed + " km/h)");
+						targetSpeed + "km/h (Driven speed: " + currentSpeed + " km/h)", getActionDate());
 
 			updateCounter();
 		}
@@ -56,7 +56,7 @@ public class ReportTrafficLightTriggerAction extends TriggerAction
 				)
 			{
 				Simulator.getDrivingTaskLogger().reportText("Car has passed trigger while traffic light '" + 
-						trafficLightID + "' was " + targetTrafficLightState + ".");
+						trafficLightID + "' was " + targetTrafficLightState + ".", getActionDate());
 			}
 			
 			updateCounter();
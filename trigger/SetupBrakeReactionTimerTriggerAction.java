@@ -72,6 +72,10 @@ public class SetupBrakeReactionTimerTriggerAction extends TriggerAction
 					mustPressBrakePedal, taskCompletionAfterTime, taskCompletionAfterDistance, allowLaneChange, 
 					holdSpeedFor, failSound, successSound, comment);
 			
+			// stimulus onset: time the trigger has been hit (plus delay)
+			if(hasTriggerTime())
+				sim.getReactionCenter().setOnset(timerID, getActionNanoTime());
+			
 			updateCounter();
 		}
 	}
@@ -55,6 +55,10 @@ public class SetupKeyReactionTimerTriggerAction extends TriggerAction
 			sim.getReactionCenter().setupKeyReactionTimer(timerID, reactionGroup, correctReaction, 
 					failureReaction, comment);
 			
+			// stimulus onset: time the trigger has been hit (plus delay)
+			if(hasTriggerTime())
+				sim.getReactionCenter().setOnset(timerID, getActionNanoTime());
+			
 			updateCounter();
 		}
 	}
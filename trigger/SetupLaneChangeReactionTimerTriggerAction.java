@@ -73,6 +73,10 @@ public class SetupLaneChangeReactionTimerTriggerAction extends TriggerAction
 					minSteeringAngle, taskCompletionAfterTime, taskCompletionAfterDistance, allowBrake, holdLaneFor,
 					failSound, successSound, comment);
 			
+			// stimulus onset: time the trigger has been hit (plus delay)
+			if(hasTriggerTime())
+				sim.getReactionCenter().setOnset(timerID, getActionNanoTime());
+			
 			updateCounter();
 		}
 	}
@@ -0,0 +1,141 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.trigger;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.math.Vector3f;
+
+/**
+ * Continuous collision test of a moving axis-aligned box (e.g. the bounds of
+ * the car) against the bounds of a trigger. The target bounds are enlarged by
+ * the half extents of the moving box, so the test reduces to intersecting the
+ * motion segment of the box center with the enlarged bounds (slab method).
+ *
+ * @author Rafael Math
+ */
+public class SweepTest
+{
+	private static final float EPSILON = 0.000001f;
+
+	private Vector3f min = new Vector3f();
+	private Vector3f max = new Vector3f();
+
+
+	/**
+	 * Computes the half extents of the given bounds.
+	 *
+	 * @param volume
+	 * 			Bounds of the moving object.
+	 *
+	 * @param store
+	 * 			Vector the half extents will be written to.
+	 *
+	 * @return
+	 * 			The given store vector.
+	 */
+	public static Vector3f getHalfExtent(BoundingVolume volume, Vector3f store)
+	{
+		if(volume instanceof BoundingBox)
+			return ((BoundingBox) volume).getExtent(store);
+
+		if(volume instanceof BoundingSphere)
+		{
+			float radius = ((BoundingSphere) volume).getRadius();
+			return store.set(radius, radius, radius);
+		}
+
+		return store.set(0, 0, 0);
+	}
+
+
+	/**
+	 * Computes at which fraction of the given motion the moving box first
+	 * touches the target bounds.
+	 *
+	 * @param start
+	 * 			Center of the moving box at the beginning of the motion.
+	 *
+	 * @param motion
+	 * 			Motion vector (e.g. position change between two frames or
+	 * 			velocity for one second).
+	 *
+	 * @param halfExtent
+	 * 			Half extents of the moving box.
+	 *
+	 * @param target
+	 * 			Bounds to test against.
+	 *
+	 * @param maxFraction
+	 * 			Maximum fraction of the motion to consider (1 = end of motion).
+	 *
+	 * @return
+	 * 			Fraction (between 0 and maxFraction) of the motion at which the
+	 * 			box touches the target for the first time (0 if touching at the
+	 * 			beginning) or -1 if the box does not touch the target.
+	 */
+	public float getEntryFraction(Vector3f start, Vector3f motion, Vector3f halfExtent,
+			BoundingVolume target, float maxFraction)
+	{
+		if(target == null)
+			return -1;
+
+		TriggerIndex.getExtent(target, min, max);
+		min.subtractLocal(halfExtent);
+		max.addLocal(halfExtent);
+
+		float entry = 0;
+		float exit = maxFraction;
+
+		for(int axis=0; axis<3; axis++)
+		{
+			float s = start.get(axis);
+			float d = motion.get(axis);
+			float lower = min.get(axis);
+			float upper = max.get(axis);
+
+			if(Math.abs(d) < EPSILON)
+			{
+				// no motion along this axis: start must lie within the slab
+				if(s < lower || s > upper)
+					return -1;
+			}
+			else
+			{
+				float t1 = (lower - s) / d;
+				float t2 = (upper - s) / d;
+				if(t1 > t2)
+				{
+					float temp = t1;
+					t1 = t2;
+					t2 = temp;
+				}
+
+				entry = Math.max(entry, t1);
+				exit = Math.min(exit, t2);
+
+				if(entry > exit)
+					return -1;
+			}
+		}
+
+		return entry;
+	}
+}
@@ -18,6 +18,10 @@
 
 package eu.opends.trigger;
 
+import java.util.Date;
+
+import eu.opends.basics.SimulationBasics;
+import eu.opends.tools.SimulationScheduler;
 
 /**
  * This abstract class represents a trigger action, which will be 
@@ -31,6 +35,11 @@ public abstract class TriggerAction
 	private int maxRepeatCounter;
 	private boolean unlimitedRepeat;
 	
+	// simulation time the action currently executed has been due and whether 
+	// it has been performed with the time of a trigger hit (render thread only)
+	private double actionTime;
+	private boolean hasTriggerTime;
+	
 	public TriggerAction()
 	{
 		delay = 0;
@@ -49,11 +58,86 @@ public abstract class TriggerAction
 	
 	/**
 	 * Method will be called on trigger collision, await delay and perform some action.
+	 * The action will be executed on the render thread after the given delay of
+	 * simulation time has passed by.
 	 */
 	public void performAction()
 	{
-		TriggerActionDelayThread triggerActionDelayThread = new TriggerActionDelayThread(this, delay);
-		triggerActionDelayThread.start();
+		schedule(SimulationBasics.getScheduler().getSimulationTime(), false);
+	}
+	
+	
+	/**
+	 * Performs the action the given delay after the given time (e.g. the time 
+	 * the car has entered a trigger, interpolated within the current frame).
+	 * 
+	 * @param triggerTime
+	 * 			Simulation time (in seconds) the delay starts from.
+	 */
+	public void performAction(double triggerTime)
+	{
+		schedule(triggerTime, true);
+	}
+	
+	
+	private void schedule(final double startTime, final boolean isTriggerTime)
+	{
+		SimulationScheduler scheduler = SimulationBasics.getScheduler();
+		float remainingDelay = (float) (delay - (scheduler.getSimulationTime() - startTime));
+		
+		scheduler.schedule(new Runnable()
+		{
+			public void run()
+			{
+				actionTime = startTime + delay;
+				hasTriggerTime = isTriggerTime;
+				execute();
+			}
+		}, remainingDelay);
+	}
+	
+	
+	/**
+	 * @return
+	 * 			Simulation time (in seconds) the action being executed has been 
+	 * 			due (may be earlier than the current frame).
+	 */
+	protected double getActionTime()
+	{
+		return actionTime;
+	}
+	
+	
+	/**
+	 * @return
+	 * 			True, if the action being executed has been performed with the 
+	 * 			time a trigger has been hit (see performAction(double)).
+	 */
+	protected boolean hasTriggerTime()
+	{
+		return hasTriggerTime;
+	}
+	
+	
+	/**
+	 * @return
+	 * 			Time (System.nanoTime()) the action being executed has been due.
+	 */
+	protected long getActionNanoTime()
+	{
+		return SimulationBasics.getScheduler().toNanoTime(actionTime);
+	}
+	
+	
+	/**
+	 * @return
+	 * 			Wall clock time the action being executed has been due (e.g. as 
+	 * 			time stamp of log entries).
+	 */
+	protected Date getActionDate()
+	{
+		long elapsedMillis = (System.nanoTime() - getActionNanoTime()) / 1000000;
+		return new Date(System.currentTimeMillis() - elapsedMillis);
 	}
 	
 	
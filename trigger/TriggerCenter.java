@@ -19,14 +19,19 @@
 package eu.opends.trigger;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
+import com.jme3.bounding.BoundingVolume;
 import com.jme3.collision.CollisionResults;
+import com.jme3.math.Vector3f;
 //import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
 
@@ -37,6 +42,7 @@ import eu.opends.car.Car;
 import eu.opends.environment.TrafficLightCenter.TriggerType;
 import eu.opends.main.Simulator;
 import eu.opends.tools.Util;
+import eu.opends.trigger.TriggerIndex.IndexedTrigger;
 
 
 /**
@@ -46,16 +52,49 @@ import eu.opends.tools.Util;
  */
 public class TriggerCenter 
 {
+	public enum TriggerCategory
+	{
+		TRAFFIC_LIGHT, TRAFFIC_LIGHT_PHASE, ROAD_OBJECT;
+	}
+	
+	// maximum distance (in meters) between car and a moving road object trigger to be tested
+	private static final float MAX_DYNAMIC_TRIGGER_DISTANCE = 50f;
+	
+	// maximum speed (in m/s) of the car; any faster motion between two frames is 
+	// considered a jump (e.g. car reset) and will not be swept
+	private static final float MAX_PLAUSIBLE_SPEED = 150f;
+	
+	// time (in seconds) a reported trigger cannot be triggered again
+	private static final float REPORT_LIST_DURATION = 2f;
+	
 	private CollisionResults resultCollision;
 
 	private Simulator sim;
 
-	private String triggerName;
-
 	private static Map<String,Spatial> trafficLightTriggerList, trafficLightPhaseTriggerList;
 
 	private LinkedList<Spatial> roadObjectsTriggerList;
-	public static ArrayList<String> triggerReportList = new ArrayList<String>(5);
+	public static List<String> triggerReportList = Collections.synchronizedList(new ArrayList<String>(5));
+	
+	// static triggers are looked up in the spatial index, moving triggers are checked every frame
+	private TriggerIndex triggerIndex = new TriggerIndex();
+	private Map<String, IndexedTrigger> indexedTriggerMap = new HashMap<String, IndexedTrigger>();
+	private List<IndexedTrigger> dynamicTriggerList = new ArrayList<IndexedTrigger>();
+	private List<IndexedTrigger> candidateList = new ArrayList<IndexedTrigger>();
+	private List<IndexedTrigger> insideList = new ArrayList<IndexedTrigger>();
+	private List<IndexedTrigger> previousInsideList = new ArrayList<IndexedTrigger>();
+	private List<TriggerEventListener> listenerList = new ArrayList<TriggerEventListener>();
+	private int testedTriggers = 0;
+	private Set<String> movedTriggerSet = new HashSet<String>();
+	
+	// motion of the car between two frames (swept trigger detection)
+	private SweepTest sweepTest = new SweepTest();
+	private BoundingVolume previousCarBound = null;
+	private BoundingVolume sweptCarBound = null;
+	private Vector3f previousCarCenter = new Vector3f();
+	private Vector3f carMotion = new Vector3f();
+	private Vector3f carHalfExtent = new Vector3f();
+	private int sweptTriggers = 0;
 
 	
 	public static void addToTrafficLightTriggerList(String trafficLightName, Spatial trafficLightTriggerObject)
@@ -105,111 +144,280 @@ public class TriggerCenter
 			}
 
 		}
+		
+		buildTriggerIndex();
 	}
-
 	
-	public void doTriggerChecks() 
-	{
-		handleTrafficLightCollision(trafficLightTriggerList);
-		handleTrafficLightPhaseCollision(trafficLightPhaseTriggerList);
-		handleRoadObjectsCollision(roadObjectsTriggerList);
-		//computeContactWithCar();
-	}
-
 	
 	/**
-	 * This method handles a collision of the car with a traffic light trigger. 
-	 * The TrafficLightTrigger which recognizes cars located close to a traffic 
-	 * light (up to 40 meters) and requests green light.
-	 * A collision will be forwarded to the traffic light center.
-	 * 
-	 * @param triggerList
-	 * 			list of all traffic light triggers in order to monitor approximation 
-	 * 			to traffic lights
+	 * Adds all triggers to the spatial index. Road object triggers which are 
+	 * controlled (e.g. traffic cars) may move and will be checked separately.
 	 */
-	private void handleTrafficLightCollision(Map<String,Spatial> triggerList)
+	private void buildTriggerIndex()
 	{
-		for (Entry<String, Spatial> trigger : triggerList.entrySet())
+		for(Entry<String, Spatial> trigger : trafficLightTriggerList.entrySet())
+			addIndexedTrigger(new IndexedTrigger(trigger.getKey(), trigger.getValue(), TriggerCategory.TRAFFIC_LIGHT));
+		
+		for(Entry<String, Spatial> trigger : trafficLightPhaseTriggerList.entrySet())
+			addIndexedTrigger(new IndexedTrigger(trigger.getKey(), trigger.getValue(), TriggerCategory.TRAFFIC_LIGHT_PHASE));
+		
+		for(Spatial trigger : roadObjectsTriggerList)
 		{
-			resultCollision.clear();
-			triggerName = trigger.getValue().getName();
-			
-			// calculate collision of the car with a road object trigger
-			Spatial triggerObject = sim.getTriggerNode().getChild(triggerName);
-			sim.getCar().getCarNode().collideWith(triggerObject.getWorldBound(), resultCollision);
-			
-			if(resultCollision.size() > 0) 
-				sim.getTrafficLightCenter().reportCollision(trigger.getKey(), TriggerType.REQUEST);
+			IndexedTrigger indexedTrigger = new IndexedTrigger(trigger.getName(), trigger, TriggerCategory.ROAD_OBJECT);
+			if(trigger.getNumControls() > 0)
+				dynamicTriggerList.add(indexedTrigger);
+			else
+				addIndexedTrigger(indexedTrigger);
 		}
 	}
 	
 	
+	private void addIndexedTrigger(IndexedTrigger indexedTrigger)
+	{
+		String key = indexedTrigger.getCategory() + ":" + indexedTrigger.getName();
+		indexedTriggerMap.put(key, indexedTrigger);
+		triggerIndex.add(indexedTrigger);
+	}
+	
+	
 	/**
-	 * This method handles a collision of the car with a traffic light phase trigger.
-	 * The TrafficLightPhaseTrigger is a long range trigger (up to 150 meters) 
-	 * which controls the SIM-TD traffic light phase assistant</p>
-	 * A collision will be forwarded to the traffic light center.
+	 * Updates the position of a road object trigger in the spatial index. Must be
+	 * called after a static trigger has been moved. The index will be updated
+	 * before the next trigger check (may be called from any thread).
 	 * 
-	 * @param triggerList
-	 * 			list of all traffic light triggers in order to monitor approximation 
-	 * 			to traffic lights
+	 * @param triggerName
+	 * 			Name of the road object trigger.
 	 */
-	private void handleTrafficLightPhaseCollision(Map<String,Spatial> triggerList)
+	public void updateTriggerPosition(String triggerName)
 	{
-		for (Entry<String, Spatial> trigger : triggerList.entrySet())
+		synchronized(movedTriggerSet)
 		{
-			resultCollision.clear();
-			triggerName = trigger.getValue().getName();
-			
-			// calculate collision of the car with a road object trigger
-			Spatial triggerObject = sim.getTriggerNode().getChild(triggerName);
-			sim.getCar().getCarNode().collideWith(triggerObject.getWorldBound(), resultCollision);
-			
-			if(resultCollision.size() > 0) 
+			movedTriggerSet.add(triggerName);
+		}
+	}
+	
+	
+	private void updateMovedTriggers()
+	{
+		synchronized(movedTriggerSet)
+		{
+			for(String triggerName : movedTriggerSet)
 			{
-				sim.getTrafficLightCenter().reportCollision(trigger.getKey(), TriggerType.PHASE);
+				IndexedTrigger indexedTrigger = indexedTriggerMap.get(TriggerCategory.ROAD_OBJECT + ":" + triggerName);
+				if(indexedTrigger != null)
+					triggerIndex.update(indexedTrigger);
 			}
+			movedTriggerSet.clear();
 		}
 	}
 	
 	
+	public void addTriggerEventListener(TriggerEventListener listener)
+	{
+		listenerList.add(listener);
+	}
+	
+	
+	public void removeTriggerEventListener(TriggerEventListener listener)
+	{
+		listenerList.remove(listener);
+	}
+	
+	
 	/**
-	 * This method handles a collision of the car with a road object trigger. This can be:
-	 * SpeedLimitTrigger, CautionSignTrigger or BlindTrigger. A collision will be forwarded 
-	 * to the HMI center.
+	 * Number of triggers tested for collision with the car in the last frame
 	 * 
-	 * @param triggerList
-	 * 			list of all road object triggers in order to monitor approximation 
-	 * 			to such an object
+	 * @return
+	 * 			number of tested triggers
 	 */
-	private void handleRoadObjectsCollision(LinkedList<Spatial> triggerList)
+	public int getNumberOfTestedTriggers()
+	{
+		return testedTriggers;
+	}
+
+	
+	/**
+	 * Number of triggers the car has passed through between two frames without
+	 * touching them in any frame (detected by the swept test only).
+	 * 
+	 * @return
+	 * 			number of swept triggers
+	 */
+	public int getNumberOfSweptTriggers()
+	{
+		return sweptTriggers;
+	}
+
+	
+	/**
+	 * Checks the triggers close to the car for collisions. Traffic light triggers
+	 * will be reported as long as the car is located inside (requests for green
+	 * light must persist), road object triggers will be performed when entered.
+	 * Besides the current position of the car, its motion since the previous frame
+	 * is tested (swept test), so thin triggers cannot be missed at high speed or low
+	 * frame rates. Enter events carry the interpolated time the car has actually 
+	 * reached the trigger within the frame. Jumps of the car (e.g. reset to a 
+	 * reset point, or any motion while paused) are not swept.
+	 * 
+	 * @param tpf
+	 * 			Time per frame (in seconds).
+	 */
+	public void doTriggerChecks(float tpf) 
 	{
 		Car car = sim.getCar();
+		BoundingVolume carBound = car.getCarNode().getWorldBound();
+		if(carBound == null)
+			return;
 		
-		for (Spatial trigger : triggerList) 
-		{	
-			// TODO: caution! trigger center may be farther away than 10 meters when hitting
-			if(trigger.getWorldTranslation().distance(car.getCarNode().getWorldTranslation()) < 10)
+		updateMovedTriggers();
+		
+		// simulation time at the beginning of this frame (scheduler not yet advanced)
+		double frameStartTime = SimulationBasics.getScheduler().getSimulationTime();
+		float frameDuration = sim.isPause() ? 0 : tpf;
+		
+		// motion of the car since the previous frame
+		boolean hasMoved = false;
+		if(previousCarBound != null)
+		{
+			carMotion.set(carBound.getCenter()).subtractLocal(previousCarCenter);
+			float maxDistance = MAX_PLAUSIBLE_SPEED * frameDuration;
+			float distanceSquared = carMotion.lengthSquared();
+			hasMoved = distanceSquared > 0.0001f && distanceSquared <= maxDistance * maxDistance;
+		}
+		SweepTest.getHalfExtent(carBound, carHalfExtent);
+		
+		// query the volume covered by the car during the whole frame
+		BoundingVolume queryBound = carBound;
+		if(hasMoved)
+		{
+			sweptCarBound = carBound.clone(sweptCarBound);
+			sweptCarBound.mergeLocal(previousCarBound);
+			queryBound = sweptCarBound;
+		}
+		
+		candidateList.clear();
+		triggerIndex.query(queryBound, candidateList);
+		
+		// moving triggers: only consider triggers in the vicinity of the car
+		for(IndexedTrigger trigger : dynamicTriggerList)
+			if(trigger.getSpatial().getParent() != null &&
+					trigger.getSpatial().getWorldTranslation().distance(car.getCarNode().getWorldTranslation()) < MAX_DYNAMIC_TRIGGER_DISTANCE)
+				candidateList.add(trigger);
+		
+		testedTriggers = candidateList.size();
+		sweptTriggers = 0;
+		
+		double currentTime = frameStartTime + frameDuration;
+		
+		insideList.clear();
+		for(IndexedTrigger trigger : candidateList)
+		{
+			BoundingVolume triggerBound = trigger.getSpatial().getWorldBound();
+			
+			if(isColliding(car, carBound, triggerBound))
 			{
-				resultCollision.clear();
-				String triggerName = trigger.getName();
+				insideList.add(trigger);
+				
+				if(!trigger.isInside())
+				{
+					// time the car has reached the trigger within this frame
+					double entryTime = currentTime;
+					if(hasMoved)
+					{
+						float fraction = sweepTest.getEntryFraction(previousCarCenter, carMotion, 
+								carHalfExtent, triggerBound, 1);
+						if(fraction >= 0)
+							entryTime = frameStartTime + fraction * frameDuration;
+					}
 					
-				// calculate collision of the car with a road object trigger
-
-				Spatial triggerObject = sim.getTriggerNode().getChild(triggerName);
-				car.getCarNode().collideWith(triggerObject.getWorldBound(), resultCollision);
+					trigger.setInside(true);
+					handleTriggerEntered(trigger, car, entryTime);
+				}
 				
-				// if car has collided with a trigger --> report trigger to HMI Center
-				if(resultCollision.size() > 0)
+				reportTrafficLightCollision(trigger);
+			}
+			else if(hasMoved && !trigger.isInside() && triggerBound != null &&
+					!previousCarBound.intersects(triggerBound))
+			{
+				// car neither touches the trigger in the previous nor in the current frame,
+				// but may have passed through it in between
+				float fraction = sweepTest.getEntryFraction(previousCarCenter, carMotion, 
+						carHalfExtent, triggerBound, 1);
+				
+				if(fraction >= 0)
 				{
-					if(SimulationBasics.getTriggerActionListMap().containsKey(triggerName))
-						TriggerCenter.performTriggerAction(triggerName, car);
+					sweptTriggers++;
+					
+					double entryTime = frameStartTime + fraction * frameDuration;
+					handleTriggerEntered(trigger, car, entryTime);
+					reportTrafficLightCollision(trigger);
+					handleTriggerExited(trigger, currentTime);
 				}
 			}
 		}
+		
+		// triggers the car was located inside in the previous frame, but not any more
+		for(IndexedTrigger trigger : previousInsideList)
+		{
+			if(trigger.isInside() && !insideList.contains(trigger))
+			{
+				trigger.setInside(false);
+				handleTriggerExited(trigger, currentTime);
+			}
+		}
+		
+		List<IndexedTrigger> tempList = previousInsideList;
+		previousInsideList = insideList;
+		insideList = tempList;
+		
+		previousCarBound = carBound.clone(previousCarBound);
+		previousCarCenter.set(carBound.getCenter());
+		
+		//computeContactWithCar();
+	}
+	
+	
+	private void reportTrafficLightCollision(IndexedTrigger trigger)
+	{
+		if(trigger.getCategory() == TriggerCategory.TRAFFIC_LIGHT)
+			sim.getTrafficLightCenter().reportCollision(trigger.getName(), TriggerType.REQUEST);
+		else if(trigger.getCategory() == TriggerCategory.TRAFFIC_LIGHT_PHASE)
+			sim.getTrafficLightCenter().reportCollision(trigger.getName(), TriggerType.PHASE);
+	}
+	
+	
+	private boolean isColliding(Car car, BoundingVolume carBound, BoundingVolume triggerBound)
+	{
+		// cheap bounds test first
+		if(carBound == null || triggerBound == null || !carBound.intersects(triggerBound))
+			return false;
+		
+		// calculate collision of the car with the trigger
+		resultCollision.clear();
+		car.getCarNode().collideWith(triggerBound, resultCollision);
+		return resultCollision.size() > 0;
+	}
+	
+	
+	private void handleTriggerEntered(IndexedTrigger trigger, Car car, double time)
+	{
+		// if car has collided with a road object trigger --> perform trigger actions
+		if(trigger.getCategory() == TriggerCategory.ROAD_OBJECT && 
+				SimulationBasics.getTriggerActionListMap().containsKey(trigger.getName()))
+			TriggerCenter.performTriggerAction(trigger.getName(), car, time);
+		
+		for(TriggerEventListener listener : listenerList)
+			listener.triggerEntered(trigger.getName(), trigger.getCategory(), time);
+	}
+	
+	
+	private void handleTriggerExited(IndexedTrigger trigger, double time)
+	{
+		for(TriggerEventListener listener : listenerList)
+			listener.triggerExited(trigger.getName(), trigger.getCategory(), time);
 	}
 
-
+	
 	Map<String,Integer> collisionMap = new HashMap<String,Integer>();
 	float suspensionForce[] = {0,0,0,0};
 	
@@ -332,28 +540,47 @@ public class TriggerCenter
 	 * 			user-controlled car of simulator 
 	 */
 	public static void performTriggerAction(String triggerID, Car car) 
+	{
+		performTriggerAction(triggerID, car, SimulationBasics.getScheduler().getSimulationTime());
+	}
+	
+	
+	/**
+	 * Reports the collision of the car with a free hand placed trigger at the 
+	 * given time and performs the specified actions. Delays of the actions 
+	 * count from the given time.
+	 * 
+	 * @param triggerID
+	 * 			name of the trigger (needed to look up action)
+	 * 
+	 * @param car
+	 * 			user-controlled car of simulator 
+	 * 
+	 * @param time
+	 * 			simulation time (in seconds) the car has entered the trigger
+	 */
+	public static void performTriggerAction(String triggerID, Car car, double time) 
 	{
 		if(!triggerReportList.contains(triggerID))
 		{
-			System.err.println("Trigger hit: " + triggerID);
+			System.err.println("Trigger hit: " + triggerID + " (" + String.format("%.3f", time) + " s)");
 			// add trigger to report list
 			triggerReportList.add(triggerID);
 			
-			// remove trigger from report list after 2 seconds
-			int seconds = 2;
-		
 			List<TriggerAction> triggerActionList = SimulationBasics.getTriggerActionListMap().get(triggerID);
 			for(TriggerAction triggerAction : triggerActionList)
-			{
-				triggerAction.performAction();
-				
-				// extend two seconds by time of pause duration, if pause trigger was contained in list
-				if(triggerAction instanceof PauseTriggerAction)
-					seconds += ((PauseTriggerAction)triggerAction).getDuration();
-			}
+				triggerAction.performAction(time);
 			
-			RemoveFromReportListThread removeThread = new RemoveFromReportListThread(triggerID, seconds);
-			removeThread.start();
+			// remove trigger from report list after 2 seconds of simulation time
+			// (time of a pause caused by this trigger will not be counted)
+			final String reportedTriggerID = triggerID;
+			SimulationBasics.getScheduler().schedule(new Runnable()
+			{
+				public void run()
+				{
+					removeTriggerReport(reportedTriggerID);
+				}
+			}, REPORT_LIST_DURATION);
 		}
 	}
 	
@@ -0,0 +1,240 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.trigger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Spatial;
+
+/**
+ * Uniform grid over the x-z-plane indexing the world bounds of static triggers.
+ * Each trigger is stored in every cell its bounds overlap, so a query with the
+ * bounds of the car only returns triggers close to the car.
+ *
+ * @author Rafael Math
+ */
+public class TriggerIndex
+{
+	// edge length of a grid cell (in meters)
+	private static final float CELL_SIZE = 25f;
+
+	private Map<Long, List<IndexedTrigger>> cellMap = new HashMap<Long, List<IndexedTrigger>>();
+	private int queryStamp = 0;
+	private int size = 0;
+
+
+	/**
+	 * Trigger stored in the index. Keeps a reference to the trigger spatial and
+	 * whether the car is currently located inside the trigger.
+	 */
+	public static class IndexedTrigger
+	{
+		private String name;
+		private Spatial spatial;
+		private TriggerCenter.TriggerCategory category;
+		private boolean isInside = false;
+		private int stamp = -1;
+		private int minCellX, minCellZ, maxCellX, maxCellZ;
+
+
+		public IndexedTrigger(String name, Spatial spatial, TriggerCenter.TriggerCategory category)
+		{
+			this.name = name;
+			this.spatial = spatial;
+			this.category = category;
+		}
+
+
+		public String getName()
+		{
+			return name;
+		}
+
+
+		public Spatial getSpatial()
+		{
+			return spatial;
+		}
+
+
+		public TriggerCenter.TriggerCategory getCategory()
+		{
+			return category;
+		}
+
+
+		public boolean isInside()
+		{
+			return isInside;
+		}
+
+
+		public void setInside(boolean isInside)
+		{
+			this.isInside = isInside;
+		}
+	}
+
+
+	public void add(IndexedTrigger trigger)
+	{
+		Vector3f min = new Vector3f();
+		Vector3f max = new Vector3f();
+		getExtent(trigger.getSpatial().getWorldBound(), min, max);
+
+		trigger.minCellX = toCell(min.getX());
+		trigger.minCellZ = toCell(min.getZ());
+		trigger.maxCellX = toCell(max.getX());
+		trigger.maxCellZ = toCell(max.getZ());
+
+		for(int x=trigger.minCellX; x<=trigger.maxCellX; x++)
+		{
+			for(int z=trigger.minCellZ; z<=trigger.maxCellZ; z++)
+			{
+				long key = getKey(x, z);
+				List<IndexedTrigger> cell = cellMap.get(key);
+				if(cell == null)
+				{
+					cell = new ArrayList<IndexedTrigger>(4);
+					cellMap.put(key, cell);
+				}
+				cell.add(trigger);
+			}
+		}
+
+		size++;
+	}
+
+
+	public void remove(IndexedTrigger trigger)
+	{
+		for(int x=trigger.minCellX; x<=trigger.maxCellX; x++)
+		{
+			for(int z=trigger.minCellZ; z<=trigger.maxCellZ; z++)
+			{
+				long key = getKey(x, z);
+				List<IndexedTrigger> cell = cellMap.get(key);
+				if(cell != null && cell.remove(trigger) && cell.isEmpty())
+					cellMap.remove(key);
+			}
+		}
+
+		size--;
+	}
+
+
+	/**
+	 * Re-indexes the given trigger (e.g. after the trigger has been moved)
+	 *
+	 * @param trigger
+	 * 			Trigger already contained in the index.
+	 */
+	public void update(IndexedTrigger trigger)
+	{
+		remove(trigger);
+		add(trigger);
+	}
+
+
+	/**
+	 * Collects all triggers whose cells overlap the given bounds. Each trigger
+	 * will be added at most once.
+	 *
+	 * @param volume
+	 * 			Bounds to look up (e.g. world bounds of the car).
+	 *
+	 * @param resultList
+	 * 			List the triggers will be added to.
+	 */
+	public void query(BoundingVolume volume, List<IndexedTrigger> resultList)
+	{
+		queryStamp++;
+
+		Vector3f min = new Vector3f();
+		Vector3f max = new Vector3f();
+		getExtent(volume, min, max);
+
+		int maxX = toCell(max.getX());
+		int maxZ = toCell(max.getZ());
+		for(int x=toCell(min.getX()); x<=maxX; x++)
+		{
+			for(int z=toCell(min.getZ()); z<=maxZ; z++)
+			{
+				List<IndexedTrigger> cell = cellMap.get(getKey(x, z));
+				if(cell != null)
+				{
+					for(IndexedTrigger trigger : cell)
+					{
+						if(trigger.stamp != queryStamp)
+						{
+							trigger.stamp = queryStamp;
+							resultList.add(trigger);
+						}
+					}
+				}
+			}
+		}
+	}
+
+
+	public int size()
+	{
+		return size;
+	}
+
+
+	static void getExtent(BoundingVolume volume, Vector3f min, Vector3f max)
+	{
+		if(volume instanceof BoundingBox)
+		{
+			((BoundingBox) volume).getMin(min);
+			((BoundingBox) volume).getMax(max);
+		}
+		else if(volume instanceof BoundingSphere)
+		{
+			float radius = ((BoundingSphere) volume).getRadius();
+			min.set(volume.getCenter()).subtractLocal(radius, radius, radius);
+			max.set(volume.getCenter()).addLocal(radius, radius, radius);
+		}
+		else if(volume != null)
+		{
+			min.set(volume.getCenter());
+			max.set(volume.getCenter());
+		}
+	}
+
+
+	private static int toCell(float coordinate)
+	{
+		return (int) Math.floor(coordinate / CELL_SIZE);
+	}
+
+
+	private static long getKey(int x, int z)
+	{
+		return (((long) x) << 32) | (z & 0xffffffffL);
+	}
+}
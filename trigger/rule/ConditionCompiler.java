@@ -0,0 +1,329 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.trigger.rule;
+
+import java.util.List;
+
+import eu.opends.trigger.rule.Expression.Operator;
+
+/**
+ * Compiles a rule condition into an expression tree. Signal names are
+ * resolved during compilation, so evaluation does not need any lookups.
+ * Sub-expressions consisting of constants only will be folded.
+ *
+ * Grammar (keywords "and", "or", "not" may be used instead of "&&", "||", "!"):
+ *
+ * or         := and ( "||" and )*
+ * and        := not ( "&&" not )*
+ * not        := "!" not | comparison
+ * comparison := sum ( ( "<" | "<=" | ">" | ">=" | "==" | "!=" ) sum )?
+ * sum        := product ( ( "+" | "-" ) product )*
+ * product    := unary ( ( "*" | "/" ) unary )*
+ * unary      := "-" unary | number | "true" | "false" | "(" or ")" | signal
+ * signal     := name | name "(" argument ")"
+ *
+ * Example: speed > 80 and distance(TrafficLight.01_01) &lt; 50 and not reactionTimerActive(timer1)
+ *
+ * @author Rafael Math
+ */
+public class ConditionCompiler
+{
+	private SignalRegistry signalRegistry;
+	private String condition;
+	private int position;
+	private List<Signal> inputSignalList;
+
+
+	public ConditionCompiler(SignalRegistry signalRegistry)
+	{
+		this.signalRegistry = signalRegistry;
+	}
+
+
+	/**
+	 * Compiles the given condition.
+	 *
+	 * @param condition
+	 * 			Condition string.
+	 *
+	 * @param inputSignalList
+	 * 			List all signals referenced by the condition will be added to.
+	 *
+	 * @return
+	 * 			Root of the expression tree.
+	 *
+	 * @throws IllegalArgumentException
+	 * 			If the condition contains a syntax error or an unknown signal.
+	 */
+	public Expression compile(String condition, List<Signal> inputSignalList)
+	{
+		this.condition = condition;
+		this.position = 0;
+		this.inputSignalList = inputSignalList;
+
+		Expression expression = parseOr();
+
+		skipWhitespace();
+		if(position < condition.length())
+			throw error("unexpected '" + condition.charAt(position) + "'");
+
+		return expression;
+	}
+
+
+	private Expression parseOr()
+	{
+		Expression expression = parseAnd();
+
+		while(accept("||") || acceptKeyword("or"))
+			expression = fold(new Expression.Or(expression, parseAnd()));
+
+		return expression;
+	}
+
+
+	private Expression parseAnd()
+	{
+		Expression expression = parseNot();
+
+		while(accept("&&") || acceptKeyword("and"))
+			expression = fold(new Expression.And(expression, parseNot()));
+
+		return expression;
+	}
+
+
+	private Expression parseNot()
+	{
+		if(acceptNot() || acceptKeyword("not"))
+			return fold(new Expression.Not(parseNot()));
+
+		return parseComparison();
+	}
+
+
+	private Expression parseComparison()
+	{
+		Expression left = parseSum();
+
+		Operator operator = null;
+		if(accept("<="))
+			operator = Operator.LESS_EQUAL;
+		else if(accept(">="))
+			operator = Operator.GREATER_EQUAL;
+		else if(accept("=="))
+			operator = Operator.EQUAL;
+		else if(accept("!="))
+			operator = Operator.NOT_EQUAL;
+		else if(accept("<"))
+			operator = Operator.LESS;
+		else if(accept(">"))
+			operator = Operator.GREATER;
+
+		if(operator == null)
+			return left;
+
+		return fold(new Expression.Binary(operator, left, parseSum()));
+	}
+
+
+	private Expression parseSum()
+	{
+		Expression expression = parseProduct();
+
+		while(true)
+		{
+			if(accept("+"))
+				expression = fold(new Expression.Binary(Operator.ADD, expression, parseProduct()));
+			else if(accept("-"))
+				expression = fold(new Expression.Binary(Operator.SUBTRACT, expression, parseProduct()));
+			else
+				return expression;
+		}
+	}
+
+
+	private Expression parseProduct()
+	{
+		Expression expression = parseUnary();
+
+		while(true)
+		{
+			if(accept("*"))
+				expression = fold(new Expression.Binary(Operator.MULTIPLY, expression, parseUnary()));
+			else if(accept("/"))
+				expression = fold(new Expression.Binary(Operator.DIVIDE, expression, parseUnary()));
+			else
+				return expression;
+		}
+	}
+
+
+	private Expression parseUnary()
+	{
+		if(accept("-"))
+			return fold(new Expression.Negate(parseUnary()));
+
+		if(accept("("))
+		{
+			Expression expression = parseOr();
+			if(!accept(")"))
+				throw error("')' expected");
+			return expression;
+		}
+
+		skipWhitespace();
+		if(position >= condition.length())
+			throw error("unexpected end of condition");
+
+		char c = condition.charAt(position);
+		if(Character.isDigit(c) || c == '.')
+			return parseNumber();
+
+		if(Character.isLetter(c) || c == '_')
+			return parseSignal();
+
+		throw error("unexpected '" + c + "'");
+	}
+
+
+	private Expression parseNumber()
+	{
+		int start = position;
+		while(position < condition.length() &&
+				(Character.isDigit(condition.charAt(position)) || condition.charAt(position) == '.'))
+			position++;
+
+		try {
+
+			return new Expression.Constant(Double.parseDouble(condition.substring(start, position)));
+
+		} catch (NumberFormatException e) {
+
+			throw error("invalid number '" + condition.substring(start, position) + "'");
+		}
+	}
+
+
+	private Expression parseSignal()
+	{
+		int start = position;
+		while(position < condition.length() &&
+				(Character.isLetterOrDigit(condition.charAt(position)) || condition.charAt(position) == '_'))
+			position++;
+		String name = condition.substring(start, position);
+
+		if(name.equals("true"))
+			return new Expression.Constant(1);
+		if(name.equals("false"))
+			return new Expression.Constant(0);
+
+		String argument = null;
+		if(accept("("))
+		{
+			// argument is taken literally (object names may contain dots, etc.)
+			int end = condition.indexOf(')', position);
+			if(end < 0)
+				throw error("')' expected");
+			argument = condition.substring(position, end).trim();
+			position = end + 1;
+		}
+
+		Signal signal;
+		try {
+
+			signal = signalRegistry.getSignal(name, argument);
+
+		} catch (IllegalArgumentException e) {
+
+			throw error(e.getMessage());
+		}
+
+		if(!inputSignalList.contains(signal))
+			inputSignalList.add(signal);
+
+		return new Expression.SignalValue(signal);
+	}
+
+
+	/**
+	 * Replaces the given expression by a constant if it does not depend on
+	 * any signal.
+	 */
+	private static Expression fold(Expression expression)
+	{
+		if(expression.isConstant())
+			return new Expression.Constant(expression.evaluate());
+
+		return expression;
+	}
+
+
+	private boolean accept(String token)
+	{
+		skipWhitespace();
+		if(condition.startsWith(token, position))
+		{
+			position += token.length();
+			return true;
+		}
+		return false;
+	}
+
+
+	private boolean acceptNot()
+	{
+		// "!" but not "!="
+		skipWhitespace();
+		if(condition.startsWith("!", position) && !condition.startsWith("!=", position))
+		{
+			position++;
+			return true;
+		}
+		return false;
+	}
+
+
+	private boolean acceptKeyword(String keyword)
+	{
+		skipWhitespace();
+		int end = position + keyword.length();
+		if(condition.startsWith(keyword, position) &&
+				(end >= condition.length() || !Character.isLetterOrDigit(condition.charAt(end))))
+		{
+			position = end;
+			return true;
+		}
+		return false;
+	}
+
+
+	private void skipWhitespace()
+	{
+		while(position < condition.length() && Character.isWhitespace(condition.charAt(position)))
+			position++;
+	}
+
+
+	private IllegalArgumentException error(String message)
+	{
+		return new IllegalArgumentException("Invalid condition '" + condition + "' at position " +
+				position + ": " + message);
+	}
+}
@@ -0,0 +1,254 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.trigger.rule;
+
+/**
+ * Node of a compiled rule condition. Conditions are evaluated numerically;
+ * comparisons and logical operators return 1 (true) or 0 (false), any value
+ * other than 0 is considered true.
+ *
+ * @author Rafael Math
+ */
+public abstract class Expression
+{
+	public abstract double evaluate();
+
+
+	/**
+	 * @return
+	 * 			True, if the expression does not depend on any signal.
+	 */
+	public abstract boolean isConstant();
+
+
+	public boolean isTrue()
+	{
+		return evaluate() != 0;
+	}
+
+
+	public static class Constant extends Expression
+	{
+		private double value;
+
+
+		public Constant(double value)
+		{
+			this.value = value;
+		}
+
+
+		@Override
+		public boolean isConstant()
+		{
+			return true;
+		}
+
+
+		@Override
+		public double evaluate()
+		{
+			return value;
+		}
+	}
+
+
+	public static class SignalValue extends Expression
+	{
+		private Signal signal;
+
+
+		public SignalValue(Signal signal)
+		{
+			this.signal = signal;
+		}
+
+
+		@Override
+		public boolean isConstant()
+		{
+			return false;
+		}
+
+
+		@Override
+		public double evaluate()
+		{
+			return signal.getValue();
+		}
+	}
+
+
+	public static class Not extends Expression
+	{
+		private Expression operand;
+
+
+		public Not(Expression operand)
+		{
+			this.operand = operand;
+		}
+
+
+		@Override
+		public boolean isConstant()
+		{
+			return operand.isConstant();
+		}
+
+
+		@Override
+		public double evaluate()
+		{
+			return operand.isTrue() ? 0 : 1;
+		}
+	}
+
+
+	public static class Negate extends Expression
+	{
+		private Expression operand;
+
+
+		public Negate(Expression operand)
+		{
+			this.operand = operand;
+		}
+
+
+		@Override
+		public boolean isConstant()
+		{
+			return operand.isConstant();
+		}
+
+
+		@Override
+		public double evaluate()
+		{
+			return -operand.evaluate();
+		}
+	}
+
+
+	public static class And extends Expression
+	{
+		private Expression left, right;
+
+
+		public And(Expression left, Expression right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+
+		@Override
+		public boolean isConstant()
+		{
+			return left.isConstant() && right.isConstant();
+		}
+
+
+		@Override
+		public double evaluate()
+		{
+			return (left.isTrue() && right.isTrue()) ? 1 : 0;
+		}
+	}
+
+
+	public static class Or extends Expression
+	{
+		private Expression left, right;
+
+
+		public Or(Expression left, Expression right)
+		{
+			this.left = left;
+			this.right = right;
+		}
+
+
+		@Override
+		public boolean isConstant()
+		{
+			return left.isConstant() && right.isConstant();
+		}
+
+
+		@Override
+		public double evaluate()
+		{
+			return (left.isTrue() || right.isTrue()) ? 1 : 0;
+		}
+	}
+
+
+	public enum Operator
+	{
+		ADD, SUBTRACT, MULTIPLY, DIVIDE, LESS, LESS_EQUAL, GREATER, GREATER_EQUAL, EQUAL, NOT_EQUAL;
+	}
+
+
+	public static class Binary extends Expression
+	{
+		private Operator operator;
+		private Expression left, right;
+
+
+		public Binary(Operator operator, Expression left, Expression right)
+		{
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+
+		@Override
+		public boolean isConstant()
+		{
+			return left.isConstant() && right.isConstant();
+		}
+
+
+		@Override
+		public double evaluate()
+		{
+			double a = left.evaluate();
+			double b = right.evaluate();
+
+			switch(operator)
+			{
+				case ADD : return a + b;
+				case SUBTRACT : return a - b;
+				case MULTIPLY : return a * b;
+				case DIVIDE : return a / b;
+				case LESS : return (a < b) ? 1 : 0;
+				case LESS_EQUAL : return (a <= b) ? 1 : 0;
+				case GREATER : return (a > b) ? 1 : 0;
+				case GREATER_EQUAL : return (a >= b) ? 1 : 0;
+				case EQUAL : return (a == b) ? 1 : 0;
+				case NOT_EQUAL : return (a != b) ? 1 : 0;
+			}
+
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.trigger.rule;
+
+import java.util.List;
+
+import eu.opends.trigger.TriggerAction;
+
+/**
+ * Compiled condition of a trigger together with its actions. The actions
+ * will be performed whenever the condition changes from false to true. The
+ * condition will only be evaluated if at least one of its input signals has
+ * changed.
+ *
+ * @author Rafael Math
+ */
+public class Rule
+{
+	private String name;
+	private Expression condition;
+	private List<TriggerAction> triggerActionList;
+	private boolean hasChanged = true;
+	private boolean isFulfilled = false;
+
+
+	public Rule(String name, Expression condition, List<TriggerAction> triggerActionList)
+	{
+		this.name = name;
+		this.condition = condition;
+		this.triggerActionList = triggerActionList;
+	}
+
+
+	public String getName()
+	{
+		return name;
+	}
+
+
+	public boolean isFulfilled()
+	{
+		return isFulfilled;
+	}
+
+
+	/**
+	 * Marks the rule for re-evaluation (called by input signals on change).
+	 */
+	public void markChanged()
+	{
+		hasChanged = true;
+	}
+
+
+	/**
+	 * Evaluates the condition (if necessary) and performs the actions if the
+	 * condition has become true.
+	 *
+	 * @return
+	 * 			True, if the condition has been evaluated.
+	 */
+	public boolean update()
+	{
+		if(!hasChanged)
+			return false;
+
+		hasChanged = false;
+
+		boolean wasFulfilled = isFulfilled;
+		isFulfilled = condition.isTrue();
+
+		if(isFulfilled && !wasFulfilled)
+		{
+			System.err.println("Rule fulfilled: " + name);
+
+			for(TriggerAction triggerAction : triggerActionList)
+				triggerAction.performAction();
+		}
+
+		return true;
+	}
+}
@@ -0,0 +1,133 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.trigger.rule;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import eu.opends.main.Simulator;
+import eu.opends.trigger.TriggerAction;
+
+/**
+ * Evaluates data-driven trigger conditions (e.g. "speed > 80 and 
+ * distance(TrafficLight.01_01) &lt; 50") once per frame. Conditions are compiled
+ * when the driving task is loaded; per frame, only the signals referenced by 
+ * any rule are sampled and only rules with changed input signals are 
+ * re-evaluated.
+ *
+ * @author Rafael Math
+ */
+public class RuleEngine
+{
+	private SignalRegistry signalRegistry = new SignalRegistry();
+	private ConditionCompiler conditionCompiler = new ConditionCompiler(signalRegistry);
+	private List<Signal> activeSignalList = new ArrayList<Signal>();
+	private List<Rule> ruleList = new ArrayList<Rule>();
+	private int evaluatedRules = 0;
+
+
+	/**
+	 * Compiles the given condition and adds it as rule.
+	 *
+	 * @param name
+	 * 			Name of the rule (trigger name).
+	 *
+	 * @param condition
+	 * 			Condition to compile.
+	 *
+	 * @param triggerActionList
+	 * 			Actions to perform when the condition becomes true.
+	 *
+	 * @return
+	 * 			True, if the condition could be compiled.
+	 */
+	public boolean addRule(String name, String condition, List<TriggerAction> triggerActionList)
+	{
+		List<Signal> inputSignalList = new ArrayList<Signal>();
+
+		Expression expression;
+		try {
+
+			expression = conditionCompiler.compile(condition, inputSignalList);
+
+		} catch (IllegalArgumentException e) {
+
+			System.err.println("Rule '" + name + "': " + e.getMessage());
+			return false;
+		}
+
+		Rule rule = new Rule(name, expression, triggerActionList);
+		ruleList.add(rule);
+
+		for(Signal signal : inputSignalList)
+		{
+			signal.addDependentRule(rule);
+			if(!activeSignalList.contains(signal))
+				activeSignalList.add(signal);
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Samples all input signals and evaluates the rules affected by changed
+	 * signals. Must be called from the render thread once per frame.
+	 *
+	 * @param sim
+	 * 			The simulator
+	 */
+	public void update(Simulator sim)
+	{
+		if(ruleList.isEmpty())
+			return;
+
+		for(int i=0; i<activeSignalList.size(); i++)
+			activeSignalList.get(i).update(sim);
+
+		evaluatedRules = 0;
+		for(int i=0; i<ruleList.size(); i++)
+		{
+			if(ruleList.get(i).update())
+				evaluatedRules++;
+		}
+	}
+
+
+	public int getNumberOfRules()
+	{
+		return ruleList.size();
+	}
+
+
+	public int getNumberOfSignals()
+	{
+		return activeSignalList.size();
+	}
+
+
+	/**
+	 * @return
+	 * 			Number of rules evaluated in the last frame.
+	 */
+	public int getNumberOfEvaluatedRules()
+	{
+		return evaluatedRules;
+	}
+}
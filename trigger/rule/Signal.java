@@ -0,0 +1,98 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.trigger.rule;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import eu.opends.main.Simulator;
+
+/**
+ * Cached value of a car or scene quantity (e.g. speed, distance to an object)
+ * used as input of rule conditions. Each signal is sampled once per frame;
+ * all rules depending on the signal will be re-evaluated if its value has
+ * changed. Boolean quantities are represented by 1 (true) and 0 (false).
+ *
+ * @author Rafael Math
+ */
+public abstract class Signal
+{
+	private String name;
+	private double value = Double.NaN;
+	private List<Rule> dependentRuleList = new ArrayList<Rule>();
+
+
+	public Signal(String name)
+	{
+		this.name = name;
+	}
+
+
+	/**
+	 * Computes the current value of the signal.
+	 *
+	 * @param sim
+	 * 			The simulator
+	 *
+	 * @return
+	 * 			Current value of the signal.
+	 */
+	protected abstract double compute(Simulator sim);
+
+
+	/**
+	 * Samples the signal and marks all dependent rules for re-evaluation if
+	 * the value has changed.
+	 *
+	 * @param sim
+	 * 			The simulator
+	 */
+	public void update(Simulator sim)
+	{
+		double newValue = compute(sim);
+
+		// NaN (e.g. referenced object not available) is not considered a change
+		if(newValue != value && !(Double.isNaN(newValue) && Double.isNaN(value)))
+		{
+			value = newValue;
+
+			for(int i=0; i<dependentRuleList.size(); i++)
+				dependentRuleList.get(i).markChanged();
+		}
+	}
+
+
+	public double getValue()
+	{
+		return value;
+	}
+
+
+	public String getName()
+	{
+		return name;
+	}
+
+
+	public void addDependentRule(Rule rule)
+	{
+		if(!dependentRuleList.contains(rule))
+			dependentRuleList.add(rule);
+	}
+}
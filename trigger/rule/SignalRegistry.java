@@ -0,0 +1,286 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package eu.opends.trigger.rule;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Spatial;
+
+import eu.opends.car.Car;
+import eu.opends.environment.TrafficLight;
+import eu.opends.environment.TrafficLight.TrafficLightState;
+import eu.opends.environment.TrafficLightCenter;
+import eu.opends.main.Simulator;
+import eu.opends.trigger.SweepTest;
+
+/**
+ * Creates the signals referenced by rule conditions. Each signal (name and
+ * argument) is created only once and shared by all rules referring to it.
+ * Available signals:
+ *
+ * speed (km/h), rpm, gear, acceleratorPedal, brakePedal, steering,
+ * engineOn, distance(objectName) (m), timeToReach(objectName) (s),
+ * trafficLightRed(trafficLightName), reactionTimerActive(timerID)
+ *
+ * @author Rafael Math
+ */
+public class SignalRegistry
+{
+	private Map<String, Signal> signalMap = new HashMap<String, Signal>();
+	private List<Signal> signalList = new ArrayList<Signal>();
+
+
+	/**
+	 * Returns the signal with the given name and argument. The signal will be
+	 * created if not requested before.
+	 *
+	 * @param name
+	 * 			Name of the signal (e.g. "distance").
+	 *
+	 * @param argument
+	 * 			Argument of the signal (e.g. name of an object) or null.
+	 *
+	 * @return
+	 * 			Requested signal.
+	 *
+	 * @throws IllegalArgumentException
+	 * 			If the signal is unknown or the argument is missing.
+	 */
+	public Signal getSignal(String name, String argument)
+	{
+		String key = (argument == null) ? name : name + "(" + argument + ")";
+
+		Signal signal = signalMap.get(key);
+		if(signal == null)
+		{
+			signal = createSignal(key, name, argument);
+			signalMap.put(key, signal);
+			signalList.add(signal);
+		}
+
+		return signal;
+	}
+
+
+	public List<Signal> getSignalList()
+	{
+		return signalList;
+	}
+
+
+	private static Signal createSignal(String key, String name, final String argument)
+	{
+		if(argument == null)
+		{
+			if(name.equals("speed"))
+				return new CarSignal(key) {
+					protected double compute(Car car) {return car.getCurrentSpeedKmh();}
+				};
+
+			if(name.equals("rpm"))
+				return new CarSignal(key) {
+					protected double compute(Car car) {return car.getTransmission().getRPM();}
+				};
+
+			if(name.equals("gear"))
+				return new CarSignal(key) {
+					protected double compute(Car car) {return car.getTransmission().getGear();}
+				};
+
+			if(name.equals("acceleratorPedal"))
+				return new CarSignal(key) {
+					protected double compute(Car car) {return car.getGasPedalPressIntensity();}
+				};
+
+			if(name.equals("brakePedal"))
+				return new CarSignal(key) {
+					protected double compute(Car car) {return car.getBrakePedalPressIntensity();}
+				};
+
+			if(name.equals("steering"))
+				return new CarSignal(key) {
+					protected double compute(Car car) {return car.getSteeringWheelState();}
+				};
+
+			if(name.equals("engineOn"))
+				return new CarSignal(key) {
+					protected double compute(Car car) {return car.isEngineOn() ? 1 : 0;}
+				};
+		}
+		else
+		{
+			if(name.equals("distance"))
+				return new DistanceSignal(key, argument);
+			
+			if(name.equals("timeToReach"))
+				return new TimeToReachSignal(key, argument);
+
+			if(name.equals("trafficLightRed"))
+				return new Signal(key) {
+					protected double compute(Simulator sim) {
+						TrafficLight trafficLight = TrafficLightCenter.getTrafficLightByName(argument);
+						if(trafficLight == null)
+							return Double.NaN;
+						return (trafficLight.getState() == TrafficLightState.RED) ? 1 : 0;
+					}
+				};
+
+			if(name.equals("reactionTimerActive"))
+				return new Signal(key) {
+					protected double compute(Simulator sim) {
+						return sim.getReactionCenter().isReactionTimerActive(argument) ? 1 : 0;
+					}
+				};
+		}
+
+		if(argument == null)
+			throw new IllegalArgumentException("Unknown signal '" + name + "'");
+		else
+			throw new IllegalArgumentException("Unknown signal '" + name + "' with argument '" + argument + "'");
+	}
+
+
+	/**
+	 * Signal computed from the state of the driving car.
+	 */
+	private static abstract class CarSignal extends Signal
+	{
+		public CarSignal(String name)
+		{
+			super(name);
+		}
+
+
+		protected abstract double compute(Car car);
+
+
+		@Override
+		protected double compute(Simulator sim)
+		{
+			return compute(sim.getCar());
+		}
+	}
+
+
+	/**
+	 * Distance (in meters) between the driving car and a scene object or
+	 * traffic light. The object will be looked up only once.
+	 */
+	private static class DistanceSignal extends Signal
+	{
+		private String objectName;
+		private Spatial spatial = null;
+		private TrafficLight trafficLight = null;
+		private boolean isResolved = false;
+
+
+		public DistanceSignal(String name, String objectName)
+		{
+			super(name);
+			this.objectName = objectName;
+		}
+
+
+		@Override
+		protected double compute(Simulator sim)
+		{
+			if(!isResolved)
+			{
+				spatial = sim.getSceneNode().getChild(objectName);
+				if(spatial == null)
+					trafficLight = TrafficLightCenter.getTrafficLightByName(objectName);
+				if(spatial == null && trafficLight == null)
+					System.err.println("Rule signal '" + getName() + "': object '" + objectName + "' not found");
+				isResolved = true;
+			}
+
+			if(spatial != null)
+				return sim.getCar().getPosition().distance(spatial.getWorldTranslation());
+			else if(trafficLight != null)
+				return sim.getCar().getPosition().distance(trafficLight.getWorldPosition());
+			else
+				return Double.NaN;
+		}
+	}
+	
+	
+	/**
+	 * Time (in seconds) until the bounds of the driving car will touch the 
+	 * bounds of a scene object if the car keeps its current velocity (0 if 
+	 * touching already). Infinite if the object is not located on the path 
+	 * of the car within the next MAX_TIME seconds. Allows predictive rules, 
+	 * e.g. "timeToReach(Obstacle) &lt; 2".
+	 */
+	private static class TimeToReachSignal extends Signal
+	{
+		private static final float MAX_TIME = 60f;
+		
+		private String objectName;
+		private Spatial spatial = null;
+		private boolean isResolved = false;
+		private SweepTest sweepTest = new SweepTest();
+		private Vector3f velocity = new Vector3f();
+		private Vector3f halfExtent = new Vector3f();
+
+
+		public TimeToReachSignal(String name, String objectName)
+		{
+			super(name);
+			this.objectName = objectName;
+		}
+
+
+		@Override
+		protected double compute(Simulator sim)
+		{
+			if(!isResolved)
+			{
+				spatial = sim.getSceneNode().getChild(objectName);
+				if(spatial == null)
+					System.err.println("Rule signal '" + getName() + "': object '" + objectName + "' not found");
+				isResolved = true;
+			}
+			
+			if(spatial == null)
+				return Double.NaN;
+			
+			Car car = sim.getCar();
+			BoundingVolume carBound = car.getCarNode().getWorldBound();
+			if(carBound == null)
+				return Double.NaN;
+			
+			// velocity (m/s) = motion within one second
+			car.getCarControl().getLinearVelocity(velocity);
+			SweepTest.getHalfExtent(carBound, halfExtent);
+			
+			float time = sweepTest.getEntryFraction(carBound.getCenter(), velocity, halfExtent, 
+					spatial.getWorldBound(), MAX_TIME);
+			
+			if(time < 0)
+				return Double.POSITIVE_INFINITY;
+			
+			return time;
+		}
+	}
+}
@@ -0,0 +1,415 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package eu.opends.visualization;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+
+/**
+ * State of one frame distributed by the state broadcast: pose of the camera, 
+ * the driving car and all traffic cars as well as the states of all traffic 
+ * lights. Traffic cars and traffic lights are identified by their index in 
+ * the driving task, hence sender and receivers must run the same driving task.
+ * 
+ * A state is split into parts, each sent as one datagram of at most 
+ * MAX_PART_SIZE bytes (below the Ethernet MTU, so datagrams will not be 
+ * fragmented). Every part contains a range of traffic cars; the first part 
+ * additionally contains camera, car and traffic lights (at most MAX_TRAFFIC_LIGHTS).
+ * 
+ * Datagram (big endian):
+ * 
+ * MAGIC (int) | VERSION (byte) | session ID (int) | sequence number (int) | part index (short) | number of parts (short) | 
+ * [first part only: camera pose | car pose | number of traffic lights (short) | 
+ * traffic lights: state (byte: ordinal of TrafficLightState)] | 
+ * number of traffic cars (short) | index of first traffic car (short) | number of traffic cars in part (short) | 
+ * traffic cars: active (byte), pose
+ * 
+ * Pose: position (3 x float), rotation (4 x short: quaternion components x, y, z, w * 32767)
+ * 
+ * The session ID is chosen at random when the sender starts; sequence numbers 
+ * are only comparable within a session.
+ * 
+ * @author Rafael Math
+ */
+public class BroadcastState
+{
+	public static final int MAGIC = 0x4F445342; // "ODSB"
+	public static final byte VERSION = 3;
+	
+	// maximum size of a datagram (Ethernet MTU minus IP and UDP headers, with some margin)
+	public static final int MAX_PART_SIZE = 1400;
+	
+	private static final int HEADER_SIZE = 17;
+	private static final int POSE_SIZE = 12 + 8;
+	private static final int TRAFFIC_CAR_SIZE = 1 + POSE_SIZE;
+	private static final int PART_SIZE = HEADER_SIZE + 6;
+	private static final int FIRST_PART_SIZE = PART_SIZE + 2*POSE_SIZE + 2;
+	
+	public static final int MAX_TRAFFIC_LIGHTS = MAX_PART_SIZE - FIRST_PART_SIZE;
+	private static final int TRAFFIC_CARS_PER_PART = (MAX_PART_SIZE - PART_SIZE) / TRAFFIC_CAR_SIZE;
+	
+	private int sequenceNumber;
+	private Vector3f cameraLocation = new Vector3f();
+	private Quaternion cameraRotation = new Quaternion();
+	private Vector3f carPosition = new Vector3f();
+	private Quaternion carRotation = new Quaternion();
+	
+	private int nrOfTrafficCars = 0;
+	private boolean[] trafficCarActive;
+	private Vector3f[] trafficCarPositions;
+	private Quaternion[] trafficCarRotations;
+	
+	private int nrOfTrafficLights = 0;
+	private byte[] trafficLightStates;
+	
+	
+	public BroadcastState(int maxTrafficCars, int maxTrafficLights)
+	{
+		// traffic car indices are encoded as unsigned short
+		maxTrafficCars = Math.min(maxTrafficCars, 0xFFFF);
+		
+		trafficCarActive = new boolean[maxTrafficCars];
+		trafficCarPositions = new Vector3f[maxTrafficCars];
+		trafficCarRotations = new Quaternion[maxTrafficCars];
+		for(int i=0; i<maxTrafficCars; i++)
+		{
+			trafficCarPositions[i] = new Vector3f();
+			trafficCarRotations[i] = new Quaternion();
+		}
+		
+		trafficLightStates = new byte[Math.min(maxTrafficLights, MAX_TRAFFIC_LIGHTS)];
+	}
+	
+	
+	/**
+	 * @return
+	 * 			Number of datagrams needed to encode this state.
+	 */
+	public int getNumberOfParts()
+	{
+		int remainingCars = nrOfTrafficCars - getTrafficCarsInFirstPart();
+		if(remainingCars <= 0)
+			return 1;
+		
+		return 1 + (remainingCars + TRAFFIC_CARS_PER_PART - 1) / TRAFFIC_CARS_PER_PART;
+	}
+	
+	
+	private int getTrafficCarsInFirstPart()
+	{
+		return (MAX_PART_SIZE - FIRST_PART_SIZE - nrOfTrafficLights) / TRAFFIC_CAR_SIZE;
+	}
+	
+	
+	public void setCamera(Vector3f location, Quaternion rotation)
+	{
+		cameraLocation.set(location);
+		cameraRotation.set(rotation);
+	}
+	
+	
+	public void setCar(Vector3f position, Quaternion rotation)
+	{
+		carPosition.set(position);
+		carRotation.set(rotation);
+	}
+	
+	
+	public void setNumberOfTrafficCars(int count)
+	{
+		nrOfTrafficCars = Math.min(count, trafficCarActive.length);
+	}
+	
+	
+	public void setTrafficCar(int index, boolean active, Vector3f position, Quaternion rotation)
+	{
+		trafficCarActive[index] = active;
+		trafficCarPositions[index].set(position);
+		trafficCarRotations[index].set(rotation);
+	}
+	
+	
+	public void setNumberOfTrafficLights(int count)
+	{
+		nrOfTrafficLights = Math.min(count, trafficLightStates.length);
+	}
+	
+	
+	public void setTrafficLightState(int index, byte state)
+	{
+		trafficLightStates[index] = state;
+	}
+	
+	
+	public int getSequenceNumber()
+	{
+		return sequenceNumber;
+	}
+	
+	
+	public Vector3f getCameraLocation()
+	{
+		return cameraLocation;
+	}
+	
+	
+	public Quaternion getCameraRotation()
+	{
+		return cameraRotation;
+	}
+	
+	
+	public Vector3f getCarPosition()
+	{
+		return carPosition;
+	}
+	
+	
+	public Quaternion getCarRotation()
+	{
+		return carRotation;
+	}
+	
+	
+	public int getNumberOfTrafficCars()
+	{
+		return nrOfTrafficCars;
+	}
+	
+	
+	public boolean isTrafficCarActive(int index)
+	{
+		return trafficCarActive[index];
+	}
+	
+	
+	public Vector3f getTrafficCarPosition(int index)
+	{
+		return trafficCarPositions[index];
+	}
+	
+	
+	public Quaternion getTrafficCarRotation(int index)
+	{
+		return trafficCarRotations[index];
+	}
+	
+	
+	public int getNumberOfTrafficLights()
+	{
+		return nrOfTrafficLights;
+	}
+	
+	
+	public byte getTrafficLightState(int index)
+	{
+		return trafficLightStates[index];
+	}
+	
+	
+	/**
+	 * Writes the given part of this state to the given buffer (will be cleared 
+	 * and flipped). The buffer must hold at least MAX_PART_SIZE bytes.
+	 * 
+	 * @param part
+	 * 			Index of the part (0 to getNumberOfParts()-1).
+	 */
+	public void encode(ByteBuffer buffer, int session, int sequenceNumber, int part)
+	{
+		this.sequenceNumber = sequenceNumber;
+		
+		buffer.clear();
+		buffer.putInt(MAGIC);
+		buffer.put(VERSION);
+		buffer.putInt(session);
+		buffer.putInt(sequenceNumber);
+		buffer.putShort((short) part);
+		buffer.putShort((short) getNumberOfParts());
+		
+		int firstCar = 0;
+		int lastCar = getTrafficCarsInFirstPart();
+		if(part == 0)
+		{
+			putPose(buffer, cameraLocation, cameraRotation);
+			putPose(buffer, carPosition, carRotation);
+			
+			buffer.putShort((short) nrOfTrafficLights);
+			buffer.put(trafficLightStates, 0, nrOfTrafficLights);
+		}
+		else
+		{
+			firstCar = lastCar + (part-1) * TRAFFIC_CARS_PER_PART;
+			lastCar = firstCar + TRAFFIC_CARS_PER_PART;
+		}
+		lastCar = Math.min(lastCar, nrOfTrafficCars);
+		
+		buffer.putShort((short) nrOfTrafficCars);
+		buffer.putShort((short) firstCar);
+		buffer.putShort((short) Math.max(0, lastCar - firstCar));
+		for(int i=firstCar; i<lastCar; i++)
+		{
+			buffer.put((byte) (trafficCarActive[i] ? 1 : 0));
+			putPose(buffer, trafficCarPositions[i], trafficCarRotations[i]);
+		}
+		
+		buffer.flip();
+	}
+	
+	
+	/**
+	 * Checks magic number and version of the datagram in the given buffer 
+	 * (position of the buffer will not be changed).
+	 */
+	public static boolean isValidPart(ByteBuffer buffer)
+	{
+		return buffer.remaining() >= HEADER_SIZE && buffer.getInt(buffer.position()) == MAGIC && 
+				buffer.get(buffer.position() + 4) == VERSION;
+	}
+	
+	
+	/**
+	 * @return
+	 * 			Session ID of the sender of the (valid) datagram in the given buffer.
+	 */
+	public static int getSession(ByteBuffer buffer)
+	{
+		return buffer.getInt(buffer.position() + 5);
+	}
+	
+	
+	/**
+	 * @return
+	 * 			Sequence number of the (valid) datagram in the given buffer.
+	 */
+	public static int getSequenceNumber(ByteBuffer buffer)
+	{
+		return buffer.getInt(buffer.position() + 9);
+	}
+	
+	
+	/**
+	 * @return
+	 * 			Part index of the (valid) datagram in the given buffer.
+	 */
+	public static int getPartIndex(ByteBuffer buffer)
+	{
+		return buffer.getShort(buffer.position() + 13) & 0xFFFF;
+	}
+	
+	
+	/**
+	 * @return
+	 * 			Number of parts of the state the (valid) datagram in the given 
+	 * 			buffer belongs to.
+	 */
+	public static int getNumberOfParts(ByteBuffer buffer)
+	{
+		return buffer.getShort(buffer.position() + 15) & 0xFFFF;
+	}
+	
+	
+	/**
+	 * Reads a part of a state from the given buffer. Only the contents of that 
+	 * part will be updated. Traffic cars and traffic lights exceeding the 
+	 * capacity of this state will be skipped.
+	 * 
+	 * @return
+	 * 			False, if the buffer does not contain a valid part.
+	 */
+	public boolean decode(ByteBuffer buffer)
+	{
+		try {
+			
+			if(buffer.getInt() != MAGIC || buffer.get() != VERSION)
+				return false;
+			
+			buffer.getInt();
+			sequenceNumber = buffer.getInt();
+			int part = buffer.getShort() & 0xFFFF;
+			buffer.getShort();
+			
+			if(part == 0)
+			{
+				getPose(buffer, cameraLocation, cameraRotation);
+				getPose(buffer, carPosition, carRotation);
+				
+				int count = buffer.getShort() & 0xFFFF;
+				nrOfTrafficLights = Math.min(count, trafficLightStates.length);
+				buffer.get(trafficLightStates, 0, nrOfTrafficLights);
+				buffer.position(buffer.position() + count - nrOfTrafficLights);
+			}
+			
+			nrOfTrafficCars = Math.min(buffer.getShort() & 0xFFFF, trafficCarActive.length);
+			int firstCar = buffer.getShort() & 0xFFFF;
+			int count = buffer.getShort() & 0xFFFF;
+			for(int i=firstCar; i<firstCar+count; i++)
+			{
+				if(i < nrOfTrafficCars)
+				{
+					trafficCarActive[i] = (buffer.get() != 0);
+					getPose(buffer, trafficCarPositions[i], trafficCarRotations[i]);
+				}
+				else
+					buffer.position(buffer.position() + TRAFFIC_CAR_SIZE);
+			}
+			
+			return true;
+			
+		} catch (BufferUnderflowException e) {
+			
+			return false;
+			
+		} catch (IllegalArgumentException e) {
+			
+			// position beyond limit
+			return false;
+		}
+	}
+	
+	
+	private static void putPose(ByteBuffer buffer, Vector3f position, Quaternion rotation)
+	{
+		buffer.putFloat(position.x);
+		buffer.putFloat(position.y);
+		buffer.putFloat(position.z);
+		buffer.putShort(quantize(rotation.getX()));
+		buffer.putShort(quantize(rotation.getY()));
+		buffer.putShort(quantize(rotation.getZ()));
+		buffer.putShort(quantize(rotation.getW()));
+	}
+	
+	
+	private static void getPose(ByteBuffer buffer, Vector3f position, Quaternion rotation)
+	{
+		position.set(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+		rotation.set(buffer.getShort() / 32767f, buffer.getShort() / 32767f, 
+				buffer.getShort() / 32767f, buffer.getShort() / 32767f);
+		rotation.normalizeLocal();
+	}
+	
+	
+	private static short quantize(float value)
+	{
+		return (short) Math.round(Math.max(-1f, Math.min(1f, value)) * 32767f);
+	}
+}
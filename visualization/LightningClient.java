@@ -18,25 +18,24 @@
 
 package eu.opends.visualization;
 
-import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.net.*;
-import java.util.*;
-
 import com.jme3.math.Vector3f;
 import com.jme3.renderer.Camera;
 
+import eu.opends.basics.SimulationBasics;
 import eu.opends.drivingTask.settings.SettingsLoader;
 import eu.opends.drivingTask.settings.SettingsLoader.Setting;
 import eu.opends.main.SimulationDefaults;
 import eu.opends.main.Simulator;
+import eu.opends.network.Connection;
+import eu.opends.network.TelemetrySink;
+import eu.opends.tools.SimulationScheduler.Clock;
 
 
 /**
  * This class provides a TCP client that connects to a given IP address
  * and port in order to transmit the position and orientation of the current
- * camera view. The required frame rate can be set in the constructor. 
+ * camera view. The camera will be captured at the update rate given in the 
+ * settings; strings are built and sent by the telemetry publisher thread. 
  * 
  * @author Rafael Math
  */
@@ -47,51 +46,103 @@ public class LightningClient
 		LIGHTNING, PCL;
 	}
 	
-	private Calendar timeOfLastFire = new GregorianCalendar();
-	private Socket serverSocket;
-	private int framerate;
-	private PrintWriter printWriter;
+	// time (in seconds) between traffic light modes and switch instruction
+	private static final float TRAFFIC_LIGHT_SWITCH_DELAY = 0.05f;
+	
+	private Connection connection;
+	private CameraSink cameraSink;
 	private float scalingFactor;
 	private boolean sendPosOriAsOneString;
 	private Target target = Target.PCL;
 	
 	
+	/**
+	 * Camera pose captured on the render thread.
+	 */
+	private static class CameraState
+	{
+		private Vector3f location = new Vector3f();
+		private Vector3f direction = new Vector3f();
+		private Vector3f up = new Vector3f();
+		private Vector3f left = new Vector3f();
+	}
+	
+	
+	/**
+	 * Sends the camera pose at the configured rate.
+	 */
+	private class CameraSink extends TelemetrySink<CameraState>
+	{
+		private Camera camera;
+		
+		
+		public CameraSink(Camera camera, int framerate)
+		{
+			super("Lightning", framerate);
+			this.camera = camera;
+		}
+		
+		
+		@Override
+		protected CameraState createSnapshot()
+		{
+			return new CameraState();
+		}
+		
+		
+		@Override
+		protected boolean capture(CameraState snapshot)
+		{
+			snapshot.location.set(camera.getLocation());
+			snapshot.direction.set(camera.getDirection());
+			snapshot.up.set(camera.getUp());
+			snapshot.left.set(camera.getLeft());
+			return true;
+		}
+		
+		
+		@Override
+		protected void send(CameraState snapshot)
+		{
+			if(target == Target.PCL)
+				sendCameraDataToPCL(snapshot);
+			else if(target == Target.LIGHTNING)
+				sendCameraDataToLightning(snapshot);
+		}
+	}
+	
+	
 	/**
 	 * The constructor
+	 * 
+	 * @param camera
+	 * 			Camera whose position and orientation will be transmitted.
 	 */
-	public LightningClient() 
+	public LightningClient(Camera camera) 
 	{
 		SettingsLoader settingsLoader = Simulator.getDrivingTask().getSettingsLoader();
 		String IP = settingsLoader.getSetting(Setting.ExternalVisualization_ip, SimulationDefaults.Lightning_ip);
 		int port = settingsLoader.getSetting(Setting.ExternalVisualization_port, SimulationDefaults.Lightning_port);
-		framerate = settingsLoader.getSetting(Setting.ExternalVisualization_updateRate, SimulationDefaults.Lightning_updateRate);
+		int framerate = settingsLoader.getSetting(Setting.ExternalVisualization_updateRate, SimulationDefaults.Lightning_updateRate);
 		scalingFactor = settingsLoader.getSetting(Setting.ExternalVisualization_scalingFactor, SimulationDefaults.Lightning_scalingFactor);
 		sendPosOriAsOneString = settingsLoader.getSetting(Setting.ExternalVisualization_sendPosOriAsOneString, SimulationDefaults.sendPosOriAsOneString);
 		
 		try {
 
-			// open socket connection
-			serverSocket = new Socket(IP,port);
+			// open connection (incoming bytes will be ignored)
+			connection = SimulationBasics.getNetworkTransport().connect(IP, port, null, null);
+			
+			cameraSink = new CameraSink(camera, framerate);
+			SimulationBasics.getTelemetryPublisher().addSink(cameraSink);
 
 		} catch (Exception e) {
 			System.err.println("No TCP connection possible to Lightning at " + IP + ":" + port);
 		}
 	}
-
-	
-	public void sendCameraData(Camera camera) 
-	{
-		if(target == Target.PCL)
-			sendCameraDataToPCL(camera);
-		else if(target == Target.LIGHTNING)
-			sendCameraDataToLightning(camera);
-	}
 	
 	
 	/**
-	 * This method sends the given camera data to the server, regarding the frame 
-	 * rate. If not enough time has passed by since last fire, the camera data 
-	 * might be rejected.<br>
+	 * This method sends the given camera data to the server.<br>
 	 * The data will be sent as one string:<br>
 	 * <code>ltupdate .remotemotionsensor -posoriIn "12 30 0;90 120 180"</code><br>
 	 * or as two strings:<br>
@@ -99,105 +150,54 @@ public class LightningClient
 	 * <code>ltupdate .remotemotionsensor -orientationIn "90 120 180"</code>
 	 * 
 	 * @param camera
-	 * 			The current camera view
-	 * 
-	 * @param sendOneString
-	 * 			sends position and orientation data in one string (if true), otherwise
-	 * 			each string will be send separately
+	 * 			Captured camera view
 	 */
-	private void sendCameraDataToLightning(Camera camera) 
+	private void sendCameraDataToLightning(CameraState camera) 
 	{	
-		// break, if no connection established
-		if(serverSocket == null)
-			return;
-		
-		// generate time stamp
-		Calendar currentTime = new GregorianCalendar();
-		
-		// if enough time has passed by since last fire, the event will be forwarded
-		if(forwardEvent(currentTime))
-		{			
+		if(sendPosOriAsOneString)
+		{
+			String positionString = LightningData.getCameraPosition(camera.location, scalingFactor);
+			String orientationString = LightningData.getCameraOrientation(camera.direction, camera.up, camera.left);
 			
-			try { 	
-
-				if(sendPosOriAsOneString)
-				{
-					String positionString = LightningData.getCameraPosition(camera, scalingFactor);
-					String orientationString = LightningData.getCameraOrientation(camera);
-					
-					String sendString = "ltupdate .remotemotionsensor -posoriIn \"" + positionString + ";" 
-											+ orientationString + "\"\n";
-					
-				 	// send position and orientation to lightning
-					printWriter = new PrintWriter(new OutputStreamWriter(serverSocket.getOutputStream()));
-				 	printWriter.print(sendString);
-				 	printWriter.flush();
-				}
-				else
-				{
-				 	// send position to lightning
-					String positionString = LightningData.getCameraPosition(camera, scalingFactor);
-					String sendStringPos = "ltupdate .remotemotionsensor -positionIn \"" + positionString + "\"\n";
-					printWriter = new PrintWriter(new OutputStreamWriter(serverSocket.getOutputStream()));
-				 	printWriter.print(sendStringPos);
-				 	printWriter.flush();
-
-				 	//try {Thread.sleep(10);} 
-					//catch (InterruptedException e){}
-				 	
-				 	// send position to lightning
-				 	String orientationString = LightningData.getCameraOrientation(camera);
-				 	String sendStringOri = "ltupdate .remotemotionsensor -orientationIn \"" + orientationString + "\"\n";
-					printWriter = new PrintWriter(new OutputStreamWriter(serverSocket.getOutputStream()));
-				 	printWriter.print(sendStringOri);
-				 	printWriter.flush();
-				}
-			 				 	
-			} catch (IOException e) {
-				System.err.println("LightningClient_sendCameraData(): " + e.toString());
-			}
+			String sendString = "ltupdate .remotemotionsensor -posoriIn \"" + positionString + ";" 
+									+ orientationString + "\"\n";
+			
+		 	// send position and orientation to lightning
+		 	connection.send(sendString);
+		}
+		else
+		{
+		 	// send position to lightning
+			String positionString = LightningData.getCameraPosition(camera.location, scalingFactor);
+			String sendStringPos = "ltupdate .remotemotionsensor -positionIn \"" + positionString + "\"\n";
+		 	connection.send(sendStringPos);
+		 	
+		 	// send position to lightning
+		 	String orientationString = LightningData.getCameraOrientation(camera.direction, camera.up, camera.left);
+		 	String sendStringOri = "ltupdate .remotemotionsensor -orientationIn \"" + orientationString + "\"\n";
+		 	connection.send(sendStringOri);
 		}
 	}
 
 	
-	private void sendCameraDataToPCL(Camera camera) 
+	private void sendCameraDataToPCL(CameraState camera) 
 	{	
-		// break, if no connection established
-		if(serverSocket == null)
-			return;
+		Vector3f location = camera.location;
+		String positionString = location.getX()+";"+(-1*location.getZ())+";"+(location.getY());
 		
-		// generate time stamp
-		Calendar currentTime = new GregorianCalendar();
+		Vector3f direction = camera.direction;
+		float x = location.getX() + direction.getX();
+		float y = location.getY() + direction.getY();
+		float z = location.getZ() + direction.getZ();
+		String directionString = x+";"+(-1*z)+";"+y;
 		
-		// if enough time has passed by since last fire, the event will be forwarded
-		if(forwardEvent(currentTime))
-		{			
-			
-			try { 	
+		Vector3f up = camera.up;
+		String upString = up.getX()+";"+(-1*up.getZ())+";"+up.getY();
 
-				Vector3f location = camera.getLocation();
-				String positionString = location.getX()+";"+(-1*location.getZ())+";"+(location.getY());
-				
-				Vector3f direction = camera.getDirection();
-				float x = location.getX() + direction.getX();
-				float y = location.getY() + direction.getY();
-				float z = location.getZ() + direction.getZ();
-				String directionString = x+";"+(-1*z)+";"+y;
-				
-				Vector3f up = camera.getUp();
-				String upString = up.getX()+";"+(-1*up.getZ())+";"+up.getY();
-
-				String sendString = "["+positionString+";"+directionString+";"+upString+"]";
-					
-				// send position and orientation to lightning
-				printWriter = new PrintWriter(new OutputStreamWriter(serverSocket.getOutputStream()));
-				printWriter.print(sendString);
-				printWriter.flush();
-			 				 	
-			} catch (IOException e) {
-				System.err.println("LightningClient_sendCameraData(): " + e.toString());
-			}
-		}
+		String sendString = "["+positionString+";"+directionString+";"+upString+"]";
+			
+		// send position and orientation to lightning
+		connection.send(sendString);
 	}
 
 
@@ -206,103 +206,51 @@ public class LightningClient
  	 * even if not enough time has passed by since last traffic light data was sent.
  	 * This method sends two strings (E.g. if there are three traffic lights):<br>
  	 * <code>ltupdate .remotemotionsensor -trafficlightmodesIn {"red_left" "green_up" "red_right"}</code><br>
- 	 * and<br>
+ 	 * and (50 ms later, without blocking the calling thread)<br>
  	 * <code>ltupdate .remotemotionsensor -switchtrafficlightsIn 1</code>
 	 */
-	public synchronized void sendTrafficLightData(String instructionString)
+	public void sendTrafficLightData(String instructionString)
 	{
 		// break, if no connection established
-		if(serverSocket == null)
+		if(connection == null)
 			return;
 		
-		try { 
-			
-			// set states of all traffic lights
-			printWriter = new PrintWriter(new OutputStreamWriter(serverSocket.getOutputStream()));
-		 	printWriter.print(instructionString);
-		 	printWriter.flush();
-		 	
-		 	try {Thread.sleep(50);} 
-			catch (InterruptedException e){}
-		 	
-		 	// submit states for all traffic lights
-		 	printWriter = new PrintWriter(new OutputStreamWriter(serverSocket.getOutputStream()));
-		 	printWriter.print("ltupdate .remotemotionsensor -switchtrafficlightsIn 1\n");
-		 	printWriter.flush();
-		 	
-		} catch (IOException e) {
-			System.err.println("LightningClient_sendTrafficLightData(): " + e.toString());
-		}
-	
+		// set states of all traffic lights
+	 	connection.send(instructionString);
+	 	
+	 	// submit states for all traffic lights
+	 	SimulationBasics.getScheduler().schedule(new Runnable()
+	 	{
+	 		public void run()
+	 		{
+	 			connection.send("ltupdate .remotemotionsensor -switchtrafficlightsIn 1\n");
+	 		}
+	 	}, TRAFFIC_LIGHT_SWITCH_DELAY, Clock.REAL);
 	}
 
 	
 	/**
-	 * Closes the TCP connection to the server (if a connection could be established).
+	 * Closes the TCP connection to the server (if a connection could be established)
+	 * after all pending data has been sent.
 	 */
 	public void close()
 	{
-		try {
-			if((serverSocket != null) && (printWriter != null))
-			{
-				try {Thread.sleep(100);} 
-				catch (InterruptedException e){}
-
-				printWriter.close();
-				serverSocket.close();
-			}
-			
-		} catch (IOException e) {
-			e.printStackTrace();
+		if(cameraSink != null)
+		{
+			SimulationBasics.getTelemetryPublisher().removeSink(cameraSink);
+			System.out.println("Lightning: " + getStatistics());
 		}
+		
+		if(connection != null)
+			connection.close();
 	}
 	
 	
-	/**
-	 * This method checks whether the incoming camera information should 
-	 * be sent to the server at the current time complying with the given 
-	 * frame rate
-	 * 
-	 * @param now
-	 * 			The current time stamp
-	 * 
-	 * @return true if enough time has passed by since last fire, false otherwise
-	 */
-    private boolean forwardEvent(Calendar now)
-    {
-        // fire an event every x milliseconds
-    	int fireInterval = 1000 / framerate;
-
-        // subtract time of last event from current time to get time elapsed since last fire
-        long elapsedMillisecs = timeDiff(now,timeOfLastFire);
-        
-        if (elapsedMillisecs >= fireInterval)
-        {
-            // update time of last fire
-            timeOfLastFire.add(Calendar.MILLISECOND, fireInterval);
-
-            //fire
-            return true;
-        }
-        else
-            // do not fire
-            return false;
-    }
-    
-    
-	/**
-	 * This method computes the difference between two given time stamps
-	 * 
-	 * @param timestamp1
-	 * 			First time stamp value to compare
-	 * 
-	 * @param timestamp2
-	 * 			Second time stamp value to compare
-	 * 
-	 * @return difference between the given time stamps in milliseconds (long)
-	 */
-    private static long timeDiff(Calendar timestamp1, Calendar timestamp2)
-    {
-        return Math.abs(timestamp1.getTimeInMillis() - timestamp2.getTimeInMillis());
-    }
+	public String getStatistics()
+	{
+		if(cameraSink == null)
+			return "not connected";
+		
+		return cameraSink.getStatistics() + "; " + connection.getStatistics();
+	}
 }
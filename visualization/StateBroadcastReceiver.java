@@ -0,0 +1,367 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package eu.opends.visualization;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.scene.Node;
+
+import eu.opends.environment.TrafficLight;
+import eu.opends.environment.TrafficLight.TrafficLightState;
+import eu.opends.environment.TrafficLightCenter.TrafficLightMode;
+import eu.opends.main.Simulator;
+import eu.opends.traffic.PhysicalTraffic;
+import eu.opends.traffic.TrafficCar;
+
+/**
+ * Receiver mode of OpenDS: renders the state broadcast by another simulator 
+ * (see StateBroadcaster) instead of simulating the driving car, the traffic 
+ * and the traffic lights locally. Cars are made kinematic and moved to the 
+ * received poses; traffic light programs are stopped (EXTERNAL mode). If 
+ * enabled, the camera takes the received pose, rotated by the given angle 
+ * offset (e.g. for the side screens of a multi-screen setup).
+ * 
+ * Datagrams are received by this thread and assembled to states. A state is 
+ * complete when all of its parts have been received; if a part of the state 
+ * is lost, the whole state will be dropped. A new session ID of the sender 
+ * (restart) starts the sequence numbering from scratch. The latest complete state is 
+ * passed to the render thread without locking (older states not yet applied 
+ * will be superseded) and applied by update().
+ * 
+ * @author Rafael Math
+ */
+public class StateBroadcastReceiver extends Thread
+{
+	// maximum size of a UDP datagram
+	private static final int MAX_DATAGRAM_SIZE = 65507;
+	
+	private static final TrafficLightState[] trafficLightStates = TrafficLightState.values();
+	
+	private Simulator sim;
+	private Camera cam;
+	private boolean slaveCamera;
+	private Quaternion cameraOffset = new Quaternion();
+	private InetAddress group;
+	private MulticastSocket socket;
+	private volatile boolean stopRequested = false;
+	private List<TrafficCar> trafficCarList;
+	private List<TrafficLight> trafficLightList;
+	
+	// states exchanged between receiver thread and render thread
+	private AtomicReference<BroadcastState> readyState = new AtomicReference<BroadcastState>();
+	private AtomicReference<BroadcastState> freeState = new AtomicReference<BroadcastState>();
+	
+	// receiver thread only
+	private int session;
+	private int previousSession;
+	private int lastSequenceNumber = 0;
+	private boolean isFirstState = true;
+	private boolean isComplete = false;
+	private BitSet receivedParts = new BitSet();
+	private volatile long receivedStates = 0;
+	private volatile long lostStates = 0;
+	private volatile long incompleteStates = 0;
+	private volatile long outdatedParts = 0;
+	private volatile long invalidParts = 0;
+	private volatile long supersededStates = 0;
+	private volatile long restarts = 0;
+	
+	// render thread only
+	private boolean hasState = false;
+	private Vector3f cameraLocation = new Vector3f();
+	private Quaternion cameraRotation = new Quaternion();
+	private byte[] appliedTrafficLightStates;
+	private long appliedStates = 0;
+	
+	
+	/**
+	 * Joins the given multicast group and switches the simulator to receiver 
+	 * mode (must be called on the render thread after initialization).
+	 * 
+	 * @param group
+	 * 			Multicast address (e.g. "239.255.42.99").
+	 * 
+	 * @param port
+	 * 			Port to receive from.
+	 * 
+	 * @param slaveCamera
+	 * 			If true, the camera will take the received pose.
+	 * 
+	 * @param cameraAngleOffset
+	 * 			Rotation (in degrees, around the vertical axis) applied to the 
+	 * 			received camera pose.
+	 * 
+	 * @throws IOException
+	 * 			If the address is unknown or the group could not be joined.
+	 */
+	public StateBroadcastReceiver(Simulator sim, Camera cam, String group, int port, 
+			boolean slaveCamera, float cameraAngleOffset) throws IOException
+	{
+		super("StateBroadcastReceiver");
+		setDaemon(true);
+		
+		this.sim = sim;
+		this.cam = cam;
+		this.slaveCamera = slaveCamera;
+		cameraOffset.fromAngles(0, cameraAngleOffset * FastMath.DEG_TO_RAD, 0);
+		
+		this.group = InetAddress.getByName(group);
+		socket = new MulticastSocket(port);
+		socket.joinGroup(this.group);
+		
+		trafficCarList = PhysicalTraffic.getVehicleList();
+		trafficLightList = Simulator.getDrivingTask().getScenarioLoader().getTrafficLights();
+		appliedTrafficLightStates = new byte[trafficLightList.size()];
+		for(int i=0; i<appliedTrafficLightStates.length; i++)
+			appliedTrafficLightStates[i] = -1;
+		
+		// cars will be moved by received states only
+		sim.getCar().getCarControl().setKinematic(true);
+		for(TrafficCar trafficCar : trafficCarList)
+			trafficCar.getCarControl().setKinematic(true);
+		
+		// traffic lights will be switched by received states only
+		sim.getTrafficLightCenter().setMode(TrafficLightMode.EXTERNAL);
+		
+		System.out.println("Receiving state broadcast from " + group + ":" + port);
+	}
+	
+	
+	private BroadcastState createState()
+	{
+		return new BroadcastState(trafficCarList.size(), trafficLightList.size());
+	}
+	
+	
+	@Override
+	public void run()
+	{
+		byte[] data = new byte[MAX_DATAGRAM_SIZE];
+		DatagramPacket packet = new DatagramPacket(data, data.length);
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		BroadcastState state = createState();
+		
+		while(!stopRequested)
+		{
+			try {
+				
+				packet.setLength(data.length);
+				socket.receive(packet);
+				
+			} catch (IOException e) {
+				
+				if(!stopRequested)
+				{
+					System.err.println("State broadcast: receiving failed");
+					e.printStackTrace();
+				}
+				break;
+			}
+			
+			buffer.clear();
+			buffer.limit(packet.getLength());
+			if(!BroadcastState.isValidPart(buffer))
+			{
+				invalidParts++;
+				continue;
+			}
+			
+			int senderSession = BroadcastState.getSession(buffer);
+			int sequenceNumber = BroadcastState.getSequenceNumber(buffer);
+			int part = BroadcastState.getPartIndex(buffer);
+			int nrOfParts = BroadcastState.getNumberOfParts(buffer);
+			if(part >= nrOfParts)
+			{
+				invalidParts++;
+				continue;
+			}
+			
+			if(!isFirstState && senderSession != session)
+			{
+				// late part sent before the restart of the sender
+				if(senderSession == previousSession)
+				{
+					outdatedParts++;
+					continue;
+				}
+				
+				// sender has been restarted: accept any sequence number
+				if(!isComplete)
+					incompleteStates++;
+				
+				restarts++;
+				isFirstState = true;
+			}
+			
+			// drop parts of states older than the latest one (sequence numbers may wrap) 
+			// and duplicate parts
+			int difference = sequenceNumber - lastSequenceNumber;
+			if(!isFirstState && (difference < 0 || 
+					difference == 0 && (isComplete || receivedParts.get(part))))
+			{
+				outdatedParts++;
+				continue;
+			}
+			
+			// first part of a new state
+			if(isFirstState || difference != 0)
+			{
+				if(!isFirstState && !isComplete)
+					incompleteStates++;
+				
+				if(!isFirstState && difference > 1)
+					lostStates += difference - 1;
+				
+				if(isFirstState)
+				{
+					previousSession = session;
+					session = senderSession;
+				}
+				
+				isFirstState = false;
+				isComplete = false;
+				lastSequenceNumber = sequenceNumber;
+				receivedParts.clear();
+			}
+			
+			if(!state.decode(buffer))
+			{
+				// state will be incomplete
+				invalidParts++;
+				continue;
+			}
+			
+			receivedParts.set(part);
+			if(receivedParts.cardinality() < nrOfParts)
+				continue;
+			
+			isComplete = true;
+			receivedStates++;
+			
+			// pass state to render thread and continue with an unused one
+			BroadcastState previousState = readyState.getAndSet(state);
+			if(previousState != null)
+			{
+				supersededStates++;
+				state = previousState;
+			}
+			else
+			{
+				state = freeState.getAndSet(null);
+				if(state == null)
+					state = createState();
+			}
+		}
+	}
+	
+	
+	/**
+	 * Applies the latest received state (render thread). Must be called after 
+	 * the camera has been updated by the camera factory.
+	 */
+	public void update()
+	{
+		BroadcastState state = readyState.getAndSet(null);
+		if(state != null)
+		{
+			apply(state);
+			freeState.set(state);
+			hasState = true;
+			appliedStates++;
+		}
+		
+		// camera factory positions the camera every frame
+		if(slaveCamera && hasState)
+		{
+			cam.setLocation(cameraLocation);
+			cam.setRotation(cameraRotation);
+		}
+	}
+	
+	
+	private void apply(BroadcastState state)
+	{
+		cameraLocation.set(state.getCameraLocation());
+		cameraRotation.set(state.getCameraRotation()).multLocal(cameraOffset);
+		
+		Node carNode = sim.getCar().getCarNode();
+		carNode.setLocalTranslation(state.getCarPosition());
+		carNode.setLocalRotation(state.getCarRotation());
+		
+		int nrOfTrafficCars = Math.min(state.getNumberOfTrafficCars(), trafficCarList.size());
+		for(int i=0; i<nrOfTrafficCars; i++)
+		{
+			TrafficCar trafficCar = trafficCarList.get(i);
+			boolean isActive = state.isTrafficCarActive(i);
+			trafficCar.setActive(isActive);
+			
+			if(isActive)
+			{
+				trafficCar.getCarNode().setLocalTranslation(state.getTrafficCarPosition(i));
+				trafficCar.getCarNode().setLocalRotation(state.getTrafficCarRotation(i));
+			}
+		}
+		
+		int nrOfTrafficLights = Math.min(state.getNumberOfTrafficLights(), trafficLightList.size());
+		for(int i=0; i<nrOfTrafficLights; i++)
+		{
+			byte lightState = state.getTrafficLightState(i);
+			if(lightState != appliedTrafficLightStates[i] && lightState >= 0 && lightState < trafficLightStates.length)
+			{
+				trafficLightList.get(i).setState(trafficLightStates[lightState]);
+				appliedTrafficLightStates[i] = lightState;
+			}
+		}
+	}
+	
+	
+	public String getStatistics()
+	{
+		return receivedStates + " states received, " + appliedStates + " applied, " + 
+				supersededStates + " superseded, " + lostStates + " lost, " + incompleteStates + 
+				" incomplete; " + outdatedParts + " outdated parts, " + invalidParts + " invalid parts, " + 
+				restarts + " restarts of the sender";
+	}
+	
+	
+	public void close()
+	{
+		stopRequested = true;
+		
+		try {
+			socket.leaveGroup(group);
+		} catch (IOException e) {
+		}
+		socket.close();
+		
+		System.out.println("State broadcast: " + getStatistics());
+	}
+}
@@ -0,0 +1,154 @@
+/*
+*  This file is part of OpenDS (Open Source Driving Simulator).
+*  Copyright (C) 2015 Rafael Math
+*
+*  OpenDS is free software: you can redistribute it and/or modify
+*  it under the terms of the GNU General Public License as published by
+*  the Free Software Foundation, either version 3 of the License, or
+*  (at your option) any later version.
+*
+*  OpenDS is distributed in the hope that it will be useful,
+*  but WITHOUT ANY WARRANTY; without even the implied warranty of
+*  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+*  GNU General Public License for more details.
+*
+*  You should have received a copy of the GNU General Public License
+*  along with OpenDS. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package eu.opends.visualization;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+import com.jme3.renderer.Camera;
+
+import eu.opends.environment.TrafficLight;
+import eu.opends.main.Simulator;
+import eu.opends.network.TelemetrySink;
+import eu.opends.traffic.PhysicalTraffic;
+import eu.opends.traffic.TrafficCar;
+
+/**
+ * Broadcasts the state of every frame (camera, driving car, traffic cars and 
+ * traffic lights) to a multicast group, e.g. for render computers of a 
+ * multi-screen setup running OpenDS in receiver mode (see 
+ * StateBroadcastReceiver). A state is sent as one UDP datagram, or as several 
+ * if the traffic cars do not fit into one (see BroadcastState). The render 
+ * thread copies the state into a preallocated snapshot; encoding and sending 
+ * is done by the telemetry publisher thread. Datagrams are sequenced, so 
+ * receivers can drop outdated ones; lost datagrams are not repeated as the 
+ * next frame supersedes them. A random session ID lets receivers recognize 
+ * a restarted sender.
+ * 
+ * @author Rafael Math
+ */
+public class StateBroadcaster extends TelemetrySink<BroadcastState>
+{
+	private Simulator sim;
+	private Camera cam;
+	private List<TrafficCar> trafficCarList;
+	private List<TrafficLight> trafficLightList;
+	
+	// sender thread only
+	private MulticastSocket socket;
+	private DatagramPacket packet;
+	private ByteBuffer buffer;
+	private int session = new Random().nextInt();
+	private int sequenceNumber = 0;
+	
+	
+	/**
+	 * Creates a broadcaster sending to the given multicast group.
+	 * 
+	 * @param group
+	 * 			Multicast address (e.g. "239.255.42.99").
+	 * 
+	 * @param port
+	 * 			Port of the receivers.
+	 * 
+	 * @param timeToLive
+	 * 			Number of router hops (1: local network only).
+	 * 
+	 * @throws IOException
+	 * 			If the address is unknown or no local socket could be opened.
+	 */
+	public StateBroadcaster(Simulator sim, Camera cam, String group, int port, int timeToLive) throws IOException
+	{
+		// rate 0: capture every frame
+		super("StateBroadcast", 0);
+		
+		this.sim = sim;
+		this.cam = cam;
+		this.trafficCarList = PhysicalTraffic.getVehicleList();
+		this.trafficLightList = Simulator.getDrivingTask().getScenarioLoader().getTrafficLights();
+		
+		InetAddress address = InetAddress.getByName(group);
+		socket = new MulticastSocket();
+		socket.setTimeToLive(timeToLive);
+		
+		// packet and buffer share the same byte array
+		byte[] data = new byte[BroadcastState.MAX_PART_SIZE];
+		packet = new DatagramPacket(data, data.length, address, port);
+		buffer = ByteBuffer.wrap(data);
+	}
+	
+	
+	@Override
+	protected BroadcastState createSnapshot()
+	{
+		// called by super constructor: must not depend on fields
+		return new BroadcastState(PhysicalTraffic.getVehicleList().size(), 
+				Simulator.getDrivingTask().getScenarioLoader().getTrafficLights().size());
+	}
+	
+	
+	@Override
+	protected boolean capture(BroadcastState snapshot)
+	{
+		snapshot.setCamera(cam.getLocation(), cam.getRotation());
+		snapshot.setCar(sim.getCar().getCarNode().getLocalTranslation(), 
+				sim.getCar().getCarNode().getLocalRotation());
+		
+		snapshot.setNumberOfTrafficCars(trafficCarList.size());
+		for(int i=0; i<snapshot.getNumberOfTrafficCars(); i++)
+		{
+			TrafficCar trafficCar = trafficCarList.get(i);
+			snapshot.setTrafficCar(i, trafficCar.isActive(), trafficCar.getCarNode().getLocalTranslation(), 
+					trafficCar.getCarNode().getLocalRotation());
+		}
+		
+		snapshot.setNumberOfTrafficLights(trafficLightList.size());
+		for(int i=0; i<snapshot.getNumberOfTrafficLights(); i++)
+			snapshot.setTrafficLightState(i, (byte) trafficLightList.get(i).getState().ordinal());
+		
+		return true;
+	}
+	
+	
+	@Override
+	protected void send(BroadcastState snapshot) throws IOException
+	{
+		int nrOfParts = snapshot.getNumberOfParts();
+		for(int part=0; part<nrOfParts; part++)
+		{
+			snapshot.encode(buffer, session, sequenceNumber, part);
+			packet.setLength(buffer.limit());
+			socket.send(packet);
+		}
+		sequenceNumber++;
+	}
+	
+	
+	@Override
+	protected void close()
+	{
+		socket.close();
+	}
+}